@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * A position in a list of assets sorted by title, and then by UUID as titles
+ * are only unique within a package. Asking for the assets after a cursor
+ * costs the same whichever page it points at, where skipping rows has to
+ * read past every one of them.
+ *
+ * Assets without a title (from before titles were set) have the empty title,
+ * which is how queries sort them too: before all the others. Versions of
+ * assets are sorted by the UUID of the asset they are a version of, see
+ * {@link #FROZEN_SQL_ORDER}.
+ *
+ * Clients get cursors as opaque strings, see {@link #toString()} and
+ * {@link #parse(String)}.
+ */
+public class AssetCursor
+    implements
+    Comparable<AssetCursor> {
+
+    static final String  UUID_PROPERTY        = "jcr:uuid";
+    static final String  FROZEN_UUID_PROPERTY = "jcr:frozenUuid";
+
+    static final String  SQL_ORDER            = " ORDER BY " + AssetItem.TITLE_PROPERTY_NAME + ", " + UUID_PROPERTY;
+    static final String  FROZEN_SQL_ORDER     = " ORDER BY " + AssetItem.TITLE_PROPERTY_NAME + ", " + FROZEN_UUID_PROPERTY;
+    static final String  XPATH_ORDER          = " order by @" + AssetItem.TITLE_PROPERTY_NAME + ", @" + UUID_PROPERTY;
+
+    private final String title;
+    private final String uuid;
+
+    public AssetCursor(String title,
+                       String uuid) {
+        if ( title == null || uuid == null ) {
+            throw new IllegalArgumentException( "A cursor needs both a title and a UUID" );
+        }
+        this.title = title;
+        this.uuid = uuid;
+    }
+
+    /**
+     * @return the cursor of the given asset node, or version of an asset.
+     * Nodes without a title have the empty title, as that is where queries
+     * sort them.
+     */
+    static AssetCursor of(Node node) throws RepositoryException {
+        String title = node.hasProperty( AssetItem.TITLE_PROPERTY_NAME ) ? node.getProperty( AssetItem.TITLE_PROPERTY_NAME ).getString() : "";
+        String uuid = node.hasProperty( FROZEN_UUID_PROPERTY ) ? node.getProperty( FROZEN_UUID_PROPERTY ).getString() : node.getIdentifier();
+        return new AssetCursor( title,
+                                uuid );
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    /**
+     * Reads a cursor written by {@link #toString()}.
+     *
+     * @return the cursor, or null if the given string is null or empty, which
+     * stands for the start of the list.
+     * @throws IllegalArgumentException if the string is not a cursor.
+     */
+    public static AssetCursor parse(String cursor) {
+        if ( cursor == null || cursor.length() == 0 ) {
+            return null;
+        }
+        // UUIDs never contain a colon, titles may
+        int separator = cursor.indexOf( ':' );
+        if ( separator < 1 ) {
+            throw new IllegalArgumentException( "Invalid cursor: " + cursor );
+        }
+        return new AssetCursor( cursor.substring( separator + 1 ),
+                                cursor.substring( 0,
+                                                  separator ) );
+    }
+
+    /**
+     * A predicate (SQL style) matching the assets after this cursor, to be
+     * used with {@link #SQL_ORDER}.
+     */
+    String toSqlPredicate() {
+        return toSqlPredicate( UUID_PROPERTY );
+    }
+
+    /**
+     * A predicate (SQL style) matching the versions of assets after this
+     * cursor, to be used with {@link #FROZEN_SQL_ORDER}.
+     */
+    String toFrozenSqlPredicate() {
+        return toSqlPredicate( FROZEN_UUID_PROPERTY );
+    }
+
+    private String toSqlPredicate(String uuidProperty) {
+        String title = quote( this.title );
+        String uuid = quote( this.uuid );
+        String predicate = AssetItem.TITLE_PROPERTY_NAME + " > " + title
+                           + " OR (" + AssetItem.TITLE_PROPERTY_NAME + " = " + title + " AND " + uuidProperty + " > " + uuid + ")";
+        if ( this.title.length() == 0 ) {
+            // the untitled assets after this one, then all the titled ones
+            predicate += " OR (" + AssetItem.TITLE_PROPERTY_NAME + " IS NULL AND " + uuidProperty + " > " + uuid + ")";
+        }
+        return "(" + predicate + ")";
+    }
+
+    /**
+     * The same as {@link #toSqlPredicate()}, for XPath queries.
+     */
+    String toXPathPredicate() {
+        String title = quote( this.title );
+        String uuid = quote( this.uuid );
+        String predicate = "@" + AssetItem.TITLE_PROPERTY_NAME + " > " + title
+                           + " or (@" + AssetItem.TITLE_PROPERTY_NAME + " = " + title + " and @" + UUID_PROPERTY + " > " + uuid + ")";
+        if ( this.title.length() == 0 ) {
+            predicate += " or (not(@" + AssetItem.TITLE_PROPERTY_NAME + ") and @" + UUID_PROPERTY + " > " + uuid + ")";
+        }
+        return "(" + predicate + ")";
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace( "'",
+                                    "''" ) + "'";
+    }
+
+    public int compareTo(AssetCursor other) {
+        int result = title.compareTo( other.title );
+        return result != 0 ? result : uuid.compareTo( other.uuid );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if ( !(o instanceof AssetCursor) ) {
+            return false;
+        }
+        AssetCursor other = (AssetCursor) o;
+        return title.equals( other.title ) && uuid.equals( other.uuid );
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * title.hashCode() + uuid.hashCode();
+    }
+
+    /**
+     * @return the cursor as an opaque string, which {@link #parse(String)}
+     * reads back.
+     */
+    @Override
+    public String toString() {
+        return uuid + ":" + title;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+/**
+ * What a package diff needs to know about an asset: its name, UUID, whether
+ * it is archived and the digest of its content.
+ */
+public final class AssetDigest {
+
+    private final String  name;
+    private final String  uuid;
+    private final boolean archived;
+    private final String  contentDigest;
+
+    AssetDigest(AssetItem asset) {
+        this.name = asset.getName();
+        this.uuid = asset.getUUID();
+        this.archived = asset.isArchived();
+        this.contentDigest = asset.getContentDigest();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    /**
+     * @see AssetItem#getContentDigest()
+     */
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    /**
+     * @return true if the other asset has different content.
+     */
+    public boolean isContentChanged(AssetDigest other) {
+        return !contentDigest.equals( other.contentDigest );
+    }
+}
@@ -17,15 +17,22 @@
 package org.drools.repository;
 
 import java.io.*;
+import java.security.DigestInputStream;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import javax.jcr.version.VersionHistory;
 
+import org.drools.repository.blob.BlobStore;
+import org.drools.repository.blob.BlobStoreManager;
 import org.drools.repository.events.StorageEventManager;
 import org.drools.repository.utils.IOUtils;
 import org.slf4j.Logger;
@@ -47,6 +54,32 @@ public class AssetItem extends CategorisableItem {
     public static final String CONTENT_PROPERTY_BINARY_NAME         = "drools:binaryContent";
     public static final String CONTENT_PROPERTY_ATTACHMENT_FILENAME = "drools:attachmentFileName";
 
+    /**
+     * The key of the binary content in the blob store, in place of the binary
+     * content itself, see {@link BlobStoreManager}.
+     */
+    public static final String CONTENT_PROPERTY_BINARY_KEY_NAME     = "drools:binaryContentKey";
+
+    /**
+     * The SHA-256 digest (in hex) of the binary content if there is any, or
+     * else of the text content in UTF-8.
+     */
+    public static final String CONTENT_DIGEST_PROPERTY_NAME         = "drools:contentDigest";
+
+    /**
+     * The most digests of content saved before digests were stored to keep,
+     * see {@link #getContentDigest()}.
+     */
+    private static final int   MAX_LEGACY_DIGESTS                   = 10000;
+
+    private static final Map<String, String> legacyDigests          = Collections.synchronizedMap( new LinkedHashMap<String, String>( 16,
+                                                                                                                                    0.75f,
+                                                                                                                                    true ) {
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_LEGACY_DIGESTS;
+        }
+    } );
+
     /**
      * The name of the date effective property on the rule node type
      */
@@ -61,6 +94,26 @@ public class AssetItem extends CategorisableItem {
 
     public static final String PACKAGE_NAME_PROPERTY                = "drools:packageName";
 
+    /**
+     * The number of the latest version checked in with each state the asset
+     * has been in, as "state UUID=version number" pairs separated by commas.
+     */
+    public static final String STATE_VERSIONS_PROPERTY_NAME         = "drools:stateVersions";
+
+    /**
+     * The most state versions rebuilt from the history of assets checked in
+     * before they were recorded to keep, see {@link #loadLatestVersionInState(StateItem)}.
+     */
+    private static final int   MAX_LEGACY_STATE_VERSIONS            = 10000;
+
+    private static final Map<String, Map<String, Long>> legacyStateVersions = Collections.synchronizedMap( new LinkedHashMap<String, Map<String, Long>>( 16,
+                                                                                                                                                     0.75f,
+                                                                                                                                                     true ) {
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+            return size() > MAX_LEGACY_STATE_VERSIONS;
+        }
+    } );
+
     /**
      * Constructs a RuleItem object, setting its node attribute to the specified
      * node.
@@ -140,7 +193,14 @@ public class AssetItem extends CategorisableItem {
     public long getContentLength() {
         try {
             Node ruleNode = getVersionContentNode();
-            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) ) {
+            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ) ) {
+                String key = ruleNode.getProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ).getString();
+                long size = getBlobStore().getSize( key );
+                if ( size < 0 ) {
+                    throw new RulesRepositoryException( "The content of asset " + getName() + " is missing from the blob store: " + key );
+                }
+                return size;
+            } else if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) ) {
                 Property data = ruleNode.getProperty( CONTENT_PROPERTY_BINARY_NAME );
                 return data.getLength();
             } else {
@@ -155,6 +215,74 @@ public class AssetItem extends CategorisableItem {
             log.error( e.getMessage(),
                        e );
             throw new RulesRepositoryException( e );
+        } catch ( IOException e ) {
+            log.error( e.getMessage(),
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Returns the digest of the content, see
+     * {@link #CONTENT_DIGEST_PROPERTY_NAME}. Two versions of an asset have the
+     * same digest only if they have the same content. The digest is stored as
+     * the content is updated; for content saved before that it is worked out
+     * from the content itself, once per node and modification as it is kept
+     * for the next time.
+     */
+    public String getContentDigest() {
+        try {
+            Node ruleNode = getVersionContentNode();
+            if ( ruleNode.hasProperty( CONTENT_DIGEST_PROPERTY_NAME ) ) {
+                return ruleNode.getProperty( CONTENT_DIGEST_PROPERTY_NAME ).getString();
+            }
+            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ) ) {
+                return ruleNode.getProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ).getString();
+            }
+            // versions never change, and the head gets a digest when it does
+            String key = ruleNode.getIdentifier() + "@" + (ruleNode.hasProperty( LAST_MODIFIED_PROPERTY_NAME ) ? ruleNode.getProperty( LAST_MODIFIED_PROPERTY_NAME ).getString() : "");
+            String digest = legacyDigests.get( key );
+            if ( digest == null ) {
+                digest = digestLegacyContent( ruleNode );
+                legacyDigests.put( key,
+                                   digest );
+            }
+            return digest;
+        } catch ( RepositoryException e ) {
+            log.error( e.getMessage(),
+                       e );
+            throw new RulesRepositoryException( e );
+        } catch ( IOException e ) {
+            log.error( e.getMessage(),
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    private static String digestLegacyContent(Node ruleNode) throws RepositoryException,
+                                                                   IOException {
+        if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) ) {
+            Binary binary = ruleNode.getProperty( CONTENT_PROPERTY_BINARY_NAME ).getBinary();
+            InputStream in = binary.getStream();
+            try {
+                return Digests.digest( Digests.SHA256,
+                                       in );
+            } finally {
+                in.close();
+                binary.dispose();
+            }
+        }
+        if ( ruleNode.hasProperty( CONTENT_PROPERTY_NAME ) ) {
+            return digestOf( ruleNode.getProperty( CONTENT_PROPERTY_NAME ).getString() );
+        }
+        return digestOf( "" );
+    }
+
+    private static String digestOf(String content) {
+        try {
+            return Digests.toHex( Digests.newDigest( Digests.SHA256 ).digest( content.getBytes( "UTF-8" ) ) );
+        } catch ( UnsupportedEncodingException e ) {
+            throw new RulesRepositoryException( e );
         }
     }
 
@@ -164,7 +292,7 @@ public class AssetItem extends CategorisableItem {
     public boolean isBinary() {
         try {
             Node ruleNode = getVersionContentNode();
-            return ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME );
+            return ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) || ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_KEY_NAME );
         } catch ( RepositoryException e ) {
             log.error( e.getMessage(),
                        e );
@@ -182,7 +310,9 @@ public class AssetItem extends CategorisableItem {
                 return StorageEventManager.getLoadEvent().loadContent( this );
             }
             Node ruleNode = getVersionContentNode();
-            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) ) {
+            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ) ) {
+                return openBlob( ruleNode.getProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ).getString() );
+            } else if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_NAME ) ) {
                 Property data = ruleNode.getProperty( CONTENT_PROPERTY_BINARY_NAME );
                 return data.getBinary().getStream();
             } else {
@@ -214,6 +344,14 @@ public class AssetItem extends CategorisableItem {
             if ( StorageEventManager.hasLoadEvent() ) {
                 return IOUtils.toByteArray( StorageEventManager.getLoadEvent().loadContent( this ) );
             }
+            if ( ruleNode.hasProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ) ) {
+                InputStream in = openBlob( ruleNode.getProperty( CONTENT_PROPERTY_BINARY_KEY_NAME ).getString() );
+                try {
+                    return IOUtils.toByteArray( in );
+                } finally {
+                    in.close();
+                }
+            }
             if ( isBinary() ) {
                 Property data = ruleNode.getProperty( CONTENT_PROPERTY_BINARY_NAME );
                 InputStream in = data.getBinary().getStream();
@@ -386,6 +524,9 @@ public class AssetItem extends CategorisableItem {
         try {
             if ( this.isBinary() ) {
                 this.updateBinaryContentAttachment( new ByteArrayInputStream( newRuleContent.getBytes() ) );
+            } else {
+                this.node.setProperty( CONTENT_DIGEST_PROPERTY_NAME,
+                                       digestOf( newRuleContent ) );
             }
             this.node.setProperty( CONTENT_PROPERTY_NAME,
                                    newRuleContent );
@@ -404,15 +545,55 @@ public class AssetItem extends CategorisableItem {
     public AssetItem updateBinaryContentAttachment(InputStream data) {
         checkout();
         try {
-            Binary is = this.node.getSession().getValueFactory().createBinary( data );
+            if ( BlobStoreManager.hasBlobStore() ) {
+                // the versions of the asset only hold the key, whatever the size of the content
+                String key = BlobStoreManager.getBlobStore().put( data );
+                this.node.setProperty( CONTENT_PROPERTY_BINARY_KEY_NAME,
+                                       key );
+                this.node.setProperty( CONTENT_DIGEST_PROPERTY_NAME,
+                                       key );
+                removeProperty( CONTENT_PROPERTY_BINARY_NAME );
+                return this;
+            }
+            DigestInputStream in = new DigestInputStream( data,
+                                                          Digests.newDigest( Digests.SHA256 ) );
+            Binary is = this.node.getSession().getValueFactory().createBinary( in );
             this.node.setProperty( CONTENT_PROPERTY_BINARY_NAME,
                                    is );
+            this.node.setProperty( CONTENT_DIGEST_PROPERTY_NAME,
+                                   Digests.toHex( in.getMessageDigest().digest() ) );
+            removeProperty( CONTENT_PROPERTY_BINARY_KEY_NAME );
             return this;
         } catch ( RepositoryException e ) {
             log.error( "Unable to update the assets binary content",
                        e );
             throw new RulesRepositoryException( e );
+        } catch ( IOException e ) {
+            log.error( "Unable to store the assets binary content",
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    private void removeProperty(String name) throws RepositoryException {
+        if ( this.node.hasProperty( name ) ) {
+            this.node.getProperty( name ).remove();
+        }
+    }
+
+    private static BlobStore getBlobStore() {
+        if ( !BlobStoreManager.hasBlobStore() ) {
+            throw new RulesRepositoryException( "The asset content is kept in a blob store, but none is configured." );
+        }
+        return BlobStoreManager.getBlobStore();
+    }
+
+    private InputStream openBlob(String key) throws IOException {
+        InputStream in = getBlobStore().get( key );
+        if ( in == null ) {
+            throw new RulesRepositoryException( "The content of asset " + getName() + " is missing from the blob store: " + key );
         }
+        return in;
     }
 
     /**
@@ -572,6 +753,151 @@ public class AssetItem extends CategorisableItem {
                                          this.node );
     }
 
+    /**
+     * Loads the version of this asset with the given version number. Versions
+     * are found by their label, see {@link #VERSION_LABEL_PREFIX}; the history
+     * is only walked for versions checked in before versions were labelled.
+     *
+     * @return the version, or null if there is no such version.
+     */
+    public AssetItem loadVersion(long versionNumber) {
+        try {
+            Node head = this.node;
+            if ( isHistoricalVersion() ) {
+                head = this.node.getSession().getNodeByIdentifier( getVersionContentNode().getProperty( "jcr:frozenUuid" ).getString() );
+            }
+            VersionHistory history = getVersionManager( head ).getVersionHistory( head.getPath() );
+            String label = getVersionLabel( versionNumber );
+            if ( history.hasVersionLabel( label ) ) {
+                return new AssetItem( this.rulesRepository,
+                                      history.getVersionByLabel( label ) );
+            }
+
+            AssetHistoryIterator it = new AssetHistoryIterator( this.rulesRepository,
+                                                                head );
+            while ( it.hasNext() ) {
+                AssetItem historical = it.next();
+                if ( historical.getVersionNumber() == versionNumber ) {
+                    return historical;
+                }
+            }
+            return null;
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Loads the latest version of this asset that was checked in with the
+     * given state. This is looked up from the versions recorded at checkin
+     * rather than by walking through the history. Assets last checked in
+     * before the versions were recorded have them rebuilt from their history
+     * once per version and kept in memory, until their next checkin records
+     * them.
+     *
+     * @return the version, or null if none was checked in with that state.
+     */
+    public AssetItem loadLatestVersionInState(StateItem state) {
+        try {
+            if ( getVersionNumber() == 0 ) {
+                return null;
+            }
+            Map<String, Long> stateVersions = readStateVersions();
+            if ( stateVersions == null ) {
+                stateVersions = buildStateVersions();
+            }
+            Long versionNumber = stateVersions.get( state.getNode().getIdentifier() );
+            return versionNumber == null ? null : loadVersion( versionNumber );
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Records the state of the version about to be checked in.
+     */
+    void updateStateVersions(long nextVersion) throws RepositoryException {
+        Map<String, Long> stateVersions;
+        if ( getVersionNumber() == 0 ) {
+            // a new asset, or a copy starting a history of its own
+            stateVersions = new LinkedHashMap<String, Long>();
+        } else {
+            stateVersions = readStateVersions();
+            if ( stateVersions == null ) {
+                stateVersions = buildStateVersions();
+            }
+        }
+        if ( this.node.hasProperty( STATE_PROPERTY_NAME ) ) {
+            stateVersions.put( this.node.getProperty( STATE_PROPERTY_NAME ).getString(),
+                               nextVersion );
+        }
+
+        StringBuilder value = new StringBuilder();
+        for ( Map.Entry<String, Long> entry : stateVersions.entrySet() ) {
+            if ( value.length() > 0 ) {
+                value.append( ',' );
+            }
+            value.append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+        }
+        this.node.setProperty( STATE_VERSIONS_PROPERTY_NAME,
+                               value.toString() );
+    }
+
+    /**
+     * @return the recorded state versions, or null for assets last checked in
+     * before they were recorded.
+     */
+    private Map<String, Long> readStateVersions() throws RepositoryException {
+        Node content = getVersionContentNode();
+        if ( !content.hasProperty( STATE_VERSIONS_PROPERTY_NAME ) ) {
+            return null;
+        }
+        Map<String, Long> stateVersions = new LinkedHashMap<String, Long>();
+        String value = content.getProperty( STATE_VERSIONS_PROPERTY_NAME ).getString();
+        if ( value.length() > 0 ) {
+            for ( String pair : value.split( "," ) ) {
+                int separator = pair.indexOf( '=' );
+                stateVersions.put( pair.substring( 0,
+                                                   separator ),
+                                   Long.valueOf( pair.substring( separator + 1 ) ) );
+            }
+        }
+        return stateVersions;
+    }
+
+    /**
+     * Rebuilds the state versions from the versions up to this one. Those
+     * never change, so the result is kept per version.
+     */
+    private Map<String, Long> buildStateVersions() throws RepositoryException {
+        long ownVersionNumber = getVersionNumber();
+        String key = getVersionContentNode().getIdentifier() + "@" + ownVersionNumber;
+        Map<String, Long> cached = legacyStateVersions.get( key );
+        if ( cached != null ) {
+            return new LinkedHashMap<String, Long>( cached );
+        }
+
+        Map<String, Long> stateVersions = new LinkedHashMap<String, Long>();
+        AssetHistoryIterator it = getHistory();
+        while ( it.hasNext() ) {
+            AssetItem historical = it.next();
+            long versionNumber = historical.getVersionNumber();
+            Node content = historical.getVersionContentNode();
+            // version 0 is the root version, not a real one
+            if ( versionNumber != 0 && versionNumber <= ownVersionNumber && content.hasProperty( STATE_PROPERTY_NAME ) ) {
+                String state = content.getProperty( STATE_PROPERTY_NAME ).getString();
+                Long previous = stateVersions.get( state );
+                if ( previous == null || previous < versionNumber ) {
+                    stateVersions.put( state,
+                                       versionNumber );
+                }
+            }
+        }
+        legacyStateVersions.put( key,
+                                 Collections.unmodifiableMap( new LinkedHashMap<String, Long>( stateVersions ) ) );
+        return stateVersions;
+    }
+
     /**
      * This will get the package an asset item belongs to.
      */
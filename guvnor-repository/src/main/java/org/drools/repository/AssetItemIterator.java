@@ -16,10 +16,14 @@
 
 package org.drools.repository;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
 
 /**
  * This iterates over nodes and produces RuleItem's.
@@ -35,6 +39,7 @@ public class AssetItemIterator
 
     private NodeIterator    it;
     private RulesRepository rulesRepository;
+    private Node            last;
 
     public AssetItemIterator(NodeIterator nodes,
                             RulesRepository repo) {
@@ -47,8 +52,23 @@ public class AssetItemIterator
     }
 
     public AssetItem next() {
+        last = (Node) it.next();
         return new AssetItem( rulesRepository,
-                             (Node) it.next() );
+                              last );
+    }
+
+    /**
+     * Reads the next assets, up to the given number of them (or all the
+     * remaining ones if it is -1), and returns their summaries, loaded with
+     * just the given fields.
+     */
+    public List<AssetSummary> nextSummaries(int count,
+                                            Set<AssetSummary.Field> fields) {
+        List<AssetItem> assets = new ArrayList<AssetItem>();
+        while ( hasNext() && (count == -1 || assets.size() < count) ) {
+            assets.add( next() );
+        }
+        return new AssetSummaryLoader( fields ).load( assets );
     }
 
     public void remove() {
@@ -71,6 +91,21 @@ public class AssetItemIterator
         return it.getSize();
     }
 
+    /**
+     * @return the cursor of the last asset returned, to carry on from when
+     * the query sorts by it. Null if nothing has been returned yet.
+     */
+    public AssetCursor getCursor() {
+        if ( last == null ) {
+            return null;
+        }
+        try {
+            return AssetCursor.of( last );
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
     /**
      * Get the position in the result set.
      */
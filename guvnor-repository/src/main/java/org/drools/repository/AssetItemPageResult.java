@@ -28,12 +28,23 @@ public class AssetItemPageResult {
     public final boolean hasNext;
     public long currentPosition;
 
+    /**
+     * The cursor to ask for the next page with, if there is one and the page
+     * was read in cursor order.
+     */
+    public AssetCursor nextCursor;
+
     public AssetItemPageResult(List<AssetItem> categories, long currentPosition, boolean hasNext) {
         this.assets = categories;
         this.hasNext = hasNext;
         this.currentPosition = currentPosition;
     }
 
+    public AssetItemPageResult(List<AssetItem> categories, long currentPosition, boolean hasNext, AssetCursor nextCursor) {
+        this( categories, currentPosition, hasNext );
+        this.nextCursor = nextCursor;
+    }
+
     public AssetItemPageResult() {
         hasNext = false;
         currentPosition = 0;
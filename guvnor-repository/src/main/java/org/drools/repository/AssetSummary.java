@@ -0,0 +1,167 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read only summary of an asset, holding the fields asked for when it was
+ * loaded by an {@link AssetSummaryLoader}. Fields that were not asked for
+ * are null; string fields that were asked for but are not set are empty, as
+ * with the getters of {@link AssetItem}.
+ */
+public final class AssetSummary {
+
+    /**
+     * The fields a summary can be loaded with. The UUID is always loaded.
+     */
+    public enum Field {
+        NAME(VersionableItem.TITLE_PROPERTY_NAME),
+        FORMAT(VersionableItem.FORMAT_PROPERTY_NAME),
+        DESCRIPTION(VersionableItem.DESCRIPTION_PROPERTY_NAME),
+        PACKAGE_NAME(AssetItem.PACKAGE_NAME_PROPERTY),
+        STATE_NAME(VersionableItem.STATE_PROPERTY_NAME),
+        CATEGORY_NAMES(VersionableItem.CATEGORY_PROPERTY_NAME),
+        CREATOR(VersionableItem.CREATOR_PROPERTY_NAME),
+        CREATED_DATE("jcr:created"),
+        LAST_CONTRIBUTOR(VersionableItem.LAST_CONTRIBUTOR_PROPERTY_NAME),
+        LAST_MODIFIED(VersionableItem.LAST_MODIFIED_PROPERTY_NAME),
+        EXTERNAL_SOURCE(VersionableItem.SOURCE_PROPERTY_NAME);
+
+        final String propertyName;
+
+        Field(String propertyName) {
+            this.propertyName = propertyName;
+        }
+    }
+
+    private final String       uuid;
+    private final String       name;
+    private final String       format;
+    private final String       description;
+    private final String       packageName;
+    private final String       stateName;
+    private final List<String> categoryNames;
+    private final String       creator;
+    private final Calendar     createdDate;
+    private final String       lastContributor;
+    private final Calendar     lastModified;
+    private final String       externalSource;
+
+    AssetSummary(String uuid,
+                 String name,
+                 String format,
+                 String description,
+                 String packageName,
+                 String stateName,
+                 List<String> categoryNames,
+                 String creator,
+                 Calendar createdDate,
+                 String lastContributor,
+                 Calendar lastModified,
+                 String externalSource) {
+        this.uuid = uuid;
+        this.name = name;
+        this.format = format;
+        this.description = description;
+        this.packageName = packageName;
+        this.stateName = stateName;
+        this.categoryNames = categoryNames == null ? null : Collections.unmodifiableList( categoryNames );
+        this.creator = creator;
+        this.createdDate = copy( createdDate );
+        this.lastContributor = lastContributor;
+        this.lastModified = copy( lastModified );
+        this.externalSource = externalSource;
+    }
+
+    private static Calendar copy(Calendar calendar) {
+        return calendar == null ? null : (Calendar) calendar.clone();
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the name of the state, empty if the asset has none.
+     */
+    public String getStateName() {
+        return stateName;
+    }
+
+    public List<String> getCategoryNames() {
+        return categoryNames;
+    }
+
+    /**
+     * @return the first few category names, the same as
+     * {@link CategorisableItem#getCategorySummary()}.
+     */
+    public String getCategorySummary() {
+        if ( categoryNames == null ) {
+            return null;
+        }
+        StringBuilder sum = new StringBuilder();
+        for ( int i = 0; i < categoryNames.size() && i < 4; i++ ) {
+            if ( i == 3 ) {
+                sum.append( "..." );
+            } else {
+                sum.append( categoryNames.get( i ) );
+                sum.append( ' ' );
+            }
+        }
+        return sum.toString();
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public Calendar getCreatedDate() {
+        return copy( createdDate );
+    }
+
+    public String getLastContributor() {
+        return lastContributor;
+    }
+
+    public Calendar getLastModified() {
+        return copy( lastModified );
+    }
+
+    public String getExternalSource() {
+        return externalSource;
+    }
+}
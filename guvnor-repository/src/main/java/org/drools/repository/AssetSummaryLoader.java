@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.drools.repository.AssetSummary.Field;
+
+/**
+ * Loads {@link AssetSummary}s for a batch of assets, reading only the
+ * properties of the fields asked for, with a single call per asset. The
+ * states and categories the assets refer to are looked up once per loader,
+ * rather than once per asset, so a loader is best used for a page of assets.
+ */
+public class AssetSummaryLoader {
+
+    private final Set<Field>          fields;
+    private final String[]            propertyNames;
+    private final Map<String, String> referencedNames = new HashMap<String, String>();
+
+    public AssetSummaryLoader(Set<Field> fields) {
+        this.fields = EnumSet.copyOf( fields );
+        List<String> names = new ArrayList<String>();
+        for ( Field field : this.fields ) {
+            if ( field != Field.CREATED_DATE ) {
+                names.add( field.propertyName );
+            }
+        }
+        this.propertyNames = names.toArray( new String[names.size()] );
+    }
+
+    public List<AssetSummary> load(List<AssetItem> assets) {
+        List<AssetSummary> summaries = new ArrayList<AssetSummary>( assets.size() );
+        for ( AssetItem asset : assets ) {
+            summaries.add( load( asset ) );
+        }
+        return summaries;
+    }
+
+    public AssetSummary load(AssetItem asset) {
+        try {
+            Node content = asset.getVersionContentNode();
+            Map<String, Property> properties = new HashMap<String, Property>();
+            if ( propertyNames.length > 0 ) {
+                PropertyIterator it = content.getProperties( propertyNames );
+                while ( it.hasNext() ) {
+                    Property property = it.nextProperty();
+                    properties.put( property.getName(),
+                                    property );
+                }
+            }
+
+            String name = null;
+            if ( fields.contains( Field.NAME ) ) {
+                Property title = properties.get( Field.NAME.propertyName );
+                name = title != null ? title.getString() : content.getName();
+            }
+            String stateName = null;
+            if ( fields.contains( Field.STATE_NAME ) ) {
+                Property state = properties.get( Field.STATE_NAME.propertyName );
+                stateName = state != null ? getReferencedName( content.getSession(),
+                                                               state.getString() ) : null;
+                if ( stateName == null ) {
+                    stateName = "";
+                }
+            }
+            List<String> categoryNames = null;
+            if ( fields.contains( Field.CATEGORY_NAMES ) ) {
+                categoryNames = new ArrayList<String>();
+                Property categories = properties.get( Field.CATEGORY_NAMES.propertyName );
+                if ( categories != null ) {
+                    Value[] values = categories.isMultiple() ? categories.getValues() : new Value[]{categories.getValue()};
+                    for ( Value value : values ) {
+                        String categoryName = getReferencedName( content.getSession(),
+                                                                 value.getString() );
+                        // categories that have been removed are left out
+                        if ( categoryName != null ) {
+                            categoryNames.add( categoryName );
+                        }
+                    }
+                }
+            }
+            Calendar createdDate = null;
+            if ( fields.contains( Field.CREATED_DATE ) ) {
+                // from the node itself, the same as VersionableItem.getCreatedDate()
+                createdDate = asset.getNode().getProperty( Field.CREATED_DATE.propertyName ).getDate();
+            }
+            Calendar lastModified = null;
+            if ( fields.contains( Field.LAST_MODIFIED ) ) {
+                Property property = properties.get( Field.LAST_MODIFIED.propertyName );
+                lastModified = property != null ? property.getDate() : null;
+            }
+
+            return new AssetSummary( content.getIdentifier(),
+                                     name,
+                                     getString( properties,
+                                                Field.FORMAT ),
+                                     getString( properties,
+                                                Field.DESCRIPTION ),
+                                     getString( properties,
+                                                Field.PACKAGE_NAME ),
+                                     stateName,
+                                     categoryNames,
+                                     getString( properties,
+                                                Field.CREATOR ),
+                                     createdDate,
+                                     getString( properties,
+                                                Field.LAST_CONTRIBUTOR ),
+                                     lastModified,
+                                     getString( properties,
+                                                Field.EXTERNAL_SOURCE ) );
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    private String getString(Map<String, Property> properties,
+                             Field field) throws RepositoryException {
+        if ( !fields.contains( field ) ) {
+            return null;
+        }
+        Property property = properties.get( field.propertyName );
+        return property != null ? property.getString() : "";
+    }
+
+    /**
+     * @return the name of the referenced state or category node, or null if
+     * it has been removed.
+     */
+    private String getReferencedName(Session session,
+                                     String uuid) throws RepositoryException {
+        if ( referencedNames.containsKey( uuid ) ) {
+            return referencedNames.get( uuid );
+        }
+        String name;
+        try {
+            name = session.getNodeByIdentifier( uuid ).getName();
+        } catch ( ItemNotFoundException e ) {
+            name = null;
+        }
+        referencedNames.put( uuid,
+                             name );
+        return name;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How compiled packages are stored in the repository.
+ *
+ * Compressed binaries start with a small header: the bytes "GVZ" followed by
+ * the id of the codec. Binaries without the header are stored as they are,
+ * which is how all binaries were stored before compression was added, so both
+ * can be read back.
+ *
+ * The codec used for new binaries is set with the
+ * <code>guvnor.compiledPackage.codec</code> system property ("none" or
+ * "deflate"), and is "none" by default.
+ */
+public enum CompiledPackageCodec {
+
+    NONE(0) {
+        InputStream encodeBody(InputStream in) {
+            return in;
+        }
+
+        InputStream decodeBody(InputStream in) {
+            return in;
+        }
+    },
+
+    DEFLATE(1) {
+        InputStream encodeBody(InputStream in) {
+            return new FastDeflaterInputStream(in);
+        }
+
+        InputStream decodeBody(InputStream in) {
+            // the stream ends its own inflater when it is closed
+            return new InflaterInputStream(in);
+        }
+    };
+
+    public static final String CODEC_PROPERTY = "guvnor.compiledPackage.codec";
+
+    private static final byte[] MAGIC = {'G', 'V', 'Z'};
+
+    private final byte id;
+
+    CompiledPackageCodec(int id) {
+        this.id = (byte) id;
+    }
+
+    abstract InputStream encodeBody(InputStream in);
+
+    abstract InputStream decodeBody(InputStream in);
+
+    /**
+     * @return the codec to store new binaries with.
+     */
+    public static CompiledPackageCodec getDefault() {
+        String name = System.getProperty(CODEC_PROPERTY, "none");
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RulesRepositoryException("Unknown " + CODEC_PROPERTY + ": " + name);
+        }
+    }
+
+    /**
+     * Wraps the raw binary in a stream that gives the stored form, header
+     * included. Nothing is read until the returned stream is, which has to be
+     * closed once read.
+     */
+    public InputStream encode(InputStream raw) {
+        if (this == NONE) {
+            return raw;
+        }
+        byte[] header = new byte[MAGIC.length + 1];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = id;
+        return new SequenceInputStream(new ByteArrayInputStream(header), encodeBody(raw));
+    }
+
+    /**
+     * Wraps a stored binary, whichever codec it was stored with, in a stream
+     * that gives the raw binary.
+     */
+    public static InputStream decode(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored);
+        in.mark(MAGIC.length + 1);
+        byte[] header = new byte[MAGIC.length + 1];
+        int read = 0;
+        int n;
+        while (read < header.length && (n = in.read(header, read, header.length - read)) != -1) {
+            read += n;
+        }
+        if (read == header.length
+                && header[0] == MAGIC[0] && header[1] == MAGIC[1] && header[2] == MAGIC[2]) {
+            for (CompiledPackageCodec codec : values()) {
+                if (codec != NONE && codec.id == header[MAGIC.length]) {
+                    return codec.decodeBody(in);
+                }
+            }
+        }
+        in.reset();
+        return in;
+    }
+
+    /**
+     * Compresses for speed rather than size. A deflater handed to a
+     * DeflaterInputStream is not ended when the stream is closed, so this one
+     * ends it itself to free the native memory straight away.
+     */
+    private static class FastDeflaterInputStream extends DeflaterInputStream {
+
+        FastDeflaterInputStream(InputStream in) {
+            super(in, new Deflater(Deflater.BEST_SPEED));
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+}
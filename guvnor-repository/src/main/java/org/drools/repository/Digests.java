@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Message digest helpers for the digests kept on packages and assets.
+ */
+final class Digests {
+
+    static final String SHA1   = "SHA-1";
+    static final String SHA256 = "SHA-256";
+
+    private Digests() {
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance( algorithm );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * @return the digest in hex, padded to the full length of the digest.
+     */
+    static String toHex(byte[] digest) {
+        return String.format( "%0" + (digest.length * 2) + "x",
+                              new BigInteger( 1,
+                                              digest ) );
+    }
+
+    /**
+     * Reads the stream to the end, without closing it, and returns the digest
+     * of what was read in hex.
+     */
+    static String digest(String algorithm,
+                         InputStream in) throws IOException {
+        MessageDigest digest = newDigest( algorithm );
+        byte[] buffer = new byte[8192];
+        int read;
+        while ( (read = in.read( buffer )) != -1 ) {
+            digest.update( buffer,
+                           0,
+                           read );
+        }
+        return toHex( digest.digest() );
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only list of records, kept as properties of a node: each record
+ * is a property of its own, named after the log and its sequence number
+ * ("name.42"), and the log remembers the sequence numbers of its oldest and
+ * next record ("name.first" and "name.next").
+ *
+ * Appending a record only writes that record and the next sequence number,
+ * however long the log is, and the newest records can be read without
+ * reading the older ones. Records are never changed: to drop records, the
+ * log is compacted, which writes the records that are kept again.
+ *
+ * A record is a list of strings, which are stored length prefixed
+ * ("5:hello3:you"), null being stored as "-".
+ */
+public class EntryLog {
+
+    private static final Logger log = LoggerFactory.getLogger( EntryLog.class );
+
+    private final Node          node;
+    private final String        name;
+
+    /**
+     * Reads the records of a log, one at a time.
+     */
+    public static interface Visitor {
+        /**
+         * @return false to stop reading.
+         */
+        public boolean visit(String[] record);
+    }
+
+    /**
+     * @param node where the records are kept, the caller has to check it out
+     * if it is versionable before appending.
+     * @param name the name of the log, which must not be used for any other
+     * property of the node.
+     */
+    public EntryLog(Node node,
+                    String name) {
+        this.node = node;
+        this.name = name;
+    }
+
+    public void append(String... record) throws RulesRepositoryException {
+        try {
+            long next = getSequence( "next" );
+            node.setProperty( name + "." + next,
+                              encode( record ) );
+            node.setProperty( name + ".next",
+                              next + 1 );
+        } catch ( RepositoryException e ) {
+            log.error( "Unable to append to " + name,
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * @return the number of records, including those that are still to be
+     * compacted away.
+     */
+    public long size() throws RulesRepositoryException {
+        try {
+            return getSequence( "next" ) - getSequence( "first" );
+        } catch ( RepositoryException e ) {
+            log.error( "Unable to read the size of " + name,
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Reads the records from the newest to the oldest, until the visitor has
+     * seen enough.
+     */
+    public void readNewestFirst(Visitor visitor) throws RulesRepositoryException {
+        try {
+            long first = getSequence( "first" );
+            for ( long i = getSequence( "next" ) - 1; i >= first; i-- ) {
+                String property = name + "." + i;
+                if ( node.hasProperty( property ) && !visitor.visit( decode( node.getProperty( property ).getString() ) ) ) {
+                    return;
+                }
+            }
+        } catch ( RepositoryException e ) {
+            log.error( "Unable to read " + name,
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * @return all the records, the oldest first.
+     */
+    public List<String[]> readAll() throws RulesRepositoryException {
+        try {
+            long next = getSequence( "next" );
+            List<String[]> records = new ArrayList<String[]>();
+            for ( long i = getSequence( "first" ); i < next; i++ ) {
+                String property = name + "." + i;
+                if ( node.hasProperty( property ) ) {
+                    records.add( decode( node.getProperty( property ).getString() ) );
+                }
+            }
+            return records;
+        } catch ( RepositoryException e ) {
+            log.error( "Unable to read " + name,
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Replaces the records with the given ones (the oldest first).
+     */
+    public void compact(List<String[]> records) throws RulesRepositoryException {
+        clear();
+        for ( String[] record : records ) {
+            append( record );
+        }
+    }
+
+    /**
+     * Removes all the records.
+     */
+    public void clear() throws RulesRepositoryException {
+        try {
+            long next = getSequence( "next" );
+            for ( long i = getSequence( "first" ); i < next; i++ ) {
+                String property = name + "." + i;
+                if ( node.hasProperty( property ) ) {
+                    node.getProperty( property ).remove();
+                }
+            }
+            // carry on numbering from where we were, so a record is never
+            // mistaken for one that was removed
+            node.setProperty( name + ".first",
+                              next );
+        } catch ( RepositoryException e ) {
+            log.error( "Unable to clear " + name,
+                       e );
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    private long getSequence(String which) throws RepositoryException {
+        String property = name + "." + which;
+        return node.hasProperty( property ) ? node.getProperty( property ).getLong() : 0;
+    }
+
+    static String encode(String[] record) {
+        StringBuilder buf = new StringBuilder();
+        for ( String field : record ) {
+            if ( field == null ) {
+                buf.append( '-' );
+            } else {
+                buf.append( field.length() ).append( ':' ).append( field );
+            }
+        }
+        return buf.toString();
+    }
+
+    static String[] decode(String data) {
+        List<String> fields = new ArrayList<String>();
+        int pos = 0;
+        while ( pos < data.length() ) {
+            if ( data.charAt( pos ) == '-' ) {
+                fields.add( null );
+                pos++;
+            } else {
+                int colon = data.indexOf( ':',
+                                          pos );
+                int start = colon + 1;
+                int end = start + Integer.parseInt( data.substring( pos,
+                                                                   colon ) );
+                fields.add( data.substring( start,
+                                            end ) );
+                pos = end;
+            }
+        }
+        return fields.toArray( new String[fields.size()] );
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.Calendar;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * The header data of the head version of a package or an asset: what it is
+ * called, what it is and when it last changed, without its content. See
+ * {@link RulesRepository#loadItemMetadata(String)}.
+ */
+public final class ItemMetadata {
+
+    private final String   uuid;
+    private final String   name;
+    private final String   title;
+    private final String   format;
+    private final String   packageName;
+    private final String   stateName;
+    private final long     lastModified;
+    private final long     versionNumber;
+    private final boolean  archived;
+    private final boolean  pkg;
+
+    private ItemMetadata(String uuid,
+                         String name,
+                         String title,
+                         String format,
+                         String packageName,
+                         String stateName,
+                         long lastModified,
+                         long versionNumber,
+                         boolean archived,
+                         boolean pkg) {
+        this.uuid = uuid;
+        this.name = name;
+        this.title = title;
+        this.format = format;
+        this.packageName = packageName;
+        this.stateName = stateName;
+        this.lastModified = lastModified;
+        this.versionNumber = versionNumber;
+        this.archived = archived;
+        this.pkg = pkg;
+    }
+
+    /**
+     * @return the metadata of the given package or asset node, or null if it
+     * is neither, or not a head version.
+     */
+    static ItemMetadata of(Node node) throws RepositoryException {
+        String type = node.getPrimaryNodeType().getName();
+        boolean isPackage = type.equals( PackageItem.RULE_PACKAGE_TYPE_NAME );
+        if ( !isPackage && !type.equals( AssetItem.RULE_NODE_TYPE_NAME ) ) {
+            return null;
+        }
+        String stateName = null;
+        if ( node.hasProperty( VersionableItem.STATE_PROPERTY_NAME ) ) {
+            stateName = node.getProperty( VersionableItem.STATE_PROPERTY_NAME ).getNode().getName();
+        }
+        return new ItemMetadata( node.getIdentifier(),
+                                 node.getName(),
+                                 getString( node,
+                                            VersionableItem.TITLE_PROPERTY_NAME ),
+                                 getString( node,
+                                            VersionableItem.FORMAT_PROPERTY_NAME ),
+                                 isPackage ? getPackageName( node ) : getString( node,
+                                                                                 AssetItem.PACKAGE_NAME_PROPERTY ),
+                                 stateName,
+                                 node.hasProperty( VersionableItem.LAST_MODIFIED_PROPERTY_NAME ) ? node.getProperty( VersionableItem.LAST_MODIFIED_PROPERTY_NAME ).getDate().getTimeInMillis() : 0,
+                                 node.hasProperty( VersionableItem.VERSION_NUMBER_PROPERTY_NAME ) ? node.getProperty( VersionableItem.VERSION_NUMBER_PROPERTY_NAME ).getLong() : 0,
+                                 node.hasProperty( VersionableItem.CONTENT_PROPERTY_ARCHIVE_FLAG ) && node.getProperty( VersionableItem.CONTENT_PROPERTY_ARCHIVE_FLAG ).getBoolean(),
+                                 isPackage );
+    }
+
+    /**
+     * @return the title of a package, which a snapshot of it has too, where
+     * its node is named after the snapshot.
+     */
+    private static String getPackageName(Node node) throws RepositoryException {
+        String title = getString( node,
+                                  VersionableItem.TITLE_PROPERTY_NAME );
+        return title != null ? title : node.getName();
+    }
+
+    private static String getString(Node node,
+                                     String property) throws RepositoryException {
+        return node.hasProperty( property ) ? node.getProperty( property ).getString() : null;
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    /**
+     * @return the name of the node, which for a snapshot is the name of the
+     * snapshot, see {@link #getPackageName()}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the name of the package the asset is in, or of the package
+     * itself (that a snapshot is of).
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the name of the state, or null if there is none.
+     */
+    public String getStateName() {
+        return stateName;
+    }
+
+    public Calendar getLastModified() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis( lastModified );
+        return calendar;
+    }
+
+    public long getVersionNumber() {
+        return versionNumber;
+    }
+
+    public boolean isArchived() {
+        return archived;
+    }
+
+    public boolean isPackage() {
+        return pkg;
+    }
+}
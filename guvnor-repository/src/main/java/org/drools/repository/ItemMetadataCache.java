@@ -0,0 +1,288 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the {@link ItemMetadata} of packages and assets, shared by all
+ * sessions, so that looking up what a UUID is called (as the permission
+ * checks do on every call) does not read the node every time.
+ *
+ * Only the head of a package or an asset is cached: historical versions live
+ * in the version storage and are always read from there. An entry is dropped
+ * as soon as anything of its node changes, through any session; when a node
+ * is moved (a rename of a package or a state for instance) everything is
+ * dropped, as other entries may carry the old name.
+ *
+ * The cache listens for changes with a session of its own, and is not used
+ * until {@link #start(Session)} is called. Misses are read through the
+ * session of the caller, so that they are read side by side.
+ */
+public class ItemMetadataCache
+    implements
+    EventListener {
+
+    private static final Logger            log                = LoggerFactory.getLogger( ItemMetadataCache.class );
+
+    private static final ItemMetadataCache INSTANCE           = new ItemMetadataCache();
+
+    private static final int               EVENTS             = Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    /**
+     * The most entries to keep, the least recently used ones are dropped
+     * first.
+     */
+    public static final String             MAX_SIZE_PROPERTY  = "guvnor.cache.metadata.size";
+
+    static final int                       DEFAULT_MAX_SIZE   = 10000;
+
+    private Session                        session;
+    private final Map<String, ItemMetadata> entries;
+    /** Bumped whenever entries are dropped, so that reads begun before are not cached. */
+    private long                           generation;
+    private long                           hitCount;
+    private long                           missCount;
+    private long                           invalidationCount;
+
+    ItemMetadataCache() {
+        this( Integer.getInteger( MAX_SIZE_PROPERTY,
+                                  DEFAULT_MAX_SIZE ) );
+    }
+
+    ItemMetadataCache(final int maxSize) {
+        entries = new LinkedHashMap<String, ItemMetadata>( 16,
+                                                           0.75f,
+                                                           true ) {
+            protected boolean removeEldestEntry(Map.Entry<String, ItemMetadata> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static ItemMetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts caching (and counting again), using (and from now on owning) the
+     * given session.
+     */
+    public void start(Session session) throws RepositoryException {
+        stop();
+        synchronized ( this ) {
+            ObservationManager observationManager = session.getWorkspace().getObservationManager();
+            observationManager.addEventListener( this,
+                                                 EVENTS,
+                                                 "/" + RulesRepository.RULES_REPOSITORY_NAME,
+                                                 true,
+                                                 null,
+                                                 null,
+                                                 false );
+            this.session = session;
+            hitCount = 0;
+            missCount = 0;
+            invalidationCount = 0;
+        }
+        log.info( "Caching the metadata of packages and assets" );
+    }
+
+    /**
+     * Stops caching and logs the session of the cache out.
+     */
+    public void stop() {
+        Session stopped;
+        synchronized ( this ) {
+            stopped = session;
+            session = null;
+            entries.clear();
+            generation++;
+        }
+        if ( stopped == null ) {
+            return;
+        }
+        log.info( "Stopped caching metadata: {}",
+                  getStatistics() );
+        try {
+            stopped.getWorkspace().getObservationManager().removeEventListener( this );
+        } catch ( RepositoryException e ) {
+            log.warn( "Unable to remove the metadata cache listener: " + e.getMessage() );
+        }
+        stopped.logout();
+    }
+
+    /**
+     * Drops everything that has been cached, for when the whole repository
+     * is replaced.
+     */
+    public synchronized void clear() {
+        invalidationCount += entries.size();
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized boolean isStarted() {
+        return session != null;
+    }
+
+    /**
+     * Returns the metadata of the head of a package or an asset, reading it
+     * if it is not cached yet. Returns null if the cache is not started, or
+     * if the UUID is not the one of the head of a package or an asset.
+     *
+     * A miss is read through the given session, the one of the caller,
+     * without holding the cache lock, so that hits do not wait for misses nor
+     * misses for each other. Nodes with changes that are not saved yet are
+     * not cached.
+     *
+     * @throws ItemNotFoundException if there is no such node.
+     */
+    public ItemMetadata get(Session reader,
+                            String uuid) throws RepositoryException {
+        long readGeneration;
+        synchronized ( this ) {
+            if ( session == null ) {
+                return null;
+            }
+            ItemMetadata metadata = entries.get( uuid );
+            if ( metadata != null ) {
+                hitCount++;
+                return metadata;
+            }
+            missCount++;
+            readGeneration = generation;
+        }
+        Node node = reader.getNodeByIdentifier( uuid );
+        ItemMetadata metadata = ItemMetadata.of( node );
+        if ( metadata != null && !node.isNew() && !node.isModified() ) {
+            synchronized ( this ) {
+                // unless something changed (or the cache stopped) while it was read
+                if ( session != null && generation == readGeneration ) {
+                    entries.put( uuid,
+                                 metadata );
+                }
+            }
+        }
+        return metadata;
+    }
+
+    public void onEvent(EventIterator events) {
+        Set<String> changed = new HashSet<String>();
+        boolean moved = false;
+        while ( events.hasNext() ) {
+            Event event = events.nextEvent();
+            try {
+                if ( event.getType() == Event.NODE_MOVED ) {
+                    moved = true;
+                } else {
+                    // for property events this is the identifier of the node
+                    changed.add( event.getIdentifier() );
+                }
+            } catch ( RepositoryException e ) {
+                log.warn( "Unable to read a repository event, dropping the metadata cache: " + e.getMessage() );
+                moved = true;
+            }
+        }
+        if ( moved ) {
+            clear();
+        } else if ( !changed.isEmpty() ) {
+            invalidate( changed );
+        }
+    }
+
+    private synchronized void invalidate(Set<String> changed) {
+        generation++;
+        for ( String uuid : changed ) {
+            if ( entries.remove( uuid ) != null ) {
+                invalidationCount++;
+            }
+        }
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics( hitCount,
+                               missCount,
+                               invalidationCount,
+                               entries.size() );
+    }
+
+    /**
+     * A snapshot of how well the cache does.
+     */
+    public static final class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long invalidationCount;
+        private final int  size;
+
+        Statistics(long hitCount,
+                   long missCount,
+                   long invalidationCount,
+                   int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.invalidationCount = invalidationCount;
+            this.size = size;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return the number of entries dropped because their node changed.
+         */
+        public long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the share of lookups that were hits, 1 if there were none.
+         */
+        public double getHitRatio() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        public String toString() {
+            return "hits=" + hitCount + ", misses=" + missCount + ", invalidations=" + invalidationCount + ", size=" + size;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.drools.repository.events.EventBus;
+import org.drools.repository.events.RepositoryEvent;
+import org.drools.repository.events.RepositoryEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in memory index of the assets that are linked to a category or a state,
+ * sorted by title (see {@link AssetCursor}), so that a page of them can be
+ * found without walking all the references of the category (or state) node.
+ *
+ * The assets of a category or state are indexed the first time they are
+ * asked for. Snapshots are never indexed, and archived assets are kept apart
+ * from the others. The index is then kept up to date by the check-ins and
+ * renames published on the {@link EventBus}, which it hears about before they
+ * return, and by listening to any other change made to the package area of
+ * the repository, through any session.
+ *
+ * The index works with a session of its own, which is only used by the index.
+ * The repository is read holding the lock of that session, and the index is
+ * only locked to look up or change what has been read, so pages are served
+ * while the index reads. Until {@link #start(Session)} is called, the index is
+ * not used and the references are walked as before.
+ */
+public class LinkedAssetIndex
+    implements
+    EventListener {
+
+    private static final Logger           log         = LoggerFactory.getLogger( LinkedAssetIndex.class );
+
+    private static final LinkedAssetIndex INSTANCE    = new LinkedAssetIndex();
+
+    private static final int              EVENTS      = Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    /** Held while reading through the session, before the index lock. */
+    private final Object                  sessionLock = new Object();
+    private Session                       session;
+    private EventBus.Subscription         subscription;
+    private final Map<String, Links>      links       = new HashMap<String, Links>();
+    private final Map<String, Set<String>> keysByAsset = new HashMap<String, Set<String>>();
+
+    LinkedAssetIndex() {
+    }
+
+    public static LinkedAssetIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts indexing, using (and from now on owning) the given session.
+     */
+    public void start(Session session) throws RepositoryException {
+        stop();
+        synchronized ( sessionLock ) {
+            ObservationManager observationManager = session.getWorkspace().getObservationManager();
+            observationManager.addEventListener( this,
+                                                 EVENTS,
+                                                 "/" + RulesRepository.RULES_REPOSITORY_NAME + "/" + RulesRepository.RULE_PACKAGE_AREA,
+                                                 true,
+                                                 null,
+                                                 null,
+                                                 false );
+            synchronized ( this ) {
+                this.session = session;
+            }
+            subscription = EventBus.getInstance().subscribeSynchronous( "linked-assets",
+                                                                        new RepositoryEventListener() {
+                                                                            public void onEvent(RepositoryEvent event) {
+                                                                                update( Collections.singleton( event.getUUID() ),
+                                                                                        Collections.<String> emptySet() );
+                                                                            }
+                                                                        },
+                                                                        RepositoryEvent.Type.CHECKIN,
+                                                                        RepositoryEvent.Type.RENAME );
+        }
+        log.info( "Indexing the assets of categories and states" );
+    }
+
+    /**
+     * Stops indexing and logs the session of the index out.
+     */
+    public void stop() {
+        Session stopped;
+        EventBus.Subscription cancelled;
+        synchronized ( sessionLock ) {
+            synchronized ( this ) {
+                stopped = session;
+                session = null;
+                links.clear();
+                keysByAsset.clear();
+            }
+            cancelled = subscription;
+            subscription = null;
+        }
+        if ( cancelled != null ) {
+            cancelled.cancel();
+        }
+        if ( stopped == null ) {
+            return;
+        }
+        // not while holding the lock, removing the listener waits for any events being delivered
+        try {
+            stopped.getWorkspace().getObservationManager().removeEventListener( this );
+        } catch ( RepositoryException e ) {
+            log.warn( "Unable to remove the linked asset index listener: " + e.getMessage() );
+        }
+        stopped.logout();
+    }
+
+    /**
+     * Drops everything that has been indexed, for when the whole repository
+     * is replaced.
+     */
+    public void clear() {
+        synchronized ( sessionLock ) {
+            synchronized ( this ) {
+                links.clear();
+                keysByAsset.clear();
+            }
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return session != null;
+    }
+
+    /**
+     * Returns the cursors of a range of the assets linked to a category or
+     * state node, in cursor order. Returns null if the index is not started.
+     *
+     * @param keyId the identifier of the category or state node.
+     * @param includeArchived whether to include archived assets.
+     * @param from the position of the first asset to return.
+     * @param count the number of assets to return, -1 for all of them.
+     */
+    public List<AssetCursor> getLinkedAssets(String keyId,
+                                             boolean includeArchived,
+                                             int from,
+                                             int count) throws RepositoryException {
+        return getLinkedAssets( keyId,
+                                includeArchived,
+                                null,
+                                from,
+                                count );
+    }
+
+    /**
+     * Same as {@link #getLinkedAssets(String, boolean, int, int)}, but starts
+     * right after the given cursor (or at the first asset if it is null),
+     * which is found without counting the assets before it.
+     */
+    public List<AssetCursor> getLinkedAssets(String keyId,
+                                             boolean includeArchived,
+                                             AssetCursor after,
+                                             int count) throws RepositoryException {
+        return getLinkedAssets( keyId,
+                                includeArchived,
+                                after,
+                                0,
+                                count );
+    }
+
+    private List<AssetCursor> getLinkedAssets(String keyId,
+                                              boolean includeArchived,
+                                              AssetCursor after,
+                                              int from,
+                                              int count) throws RepositoryException {
+        synchronized ( this ) {
+            if ( session == null ) {
+                return null;
+            }
+            Links keyLinks = links.get( keyId );
+            if ( keyLinks != null ) {
+                return keyLinks.range( includeArchived,
+                                       after,
+                                       from,
+                                       count );
+            }
+        }
+        synchronized ( sessionLock ) {
+            synchronized ( this ) {
+                if ( session == null ) {
+                    return null;
+                }
+                // someone else may have read it while we waited
+                Links keyLinks = links.get( keyId );
+                if ( keyLinks != null ) {
+                    return keyLinks.range( includeArchived,
+                                           after,
+                                           from,
+                                           count );
+                }
+            }
+            List<IndexedAsset> assets = build( keyId );
+            synchronized ( this ) {
+                Links keyLinks = new Links();
+                links.put( keyId,
+                           keyLinks );
+                for ( IndexedAsset asset : assets ) {
+                    add( keyId,
+                         keyLinks,
+                         asset );
+                }
+                return keyLinks.range( includeArchived,
+                                       after,
+                                       from,
+                                       count );
+            }
+        }
+    }
+
+    /**
+     * Walks the references of the key once, after that it is kept up to date
+     * by the events. Only called holding the session lock.
+     */
+    private List<IndexedAsset> build(String keyId) throws RepositoryException {
+        long start = System.currentTimeMillis();
+        List<IndexedAsset> assets = new ArrayList<IndexedAsset>();
+        PropertyIterator it = session.getNodeByIdentifier( keyId ).getReferences();
+        while ( it.hasNext() ) {
+            Node asset = it.nextProperty().getParent();
+            if ( isIndexed( asset ) ) {
+                assets.add( new IndexedAsset( asset ) );
+            }
+        }
+        log.debug( "Indexed {} assets of [{}] in {} ms",
+                   new Object[]{assets.size(), keyId, System.currentTimeMillis() - start} );
+        return assets;
+    }
+
+    public void onEvent(EventIterator events) {
+        Set<String> changed = new HashSet<String>();
+        Set<String> removed = new HashSet<String>();
+        while ( events.hasNext() ) {
+            Event event = events.nextEvent();
+            try {
+                if ( event.getType() == Event.NODE_REMOVED ) {
+                    removed.add( event.getIdentifier() );
+                } else if ( event.getType() == Event.NODE_MOVED || isIndexedProperty( event.getPath() ) ) {
+                    // for property events this is the identifier of the node
+                    changed.add( event.getIdentifier() );
+                }
+            } catch ( RepositoryException e ) {
+                log.warn( "Unable to read a repository event: " + e.getMessage() );
+            }
+        }
+        if ( !changed.isEmpty() || !removed.isEmpty() ) {
+            update( changed,
+                    removed );
+        }
+    }
+
+    /**
+     * Reads the changed assets again, holding the session lock all along so
+     * that nothing read before the change is added after it.
+     */
+    private void update(Set<String> changed,
+                        Set<String> removed) {
+        synchronized ( sessionLock ) {
+            if ( !isStarted() ) {
+                return;
+            }
+            Map<String, IndexedAsset> read = new HashMap<String, IndexedAsset>();
+            for ( String uuid : changed ) {
+                if ( removed.contains( uuid ) ) {
+                    continue;
+                }
+                try {
+                    Node asset = session.getNodeByIdentifier( uuid );
+                    read.put( uuid,
+                              isIndexed( asset ) ? new IndexedAsset( asset ) : null );
+                } catch ( ItemNotFoundException e ) {
+                    // removed since
+                    read.put( uuid,
+                              null );
+                } catch ( RepositoryException e ) {
+                    log.warn( "Unable to index asset [" + uuid + "]: " + e.getMessage() );
+                }
+            }
+            synchronized ( this ) {
+                for ( String uuid : removed ) {
+                    remove( uuid );
+                }
+                for ( Map.Entry<String, IndexedAsset> entry : read.entrySet() ) {
+                    remove( entry.getKey() );
+                    IndexedAsset asset = entry.getValue();
+                    if ( asset != null ) {
+                        for ( String keyId : asset.keys ) {
+                            Links keyLinks = links.get( keyId );
+                            if ( keyLinks != null ) {
+                                add( keyId,
+                                     keyLinks,
+                                     asset );
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isIndexedProperty(String path) {
+        String name = path.substring( path.lastIndexOf( '/' ) + 1 );
+        return name.equals( VersionableItem.CATEGORY_PROPERTY_NAME ) || name.equals( VersionableItem.STATE_PROPERTY_NAME )
+               || name.equals( VersionableItem.CONTENT_PROPERTY_ARCHIVE_FLAG ) || name.equals( VersionableItem.TITLE_PROPERTY_NAME );
+    }
+
+    private boolean isIndexed(Node node) throws RepositoryException {
+        return node.getPrimaryNodeType().getName().equals( AssetItem.RULE_NODE_TYPE_NAME )
+               && node.getPath().indexOf( RulesRepository.PACKAGE_SNAPSHOT_AREA ) == -1;
+    }
+
+    private void add(String keyId,
+                     Links keyLinks,
+                     IndexedAsset asset) {
+        String uuid = asset.key.getUUID();
+        keyLinks.add( asset );
+        Set<String> keys = keysByAsset.get( uuid );
+        if ( keys == null ) {
+            keys = new HashSet<String>();
+            keysByAsset.put( uuid,
+                             keys );
+        }
+        keys.add( keyId );
+    }
+
+    private void remove(String uuid) {
+        Set<String> keys = keysByAsset.remove( uuid );
+        if ( keys != null ) {
+            for ( String keyId : keys ) {
+                Links keyLinks = links.get( keyId );
+                if ( keyLinks != null ) {
+                    keyLinks.remove( uuid );
+                }
+            }
+        }
+    }
+
+    /**
+     * What the index needs to know about an asset, read from its node.
+     */
+    private static class IndexedAsset {
+        private final AssetCursor  key;
+        private final boolean      archived;
+        private final List<String> keys = new ArrayList<String>();
+
+        IndexedAsset(Node asset) throws RepositoryException {
+            Property archivedFlag = asset.hasProperty( VersionableItem.CONTENT_PROPERTY_ARCHIVE_FLAG ) ? asset.getProperty( VersionableItem.CONTENT_PROPERTY_ARCHIVE_FLAG ) : null;
+            this.key = AssetCursor.of( asset );
+            this.archived = archivedFlag != null && archivedFlag.getBoolean();
+            if ( asset.hasProperty( VersionableItem.CATEGORY_PROPERTY_NAME ) ) {
+                for ( Value value : asset.getProperty( VersionableItem.CATEGORY_PROPERTY_NAME ).getValues() ) {
+                    keys.add( value.getString() );
+                }
+            }
+            if ( asset.hasProperty( VersionableItem.STATE_PROPERTY_NAME ) ) {
+                keys.add( asset.getProperty( VersionableItem.STATE_PROPERTY_NAME ).getString() );
+            }
+        }
+    }
+
+    /**
+     * The assets of one category or state, kept sorted so that a page can be
+     * read after a cursor without looking at the assets before it.
+     */
+    private static class Links {
+        private final TreeSet<AssetCursor>      all    = new TreeSet<AssetCursor>();
+        private final TreeSet<AssetCursor>      live   = new TreeSet<AssetCursor>();
+        private final Map<String, IndexedAsset> byUUID = new HashMap<String, IndexedAsset>();
+
+        void add(IndexedAsset asset) {
+            remove( asset.key.getUUID() );
+            byUUID.put( asset.key.getUUID(),
+                        asset );
+            all.add( asset.key );
+            if ( !asset.archived ) {
+                live.add( asset.key );
+            }
+        }
+
+        void remove(String uuid) {
+            IndexedAsset asset = byUUID.remove( uuid );
+            if ( asset != null ) {
+                all.remove( asset.key );
+                live.remove( asset.key );
+            }
+        }
+
+        /**
+         * The cursors after the given one (or from the given position if it is
+         * null), copied so they can be used once the index is unlocked.
+         */
+        List<AssetCursor> range(boolean includeArchived,
+                                AssetCursor after,
+                                int from,
+                                int count) {
+            TreeSet<AssetCursor> entries = includeArchived ? all : live;
+            Iterator<AssetCursor> it = after == null ? entries.iterator() : entries.tailSet( after,
+                                                                                            false ).iterator();
+            for ( int i = 0; i < from && it.hasNext(); i++ ) {
+                it.next();
+            }
+            List<AssetCursor> keys = new ArrayList<AssetCursor>();
+            while ( it.hasNext() && (count == -1 || keys.size() < count) ) {
+                keys.add( it.next() );
+            }
+            return keys;
+        }
+    }
+}
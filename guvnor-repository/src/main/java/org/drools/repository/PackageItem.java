@@ -16,6 +16,7 @@
 
 package org.drools.repository;
 
+import org.drools.repository.utils.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +24,10 @@ import javax.jcr.*;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestInputStream;
 import java.util.*;
 
 /**
@@ -62,8 +66,20 @@ public class PackageItem extends VersionableItem {
     public static final String DEPENDENCIES_PROPERTY_NAME = "drools:dependencies";
 
     private static final String COMPILED_PACKAGE_PROPERTY_NAME = "drools:compiledPackage";
+    private static final String COMPILED_PACKAGE_DIGEST_PROPERTY_NAME = "drools:compiledPackageDigest";
+    private static final String COMPILED_PACKAGE_SIZE_PROPERTY_NAME = "drools:compiledPackageSize";
     private final String BINARY_UP_TO_DATE = "drools:binaryUpToDate";
 
+    /**
+     * The asset versions pinned by dependencies that have been loaded through
+     * this package, so a build listing the assets several times only looks
+     * each of them up once. Versions never change, so these can not go stale.
+     */
+    private final Map<String, AssetItem> pinnedVersions = new HashMap<String, AssetItem>();
+
+    private SnapshotManifest manifest;
+    private boolean manifestLoaded;
+
     /**
      * Constructs an object of type RulePackageItem corresponding the specified node
      *
@@ -113,6 +129,28 @@ public class PackageItem extends VersionableItem {
         }
     }
 
+    /**
+     * @return true if this is a snapshot made of the versions of its assets
+     *         rather than of copies of them, see
+     *         {@link RulesRepository#createPackageSnapshot(String, String, boolean)}.
+     */
+    public boolean isManifestSnapshot() {
+        try {
+            return getManifest() != null;
+        } catch (RepositoryException e) {
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    private SnapshotManifest getManifest() throws RepositoryException {
+        // snapshots never change, so the manifest is only read once
+        if (!manifestLoaded) {
+            manifest = isHistoricalVersion() ? null : SnapshotManifest.read(node);
+            manifestLoaded = true;
+        }
+        return manifest;
+    }
+
 
     /**
      * Set this to indicate if the binary is up to date, or not.
@@ -371,6 +409,12 @@ public class PackageItem extends VersionableItem {
         Map<String, String> result = new HashMap<String, String>();
         try {
             Node content = getVersionContentNode();
+            SnapshotManifest manifest = getManifest();
+            if (manifest != null) {
+                for (SnapshotManifest.Entry entry : manifest.getEntries()) {
+                    result.put(entry.name, encodeDependencyPath(entry.name, "LATEST"));
+                }
+            }
             Iterator<AssetItem> assets = new AssetItemIterator(content.getNode(
                     ASSET_FOLDER_NAME).getNodes(), this.rulesRepository);
             while (assets.hasNext()) {
@@ -586,15 +630,33 @@ public class PackageItem extends VersionableItem {
     public Iterator<AssetItem> getAssets() {
         try {
             Node content = getVersionContentNode();
-            return new VersionedAssetItemIterator(content.getNode(ASSET_FOLDER_NAME).getNodes(),
+            SnapshotManifest manifest = getManifest();
+            NodeIterator nodes = manifest != null ? manifest.nodes(node.getSession()) : content.getNode(ASSET_FOLDER_NAME).getNodes();
+            return new VersionedAssetItemIterator(nodes,
                     this.rulesRepository,
-                    this.getDependencies());
+                    this.getDependencies(),
+                    pinnedVersions);
         } catch (RepositoryException e) {
             throw new RulesRepositoryException(e);
         }
 
     }
 
+    /**
+     * Reads the digest of every asset in one pass over the assets, keyed by
+     * asset name. This is all it takes to tell two packages or snapshots
+     * apart, see {@link RulesRepository#loadAssetDigests(PackageItem...)}.
+     */
+    public Map<String, AssetDigest> getAssetDigests() {
+        Map<String, AssetDigest> digests = new LinkedHashMap<String, AssetDigest>();
+        Iterator<AssetItem> assets = getAssets();
+        while (assets.hasNext()) {
+            AssetDigest digest = new AssetDigest(assets.next());
+            digests.put(digest.getName(), digest);
+        }
+        return digests;
+    }
+
     /**
      * This will query any assets stored under this package.
      * For example, you can pass in <code>"drools:format = 'drl'"</code> to get a list of
@@ -604,15 +666,45 @@ public class PackageItem extends VersionableItem {
      * @return A list of matches.
      */
     public AssetItemIterator queryAssets(String fieldPredicates, boolean seekArchived) {
+        return queryAssetsAfter(fieldPredicates, seekArchived, null);
+    }
+
+    /**
+     * Same as {@link #queryAssets(String, boolean)}, but starts right after the
+     * given cursor (or at the first asset if it is null). Assets are sorted by
+     * title and then UUID, see {@link AssetCursor}, so the cursor is all it
+     * takes to carry on from where a page stopped.
+     */
+    public AssetItemIterator queryAssetsAfter(String fieldPredicates, boolean seekArchived, AssetCursor after) {
+        return queryAssetsAfter(fieldPredicates, fieldPredicates.length() == 0 ? ALL_ASSETS : null, seekArchived, after);
+    }
+
+    /**
+     * @param filter the same as the field predicates, for manifest snapshots,
+     * which are then read from their manifest rather than queried for. Without
+     * one they are queried for over the versions of the package, which takes
+     * as long as their history.
+     */
+    private AssetItemIterator queryAssetsAfter(String fieldPredicates, SnapshotManifest.Filter filter, boolean seekArchived, AssetCursor after) {
         try {
+            SnapshotManifest manifest = getManifest();
+            if (manifest != null && (filter != null || manifest.isEmpty())) {
+                NodeIterator it = manifest.select(node.getSession(), seekArchived || filter == null ? filter : notArchived(filter), after);
+                return new VersionedAssetItemIterator(it, this.rulesRepository, this.getDependencies(), pinnedVersions);
+            }
+
             String sql;
-            if (isHistoricalVersion()) {
-                sql = "SELECT * FROM nt:frozenNode";
+            // snapshots hold versions, which are sorted by the UUID of their asset
+            boolean frozen = manifest != null || isHistoricalVersion();
+            if (manifest != null) {
+                // the versions of the assets, then narrowed down to the ones in
+                // the manifest, for predicates there is no filter for
+                sql = "SELECT * FROM nt:frozenNode WHERE jcr:path LIKE '/jcr:system/jcr:versionStorage/%' AND " + manifest.toPackageNamePredicate();
+            } else if (isHistoricalVersion()) {
+                sql = "SELECT * FROM nt:frozenNode WHERE jcr:path LIKE '" + getVersionContentNode().getPath() + "/" + ASSET_FOLDER_NAME + "[%]/%'";
             } else {
-                sql = "SELECT * FROM " + AssetItem.RULE_NODE_TYPE_NAME;
+                sql = "SELECT * FROM " + AssetItem.RULE_NODE_TYPE_NAME + " WHERE jcr:path LIKE '" + getVersionContentNode().getPath() + "/" + ASSET_FOLDER_NAME + "[%]/%'";
             }
-
-            sql += " WHERE jcr:path LIKE '" + getVersionContentNode().getPath() + "/" + ASSET_FOLDER_NAME + "[%]/%'";
             if (fieldPredicates.length() > 0) {
                 sql += " and " + fieldPredicates;
 
@@ -622,8 +714,11 @@ public class PackageItem extends VersionableItem {
                 sql += " AND " + AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " = 'false'";
             }
 
+            if (after != null) {
+                sql += " AND " + (frozen ? after.toFrozenSqlPredicate() : after.toSqlPredicate());
+            }
 
-            sql += " ORDER BY " + AssetItem.TITLE_PROPERTY_NAME;
+            sql += frozen ? AssetCursor.FROZEN_SQL_ORDER : AssetCursor.SQL_ORDER;
 
             Query q = node.getSession().getWorkspace().getQueryManager().createQuery(sql, Query.SQL);
 
@@ -632,6 +727,9 @@ public class PackageItem extends VersionableItem {
             QueryResult res = q.execute();
 
             NodeIterator it = res.getNodes();
+            if (manifest != null) {
+                it = manifest.filter(it);
+            }
             long taken = System.currentTimeMillis() - time;
             if (taken > 2000) {
                 log.debug("QueryExec time is: " + (System.currentTimeMillis() - time));
@@ -640,7 +738,7 @@ public class PackageItem extends VersionableItem {
             }
 
             //return new AssetItemIterator(it, this.rulesRepository);
-            return new VersionedAssetItemIterator(it, this.rulesRepository, this.getDependencies());
+            return new VersionedAssetItemIterator(it, this.rulesRepository, this.getDependencies(), pinnedVersions);
         } catch (RepositoryException e) {
             throw new RulesRepositoryException(e);
         }
@@ -651,8 +749,23 @@ public class PackageItem extends VersionableItem {
     }
 
 
+    /**
+     * @return the assets, archived or not, that have never been checked in.
+     */
+    AssetItemIterator listUnversionedAssets() {
+        try {
+            // the query only sees what has been saved
+            if (node.getSession().hasPendingChanges()) {
+                node.getSession().save();
+            }
+        } catch (RepositoryException e) {
+            throw new RulesRepositoryException(e);
+        }
+        return queryAssetsAfter("(" + VERSION_NUMBER_PROPERTY_NAME + " IS NULL OR " + VERSION_NUMBER_PROPERTY_NAME + " = 0)", UNVERSIONED_ASSETS, true, null);
+    }
+
     public AssetItemIterator listArchivedAssets() {
-        return queryAssets(AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " = 'true'", true);
+        return queryAssetsAfter(AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " = 'true'", ARCHIVED_ASSETS, true, null);
     }
 
     public AssetItemIterator listAssetsByFormat(List<String> formatInList) {
@@ -678,9 +791,76 @@ public class PackageItem extends VersionableItem {
      * This will load an iterator for assets of the given format type.
      */
     public AssetItemIterator listAssetsByFormat(String... formats) {
+        return listAssetsByFormatAfter(null, formats);
+    }
+
+    /**
+     * Same as {@link #listAssetsByFormat(String...)}, but starts right after
+     * the given cursor (or at the first asset if it is null).
+     */
+    public AssetItemIterator listAssetsByFormatAfter(AssetCursor after, String... formats) {
+        return queryAssetsAfter(formatPredicate(formats), formatFilter(formats, true), false, after);
+    }
+
+    public AssetItemIterator listAssetsNotOfFormat(String[] formats) {
+        return listAssetsNotOfFormatAfter(null, formats);
+    }
+
+    /**
+     * Same as {@link #listAssetsNotOfFormat(String[])}, but starts right after
+     * the given cursor (or at the first asset if it is null).
+     */
+    public AssetItemIterator listAssetsNotOfFormatAfter(AssetCursor after, String[] formats) {
+        return queryAssetsAfter(notOfFormatPredicate(formats), formatFilter(formats, false), false, after);
+    }
+
+    private static final SnapshotManifest.Filter ALL_ASSETS = new SnapshotManifest.Filter() {
+        public boolean accept(Node frozen) {
+            return true;
+        }
+    };
+
+    private static final SnapshotManifest.Filter ARCHIVED_ASSETS = new SnapshotManifest.Filter() {
+        public boolean accept(Node frozen) throws RepositoryException {
+            return isArchived(frozen);
+        }
+    };
+
+    private static final SnapshotManifest.Filter UNVERSIONED_ASSETS = new SnapshotManifest.Filter() {
+        public boolean accept(Node frozen) throws RepositoryException {
+            return !frozen.hasProperty(VERSION_NUMBER_PROPERTY_NAME) || frozen.getProperty(VERSION_NUMBER_PROPERTY_NAME).getLong() == 0;
+        }
+    };
+
+    private static SnapshotManifest.Filter notArchived(final SnapshotManifest.Filter filter) {
+        return new SnapshotManifest.Filter() {
+            public boolean accept(Node frozen) throws RepositoryException {
+                return !isArchived(frozen) && filter.accept(frozen);
+            }
+        };
+    }
+
+    private static boolean isArchived(Node frozen) throws RepositoryException {
+        return frozen.hasProperty(AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG) && frozen.getProperty(AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG).getBoolean();
+    }
+
+    /**
+     * The same as {@link #formatPredicate(String[])}, or as
+     * {@link #notOfFormatPredicate(String[])} if not matching.
+     */
+    private static SnapshotManifest.Filter formatFilter(String[] formats, final boolean matching) {
+        final List<String> formatList = Arrays.asList(formats);
+        return new SnapshotManifest.Filter() {
+            public boolean accept(Node frozen) throws RepositoryException {
+                String format = frozen.hasProperty(FORMAT_PROPERTY_NAME) ? frozen.getProperty(FORMAT_PROPERTY_NAME).getString() : null;
+                return formatList.contains(format) == matching;
+            }
+        };
+    }
 
+    private static String formatPredicate(String[] formats) {
         if (formats.length == 1) {
-            return queryAssets(FORMAT_PROPERTY_NAME + "='" + formats[0] + "'");
+            return FORMAT_PROPERTY_NAME + "='" + formats[0] + "'";
         } else {
             StringBuilder predicateBuilder = new StringBuilder(" ( ");
             for (int i = 0; i < formats.length; i++) {
@@ -690,13 +870,13 @@ public class PackageItem extends VersionableItem {
                 }
             }
             predicateBuilder.append(" ) ");
-            return queryAssets(predicateBuilder.toString());
+            return predicateBuilder.toString();
         }
     }
 
-    public AssetItemIterator listAssetsNotOfFormat(String[] formats) {
+    private static String notOfFormatPredicate(String[] formats) {
         if (formats.length == 1) {
-            return queryAssets("not drools:format='" + formats[0] + "'");
+            return "not drools:format='" + formats[0] + "'";
         } else {
             StringBuilder predicateBuilder = new StringBuilder("not ( ");
             for (int i = 0; i < formats.length; i++) {
@@ -706,7 +886,7 @@ public class PackageItem extends VersionableItem {
                 }
             }
             predicateBuilder.append(" ) ");
-            return queryAssets(predicateBuilder.toString());
+            return predicateBuilder.toString();
         }
     }
 
@@ -716,6 +896,14 @@ public class PackageItem extends VersionableItem {
      */
     public AssetItem loadAsset(String name) {
         try {
+            SnapshotManifest manifest = getManifest();
+            if (manifest != null) {
+                SnapshotManifest.Entry entry = manifest.getEntry(name);
+                if (entry == null) {
+                    throw new RulesRepositoryException("Snapshot " + getSnapshotName() + " does not contain " + name);
+                }
+                return new AssetItem(this.rulesRepository, manifest.loadFrozenNode(node.getSession(), entry));
+            }
             Node content = getVersionContentNode();
             return new AssetItem(
                     this.rulesRepository,
@@ -731,6 +919,10 @@ public class PackageItem extends VersionableItem {
     public boolean containsAsset(String name) {
         Node content;
         try {
+            SnapshotManifest manifest = getManifest();
+            if (manifest != null) {
+                return manifest.getEntry(name) != null;
+            }
             content = getVersionContentNode();
             return content.getNode(ASSET_FOLDER_NAME).hasNode(name);
         } catch (RepositoryException e) {
@@ -821,26 +1013,32 @@ public class PackageItem extends VersionableItem {
             } else if (head.sameState(ignoreState)) {
                 //ignore this one
             } else {
-                List<AssetItem> fullHistory = new LinkedList<AssetItem>();
-                for (Iterator<AssetItem> iter = head.getHistory(); iter.hasNext();) {
-                    AssetItem element = iter.next();
-                    if (!(element.getVersionNumber() == 0)) {
-                        fullHistory.add(element);
-                    }
+                AssetItem prevRule = state == null ? findLatestVersionWithoutState(head) : head.loadLatestVersionInState(state);
+                if (prevRule != null) {
+                    result.add(prevRule);
                 }
+            }
+        }
+        return result.iterator();
+    }
 
-                sortHistoryByVersionNumber(fullHistory);
+    private AssetItem findLatestVersionWithoutState(AssetItem head) {
+        List<AssetItem> fullHistory = new LinkedList<AssetItem>();
+        for (Iterator<AssetItem> iter = head.getHistory(); iter.hasNext();) {
+            AssetItem element = iter.next();
+            if (!(element.getVersionNumber() == 0)) {
+                fullHistory.add(element);
+            }
+        }
 
-                for (Iterator<AssetItem> prev = fullHistory.iterator(); prev.hasNext();) {
-                    AssetItem prevRule = prev.next();
-                    if (prevRule.sameState(state)) {
-                        result.add(prevRule);
-                        break;
-                    }
-                }
+        sortHistoryByVersionNumber(fullHistory);
+
+        for (AssetItem prevRule : fullHistory) {
+            if (prevRule.sameState(null)) {
+                return prevRule;
             }
         }
-        return result.iterator();
+        return null;
     }
 
     void sortHistoryByVersionNumber(List<AssetItem> fullHistory) {
@@ -959,12 +1157,34 @@ public class PackageItem extends VersionableItem {
     /**
      * If the asset is a binary asset, then use this to update the content
      * (do NOT use text).
+     * The binary is stored with the default {@link CompiledPackageCodec}.
      */
     public PackageItem updateCompiledPackage(InputStream data) {
+        return updateCompiledPackage(data, CompiledPackageCodec.getDefault());
+    }
+
+    /**
+     * Stores the compiled package, compressing it on the way into the
+     * repository with the given codec. The data stream is closed once it
+     * has been stored.
+     */
+    public PackageItem updateCompiledPackage(InputStream data, CompiledPackageCodec codec) {
         checkout();
         try {
-            Binary binary = this.node.getSession().getValueFactory().createBinary(data);
+            CountingInputStream counter = new CountingInputStream(data);
+            DigestInputStream in = new DigestInputStream(counter, Digests.newDigest(Digests.SHA1));
+            InputStream encoded = codec.encode(in);
+            Binary binary;
+            try {
+                binary = this.node.getSession().getValueFactory().createBinary(encoded);
+            } finally {
+                IOUtils.closeQuietly(encoded);
+            }
             this.node.setProperty(COMPILED_PACKAGE_PROPERTY_NAME, binary);
+            this.node.setProperty(COMPILED_PACKAGE_DIGEST_PROPERTY_NAME,
+                    Digests.toHex(in.getMessageDigest().digest()));
+            this.node.setProperty(COMPILED_PACKAGE_SIZE_PROPERTY_NAME,
+                    counter.count);
             this.node.setProperty(LAST_MODIFIED_PROPERTY_NAME,
                     Calendar.getInstance());
             return this;
@@ -975,18 +1195,71 @@ public class PackageItem extends VersionableItem {
     }
 
     /**
-     * This is a convenience method for returning the binary data as a byte array.
+     * Returns a stream over the compiled package, or null if the package has
+     * not been built yet. The caller must close it. Compressed binaries are
+     * decompressed as they are read.
      */
-    public byte[] getCompiledPackageBytes() {
-
+    public InputStream getCompiledPackageStream() {
         try {
             Node ruleNode = getVersionContentNode();
             if (ruleNode.hasProperty(COMPILED_PACKAGE_PROPERTY_NAME)) {
-                Property data = ruleNode.getProperty(COMPILED_PACKAGE_PROPERTY_NAME);
-                InputStream in = data.getBinary().getStream();
+                return CompiledPackageCodec.decode(ruleNode.getProperty(COMPILED_PACKAGE_PROPERTY_NAME).getBinary().getStream());
+            } else {
+                return null;
+            }
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    /**
+     * @return true if the package has been built.
+     */
+    public boolean hasCompiledPackage() {
+        try {
+            return getVersionContentNode().hasProperty(COMPILED_PACKAGE_PROPERTY_NAME);
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    /**
+     * Returns the SHA-1 digest (in hex) of the compiled package, as stored
+     * when the package was built. Returns null if the package has not been
+     * built yet, or was built before digests were stored (it has one again
+     * once it is rebuilt); the binary is never read to work it out.
+     */
+    public String getCompiledPackageDigest() {
+        try {
+            Node ruleNode = getVersionContentNode();
+            if (ruleNode.hasProperty(COMPILED_PACKAGE_DIGEST_PROPERTY_NAME)) {
+                return ruleNode.getProperty(COMPILED_PACKAGE_DIGEST_PROPERTY_NAME).getString();
+            }
+            return null;
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        }
+    }
 
+    /**
+     * This is a convenience method for returning the binary data as a byte array.
+     */
+    public byte[] getCompiledPackageBytes() {
+
+        try {
+            InputStream in = getCompiledPackageStream();
+            if (in == null) {
+                return null;
+            }
+            try {
                 // Create the byte array to hold the data
-                byte[] bytes = new byte[(int) data.getLength()];
+                byte[] bytes = new byte[(int) getCompiledPackageSize()];
 
                 // Read in the bytes
                 int offset = 0;
@@ -1000,12 +1273,9 @@ public class PackageItem extends VersionableItem {
                 if (offset < bytes.length) {
                     throw new RulesRepositoryException("Could not completely read binary package for " + getName());
                 }
-
-                // Close the input stream and return bytes
-                in.close();
                 return bytes;
-            } else {
-                return null;
+            } finally {
+                in.close();
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -1014,6 +1284,79 @@ public class PackageItem extends VersionableItem {
         }
     }
 
+    /**
+     * Returns the size in bytes of the compiled package, without reading it.
+     * This is the size before compression. Returns 0 if the package has not
+     * been built yet.
+     */
+    public long getCompiledPackageSize() {
+        try {
+            Node ruleNode = getVersionContentNode();
+            if (ruleNode.hasProperty(COMPILED_PACKAGE_SIZE_PROPERTY_NAME)) {
+                return ruleNode.getProperty(COMPILED_PACKAGE_SIZE_PROPERTY_NAME).getLong();
+            } else if (ruleNode.hasProperty(COMPILED_PACKAGE_PROPERTY_NAME)) {
+                return ruleNode.getProperty(COMPILED_PACKAGE_PROPERTY_NAME).getLength();
+            } else {
+                return 0;
+            }
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes the compiled package takes up in the
+     * repository, which is less than its size if it is compressed.
+     */
+    public long getStoredCompiledPackageSize() {
+        try {
+            Node ruleNode = getVersionContentNode();
+            if (ruleNode.hasProperty(COMPILED_PACKAGE_PROPERTY_NAME)) {
+                return ruleNode.getProperty(COMPILED_PACKAGE_PROPERTY_NAME).getLength();
+            } else {
+                return 0;
+            }
+        } catch (RepositoryException e) {
+            log.error(e.getMessage(), e);
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    /**
+     * Counts the bytes of the compiled package as it is stored.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
     /**
      * Creates a nested package.
      */
@@ -22,6 +22,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -36,9 +45,14 @@ import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionManager;
 
+import org.drools.repository.events.EventBus;
+import org.drools.repository.events.RepositoryEvent;
 import org.drools.repository.events.StorageEventManager;
 import org.drools.repository.migration.MigrateDroolsPackage;
 import org.slf4j.Logger;
@@ -93,6 +107,22 @@ public class RulesRepository {
      */
     public final static String  PACKAGE_SNAPSHOT_AREA           = "drools:packagesnapshot_area";
 
+    /**
+     * Set this system property to true to make snapshots from manifests of
+     * the asset versions rather than from copies of the assets.
+     */
+    public static final String  MANIFEST_SNAPSHOTS_PROPERTY     = "guvnor.snapshots.manifest";
+
+    /**
+     * How many threads read asset digests, for all the users together, see
+     * {@link #loadAssetDigests(PackageItem...)}.
+     */
+    public static final String  DIGEST_THREADS_PROPERTY         = "guvnor.digests.threads";
+
+    private static final int    DIGEST_THREADS                  = Math.max( 1,
+                                                                            Integer.getInteger( DIGEST_THREADS_PROPERTY,
+                                                                                                4 ) );
+
     /**
      * The name of the tag area of the repository
      */
@@ -126,6 +156,8 @@ public class RulesRepository {
      */
     public final static String  RULES_REPOSITORY_NAME           = "drools:repository";
 
+    private static ExecutorService digestExecutor;
+
     private Session             session;
 
     boolean                     initialized                     = false;
@@ -564,12 +596,134 @@ public class RulesRepository {
         }
     }
 
+    /**
+     * Reads the asset digests of the given packages or snapshots (see
+     * {@link PackageItem#getAssetDigests()}) at the same time. A JCR session
+     * must not be shared between threads, so each package but the first is
+     * read through a session of its own, opened for the user of this one, by
+     * as many as {@link #DIGEST_THREADS_PROPERTY} threads. If the backend does
+     * not allow that, the packages are read one after the other. Either way,
+     * only saved content is compared.
+     *
+     * @return the digests, in the same order as the packages.
+     */
+    public List<Map<String, AssetDigest>> loadAssetDigests(PackageItem... packages) {
+        List<Future<Map<String, AssetDigest>>> others = new ArrayList<Future<Map<String, AssetDigest>>>();
+        for ( int i = 1; i < packages.length && others.size() < DIGEST_THREADS; i++ ) {
+            Session other = openSessionForSameUser();
+            if ( other == null ) {
+                break;
+            }
+            others.add( submitAssetDigests( other,
+                                            packages[i].getUUID() ) );
+        }
+
+        try {
+            List<Map<String, AssetDigest>> digests = new ArrayList<Map<String, AssetDigest>>( packages.length );
+            for ( int i = 0; i < packages.length; i++ ) {
+                if ( i > 0 && i <= others.size() ) {
+                    digests.add( others.get( i - 1 ).get() );
+                } else {
+                    digests.add( packages[i].getAssetDigests() );
+                }
+            }
+            return digests;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RulesRepositoryException( e );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RulesRepositoryException( e.getCause() );
+        }
+    }
+
+    /**
+     * Opens another session for the user of this one, for work that is split
+     * between threads, as a session must only be used by one thread at a
+     * time. The caller logs it out when done.
+     *
+     * @return the new session, or null if the backend would not open one (it
+     * is up to its impersonation rules), in which case the work is best done
+     * on this session.
+     */
+    public Session openSessionForSameUser() {
+        try {
+            return this.session.impersonate( new SimpleCredentials( this.session.getUserID(),
+                                                                    new char[0] ) );
+        } catch ( RepositoryException e ) {
+            log.debug( "Unable to open another session for " + this.session.getUserID(),
+                       e );
+            return null;
+        }
+    }
+
+    private static Future<Map<String, AssetDigest>> submitAssetDigests(final Session other,
+                                                                       final String packageUUID) {
+        return getDigestExecutor().submit( new Callable<Map<String, AssetDigest>>() {
+            public Map<String, AssetDigest> call() {
+                try {
+                    return new RulesRepository( other ).loadPackageByUUID( packageUUID ).getAssetDigests();
+                } finally {
+                    other.logout();
+                }
+            }
+        } );
+    }
+
+    private static synchronized ExecutorService getDigestExecutor() {
+        if ( digestExecutor == null ) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( DIGEST_THREADS,
+                                                                  DIGEST_THREADS,
+                                                                  60,
+                                                                  TimeUnit.SECONDS,
+                                                                  new LinkedBlockingQueue<Runnable>(),
+                                                                  new ThreadFactory() {
+                                                                      private final AtomicInteger threadNumber = new AtomicInteger();
+
+                                                                      public Thread newThread(Runnable runnable) {
+                                                                          Thread thread = new Thread( runnable,
+                                                                                                      "guvnor-asset-digests-" + threadNumber.incrementAndGet() );
+                                                                          thread.setDaemon( true );
+                                                                          return thread;
+                                                                      }
+                                                                  } );
+            // no threads are kept while there is nothing to compare
+            executor.allowCoreThreadTimeOut( true );
+            digestExecutor = executor;
+        }
+        return digestExecutor;
+    }
+
     /**
      * This will copy the package to the snapshot area. Creating a copy for
-     * deployment, etc.
+     * deployment, etc. Snapshots are made of copies of the assets, unless the
+     * {@link #MANIFEST_SNAPSHOTS_PROPERTY} system property is set to true.
      */
     public void createPackageSnapshot(String packageName,
                                       String snapshotName) {
+        createPackageSnapshot( packageName,
+                               snapshotName,
+                               Boolean.getBoolean( MANIFEST_SNAPSHOTS_PROPERTY ) );
+    }
+
+    /**
+     * This will create a snapshot of the package in the snapshot area.
+     *
+     * @param manifest
+     *            false to copy the package with all its assets, true to only
+     *            copy the package itself (including its compiled binary) along
+     *            with a manifest of the latest checked in version of its
+     *            assets. Such snapshots take as long to make as there are
+     *            assets, rather than as there is content, and the assets are
+     *            read from their version history. As the binary is built from
+     *            the assets as they are, the snapshot is refused if any of
+     *            them was never checked in or has changes which are not.
+     */
+    public void createPackageSnapshot(String packageName,
+                                      String snapshotName,
+                                      boolean manifest) {
         log.debug( "Creating snapshot for [" + packageName + "] called [" + snapshotName + "]" );
         try {
             Node snaps = this.getAreaNode( PACKAGE_SNAPSHOT_AREA );
@@ -590,9 +744,19 @@ public class RulesRepository {
             String source = rulePackageNode.getPath();
 
             long start = System.currentTimeMillis();
-            this.session.getWorkspace().copy( source,
-                                              newName );
+            if ( manifest ) {
+                createManifestSnapshot( new PackageItem( this,
+                                                         rulePackageNode ),
+                                        pkgSnaps,
+                                        snapshotName );
+            } else {
+                this.session.getWorkspace().copy( source,
+                                                  newName );
+            }
             log.debug( "Time taken for snap: " + (System.currentTimeMillis() - start) );
+            publish( RepositoryEvent.Type.SNAPSHOT,
+                     rulePackageNode,
+                     snapshotName );
 
         } catch ( RepositoryException e ) {
             log.error( "Unable to create snapshot",
@@ -601,6 +765,72 @@ public class RulesRepository {
         }
     }
 
+    private void createManifestSnapshot(PackageItem pkg,
+                                        Node pkgSnaps,
+                                        String snapshotName) throws RepositoryException {
+        SnapshotManifest manifest = new SnapshotManifest();
+        List<String> notCheckedIn = new ArrayList<String>();
+        VersionManager versionManager = this.session.getWorkspace().getVersionManager();
+        NodeIterator assets = pkg.getNode().getNode( PackageItem.ASSET_FOLDER_NAME ).getNodes();
+        while ( assets.hasNext() ) {
+            Node asset = assets.nextNode();
+            Version version = versionManager.getBaseVersion( asset.getPath() );
+            Node frozen = version.getFrozenNode();
+            if ( !frozen.hasProperty( AssetItem.VERSION_NUMBER_PROPERTY_NAME ) ) {
+                // only the root version, there is nothing to point at
+                notCheckedIn.add( asset.getName() );
+                continue;
+            }
+            if ( versionManager.isCheckedOut( asset.getPath() ) && hasChangesSinceCheckin( new AssetItem( this,
+                                                                                                          asset ),
+                                                                                           new AssetItem( this,
+                                                                                                          version ) ) ) {
+                notCheckedIn.add( asset.getName() );
+                continue;
+            }
+            manifest.add( new SnapshotManifest.Entry( asset.getIdentifier(),
+                                                      frozen.getProperty( AssetItem.VERSION_NUMBER_PROPERTY_NAME ).getLong(),
+                                                      version.getIdentifier(),
+                                                      asset.getName() ),
+                          frozen.getProperty( AssetItem.PACKAGE_NAME_PROPERTY ).getString() );
+        }
+        if ( !notCheckedIn.isEmpty() ) {
+            // the binary was built from these as they are, which the manifest cannot point at
+            throw new RulesRepositoryException( "Unable to create snapshot [" + snapshotName + "] of package [" + pkg.getName() + "], these assets have changes which are not checked in: " + notCheckedIn );
+        }
+
+        Node snapshot = pkgSnaps.addNode( snapshotName,
+                                          PackageItem.RULE_PACKAGE_TYPE_NAME );
+        for ( PropertyIterator it = pkg.getNode().getProperties(); it.hasNext(); ) {
+            Property property = it.nextProperty();
+            if ( !property.getDefinition().isProtected() ) {
+                if ( property.isMultiple() ) {
+                    snapshot.setProperty( property.getName(),
+                                          property.getValues() );
+                } else {
+                    snapshot.setProperty( property.getName(),
+                                          property.getValue() );
+                }
+            }
+        }
+        snapshot.addNode( PackageItem.ASSET_FOLDER_NAME,
+                          "drools:versionableAssetFolder" );
+        manifest.write( snapshot );
+        save();
+    }
+
+    /**
+     * Whether anything a package build uses differs between the checked out
+     * asset and its checked in version. Checking out on its own (to add to a
+     * discussion, say) is not a change.
+     */
+    private static boolean hasChangesSinceCheckin(AssetItem head,
+                                                  AssetItem checkedIn) {
+        return !head.getContentDigest().equals( checkedIn.getContentDigest() )
+               || !head.getFormat().equals( checkedIn.getFormat() )
+               || head.getDisabled() != checkedIn.getDisabled();
+    }
+
     /**
      * This will remove the specified snapshot.
      */
@@ -658,6 +888,9 @@ public class RulesRepository {
 
             this.session.getWorkspace().copy( sourceNode.getPath(),
                                               destinationPath );
+            publish( RepositoryEvent.Type.SNAPSHOT,
+                     getAreaNode( RULE_PACKAGE_AREA ).getNode( packageName ),
+                     newName );
         } catch ( RepositoryException e ) {
             log.error( "Unable to create snapshot",
                        e );
@@ -716,6 +949,33 @@ public class RulesRepository {
         }
     }
 
+    /**
+     * Loads the metadata of the head of a package or an asset, from the
+     * {@link ItemMetadataCache} when it is started. Use this rather than
+     * loading the whole item when only its name, format or state is needed.
+     *
+     * @param uuid
+     *            the uuid of the package or asset
+     * @throws RulesRepositoryException
+     *             if there is no such package or asset.
+     */
+    public ItemMetadata loadItemMetadata(String uuid) throws RulesRepositoryException {
+        try {
+            ItemMetadata metadata = ItemMetadataCache.getInstance().get( this.session,
+                                                                         uuid );
+            if ( metadata == null ) {
+                metadata = ItemMetadata.of( this.session.getNodeByIdentifier( uuid ) );
+            }
+            if ( metadata == null ) {
+                throw new RulesRepositoryException( "[" + uuid + "] is not a package or an asset." );
+            }
+            return metadata;
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( "Unable to load the metadata of [" + uuid + "]",
+                                                e );
+        }
+    }
+
     /**
      * Similar to above. Loads a RulePackage or an AssetItem for the specified
      * uuid.
@@ -1136,6 +1396,33 @@ public class RulesRepository {
         }
     }
 
+    /**
+     * Same as finding by category with a number of rows to skip, but the
+     * page starts right after the given cursor (or at the first asset if it
+     * is null) and the assets come in cursor order. The next page is asked
+     * for with {@link AssetItemPageResult#nextCursor}.
+     *
+     * @param filter
+     *            an AssetItem filter
+     */
+    public AssetItemPageResult findAssetsByCategoryAfter(String categoryTag,
+                                                         boolean seekArchivedAsset,
+                                                         AssetCursor after,
+                                                         int numRowsToReturn,
+                                                         RepositoryFilter filter) throws RulesRepositoryException {
+        CategoryItem item = this.loadCategory( categoryTag );
+
+        try {
+            return loadLinkedAssetsAfter( seekArchivedAsset,
+                                          after,
+                                          numRowsToReturn,
+                                          item.getNode(),
+                                          filter );
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
     /**
      * Finds the AssetItem's linked to the requested state. Similar to finding
      * by category.
@@ -1175,11 +1462,46 @@ public class RulesRepository {
         }
     }
 
+    /**
+     * Same as finding by state with a number of rows to skip, but the page
+     * starts after the given cursor. Similar to finding by category.
+     *
+     * @param filter
+     *            an AssetItem filter
+     */
+    public AssetItemPageResult findAssetsByStateAfter(String stateName,
+                                                      boolean seekArchivedAsset,
+                                                      AssetCursor after,
+                                                      int numRowsToReturn,
+                                                      RepositoryFilter filter) throws RulesRepositoryException {
+        StateItem item = this.getState( stateName );
+        try {
+            return loadLinkedAssetsAfter( seekArchivedAsset,
+                                          after,
+                                          numRowsToReturn,
+                                          item.getNode(),
+                                          filter );
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
     private AssetItemPageResult loadLinkedAssets(boolean seekArchivedAsset,
                                                  int skip,
                                                  int numRowsToReturn,
                                                  Node n,
                                                  RepositoryFilter filter) throws RepositoryException {
+        if ( LinkedAssetIndex.getInstance().isStarted() ) {
+            AssetItemPageResult result = loadIndexedAssets( seekArchivedAsset,
+                                                            skip,
+                                                            null,
+                                                            numRowsToReturn,
+                                                            n,
+                                                            filter );
+            if ( result != null ) {
+                return result;
+            }
+        }
         int rows = 0;
         boolean hasNext = false;
         long currentPosition = 0;
@@ -1223,6 +1545,156 @@ public class RulesRepository {
                                         hasNext );
     }
 
+    /**
+     * Same as loadLinkedAssets, but the page starts after the given cursor.
+     * Without the index all the references still have to be walked (and
+     * sorted), but only the assets of the page are filtered and returned.
+     */
+    private AssetItemPageResult loadLinkedAssetsAfter(boolean seekArchivedAsset,
+                                                      AssetCursor after,
+                                                      int numRowsToReturn,
+                                                      Node n,
+                                                      RepositoryFilter filter) throws RepositoryException {
+        if ( LinkedAssetIndex.getInstance().isStarted() ) {
+            AssetItemPageResult result = loadIndexedAssets( seekArchivedAsset,
+                                                            0,
+                                                            after,
+                                                            numRowsToReturn,
+                                                            n,
+                                                            filter );
+            if ( result != null ) {
+                return result;
+            }
+        }
+        Map<AssetCursor, Node> nodes = new TreeMap<AssetCursor, Node>();
+        PropertyIterator it = n.getReferences();
+        while ( it.hasNext() ) {
+            Node parentNode = it.nextProperty().getParent();
+            if ( isNotSnapshot( parentNode ) && parentNode.getPrimaryNodeType().getName().equals( AssetItem.RULE_NODE_TYPE_NAME ) ) {
+                if ( seekArchivedAsset || !parentNode.getProperty( AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG ).getBoolean() ) {
+                    AssetCursor key = AssetCursor.of( parentNode );
+                    if ( after == null || key.compareTo( after ) > 0 ) {
+                        nodes.put( key,
+                                   parentNode );
+                    }
+                }
+            }
+        }
+
+        List<AssetItem> results = new ArrayList<AssetItem>();
+        AssetCursor last = null;
+        boolean hasNext = false;
+        for ( Map.Entry<AssetCursor, Node> entry : nodes.entrySet() ) {
+            AssetItem ai = new AssetItem( this,
+                                          entry.getValue() );
+            if ( filter == null || filter.accept( ai,
+                                                  "package.readonly" ) ) {
+                if ( numRowsToReturn != -1 && results.size() == numRowsToReturn ) {
+                    hasNext = true;
+                    break;
+                }
+                results.add( ai );
+                last = entry.getKey();
+            }
+        }
+        return new AssetItemPageResult( results,
+                                        results.size(),
+                                        hasNext,
+                                        hasNext ? last : null );
+    }
+
+    /**
+     * Same as loadLinkedAssets, but reads the assets in cursor order from the
+     * LinkedAssetIndex, starting at a position or after a cursor. Without a
+     * filter only the page (and one more to look ahead) is loaded; with one
+     * the assets skipped by position still have to be filtered. Returns null
+     * if the index has been stopped in the meantime.
+     */
+    private AssetItemPageResult loadIndexedAssets(boolean seekArchivedAsset,
+                                                  int skip,
+                                                  AssetCursor after,
+                                                  int numRowsToReturn,
+                                                  Node n,
+                                                  RepositoryFilter filter) throws RepositoryException {
+        LinkedAssetIndex index = LinkedAssetIndex.getInstance();
+        String keyId = n.getIdentifier();
+        List<AssetItem> results = new ArrayList<AssetItem>();
+        AssetCursor last = null;
+        boolean hasNext = false;
+        int rows = 0;
+        int batchSize = numRowsToReturn == -1 ? -1 : numRowsToReturn + 1;
+
+        List<AssetCursor> keys;
+        if ( after != null ) {
+            keys = index.getLinkedAssets( keyId,
+                                          seekArchivedAsset,
+                                          after,
+                                          batchSize );
+        } else {
+            keys = index.getLinkedAssets( keyId,
+                                          seekArchivedAsset,
+                                          filter == null ? skip : 0,
+                                          batchSize );
+        }
+        while ( true ) {
+            if ( keys == null ) {
+                // the index was stopped in the meantime
+                return null;
+            }
+            for ( AssetCursor key : keys ) {
+                AssetItem ai;
+                try {
+                    ai = new AssetItem( this,
+                                        session.getNodeByIdentifier( key.getUUID() ) );
+                } catch ( ItemNotFoundException e ) {
+                    // removed, and the index has not heard about it yet
+                    continue;
+                }
+                if ( filter != null ) {
+                    if ( !filter.accept( ai,
+                                         "package.readonly" ) ) {
+                        continue;
+                    }
+                    rows++;
+                    if ( after == null && rows <= skip ) {
+                        continue;
+                    }
+                }
+                if ( numRowsToReturn == -1 || results.size() < numRowsToReturn ) {
+                    results.add( ai );
+                    last = key;
+                } else {
+                    hasNext = true;
+                    break;
+                }
+            }
+            if ( hasNext || batchSize == -1 || keys.size() < batchSize ) {
+                break;
+            }
+            // carry on from the last one read, wherever it has moved to since
+            keys = index.getLinkedAssets( keyId,
+                                          seekArchivedAsset,
+                                          keys.get( keys.size() - 1 ),
+                                          batchSize );
+        }
+
+        return new AssetItemPageResult( results,
+                                        (after == null ? skip : 0) + results.size(),
+                                        hasNext,
+                                        hasNext ? last : null );
+    }
+
+    /**
+     * Loads summaries of the given assets, with just the given fields, for
+     * when a list of assets is only going to be displayed.
+     *
+     * @see AssetSummaryLoader
+     */
+    public List<AssetSummary> loadAssetSummaries(List<AssetItem> assets,
+                                                 Set<AssetSummary.Field> fields) {
+        return new AssetSummaryLoader( fields ).load( assets );
+    }
+
     public AssetItemPageResult findAssetsByCategory(String categoryTag,
                                                     int skip,
                                                     int numRowsToReturn) throws RulesRepositoryException {
@@ -1305,6 +1777,8 @@ public class RulesRepository {
             if ( mig.needsMigration( this ) ) {
                 mig.migrate( this );
             }
+            LinkedAssetIndex.getInstance().clear();
+            ItemMetadataCache.getInstance().clear();
         } catch ( ItemExistsException e ) {
             String message = "Item already exists. At least two items with the path: " + e.getLocalizedMessage();
             log.error( message,
@@ -1462,6 +1936,7 @@ public class RulesRepository {
             AssetItem itemOriginal = loadAssetByUUID( uuid );
             log.info( "Renaming asset: " + itemOriginal.getNode().getPath() + " to " + newAssetName );
             Node node = itemOriginal.getNode();
+            String oldName = node.getName();
             String sourcePath = node.getPath();
             String destPath = node.getParent().getPath() + "/" + newAssetName;
             this.session.move( sourcePath,
@@ -1470,6 +1945,11 @@ public class RulesRepository {
 
             itemOriginal.updateTitle( newAssetName );
             itemOriginal.checkin( "Renamed asset " + itemOriginal.getName() );
+            if ( EventBus.getInstance().hasSubscribers() ) {
+                EventBus.getInstance().publish( RepositoryEvent.forAsset( RepositoryEvent.Type.RENAME,
+                                                                          itemOriginal,
+                                                                          oldName ) );
+            }
             return itemOriginal.getUUID();
         } catch ( RepositoryException e ) {
             log.error( e.getMessage(),
@@ -1531,6 +2011,7 @@ public class RulesRepository {
             PackageItem itemOriginal = loadPackageByUUID( uuid );
             log.info( "Renaming package: " + itemOriginal.getNode().getPath() + " to " + newPackageName );
             Node node = itemOriginal.getNode();
+            String oldName = node.getName();
             String sourcePath = node.getPath();
             String destPath = node.getParent().getPath() + "/" + newPackageName;
             this.session.move( sourcePath,
@@ -1550,6 +2031,9 @@ public class RulesRepository {
             }
 
             save();
+            publish( RepositoryEvent.Type.RENAME,
+                     newPkg.getNode(),
+                     oldName );
 
             return itemOriginal.getUUID();
         } catch ( RepositoryException e ) {
@@ -1559,6 +2043,17 @@ public class RulesRepository {
         }
     }
 
+    private void publish(RepositoryEvent.Type type,
+                         Node packageNode,
+                         String detail) {
+        if ( EventBus.getInstance().hasSubscribers() ) {
+            EventBus.getInstance().publish( RepositoryEvent.forPackage( type,
+                                                                        new PackageItem( this,
+                                                                                         packageNode ),
+                                                                        detail ) );
+        }
+    }
+
     /**
      * Return a list of the snapshots available for the given package name.
      */
@@ -1606,6 +2101,31 @@ public class RulesRepository {
      */
     public AssetItemIterator findAssetsByName(String name,
                                               boolean seekArchived) {
+        return findAssetsByName( name,
+                                 seekArchived,
+                                 false,
+                                 null );
+    }
+
+    /**
+     * Same as {@link #findAssetsByName(String, boolean)}, but the assets come
+     * in cursor order, starting right after the given cursor (or at the first
+     * asset if it is null). {@link AssetItemIterator#getCursor()} gives the
+     * cursor to carry on from.
+     */
+    public AssetItemIterator findAssetsByNameAfter(String name,
+                                                   boolean seekArchived,
+                                                   AssetCursor after) {
+        return findAssetsByName( name,
+                                 seekArchived,
+                                 true,
+                                 after );
+    }
+
+    private AssetItemIterator findAssetsByName(String name,
+                                               boolean seekArchived,
+                                               boolean sorted,
+                                               AssetCursor after) {
         try {
 
             String sql = "SELECT " + AssetItem.TITLE_PROPERTY_NAME + ", " + AssetItem.DESCRIPTION_PROPERTY_NAME + ", " + AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " FROM " + AssetItem.RULE_NODE_TYPE_NAME;
@@ -1616,6 +2136,13 @@ public class RulesRepository {
                 sql += " AND " + AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " = 'false'";
             }
 
+            if ( after != null ) {
+                sql += " AND " + after.toSqlPredicate();
+            }
+            if ( sorted ) {
+                sql += AssetCursor.SQL_ORDER;
+            }
+
             Query q = this.session.getWorkspace().getQueryManager().createQuery( sql,
                                                                                  Query.SQL );
 
@@ -1633,6 +2160,30 @@ public class RulesRepository {
      */
     public AssetItemIterator queryFullText(String qry,
                                            boolean seekArchived) {
+        return queryFullText( qry,
+                              seekArchived,
+                              false,
+                              null );
+    }
+
+    /**
+     * Same as {@link #queryFullText(String, boolean)}, but the assets come in
+     * cursor order, starting right after the given cursor (or at the first
+     * asset if it is null).
+     */
+    public AssetItemIterator queryFullTextAfter(String qry,
+                                                boolean seekArchived,
+                                                AssetCursor after) {
+        return queryFullText( qry,
+                              seekArchived,
+                              true,
+                              after );
+    }
+
+    private AssetItemIterator queryFullText(String qry,
+                                            boolean seekArchived,
+                                            boolean sorted,
+                                            AssetCursor after) {
         try {
 
             String searchPath = "/jcr:root/" + RULES_REPOSITORY_NAME + "/" + RULE_PACKAGE_AREA + "//element(*, " + AssetItem.RULE_NODE_TYPE_NAME + ")";
@@ -1641,6 +2192,12 @@ public class RulesRepository {
             } else {
                 searchPath += "[jcr:contains(., '" + qry + "') and " + AssetItem.CONTENT_PROPERTY_ARCHIVE_FLAG + " = 'false']";
             }
+            if ( after != null ) {
+                searchPath += "[" + after.toXPathPredicate() + "]";
+            }
+            if ( sorted ) {
+                searchPath += AssetCursor.XPATH_ORDER;
+            }
             Query q = this.session.getWorkspace().getQueryManager().createQuery( searchPath,
                                                                                  Query.XPATH );
             QueryResult res = q.execute();
@@ -1663,6 +2220,34 @@ public class RulesRepository {
     public AssetItemIterator query(Map<String, String[]> params,
                                    boolean seekArchived,
                                    DateQuery[] dates) {
+        return query( params,
+                      seekArchived,
+                      dates,
+                      false,
+                      null );
+    }
+
+    /**
+     * Same as {@link #query(Map, boolean, DateQuery[])}, but the assets come
+     * in cursor order, starting right after the given cursor (or at the first
+     * asset if it is null).
+     */
+    public AssetItemIterator queryAfter(Map<String, String[]> params,
+                                        boolean seekArchived,
+                                        DateQuery[] dates,
+                                        AssetCursor after) {
+        return query( params,
+                      seekArchived,
+                      dates,
+                      true,
+                      after );
+    }
+
+    private AssetItemIterator query(Map<String, String[]> params,
+                                    boolean seekArchived,
+                                    DateQuery[] dates,
+                                    boolean sorted,
+                                    AssetCursor after) {
         try {
 
             StringBuilder sql = new StringBuilder( "SELECT " ).append( AssetItem.TITLE_PROPERTY_NAME ).append( ", " )
@@ -1708,6 +2293,13 @@ public class RulesRepository {
                 }
             }
 
+            if ( after != null ) {
+                sql.append( " AND " ).append( after.toSqlPredicate() );
+            }
+            if ( sorted ) {
+                sql.append( AssetCursor.SQL_ORDER );
+            }
+
             Query q = this.session.getWorkspace().getQueryManager().createQuery( sql.toString(),
                                                                                  Query.SQL );
 
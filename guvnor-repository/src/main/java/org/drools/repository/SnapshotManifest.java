@@ -0,0 +1,319 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * The list of asset versions a manifest snapshot is made of. Rather than a
+ * copy of every asset, such a snapshot holds an entry per asset pointing at
+ * the version of the asset in the version history, which is where the
+ * assets are read from.
+ */
+final class SnapshotManifest {
+
+    /**
+     * The entries, one per line, see {@link Entry#toString()}.
+     */
+    static final String MANIFEST_PROPERTY_NAME      = "drools:snapshotManifest";
+
+    /**
+     * The package names the versions in the manifest were checked in with,
+     * one per line, to narrow down queries on the version history.
+     */
+    static final String PACKAGE_NAMES_PROPERTY_NAME = "drools:snapshotPackageNames";
+
+    /**
+     * Picks the versions in a manifest a query is after, as they are read
+     * from the manifest rather than queried for.
+     */
+    interface Filter {
+        boolean accept(Node frozen) throws RepositoryException;
+    }
+
+    static final class Entry {
+        final String assetUUID;
+        final long   versionNumber;
+        final String versionId;
+        final String name;
+
+        Entry(String assetUUID,
+              long versionNumber,
+              String versionId,
+              String name) {
+            this.assetUUID = assetUUID;
+            this.versionNumber = versionNumber;
+            this.versionId = versionId;
+            this.name = name;
+        }
+
+        /**
+         * @return the entry as "asset UUID, version number, version UUID, name"
+         * separated by spaces. The name goes last as it may contain spaces.
+         */
+        @Override
+        public String toString() {
+            return assetUUID + " " + versionNumber + " " + versionId + " " + name;
+        }
+
+        static Entry parse(String line) {
+            String[] parts = line.split( " ",
+                                         4 );
+            if ( parts.length != 4 ) {
+                throw new RulesRepositoryException( "Invalid snapshot manifest entry: " + line );
+            }
+            return new Entry( parts[0],
+                              Long.parseLong( parts[1] ),
+                              parts[2],
+                              parts[3] );
+        }
+    }
+
+    private final Map<String, Entry> entriesByName      = new LinkedHashMap<String, Entry>();
+    private final Map<String, Entry> entriesByVersionId = new HashMap<String, Entry>();
+    private final Set<String>        packageNames       = new LinkedHashSet<String>();
+
+    void add(Entry entry,
+             String packageName) {
+        entriesByName.put( entry.name,
+                           entry );
+        entriesByVersionId.put( entry.versionId,
+                                entry );
+        packageNames.add( packageName );
+    }
+
+    Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection( entriesByName.values() );
+    }
+
+    Entry getEntry(String name) {
+        return entriesByName.get( name );
+    }
+
+    boolean isEmpty() {
+        return entriesByName.isEmpty();
+    }
+
+    void write(Node node) throws RepositoryException {
+        StringBuilder entries = new StringBuilder();
+        for ( Entry entry : entriesByName.values() ) {
+            entries.append( entry ).append( '\n' );
+        }
+        StringBuilder names = new StringBuilder();
+        for ( String packageName : packageNames ) {
+            names.append( packageName ).append( '\n' );
+        }
+        node.setProperty( MANIFEST_PROPERTY_NAME,
+                          entries.toString() );
+        node.setProperty( PACKAGE_NAMES_PROPERTY_NAME,
+                          names.toString() );
+    }
+
+    /**
+     * @return the manifest of the given snapshot node, or null if it is not a
+     * manifest snapshot.
+     */
+    static SnapshotManifest read(Node node) throws RepositoryException {
+        if ( !node.hasProperty( MANIFEST_PROPERTY_NAME ) ) {
+            return null;
+        }
+        SnapshotManifest manifest = new SnapshotManifest();
+        for ( String line : node.getProperty( MANIFEST_PROPERTY_NAME ).getString().split( "\n" ) ) {
+            if ( line.length() > 0 ) {
+                Entry entry = Entry.parse( line );
+                manifest.entriesByName.put( entry.name,
+                                            entry );
+                manifest.entriesByVersionId.put( entry.versionId,
+                                                 entry );
+            }
+        }
+        if ( node.hasProperty( PACKAGE_NAMES_PROPERTY_NAME ) ) {
+            for ( String line : node.getProperty( PACKAGE_NAMES_PROPERTY_NAME ).getString().split( "\n" ) ) {
+                if ( line.length() > 0 ) {
+                    manifest.packageNames.add( line );
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * @return the frozen content node of the version of the given entry.
+     */
+    Node loadFrozenNode(Session session,
+                        Entry entry) throws RepositoryException {
+        return session.getNodeByIdentifier( entry.versionId ).getNode( "jcr:frozenNode" );
+    }
+
+    /**
+     * @return the frozen content nodes of all the versions in the manifest,
+     * loaded as they are iterated over.
+     */
+    NodeIterator nodes(final Session session) {
+        final Iterator<Entry> entries = new ArrayList<Entry>( entriesByName.values() ).iterator();
+        return new ManifestNodeIterator( entriesByName.size() ) {
+            protected Node fetch() throws RepositoryException {
+                return entries.hasNext() ? loadFrozenNode( session,
+                                                           entries.next() ) : null;
+            }
+        };
+    }
+
+    /**
+     * @return the frozen content nodes of the versions in the manifest the
+     * filter accepts (all of them if it is null) which come after the cursor
+     * (or from the first one if it is null), sorted as per
+     * {@link AssetCursor}. It takes one read per entry, however long the
+     * history of the assets is.
+     */
+    NodeIterator select(Session session,
+                        Filter filter,
+                        AssetCursor after) throws RepositoryException {
+        TreeMap<AssetCursor, Node> selected = new TreeMap<AssetCursor, Node>();
+        for ( Entry entry : entriesByName.values() ) {
+            Node frozen = loadFrozenNode( session,
+                                          entry );
+            AssetCursor cursor = AssetCursor.of( frozen );
+            if ( (after == null || cursor.compareTo( after ) > 0) && (filter == null || filter.accept( frozen )) ) {
+                selected.put( cursor,
+                              frozen );
+            }
+        }
+        return nodes( new ArrayList<Node>( selected.values() ) );
+    }
+
+    /**
+     * @return the frozen nodes of the given query result that belong to the
+     * versions in the manifest, in the order of the result.
+     */
+    NodeIterator filter(NodeIterator frozenNodes) throws RepositoryException {
+        List<Node> filtered = new ArrayList<Node>();
+        while ( frozenNodes.hasNext() ) {
+            Node frozen = frozenNodes.nextNode();
+            if ( entriesByVersionId.containsKey( frozen.getParent().getIdentifier() ) ) {
+                filtered.add( frozen );
+            }
+        }
+        return nodes( filtered );
+    }
+
+    private static NodeIterator nodes(List<Node> list) {
+        final Iterator<Node> nodes = list.iterator();
+        return new ManifestNodeIterator( list.size() ) {
+            protected Node fetch() {
+                return nodes.hasNext() ? nodes.next() : null;
+            }
+        };
+    }
+
+    /**
+     * @return a predicate (SQL style) matching the package names of the
+     * versions, which must not be empty.
+     */
+    String toPackageNamePredicate() {
+        StringBuilder predicate = new StringBuilder( "(" );
+        for ( String packageName : packageNames ) {
+            if ( predicate.length() > 1 ) {
+                predicate.append( " OR " );
+            }
+            predicate.append( AssetItem.PACKAGE_NAME_PROPERTY + " = '" + packageName.replace( "'",
+                                                                                              "''" ) + "'" );
+        }
+        return predicate.append( ")" ).toString();
+    }
+
+    /**
+     * A lazy node iterator, reading one node ahead.
+     */
+    private static abstract class ManifestNodeIterator
+        implements
+        NodeIterator {
+
+        private final long size;
+        private long       position;
+        private Node       next;
+        private boolean    fetched;
+
+        ManifestNodeIterator(long size) {
+            this.size = size;
+        }
+
+        /**
+         * @return the next node, or null at the end.
+         */
+        protected abstract Node fetch() throws RepositoryException;
+
+        public boolean hasNext() {
+            if ( !fetched ) {
+                try {
+                    next = fetch();
+                } catch ( RepositoryException e ) {
+                    throw new RulesRepositoryException( e );
+                }
+                fetched = true;
+            }
+            return next != null;
+        }
+
+        public Node nextNode() {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            fetched = false;
+            position++;
+            return next;
+        }
+
+        public Object next() {
+            return nextNode();
+        }
+
+        public void skip(long skipNum) {
+            for ( long i = 0; i < skipNum; i++ ) {
+                nextNode();
+            }
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -17,7 +17,10 @@
 package org.drools.repository;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.drools.repository.security.PermissionManager;
 import org.slf4j.Logger;
@@ -72,42 +75,165 @@ public class UserInfo {
         this.userInfoNode = getUserInfoNode(userName, repo);
     }
 
+    /**
+     * @return the entries of the box, the oldest first.
+     */
     public List<InboxEntry> readEntries(String fileName, String propertyName)
             throws RulesRepositoryException {
+        return readLatestEntries(fileName, propertyName, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the newest entries of the box (at most max of them), the oldest
+     * first. Only these entries are read.
+     */
+    public List<InboxEntry> readLatestEntries(String fileName, String boxName, int max)
+            throws RulesRepositoryException {
         try {
-            Val property = getProperty(fileName, propertyName);
-            if (!(property.value == null || property.value.equals(""))) {
-                return (List<InboxEntry>) getXStream().fromXML(property.value);
-            } else {
-                return new ArrayList<InboxEntry>();
+            Node content = getContentNode(fileName);
+            final int limit = max;
+            final Set<String> seen = new HashSet<String>();
+            final LinkedList<InboxEntry> entries = new LinkedList<InboxEntry>();
+            getLog(content, boxName).readNewestFirst(new EntryLog.Visitor() {
+                public boolean visit(String[] record) {
+                    // the newest record of an asset hides any older ones, and
+                    // a record of just the UUID means it was removed
+                    if (seen.add(record[0]) && record.length > 1) {
+                        entries.addFirst(toEntry(record));
+                    }
+                    return entries.size() < limit;
+                }
+            });
+
+            List<InboxEntry> legacy = readLegacyEntries(content, boxName);
+            for (int i = legacy.size() - 1; i >= 0 && entries.size() < max; i--) {
+                if (seen.add(legacy.get(i).assetUUID)) {
+                    entries.addFirst(legacy.get(i));
+                }
             }
+            return new ArrayList<InboxEntry>(entries);
         } catch (RepositoryException e) {
-            log.error("Unable to readEntries", e);
+            log.error("Unable to readLatestEntries", e);
             throw new RulesRepositoryException(e);
         }
     }
-    
+
+    /**
+     * Adds the entry to the box, replacing any entry for the same asset.
+     * Only the new entry is written: the entries it replaces, and those beyond
+     * the newest max, are dropped once the box has twice as many entries as
+     * it keeps.
+     */
+    public void appendEntry(String fileName, String boxName, InboxEntry entry, int max)
+            throws RulesRepositoryException {
+        append(fileName, boxName, toRecord(entry), max);
+    }
+
+    /**
+     * Removes the entry for the asset from the box, if there is one.
+     */
+    public void removeEntry(String fileName, String boxName, String assetUUID, int max)
+            throws RulesRepositoryException {
+        append(fileName, boxName, new String[]{assetUUID}, max);
+    }
+
+    private void append(String fileName, String boxName, String[] record, int max) {
+        try {
+            Node content = getContentNode(fileName);
+            EntryLog entryLog = getLog(content, boxName);
+            migrateLegacyEntries(content, boxName, entryLog);
+            entryLog.append(record);
+            if (entryLog.size() > 2L * max) {
+                entryLog.compact(toRecords(readLatestEntries(fileName, boxName, max)));
+            }
+        } catch (RepositoryException e) {
+            log.error("Unable to append to " + boxName, e);
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    /**
+     * Replaces all the entries of the box.
+     */
     public void writeEntries(String fileName, String boxName,
             List<InboxEntry> entries) throws RulesRepositoryException {
         try {
-            String entry = getXStream().toXML(entries);
-
-            setProperty(fileName, boxName, new UserInfo.Val(entry));
+            Node content = getContentNode(fileName);
+            removeLegacyEntries(content, boxName);
+            getLog(content, boxName).compact(toRecords(entries));
         } catch (RepositoryException e) {
             log.error("Unable to writeEntries", e);
             throw new RulesRepositoryException(e);
         }
     }
-    
+
     public void clear(String fileName, String boxName) {
         try {
-            setProperty(fileName, boxName, new UserInfo.Val(""));
+            Node content = getContentNode(fileName);
+            removeLegacyEntries(content, boxName);
+            getLog(content, boxName).clear();
         } catch (RepositoryException e) {
             log.error("Unable to clear", e);
             throw new RulesRepositoryException(e);
         }
     }
-    
+
+    private EntryLog getLog(Node content, String boxName) {
+        return new EntryLog(content, boxName);
+    }
+
+    /**
+     * Boxes used to be kept as one XML document in a property named after
+     * the box. The entries of such a box are moved to its log when it is next
+     * added to.
+     */
+    private List<InboxEntry> readLegacyEntries(Node content, String boxName) throws RepositoryException {
+        if (content.hasProperty(boxName)) {
+            String value = content.getProperty(boxName).getString();
+            if (!value.equals("")) {
+                return (List<InboxEntry>) XSTREAM.fromXML(value);
+            }
+        }
+        return new ArrayList<InboxEntry>();
+    }
+
+    private void migrateLegacyEntries(Node content, String boxName, EntryLog entryLog) throws RepositoryException {
+        List<InboxEntry> legacy = readLegacyEntries(content, boxName);
+        if (!legacy.isEmpty()) {
+            List<String[]> records = toRecords(legacy);
+            records.addAll(entryLog.readAll());
+            entryLog.compact(records);
+        }
+        removeLegacyEntries(content, boxName);
+    }
+
+    private void removeLegacyEntries(Node content, String boxName) throws RepositoryException {
+        if (content.hasProperty(boxName)) {
+            content.getProperty(boxName).remove();
+        }
+    }
+
+    private static List<String[]> toRecords(List<InboxEntry> entries) {
+        List<String[]> records = new ArrayList<String[]>(entries.size());
+        for (InboxEntry entry : entries) {
+            records.add(toRecord(entry));
+        }
+        return records;
+    }
+
+    private static String[] toRecord(InboxEntry entry) {
+        return new String[]{entry.assetUUID, entry.note, entry.from, Long.toString(entry.timestamp)};
+    }
+
+    private static InboxEntry toEntry(String[] record) {
+        InboxEntry entry = new InboxEntry();
+        entry.assetUUID = record[0];
+        entry.note = record[1];
+        entry.from = record[2];
+        entry.timestamp = Long.parseLong(record[3]);
+        return entry;
+    }
+
     /**
      * And entry in an inbox.
      */
@@ -126,7 +252,9 @@ public class UserInfo {
         public long timestamp;
     }
 
-    private XStream getXStream() {
+    private static final XStream XSTREAM = createXStream();
+
+    private static XStream createXStream() {
         XStream xs = new XStream();
         xs.alias("inbox-entries", List.class);
         xs.alias("entry", InboxEntry.class);
@@ -141,6 +269,14 @@ public class UserInfo {
             inboxNode.addNode("jcr:content", "nt:unstructured").setProperty(propertyName, value.value);
         }
     }
+
+    private Node getContentNode(String fileName) throws RepositoryException {
+        Node inboxNode = getNode(userInfoNode, fileName, "nt:file");
+        if (inboxNode.hasNode("jcr:content")) {
+            return inboxNode.getNode("jcr:content");
+        }
+        return inboxNode.addNode("jcr:content", "nt:unstructured");
+    }
    
     public Val getProperty(String fileName, String propertyName) throws RepositoryException {
         Node inboxNode = getNode(userInfoNode, fileName, "nt:file");
@@ -29,8 +29,12 @@ import javax.jcr.RepositoryException;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.Value;
 import javax.jcr.lock.LockException;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionHistory;
 import javax.jcr.version.VersionManager;
 
+import org.drools.repository.events.EventBus;
+import org.drools.repository.events.RepositoryEvent;
 import org.drools.repository.events.StorageEventManager;
 
 /**
@@ -54,6 +58,12 @@ public abstract class VersionableItem extends Item {
     public static final String VERSION_NUMBER_PROPERTY_NAME   = "drools:versionNumber";
     public static final String CONTENT_PROPERTY_ARCHIVE_FLAG  = "drools:archive";
 
+    /**
+     * Versions are labelled with this followed by their version number when
+     * they are checked in, so they can be looked up by number.
+     */
+    public static final String VERSION_LABEL_PREFIX           = "version-";
+
     /** Dublin core based fields. */
     public static final String LAST_CONTRIBUTOR_PROPERTY_NAME = "drools:lastContributor";
     public static final String CREATOR_PROPERTY_NAME          = "drools:creator";
@@ -83,6 +93,10 @@ public abstract class VersionableItem extends Item {
     /** this is what is referred to when reading content from a versioned node */
     private Node               contentNode                    = null;
 
+    /** what has changed since the last checkin, to publish when it is checked in */
+    private String             changedState;
+    private Boolean            changedArchive;
+
     /**
      * Sets this object's node attribute to the specified node
      *
@@ -568,66 +582,136 @@ public abstract class VersionableItem extends Item {
      */
     public void checkin(String comment) {
         checkIsUpdateable();
-        checkInAssetIfNecessary(false);
+        checkInAssetIfNecessary();
         try {
-
-            this.node.setProperty( LAST_MODIFIED_PROPERTY_NAME, Calendar.getInstance() );
-            this.node.setProperty( CHECKIN_COMMENT, comment );
-            this.node.setProperty( LAST_CONTRIBUTOR_PROPERTY_NAME, this.node.getSession().getUserID() );
-            long nextVersion = getVersionNumber() + 1;
-            this.node.setProperty( VERSION_NUMBER_PROPERTY_NAME,  nextVersion );
+            long nextVersion = prepareCheckin( comment );
             this.node.getSession().save();
-            
-            getVersionManager(this.node).checkin(this.node.getPath());
-
-            if (StorageEventManager.hasSaveEvent()) {
-                if (this instanceof AssetItem) {
-                    StorageEventManager.getSaveEvent().onAssetCheckin((AssetItem) this);
-                }
-            }
-            StorageEventManager.doCheckinEvents(this);
-
+            completeCheckin( nextVersion );
         } catch ( RepositoryException e ) {
             throw new RulesRepositoryException( "Unable to checkin.",
                                                 e );
         }
     }
 
+    /**
+     * Sets the properties of the next version, which then has to be saved
+     * before {@link #completeCheckin(long)} is called.
+     *
+     * @return the number of the next version.
+     */
+    long prepareCheckin(String comment) throws RepositoryException {
+        this.node.setProperty( LAST_MODIFIED_PROPERTY_NAME, Calendar.getInstance() );
+        this.node.setProperty( CHECKIN_COMMENT, comment );
+        this.node.setProperty( LAST_CONTRIBUTOR_PROPERTY_NAME, this.node.getSession().getUserID() );
+        long nextVersion = getVersionNumber() + 1;
+        if (this instanceof AssetItem) {
+            ((AssetItem) this).updateStateVersions( nextVersion );
+        }
+        this.node.setProperty( VERSION_NUMBER_PROPERTY_NAME,  nextVersion );
+        return nextVersion;
+    }
+
+    void completeCheckin(long nextVersion) throws RepositoryException {
+        Version version = getVersionManager(this.node).checkin(this.node.getPath());
+        labelVersion( version,
+                      nextVersion );
+
+        StorageEventManager.afterCheckin(this);
+        publishCheckinEvents();
+    }
+
+    /**
+     * Publishes the checkin of an asset, and the change of its state or of
+     * its archive flag, on the event bus. Changes to snapshots are not
+     * published.
+     */
+    private void publishCheckinEvents() {
+        String state = changedState;
+        Boolean archive = changedArchive;
+        changedState = null;
+        changedArchive = null;
+
+        EventBus bus = EventBus.getInstance();
+        if ( !(this instanceof AssetItem) || !bus.hasSubscribers() ) {
+            return;
+        }
+        AssetItem asset = (AssetItem) this;
+        if ( asset.getPackage().isSnapshot() ) {
+            return;
+        }
+        bus.publish( RepositoryEvent.forAsset( RepositoryEvent.Type.CHECKIN,
+                                               asset,
+                                               null ) );
+        if ( state != null ) {
+            bus.publish( RepositoryEvent.forAsset( RepositoryEvent.Type.STATE_CHANGE,
+                                                   asset,
+                                                   state ) );
+        }
+        if ( archive != null ) {
+            bus.publish( RepositoryEvent.forAsset( RepositoryEvent.Type.ARCHIVE,
+                                                   asset,
+                                                   archive.toString() ) );
+        }
+    }
+
+    /**
+     * Labels the version with its version number. The first version checked
+     * in with a number keeps the label, as the history is searched oldest
+     * first when there is no label.
+     */
+    private static void labelVersion(Version version,
+                                     long versionNumber) throws RepositoryException {
+        VersionHistory history = version.getContainingHistory();
+        String label = getVersionLabel( versionNumber );
+        if ( !history.hasVersionLabel( label ) ) {
+            history.addVersionLabel( version.getName(),
+                                     label,
+                                     false );
+        }
+    }
+
+    static String getVersionLabel(long versionNumber) {
+        return VERSION_LABEL_PREFIX + versionNumber;
+    }
+
 	/*
 	 * When we make a version of package (check in the package), we need to know
 	 * the exact version number of child assets that this package contains. If
 	 * the child asset does not have any version yet (it may have been saved,
 	 * but has never been checked in), we need to check in this asset so that we
 	 * have a version number that we can refer to from the versioned package.
+	 * Such assets have no version number, so they are queried for rather than
+	 * found by going through the history of every asset; they are then saved
+	 * together and checked in one after the other.
 	 */
-    private void checkInAssetIfNecessary(boolean force) {
+    private void checkInAssetIfNecessary() {
     	if(!(this instanceof PackageItem)) {
     		return;
     	}
-    	Iterator<AssetItem> assets = ((PackageItem)this).getAssets();
-    	while(assets.hasNext()) {
-    		AssetItem asset = assets.next();
-     		
-    		if(force || !assetHasHistory(asset)) {
-    			asset.checkout();
-    			asset.checkin("Package[" + this.getTitle() + "] checked in");
-    		}
-    	}
-    }
-    
-    private boolean assetHasHistory(AssetItem asset) {
-		AssetHistoryIterator it = asset.getHistory();      
-		while ( it.hasNext() ) {
-            VersionableItem historical = (VersionableItem) it.next();
-            long versionNumber = historical.getVersionNumber();
-            if ( versionNumber != 0) {
-            	//Version 0 is not a real version. It is the root version
-                return true;
+        try {
+            List<VersionableItem> assets = new ArrayList<VersionableItem>();
+            Iterator<AssetItem> it = ((PackageItem) this).listUnversionedAssets();
+            String comment = "Package[" + this.getTitle() + "] checked in";
+            while ( it.hasNext() ) {
+                VersionableItem asset = it.next();
+                asset.checkout();
+                asset.prepareCheckin( comment );
+                assets.add( asset );
+            }
+            if ( assets.isEmpty() ) {
+                return;
+            }
+
+            this.node.getSession().save();
+            for ( VersionableItem asset : assets ) {
+                asset.completeCheckin( asset.getVersionNumber() );
             }
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( "Unable to checkin.",
+                                                e );
         }
-		
-		return false;  	    	
     }
+
     /**
      * This will check to see if the node is the "head" and
      * so can be updated (you can't update historical nodes ).
@@ -682,6 +766,7 @@ public abstract class VersionableItem extends Item {
             checkout();
             this.node.setProperty( STATE_PROPERTY_NAME,
                                    stateItem.getNode() );
+            changedState = stateItem.getName();
         } catch ( Exception e ) {
             log.error( "Caught exception",
                        e );
@@ -893,7 +978,11 @@ public abstract class VersionableItem extends Item {
         checkout();
 
         try {
+            boolean archived = this.node.hasProperty(CONTENT_PROPERTY_ARCHIVE_FLAG) && this.node.getProperty(CONTENT_PROPERTY_ARCHIVE_FLAG).getBoolean();
             this.node.setProperty(CONTENT_PROPERTY_ARCHIVE_FLAG, data);
+            if (archived != data) {
+                changedArchive = data;
+            }
             return this;
         } catch (RepositoryException e) {
             log.error("Unable to update this VersionableItem binary archive flag");
@@ -19,12 +19,7 @@ package org.drools.repository;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.jcr.ItemNotFoundException;
-import javax.jcr.Node;
 import javax.jcr.NodeIterator;
-import javax.jcr.PathNotFoundException;
-import javax.jcr.RepositoryException;
-import javax.jcr.ValueFormatException;
 
 
 /**
@@ -37,13 +32,25 @@ import javax.jcr.ValueFormatException;
  */
 public class VersionedAssetItemIterator extends AssetItemIterator {
     Map<String, String> dependencyVersionMap = new HashMap<String, String>();
+    private final Map<String, AssetItem> pinnedVersions;
     private boolean returnAssetsWithVersionsSpecifiedByDependencies = false;
            
     public VersionedAssetItemIterator(NodeIterator nodes,
                             RulesRepository repo,
                             String[] dependencies) {
+        this(nodes, repo, dependencies, new HashMap<String, AssetItem>());
+    }
+
+    /**
+     * @param pinnedVersions the versions already loaded, keyed by asset UUID
+     * and version number, which versions loaded by this iterator are added to.
+     */
+    VersionedAssetItemIterator(NodeIterator nodes,
+                            RulesRepository repo,
+                            String[] dependencies,
+                            Map<String, AssetItem> pinnedVersions) {
         super(nodes, repo);
-        //this.dependencies = dependencies;
+        this.pinnedVersions = pinnedVersions;
         for(String dependency : dependencies) {
             String[] decodedPath = PackageItem.decodeDependencyPath(dependency);
             if(!"LATEST".equals(decodedPath[1])) {
@@ -67,39 +74,20 @@ public class VersionedAssetItemIterator extends AssetItemIterator {
     
     protected AssetItem loadAssetWithVersion(final AssetItem assetItem,
             String version) {
-    	long requiredVersion = Long.parseLong(version);
-		if (assetItem.isHistoricalVersion()) {			
-			long currentVersion = assetItem.getVersionNumber();
-			if(requiredVersion == currentVersion) {
-				return assetItem;
-			} else {
-				Node frozenNode = assetItem.getNode();
-				try {
-					Node headNode = frozenNode.getSession().getNodeByIdentifier(
-							frozenNode.getProperty("jcr:frozenUuid")
-									.getString());
-					AssetHistoryIterator historyIterator = new AssetHistoryIterator(
-							assetItem.getRulesRepository(), headNode);
-					while (historyIterator.hasNext()) {
-						AssetItem historical = historyIterator.next();
-						if (requiredVersion == historical.getVersionNumber()) {
-							return historical;
-						}
-					}
-				} catch (RepositoryException e) {
-					throw new RulesRepositoryException("Unable to load AssetItem[" + assetItem.getName() + "] with specificed version[" + version + "]", e);
-				}
-			}	
-		} else {
-			AssetHistoryIterator it = assetItem.getHistory();
-			while (it.hasNext()) {
-				AssetItem historical = (AssetItem) it.next();
-				if (requiredVersion == historical.getVersionNumber()) {
-					return historical;
-				}
-			}
-		}
-		
-		throw new RulesRepositoryException("Unable to load AssetItem[" + assetItem.getName() + "] with specificed version[" + version + "]");
+        long requiredVersion = Long.parseLong(version);
+        if (assetItem.isHistoricalVersion() && requiredVersion == assetItem.getVersionNumber()) {
+            return assetItem;
+        }
+
+        String key = assetItem.getUUID() + "?version=" + requiredVersion;
+        AssetItem pinned = pinnedVersions.get(key);
+        if (pinned == null) {
+            pinned = assetItem.loadVersion(requiredVersion);
+            if (pinned == null) {
+                throw new RulesRepositoryException("Unable to load AssetItem[" + assetItem.getName() + "] with specificed version[" + version + "]");
+            }
+            pinnedVersions.put(key, pinned);
+        }
+        return pinned;
     }
 }
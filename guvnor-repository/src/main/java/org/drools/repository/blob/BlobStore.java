@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps the binary content of assets outside of the JCR repository, keyed by
+ * the SHA-256 digest (in hex) of the content. The same content is only kept
+ * once, however many asset versions or packages it belongs to, and the asset
+ * only holds the key.
+ *
+ * To install one, see {@link BlobStoreManager}.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores the data, unless there is already a blob with the same content,
+     * and closes the stream.
+     *
+     * @return the key of the blob, which is the SHA-256 digest of the data.
+     */
+    public String put(InputStream data) throws IOException;
+
+    /**
+     * @return a stream over the blob, which the caller must close, or null if
+     * there is no blob with that key.
+     */
+    public InputStream get(String key) throws IOException;
+
+    /**
+     * @return the size of the blob in bytes, or -1 if there is no blob with
+     * that key.
+     */
+    public long getSize(String key) throws IOException;
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.blob;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the blob store binary asset content goes to, if there is one.
+ *
+ * To keep binary content on the file system, set the system property
+ * 'guvnor.blobStore.directory' to the directory to keep it in. To use another
+ * kind of store, make an implementation of {@link BlobStore} with a no
+ * argument constructor available on the classpath and set the system property
+ * 'guvnor.blobStore' to the full name of the class.
+ *
+ * Content saved without a blob store stays in the JCR repository, and is
+ * still read from there once a store is installed.
+ */
+public class BlobStoreManager {
+
+    public static final String BLOB_STORE_PROPERTY           = "guvnor.blobStore";
+    public static final String BLOB_STORE_DIRECTORY_PROPERTY = "guvnor.blobStore.directory";
+
+    private static final Logger log = LoggerFactory.getLogger( BlobStoreManager.class );
+
+    static volatile BlobStore   store = blobStore();
+
+    static BlobStore blobStore() {
+        String className = System.getProperty( BLOB_STORE_PROPERTY,
+                                               "" );
+        String directory = System.getProperty( BLOB_STORE_DIRECTORY_PROPERTY,
+                                               "" );
+        try {
+            if ( !className.equals( "" ) ) {
+                return (BlobStore) Class.forName( className ).newInstance();
+            } else if ( !directory.equals( "" ) ) {
+                return new FileSystemBlobStore( new File( directory ) );
+            } else {
+                return null;
+            }
+        } catch ( Exception e ) {
+            log.error( "Unable to initialise the blob store, binary content will be kept in the repository",
+                       e );
+            return null;
+        }
+    }
+
+    public static boolean hasBlobStore() {
+        return store != null;
+    }
+
+    public static BlobStore getBlobStore() {
+        return store;
+    }
+
+    /**
+     * Installs the given store, or switches the blob store off if it is null.
+     */
+    public static void setBlobStore(BlobStore blobStore) {
+        store = blobStore;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.blob;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.drools.repository.RulesRepositoryException;
+
+/**
+ * A blob store on the local file system. Each blob is a file named after its
+ * key, in a sub directory named after the first two characters of the key so
+ * that no directory grows too large. Blobs are written to a temporary file
+ * first and then renamed, so a blob file is either complete or not there.
+ * Reads are memory mapped.
+ */
+public class FileSystemBlobStore
+    implements
+    BlobStore {
+
+    private static final int KEY_LENGTH = 64;
+
+    private final File       directory;
+
+    public FileSystemBlobStore(File directory) {
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new RulesRepositoryException( "Unable to create the blob store directory " + directory );
+        }
+        this.directory = directory;
+    }
+
+    public String put(InputStream data) throws IOException {
+        File temp = File.createTempFile( "blob",
+                                         ".tmp",
+                                         directory );
+        try {
+            DigestInputStream in = new DigestInputStream( data,
+                                                          newDigest() );
+            OutputStream out = new FileOutputStream( temp );
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ( (read = in.read( buffer )) != -1 ) {
+                    out.write( buffer,
+                               0,
+                               read );
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+
+            String key = String.format( "%0" + KEY_LENGTH + "x",
+                                        new BigInteger( 1,
+                                                        in.getMessageDigest().digest() ) );
+            File blob = toFile( key );
+            if ( !blob.exists() ) {
+                File parent = blob.getParentFile();
+                if ( !parent.isDirectory() && !parent.mkdirs() ) {
+                    throw new IOException( "Unable to create " + parent );
+                }
+                // another writer may have stored the same content in the meantime, which is fine
+                if ( !temp.renameTo( blob ) && !blob.exists() ) {
+                    throw new IOException( "Unable to store blob " + key );
+                }
+            }
+            return key;
+        } finally {
+            if ( temp.exists() ) {
+                temp.delete();
+            }
+        }
+    }
+
+    public InputStream get(String key) throws IOException {
+        File blob = toFile( key );
+        if ( !blob.isFile() ) {
+            return null;
+        }
+        FileInputStream in = new FileInputStream( blob );
+        try {
+            FileChannel channel = in.getChannel();
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY,
+                                                   0,
+                                                   channel.size() );
+            return new ByteBufferInputStream( buffer );
+        } finally {
+            in.close();
+        }
+    }
+
+    public long getSize(String key) throws IOException {
+        File blob = toFile( key );
+        return blob.isFile() ? blob.length() : -1;
+    }
+
+    File toFile(String key) {
+        if ( key.length() != KEY_LENGTH || !key.matches( "[0-9a-f]+" ) ) {
+            throw new IllegalArgumentException( "Not a blob key: " + key );
+        }
+        return new File( new File( directory,
+                                   key.substring( 0,
+                                                  2 ) ),
+                         key );
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    /**
+     * Reads straight from the buffer, so mapped blobs are not copied until the
+     * caller reads them.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes,
+                        int offset,
+                        int length) {
+            if ( length == 0 ) {
+                return 0;
+            }
+            if ( !buffer.hasRemaining() ) {
+                return -1;
+            }
+            int read = Math.min( length,
+                                 buffer.remaining() );
+            buffer.get( bytes,
+                        offset,
+                        read );
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.min( Math.max( n,
+                                                    0 ),
+                                          buffer.remaining() );
+            buffer.position( buffer.position() + skipped );
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers {@link RepositoryEvent}s to the listeners that subscribed to
+ * them.
+ *
+ * Each subscriber has a bounded queue of its own, worked off by a thread of
+ * its own, so a slow subscriber only holds up itself. When its queue is full
+ * the publisher waits for a little while (see {@link #OFFER_WAIT_PROPERTY})
+ * for room, then gives up on that event for that subscriber; both are
+ * counted in its {@link Subscription}.
+ *
+ * Subscribers which need to see the change before the publisher carries on
+ * can subscribe synchronously, and are then called on the thread of the
+ * publisher, as the {@link CheckinEvent}s are. Setting
+ * {@link #SYNCHRONOUS_PROPERTY} to true makes every subscription synchronous.
+ */
+public class EventBus {
+
+    private static final Logger           log                  = LoggerFactory.getLogger( EventBus.class );
+
+    private static final EventBus         INSTANCE             = new EventBus();
+
+    /**
+     * How many events a subscriber can have waiting.
+     */
+    public static final String            QUEUE_SIZE_PROPERTY  = "guvnor.events.queueSize";
+
+    /**
+     * How long (in milliseconds) to wait for room in a full queue.
+     */
+    public static final String            OFFER_WAIT_PROPERTY  = "guvnor.events.offerWait";
+
+    /**
+     * Set to true to deliver every event on the thread that publishes it.
+     */
+    public static final String            SYNCHRONOUS_PROPERTY = "guvnor.events.synchronous";
+
+    private final List<Subscription>      subscriptions        = new CopyOnWriteArrayList<Subscription>();
+    private final int                     queueSize;
+    private final long                    offerWait;
+    private final boolean                 synchronous;
+
+    EventBus() {
+        this( Integer.getInteger( QUEUE_SIZE_PROPERTY,
+                                  1000 ),
+              Long.getLong( OFFER_WAIT_PROPERTY,
+                            100 ),
+              Boolean.getBoolean( SYNCHRONOUS_PROPERTY ) );
+    }
+
+    EventBus(int queueSize,
+             long offerWait,
+             boolean synchronous) {
+        this.queueSize = queueSize;
+        this.offerWait = offerWait;
+        this.synchronous = synchronous;
+    }
+
+    public static EventBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Subscribes to the given types of event (or to all of them if none are
+     * given), which are delivered on a thread of the subscriber.
+     *
+     * @param name what the subscriber is called, in the logs and thread names.
+     */
+    public Subscription subscribe(String name,
+                                  RepositoryEventListener listener,
+                                  RepositoryEvent.Type... types) {
+        return add( new Subscription( name,
+                                      listener,
+                                      types,
+                                      synchronous ? 0 : queueSize ) );
+    }
+
+    /**
+     * Subscribes to the given types of event (or to all of them if none are
+     * given), which are delivered before the publisher carries on.
+     */
+    public Subscription subscribeSynchronous(String name,
+                                             RepositoryEventListener listener,
+                                             RepositoryEvent.Type... types) {
+        return add( new Subscription( name,
+                                      listener,
+                                      types,
+                                      0 ) );
+    }
+
+    private Subscription add(Subscription subscription) {
+        subscriptions.add( subscription );
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * @return false if nobody listens, so there is no need to make an event.
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(RepositoryEvent event) {
+        for ( Subscription subscription : subscriptions ) {
+            if ( subscription.types.contains( event.getType() ) ) {
+                subscription.offer( event );
+            }
+        }
+    }
+
+    /**
+     * @return the subscriptions, to see how they are doing.
+     */
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<Subscription>( subscriptions );
+    }
+
+    /**
+     * Cancels every subscription.
+     */
+    public void unsubscribeAll() {
+        for ( Subscription subscription : subscriptions ) {
+            subscription.cancel();
+        }
+    }
+
+    public final class Subscription
+        implements
+        Runnable {
+
+        private final String                          name;
+        private final RepositoryEventListener         listener;
+        private final EnumSet<RepositoryEvent.Type>   types;
+        private final BlockingQueue<RepositoryEvent>  queue;
+        private final AtomicLong                      deliveredCount = new AtomicLong();
+        private final AtomicLong                      failedCount    = new AtomicLong();
+        private final AtomicLong                      overflowCount  = new AtomicLong();
+        private final AtomicLong                      droppedCount   = new AtomicLong();
+        private final AtomicLong                      acceptedCount  = new AtomicLong();
+        private Thread                                thread;
+        private volatile boolean                      cancelled;
+
+        Subscription(String name,
+                     RepositoryEventListener listener,
+                     RepositoryEvent.Type[] types,
+                     int queueSize) {
+            this.name = name;
+            this.listener = listener;
+            this.types = types.length == 0 ? EnumSet.allOf( RepositoryEvent.Type.class ) : EnumSet.copyOf( Arrays.asList( types ) );
+            this.queue = queueSize > 0 ? new ArrayBlockingQueue<RepositoryEvent>( queueSize ) : null;
+        }
+
+        void start() {
+            if ( queue != null ) {
+                thread = new Thread( this,
+                                     "guvnor-events-" + name );
+                thread.setDaemon( true );
+                thread.start();
+            }
+        }
+
+        void offer(RepositoryEvent event) {
+            if ( cancelled ) {
+                return;
+            }
+            if ( queue == null ) {
+                deliver( event );
+                return;
+            }
+            acceptedCount.incrementAndGet();
+            if ( queue.offer( event ) ) {
+                return;
+            }
+            overflowCount.incrementAndGet();
+            try {
+                if ( queue.offer( event,
+                                  offerWait,
+                                  TimeUnit.MILLISECONDS ) ) {
+                    return;
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            acceptedCount.decrementAndGet();
+            if ( droppedCount.incrementAndGet() == 1 ) {
+                log.warn( "The event queue of [" + name + "] is full, events are being dropped" );
+            }
+        }
+
+        public void run() {
+            while ( !cancelled ) {
+                try {
+                    deliver( queue.take() );
+                } catch ( InterruptedException e ) {
+                    // cancelled
+                    return;
+                }
+            }
+        }
+
+        private void deliver(RepositoryEvent event) {
+            try {
+                listener.onEvent( event );
+                deliveredCount.incrementAndGet();
+            } catch ( RuntimeException e ) {
+                failedCount.incrementAndGet();
+                log.error( "[" + name + "] failed to handle " + event,
+                           e );
+            }
+        }
+
+        /**
+         * Stops delivering, events still waiting are dropped.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove( this );
+            if ( thread != null ) {
+                thread.interrupt();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isSynchronous() {
+            return queue == null;
+        }
+
+        public long getDeliveredCount() {
+            return deliveredCount.get();
+        }
+
+        /**
+         * @return the number of events the listener threw an exception for.
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        /**
+         * @return the number of times the publisher found the queue full.
+         */
+        public long getOverflowCount() {
+            return overflowCount.get();
+        }
+
+        /**
+         * @return the number of events that were never queued, as the queue
+         * stayed full.
+         */
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        public int getQueuedCount() {
+            return queue == null ? 0 : queue.size();
+        }
+
+        /**
+         * @return true if there is nothing queued nor being delivered.
+         */
+        public boolean isIdle() {
+            return queue == null || acceptedCount.get() == deliveredCount.get() + failedCount.get();
+        }
+
+        public String toString() {
+            return name + ": delivered=" + getDeliveredCount() + ", failed=" + getFailedCount() + ", overflows=" + getOverflowCount() + ", dropped=" + getDroppedCount() + ", queued=" + getQueuedCount();
+        }
+    }
+}
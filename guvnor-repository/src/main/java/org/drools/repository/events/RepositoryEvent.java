@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.events;
+
+import org.drools.repository.AssetItem;
+import org.drools.repository.PackageItem;
+
+/**
+ * Something that happened to a package or an asset, as published on the
+ * {@link EventBus}. Events only carry plain values, read as they are
+ * published: the items themselves belong to the session of the publisher,
+ * and must not be used by other threads.
+ */
+public final class RepositoryEvent {
+
+    public enum Type {
+        /** An asset was checked in. */
+        CHECKIN,
+        /** An asset was checked in in a new state, the detail is the state name. */
+        STATE_CHANGE,
+        /** An asset was archived or restored, the detail is "true" or "false". */
+        ARCHIVE,
+        /** A package or an asset was renamed, the detail is the old name. */
+        RENAME,
+        /** A package was built, the detail is null. */
+        PACKAGE_BUILD,
+        /** A snapshot of a package was made, the detail is its name. */
+        SNAPSHOT
+    }
+
+    private final Type   type;
+    private final String uuid;
+    private final String name;
+    private final String format;
+    private final String packageUUID;
+    private final String packageName;
+    private final String userName;
+    private final String detail;
+    private final long   time;
+
+    public RepositoryEvent(Type type,
+                           String uuid,
+                           String name,
+                           String format,
+                           String packageUUID,
+                           String packageName,
+                           String userName,
+                           String detail) {
+        this.type = type;
+        this.uuid = uuid;
+        this.name = name;
+        this.format = format;
+        this.packageUUID = packageUUID;
+        this.packageName = packageName;
+        this.userName = userName;
+        this.detail = detail;
+        this.time = System.currentTimeMillis();
+    }
+
+    public static RepositoryEvent forAsset(Type type,
+                                           AssetItem asset,
+                                           String detail) {
+        PackageItem pkg = asset.getPackage();
+        return new RepositoryEvent( type,
+                                    asset.getUUID(),
+                                    asset.getName(),
+                                    asset.getFormat(),
+                                    pkg.getUUID(),
+                                    pkg.getName(),
+                                    asset.getRulesRepository().getSession().getUserID(),
+                                    detail );
+    }
+
+    public static RepositoryEvent forPackage(Type type,
+                                             PackageItem pkg,
+                                             String detail) {
+        return new RepositoryEvent( type,
+                                    pkg.getUUID(),
+                                    pkg.getName(),
+                                    pkg.getFormat(),
+                                    pkg.getUUID(),
+                                    pkg.getName(),
+                                    pkg.getRulesRepository().getSession().getUserID(),
+                                    detail );
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the UUID of the asset, or of the package for package events.
+     */
+    public String getUUID() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getPackageUUID() {
+        return packageUUID;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the user who made the change.
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * @return what the type of event says it is, may be null.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String toString() {
+        return type + " [" + name + "] (" + uuid + ") by " + userName;
+    }
+}
@@ -16,19 +16,38 @@
 
 package org.drools.repository.events;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jcr.Session;
 
 import org.drools.repository.AssetItem;
+import org.drools.repository.RulesRepository;
 import org.drools.repository.VersionableItem;
 
 /**
  * This manages storage events, which may load/save from another location, or just notify on change etc.
+ *
+ * The listeners here are all called on the thread that makes the change, with the item itself, so a slow
+ * listener holds up every check in. Listeners which only need to know what changed should subscribe to the
+ * {@link EventBus} instead, which does not hold up the change. The {@link SaveEvent#onAssetCheckin(AssetItem)}
+ * and {@link CheckinEvent} listeners can also be moved off the checking in thread, see
+ * {@link #ASYNC_CHECKIN_PROPERTY}; the other calls are always made as the change is made.
  */
 public class StorageEventManager {
 
+    /**
+     * Set this system property to true to call the save event listener and the checkin event listeners
+     * after the check in, on a thread of their own, rather than as part of it. They are then given the asset
+     * as read through a session of their own (which may already show later changes), their failures no
+     * longer fail the check in, and check ins are left out if they fall behind by more than the event queue
+     * holds, see {@link EventBus#QUEUE_SIZE_PROPERTY}.
+     */
+    public static final String ASYNC_CHECKIN_PROPERTY = "guvnor.events.asyncCheckin";
 
-    static List<CheckinEvent> checkinEvents = new ArrayList<CheckinEvent>();
+    static List<CheckinEvent> checkinEvents = new CopyOnWriteArrayList<CheckinEvent>();
+    private static volatile EventBus.Subscription checkinSubscription;
+    private static Session checkinSession;
     static LoadEvent le = loadEvent();
     static SaveEvent se = saveEvent();
 
@@ -86,6 +105,54 @@ public class StorageEventManager {
         checkinEvents.clear();
     }
 
+    /**
+     * From now on, calls the checkin listeners on the event bus, reading the assets through the given
+     * session (which is then owned by the listeners), see {@link #ASYNC_CHECKIN_PROPERTY}.
+     */
+    public static synchronized void startAsynchronousCheckinEvents(Session session) {
+        stopAsynchronousCheckinEvents();
+        final RulesRepository repository = new RulesRepository(session);
+        checkinSession = session;
+        checkinSubscription = EventBus.getInstance().subscribe("storage-events", new RepositoryEventListener() {
+            public void onEvent(RepositoryEvent event) {
+                AssetItem asset = repository.loadAssetByUUID(event.getUUID());
+                if (hasSaveEvent()) {
+                    getSaveEvent().onAssetCheckin(asset);
+                }
+                for (CheckinEvent e : checkinEvents) {
+                    e.afterCheckin(asset);
+                }
+            }
+        }, RepositoryEvent.Type.CHECKIN);
+    }
+
+    /**
+     * Calls the checkin listeners as part of the check in again.
+     */
+    public static synchronized void stopAsynchronousCheckinEvents() {
+        if (checkinSubscription == null) {
+            return;
+        }
+        checkinSubscription.cancel();
+        checkinSession.logout();
+        checkinSubscription = null;
+        checkinSession = null;
+    }
+
+    /**
+     * Calls the save event listener and the checkin event listeners after the check in of an item, unless
+     * that is left to the event bus.
+     */
+    public static void afterCheckin(VersionableItem item) {
+        if (checkinSubscription != null) {
+            return;
+        }
+        if (hasSaveEvent() && item instanceof AssetItem) {
+            getSaveEvent().onAssetCheckin((AssetItem) item);
+        }
+        doCheckinEvents(item);
+    }
+
     /**
      * Process any checkin event listeners.
      */
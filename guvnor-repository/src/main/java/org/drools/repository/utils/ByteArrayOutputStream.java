@@ -16,11 +16,14 @@
 
 package org.drools.repository.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -281,6 +284,25 @@ public class ByteArrayOutputStream extends OutputStream {
         return newbuf;
     }
 
+    /**
+     * Gets the current contents of this byte stream as an input stream,
+     * reading straight from the internal buffers rather than copying them.
+     * The stream should not be written to while it is being read.
+     *
+     * @return the current contents of this output stream, as an input stream
+     */
+    public synchronized InputStream toInputStream() {
+        int remaining = count;
+        List list = new ArrayList();
+        for (int i = 0; i < buffers.size() && remaining > 0; i++) {
+            byte[] buf = getBuffer(i);
+            int c = Math.min(buf.length, remaining);
+            list.add(new ByteArrayInputStream(buf, 0, c));
+            remaining -= c;
+        }
+        return new SequenceInputStream(Collections.enumeration(list));
+    }
+
     /**
      * Gets the curent contents of this byte stream as a string.
      * @return the contents of the byte array as a String
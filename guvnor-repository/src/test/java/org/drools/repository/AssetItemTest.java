@@ -17,6 +17,7 @@
 package org.drools.repository;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.util.Calendar;
 import java.util.Iterator;
@@ -25,9 +26,12 @@ import java.util.List;
 import javax.jcr.version.Version;
 import javax.jcr.version.VersionIterator;
 
+import org.drools.repository.blob.BlobStoreManager;
+import org.drools.repository.blob.FileSystemBlobStore;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
@@ -838,6 +842,64 @@ public class AssetItemTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testLoadVersion() throws Exception {
+        AssetItem asset = getRepo().loadDefaultPackage().addAsset( "testLoadVersion", "test description" );
+        asset.updateContent( "one" );
+        asset.checkin( "version1" );
+        asset.updateContent( "two" );
+        asset.checkin( "version2" );
+        asset.updateContent( "three" );
+        asset.checkin( "version3" );
+
+        Version version = VersionableItem.getVersionManager( asset.getNode() ).getVersionHistory( asset.getNode().getPath() ).getVersionByLabel( "version-2" );
+        assertNotNull( version );
+
+        AssetItem historical = asset.loadVersion( 2 );
+        assertTrue( historical.isHistoricalVersion() );
+        assertEquals( 2, historical.getVersionNumber() );
+        assertEquals( "two", historical.getContent() );
+
+        // from one version to another
+        historical = historical.loadVersion( 1 );
+        assertEquals( "one", historical.getContent() );
+
+        assertNull( asset.loadVersion( 42 ) );
+    }
+
+    @Test
+    public void testLoadLatestVersionInState() throws Exception {
+        RulesRepository repo = getRepo();
+        repo.createState( "testLoadLatestVersionInState" );
+        StateItem draft = repo.getState( StateItem.DRAFT_STATE_NAME );
+        StateItem other = repo.getState( "testLoadLatestVersionInState" );
+
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testLoadLatestVersionInState", "" );
+        assertNull( asset.loadLatestVersionInState( draft ) );
+        asset.updateContent( "one" );
+        asset.checkin( "version1" );
+        asset.updateContent( "two" );
+        asset.checkin( "version2" );
+        asset.updateContent( "three" );
+        asset.updateState( "testLoadLatestVersionInState" );
+        asset.checkin( "version3" );
+
+        assertEquals( "two", asset.loadLatestVersionInState( draft ).getContent() );
+        assertEquals( "three", asset.loadLatestVersionInState( other ).getContent() );
+
+        // assets checked in before the states were recorded
+        asset.checkout();
+        asset.getNode().getProperty( AssetItem.STATE_VERSIONS_PROPERTY_NAME ).remove();
+        repo.save();
+        assertEquals( "two", asset.loadLatestVersionInState( draft ).getContent() );
+
+        asset.updateContent( "four" );
+        asset.updateState( StateItem.DRAFT_STATE_NAME );
+        asset.checkin( "version4" );
+        assertEquals( "four", asset.loadLatestVersionInState( draft ).getContent() );
+        assertEquals( "three", asset.loadLatestVersionInState( other ).getContent() );
+    }
+
     @Test
     public void testGetTitle() {
             AssetItem ruleItem1 = getRepo().loadDefaultPackage().addAsset("testGetTitle", "test content");
@@ -935,4 +997,62 @@ public class AssetItemTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testContentDigest() throws Exception {
+        // SHA-256 of "abc"
+        String abc = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+        AssetItem item = getRepo().loadDefaultPackage().addAsset( "testContentDigest", "" );
+        item.updateContent( "abc" );
+        item.checkin( "text" );
+        assertEquals( abc, item.getContentDigest() );
+
+        // worked out from the content if it was saved without one
+        item.getNode().checkout();
+        item.getNode().getProperty( AssetItem.CONTENT_DIGEST_PROPERTY_NAME ).remove();
+        assertEquals( abc, item.getContentDigest() );
+
+        item.updateContent( "abd" );
+        item.checkin( "changed" );
+        assertFalse( abc.equals( item.getContentDigest() ) );
+
+        AssetItem binary = getRepo().loadDefaultPackage().addAsset( "testContentDigestBinary", "" );
+        binary.updateBinaryContentAttachment( new ByteArrayInputStream( "abc".getBytes( "UTF-8" ) ) );
+        binary.checkin( "binary" );
+        assertEquals( abc, binary.getContentDigest() );
+        assertEquals( abc, binary.loadVersion( binary.getVersionNumber() ).getContentDigest() );
+    }
+
+    @Test
+    public void testBinaryAssetInBlobStore() throws Exception {
+        File directory = new File( System.getProperty( "java.io.tmpdir" ), "testBinaryAssetInBlobStore" + System.nanoTime() );
+        BlobStoreManager.setBlobStore( new FileSystemBlobStore( directory ) );
+        try {
+            AssetItem item = getRepo().loadDefaultPackage().addAsset( "testBinaryAssetInBlobStore", "" );
+            item.updateBinaryContentAttachment( new ByteArrayInputStream( "abc 123".getBytes() ) );
+            item.checkin( "first" );
+
+            assertTrue( item.isBinary() );
+            assertFalse( item.getNode().hasProperty( AssetItem.CONTENT_PROPERTY_BINARY_NAME ) );
+            String key = item.getNode().getProperty( AssetItem.CONTENT_PROPERTY_BINARY_KEY_NAME ).getString();
+            assertEquals( key, item.getContentDigest() );
+            assertEquals( "abc 123", new String( item.getBinaryContentAsBytes() ) );
+            assertEquals( "abc 123", item.getContent() );
+            assertEquals( 7, item.getContentLength() );
+
+            // the same bytes checked in again are not stored again
+            item.updateBinaryContentAttachment( new ByteArrayInputStream( "abc 123".getBytes() ) );
+            item.checkin( "second" );
+            assertEquals( key, item.getNode().getProperty( AssetItem.CONTENT_PROPERTY_BINARY_KEY_NAME ).getString() );
+            assertEquals( 1, new File( directory, key.substring( 0, 2 ) ).listFiles().length );
+
+            item.updateContent( "qed" );
+            item.checkin( "third" );
+            assertEquals( "abc 123", new String( ((AssetItem) item.getPrecedingVersion()).getBinaryContentAsBytes() ) );
+            assertEquals( "qed", getRepo().loadAssetByUUID( item.getUUID() ).getContent() );
+        } finally {
+            BlobStoreManager.setBlobStore( null );
+        }
+    }
+
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.drools.repository.AssetSummary.Field;
+import org.junit.Test;
+
+public class AssetSummaryLoaderTest extends RepositoryTestCase {
+
+    @Test
+    public void testSummariesMatchTheAssets() throws Exception {
+        RulesRepository repo = getRepo();
+        repo.loadCategory( "/" ).addCategory( "testAssetSummaryCat1",
+                                              "X" );
+        repo.loadCategory( "/" ).addCategory( "testAssetSummaryCat2",
+                                              "X" );
+        repo.createState( "testAssetSummaryState" );
+        PackageItem pkg = repo.createPackage( "testAssetSummaryPack",
+                                              "" );
+
+        AssetItem first = pkg.addAsset( "first",
+                                        "the first one",
+                                        "/testAssetSummaryCat1",
+                                        "drl" );
+        first.addCategory( "/testAssetSummaryCat2" );
+        first.updateState( "testAssetSummaryState" );
+        first.updateExternalSource( "somewhere" );
+        first.checkin( "" );
+        AssetItem second = pkg.addAsset( "second",
+                                         "the second one" );
+        second.checkin( "" );
+
+        List<AssetSummary> summaries = repo.loadAssetSummaries( Arrays.asList( first,
+                                                                               second ),
+                                                                EnumSet.allOf( Field.class ) );
+        assertEquals( 2,
+                      summaries.size() );
+        for ( int i = 0; i < 2; i++ ) {
+            AssetItem asset = i == 0 ? first : second;
+            AssetSummary summary = summaries.get( i );
+            assertEquals( asset.getUUID(),
+                          summary.getUUID() );
+            assertEquals( asset.getName(),
+                          summary.getName() );
+            assertEquals( asset.getFormat(),
+                          summary.getFormat() );
+            assertEquals( asset.getDescription(),
+                          summary.getDescription() );
+            assertEquals( asset.getPackageName(),
+                          summary.getPackageName() );
+            assertEquals( asset.getStateDescription(),
+                          summary.getStateName() );
+            assertEquals( asset.getCategorySummary(),
+                          summary.getCategorySummary() );
+            assertEquals( asset.getCreator(),
+                          summary.getCreator() );
+            assertEquals( asset.getCreatedDate(),
+                          summary.getCreatedDate() );
+            assertEquals( asset.getLastContributor(),
+                          summary.getLastContributor() );
+            assertEquals( asset.getLastModified(),
+                          summary.getLastModified() );
+            assertEquals( asset.getExternalSource(),
+                          summary.getExternalSource() );
+        }
+        assertEquals( 2,
+                      summaries.get( 0 ).getCategoryNames().size() );
+
+        // only what is asked for is loaded
+        AssetItemIterator it = pkg.queryAssets( "" );
+        summaries = it.nextSummaries( 1,
+                                      EnumSet.of( Field.NAME ) );
+        assertEquals( 1,
+                      summaries.size() );
+        assertEquals( "first",
+                      summaries.get( 0 ).getName() );
+        assertNull( summaries.get( 0 ).getDescription() );
+        assertNull( summaries.get( 0 ).getCategoryNames() );
+        assertEquals( "second",
+                      it.nextSummaries( -1,
+                                        EnumSet.of( Field.NAME ) ).get( 0 ).getName() );
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+
+import org.junit.Test;
+
+public class EntryLogTest extends RepositoryTestCase {
+
+    @Test
+    public void testEncoding() {
+        String[] record = new String[]{"abc", null, "", "-", "1:2", "héllo\nthere"};
+        assertArrayEquals( record,
+                           EntryLog.decode( EntryLog.encode( record ) ) );
+        assertEquals( "3:abc-0:",
+                      EntryLog.encode( new String[]{"abc", null, ""} ) );
+    }
+
+    @Test
+    public void testAppendReadAndCompact() throws Exception {
+        Node node = getRepo().getSession().getRootNode().addNode( "testEntryLog",
+                                                                   "nt:unstructured" );
+        EntryLog log = new EntryLog( node,
+                                     "box" );
+        for ( int i = 0; i < 10; i++ ) {
+            log.append( "r" + i,
+                        "note" + i );
+        }
+        assertEquals( 10,
+                      log.size() );
+        assertEquals( "r0",
+                      log.readAll().get( 0 )[0] );
+        assertFalse( node.hasProperty( "box" ) );
+
+        final List<String> newest = new ArrayList<String>();
+        log.readNewestFirst( new EntryLog.Visitor() {
+            public boolean visit(String[] record) {
+                newest.add( record[0] );
+                return newest.size() < 3;
+            }
+        } );
+        assertEquals( 3,
+                      newest.size() );
+        assertEquals( "r9",
+                      newest.get( 0 ) );
+        assertEquals( "r7",
+                      newest.get( 2 ) );
+
+        List<String[]> kept = log.readAll().subList( 8,
+                                                     10 );
+        log.compact( new ArrayList<String[]>( kept ) );
+        assertEquals( 2,
+                      log.size() );
+        assertEquals( "r8",
+                      log.readAll().get( 0 )[0] );
+        assertFalse( node.hasProperty( "box.0" ) );
+
+        log.append( "r10" );
+        assertEquals( 3,
+                      log.readAll().size() );
+        assertEquals( 1,
+                      log.readAll().get( 2 ).length );
+
+        log.clear();
+        assertEquals( 0,
+                      log.size() );
+        assertEquals( 0,
+                      log.readAll().size() );
+        node.remove();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.jcr.SimpleCredentials;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ItemMetadataCacheTest extends RepositoryTestCase {
+
+    @After
+    public void stopCache() {
+        ItemMetadataCache.getInstance().stop();
+    }
+
+    @Test
+    public void testMetadataIsCachedUntilItChanges() throws Exception {
+        RulesRepository repo = getRepo();
+        ItemMetadataCache cache = ItemMetadataCache.getInstance();
+        cache.start( repo.getSession().getRepository().login( new SimpleCredentials( "alan_parsons",
+                                                                                     "password".toCharArray() ) ) );
+        PackageItem pkg = repo.createPackage( "testItemMetadataCachePack",
+                                              "" );
+        AssetItem asset = pkg.addAsset( "testItemMetadataCacheAsset",
+                                        "" );
+        asset.updateFormat( "drl" );
+        asset.checkin( "" );
+
+        ItemMetadata metadata = repo.loadItemMetadata( asset.getUUID() );
+        assertEquals( "testItemMetadataCacheAsset",
+                      metadata.getName() );
+        assertEquals( "drl",
+                      metadata.getFormat() );
+        assertEquals( "testItemMetadataCachePack",
+                      metadata.getPackageName() );
+        assertFalse( metadata.isPackage() );
+        assertFalse( metadata.isArchived() );
+        assertSame( metadata,
+                    repo.loadItemMetadata( asset.getUUID() ) );
+        assertEquals( 1,
+                      cache.getStatistics().getHitCount() );
+
+        ItemMetadata pkgMetadata = repo.loadItemMetadata( pkg.getUUID() );
+        assertTrue( pkgMetadata.isPackage() );
+        assertEquals( "testItemMetadataCachePack",
+                      pkgMetadata.getName() );
+
+        asset.archiveItem( true );
+        asset.checkin( "" );
+        for ( int i = 0; i < 50 && !metadata.isArchived(); i++ ) {
+            // the cache hears about the changes asynchronously
+            Thread.sleep( 100 );
+            metadata = repo.loadItemMetadata( asset.getUUID() );
+        }
+        assertTrue( metadata.isArchived() );
+        assertTrue( cache.getStatistics().getInvalidationCount() > 0 );
+    }
+
+    @Test
+    public void testHistoricalVersionsAreNotCached() throws Exception {
+        RulesRepository repo = getRepo();
+        ItemMetadataCache cache = ItemMetadataCache.getInstance();
+        cache.start( repo.getSession().getRepository().login( new SimpleCredentials( "alan_parsons",
+                                                                                     "password".toCharArray() ) ) );
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testItemMetadataCacheHistory",
+                                                              "" );
+        asset.checkin( "" );
+        asset.updateContent( "changed" );
+        asset.checkin( "" );
+
+        AssetItem version = (AssetItem) asset.getPrecedingVersion();
+        assertNull( cache.get( repo.getSession(),
+                               version.getNode().getIdentifier() ) );
+        assertEquals( 0,
+                      cache.getStatistics().getSize() );
+    }
+
+    @Test
+    public void testNotStarted() throws Exception {
+        RulesRepository repo = getRepo();
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testItemMetadataCacheNotStarted",
+                                                              "" );
+        asset.checkin( "" );
+
+        assertNull( ItemMetadataCache.getInstance().get( repo.getSession(),
+                                                         asset.getUUID() ) );
+        assertEquals( "testItemMetadataCacheNotStarted",
+                      repo.loadItemMetadata( asset.getUUID() ).getName() );
+    }
+}
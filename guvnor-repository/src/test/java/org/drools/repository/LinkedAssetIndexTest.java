@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.SimpleCredentials;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LinkedAssetIndexTest extends RepositoryTestCase {
+
+    @After
+    public void stopIndex() {
+        LinkedAssetIndex.getInstance().stop();
+    }
+
+    @Test
+    public void testPagesAreReadFromTheIndex() throws Exception {
+        RulesRepository repo = getRepo();
+        LinkedAssetIndex.getInstance().start( repo.getSession().getRepository().login( new SimpleCredentials( "alan_parsons",
+                                                                                                             "password".toCharArray() ) ) );
+        repo.loadCategory( "/" ).addCategory( "testLinkedAssetIndexCat",
+                                              "X" );
+        PackageItem pkg = repo.createPackage( "testLinkedAssetIndexPack",
+                                              "" );
+        for ( String name : new String[]{"c", "a", "d", "b"} ) {
+            pkg.addAsset( name,
+                          "x",
+                          "/testLinkedAssetIndexCat",
+                          "drl" ).checkin( "" );
+        }
+        repo.save();
+
+        assertEquals( "[a, b, c, d]",
+                      names( repo.findAssetsByCategory( "/testLinkedAssetIndexCat",
+                                                        0,
+                                                        -1 ) ) );
+
+        AssetItemPageResult page = repo.findAssetsByCategory( "/testLinkedAssetIndexCat",
+                                                              1,
+                                                              2 );
+        assertEquals( "[b, c]",
+                      names( page ) );
+        assertTrue( page.hasNext );
+        assertEquals( 3,
+                      page.currentPosition );
+
+        page = repo.findAssetsByCategory( "/testLinkedAssetIndexCat",
+                                          2,
+                                          2 );
+        assertEquals( "[c, d]",
+                      names( page ) );
+        assertFalse( page.hasNext );
+
+        // check-ins are picked up by the index before they return
+        AssetItem a = pkg.loadAsset( "a" );
+        a.archiveItem( true );
+        a.checkin( "" );
+        pkg.addAsset( "aa",
+                      "x",
+                      "/testLinkedAssetIndexCat",
+                      "drl" ).checkin( "" );
+        AssetItem d = pkg.loadAsset( "d" );
+        d.updateCategoryList( new String[0] );
+        d.checkin( "" );
+
+        assertEquals( "[aa, b, c]",
+                      names( repo.findAssetsByCategory( "/testLinkedAssetIndexCat",
+                                                        0,
+                                                        -1 ) ) );
+        assertEquals( "[a, aa, b, c]",
+                      names( repo.findAssetsByCategory( "/testLinkedAssetIndexCat",
+                                                        true,
+                                                        0,
+                                                        -1 ) ) );
+    }
+
+    @Test
+    public void testPagesAfterACursor() throws Exception {
+        RulesRepository repo = getRepo();
+        LinkedAssetIndex.getInstance().start( repo.getSession().getRepository().login( new SimpleCredentials( "alan_parsons",
+                                                                                                             "password".toCharArray() ) ) );
+        repo.loadCategory( "/" ).addCategory( "testLinkedAssetIndexCursorCat",
+                                              "X" );
+        PackageItem pkg = repo.createPackage( "testLinkedAssetIndexCursorPack",
+                                              "" );
+        for ( String name : new String[]{"c", "a", "d", "b"} ) {
+            pkg.addAsset( name,
+                          "x",
+                          "/testLinkedAssetIndexCursorCat",
+                          "drl" ).checkin( "" );
+        }
+        repo.save();
+
+        AssetItemPageResult page = repo.findAssetsByCategoryAfter( "/testLinkedAssetIndexCursorCat",
+                                                                   false,
+                                                                   null,
+                                                                   2,
+                                                                   null );
+        assertEquals( "[a, b]",
+                      names( page ) );
+        assertTrue( page.hasNext );
+        AssetCursor cursor = page.nextCursor;
+
+        // the cursor still holds when the assets before it change
+        AssetItem a = pkg.loadAsset( "a" );
+        a.archiveItem( true );
+        a.checkin( "" );
+
+        page = repo.findAssetsByCategoryAfter( "/testLinkedAssetIndexCursorCat",
+                                               false,
+                                               cursor,
+                                               2,
+                                               null );
+        assertEquals( "[c, d]",
+                      names( page ) );
+        assertFalse( page.hasNext );
+        assertNull( page.nextCursor );
+    }
+
+    private String names(AssetItemPageResult result) {
+        List<String> names = new ArrayList<String>();
+        for ( Object asset : result.assets ) {
+            names.add( ((AssetItem) asset).getName() );
+        }
+        return names.toString();
+    }
+}
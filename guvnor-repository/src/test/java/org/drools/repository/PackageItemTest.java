@@ -16,6 +16,8 @@
 
 package org.drools.repository;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -52,6 +54,54 @@ public class PackageItemTest extends RepositoryTestCase {
         assertEquals(prevSize + 1, list.size());
     }
 
+    @Test
+    public void testCompiledPackageDigest() throws Exception {
+        RulesRepository repo = getRepo();
+        PackageItem item = repo.createPackage( "testCompiledPackageDigest", "" );
+        assertNull( item.getCompiledPackageDigest() );
+        assertNull( item.getCompiledPackageStream() );
+        assertFalse( item.hasCompiledPackage() );
+
+        item.updateCompiledPackage( new ByteArrayInputStream( "abc".getBytes() ) );
+        repo.save();
+        assertTrue( item.hasCompiledPackage() );
+
+        // SHA-1 of "abc"
+        assertEquals( "a9993e364706816aba3e25717850c26c9cd0d89d", item.getCompiledPackageDigest() );
+        InputStream in = item.getCompiledPackageStream();
+        assertEquals( 'a', in.read() );
+        in.close();
+
+        item.updateCompiledPackage( new ByteArrayInputStream( "abd".getBytes() ) );
+        assertFalse( "a9993e364706816aba3e25717850c26c9cd0d89d".equals( item.getCompiledPackageDigest() ) );
+    }
+
+    @Test
+    public void testCompressedCompiledPackage() throws Exception {
+        RulesRepository repo = getRepo();
+        PackageItem item = repo.createPackage( "testCompressedCompiledPackage", "" );
+
+        byte[] binary = new byte[10000];
+        for ( int i = 0; i < binary.length; i++ ) {
+            binary[i] = (byte) (i % 10);
+        }
+        item.updateCompiledPackage( new ByteArrayInputStream( binary ), CompiledPackageCodec.DEFLATE );
+        repo.save();
+
+        assertEquals( binary.length, item.getCompiledPackageSize() );
+        assertTrue( item.getStoredCompiledPackageSize() < binary.length );
+        byte[] read = item.getCompiledPackageBytes();
+        assertEquals( binary.length, read.length );
+        for ( int i = 0; i < binary.length; i++ ) {
+            assertEquals( binary[i], read[i] );
+        }
+
+        // uncompressed binaries are still read as they are
+        item.updateCompiledPackage( new ByteArrayInputStream( binary ), CompiledPackageCodec.NONE );
+        assertEquals( binary.length, item.getStoredCompiledPackageSize() );
+        assertEquals( binary.length, item.getCompiledPackageBytes().length );
+    }
+
     @Test
     @Ignore("JackRabbit errors about node type for property {}testing. Probably repository changes have broken test.")
     public void testAddPackageProperties() throws Exception {
@@ -163,6 +213,108 @@ public class PackageItemTest extends RepositoryTestCase {
         assertEquals("new content", it1_.getContent());
     }
 
+    @Test
+    public void testManifestPackageSnapshot() throws Exception {
+        RulesRepository repo = getRepo();
+
+        PackageItem pkg = repo.createPackage( "testManifestPackageSnapshot", "this is something" );
+        AssetItem it1 = pkg.addAsset( "testManifestSnap1", "la" );
+        it1.updateContent( "first content" );
+        it1.updateFormat( "drl" );
+        it1.checkin( "c" );
+        AssetItem it2 = pkg.addAsset( "testManifestSnap2", "la" );
+        it2.updateContent( "second content" );
+        it2.updateFormat( "txt" );
+        it2.checkin( "c" );
+        // changed without being checked in, so the binary would not match the manifest
+        it2.updateContent( "unsaved content" );
+        // never checked in, so there is nothing for the manifest to point at
+        AssetItem it4 = pkg.addAsset( "testManifestSnap4", "la" );
+        repo.save();
+        pkg.updateCompiledPackage( new ByteArrayInputStream( "compiled".getBytes() ) );
+        repo.save();
+
+        try {
+            repo.createPackageSnapshot( "testManifestPackageSnapshot", "MANIFEST", true );
+            fail( "should not snapshot assets which are not checked in" );
+        } catch ( RulesRepositoryException e ) {
+            assertTrue( e.getMessage().contains( "testManifestSnap2" ) );
+            assertTrue( e.getMessage().contains( "testManifestSnap4" ) );
+        }
+        assertFalse( repo.containsSnapshot( "testManifestPackageSnapshot", "MANIFEST" ) );
+
+        // still checked out, but no different from the checked in version
+        it2.updateContent( "second content" );
+        it4.checkin( "c" );
+        repo.save();
+
+        long version2 = it2.getVersionNumber();
+        repo.createPackageSnapshot( "testManifestPackageSnapshot", "MANIFEST", true );
+        // the snapshot points at the versions there are, without making new ones
+        assertEquals( version2, it2.getVersionNumber() );
+
+        it1.updateContent( "changed" );
+        it1.checkin( "X" );
+        pkg.addAsset( "testManifestSnap3", "x" ).checkin( "a" );
+
+        PackageItem snap = repo.loadPackageSnapshot( "testManifestPackageSnapshot", "MANIFEST" );
+        assertTrue( snap.isSnapshot() );
+        assertTrue( snap.isManifestSnapshot() );
+        assertFalse( pkg.isManifestSnapshot() );
+        assertEquals( "testManifestPackageSnapshot", snap.getName() );
+        assertEquals( "compiled", new String( snap.getCompiledPackageBytes() ) );
+
+        List snapAssets = iteratorToList( snap.getAssets() );
+        assertEquals( 3, snapAssets.size() );
+        assertTrue( snap.containsAsset( "testManifestSnap1" ) );
+        assertFalse( snap.containsAsset( "testManifestSnap3" ) );
+        assertTrue( snap.containsAsset( "testManifestSnap4" ) );
+        assertEquals( "first content", snap.loadAsset( "testManifestSnap1" ).getContent() );
+        assertEquals( "second content", snap.loadAsset( "testManifestSnap2" ).getContent() );
+        assertEquals( 1, snap.loadAsset( "testManifestSnap2" ).getVersionNumber() );
+
+        AssetItemIterator drlIt = snap.listAssetsByFormat( new String[] {"drl"} );
+        assertEquals( 1, drlIt.getSize() );
+        List drl = iteratorToList( drlIt );
+        assertEquals( 1, drl.size() );
+        assertEquals( "first content", ((AssetItem) drl.get( 0 )).getContent() );
+        assertEquals( 2, snap.listAssetsNotOfFormat( new String[] {"drl"} ).getSize() );
+        assertEquals( 3, snap.queryAssets( "" ).getSize() );
+
+        // copies of manifest snapshots are manifest snapshots
+        repo.copyPackageSnapshot( "testManifestPackageSnapshot", "MANIFEST", "MANIFEST2" );
+        snap = repo.loadPackageSnapshot( "testManifestPackageSnapshot", "MANIFEST2" );
+        assertEquals( 3, iteratorToList( snap.getAssets() ).size() );
+    }
+
+    @Test
+    public void testSnapshotAssetsAfterCursor() throws Exception {
+        RulesRepository repo = getRepo();
+
+        PackageItem pkg = repo.createPackage( "testSnapshotAssetsAfterCursor", "" );
+        for ( String name : new String[]{"c", "a", "d", "b", "e"} ) {
+            pkg.addAsset( name, "" ).checkin( "x" );
+        }
+        repo.save();
+        repo.createPackageSnapshot( "testSnapshotAssetsAfterCursor", "COPY" );
+        repo.createPackageSnapshot( "testSnapshotAssetsAfterCursor", "MANIFEST", true );
+
+        for ( PackageItem item : new PackageItem[]{pkg,
+                repo.loadPackageSnapshot( "testSnapshotAssetsAfterCursor", "COPY" ),
+                repo.loadPackageSnapshot( "testSnapshotAssetsAfterCursor", "MANIFEST" )} ) {
+            List<String> names = new ArrayList<String>();
+            AssetCursor cursor = null;
+            do {
+                AssetItemIterator it = item.queryAssetsAfter( "", false, cursor );
+                for ( int i = 0; i < 2 && it.hasNext(); i++ ) {
+                    names.add( it.next().getName() );
+                }
+                cursor = it.hasNext() ? it.getCursor() : null;
+            } while ( cursor != null );
+            assertEquals( "[a, b, c, d, e]", names.toString() );
+        }
+    }
+
     @Test
     public void testPackageSnapshot() throws Exception {
         RulesRepository repo = getRepo();
@@ -833,7 +985,35 @@ public class PackageItemTest extends RepositoryTestCase {
 
         assertEquals(v, item.getVersionNumber());
     }
-    
+
+    @Test
+    public void testPackageCheckinChecksInUnversionedAssetsOnly() {
+        PackageItem item = getRepo().createPackage( "testPackageCheckinUnversioned", "description" );
+
+        AssetItem versioned = item.addAsset( "versioned", "w" );
+        versioned.checkin( "goo" );
+        versioned.updateContent( "changed" );
+        getRepo().save();
+        AssetItem unversioned = item.addAsset( "unversioned", "w" );
+        AssetItem archived = item.addAsset( "archived", "w" );
+        archived.archiveItem( true );
+        getRepo().save();
+
+        item.checkin( "woot" );
+
+        assertEquals( 1, getRepo().loadAssetByUUID( versioned.getUUID() ).getVersionNumber() );
+        assertEquals( 1, getRepo().loadAssetByUUID( unversioned.getUUID() ).getVersionNumber() );
+        assertEquals( 1, getRepo().loadAssetByUUID( archived.getUUID() ).getVersionNumber() );
+        assertEquals( "Package[testPackageCheckinUnversioned] checked in",
+                      getRepo().loadAssetByUUID( unversioned.getUUID() ).getCheckinComment() );
+        assertNotNull( getRepo().loadAssetByUUID( unversioned.getUUID() ).loadVersion( 1 ) );
+
+        // nothing left to check in
+        item.checkout();
+        item.checkin( "again" );
+        assertEquals( 1, getRepo().loadAssetByUUID( unversioned.getUUID() ).getVersionNumber() );
+    }
+
     @Test 
     public void testPackageWorkspaceProperty() throws Exception {
         RulesRepository repo = getRepo();
@@ -1010,8 +1190,12 @@ public class PackageItemTest extends RepositoryTestCase {
         ai = (AssetItem)list.get(0);
         assertEquals(2, ai.getVersionNumber());
         assertEquals("version 2", ai.getCheckinComment());
- 
-        
+
+        //the pinned version is only looked up once per package
+        it = pkg.listAssetsWithVersionsSpecifiedByDependenciesByFormat("ABC");
+        assertSame(ai, it.next());
+
+
         //Verify historical package version 2
         PackageItem historicalPackage = getRepo().loadPackage("testListAssetsByFormatForHistoricalPackage", 2);
 /*        PackageHistoryIterator historyIterator = pkg.getHistory();
@@ -231,6 +231,98 @@ public class RulesRepositoryTest extends RepositoryTestCase {
 
     }
 
+    @Test
+    public void testFindAssetsByNameAfterCursor() throws Exception {
+        RulesRepository repo = getRepo();
+        PackageItem pkg = repo.createPackage( "testFindAssetsByNameAfterCursor",
+                                              "" );
+        for ( String name : new String[]{"cursorByName3", "cursorByName1", "cursorByName'2"} ) {
+            pkg.addAsset( name,
+                          "X" );
+        }
+        repo.save();
+
+        AssetItemIterator it = repo.findAssetsByNameAfter( "cursorByName%",
+                                                           false,
+                                                           null );
+        assertEquals( "cursorByName'2",
+                      it.next().getName() );
+        AssetCursor cursor = it.getCursor();
+        assertEquals( "cursorByName'2",
+                      cursor.getTitle() );
+
+        // the cursor is handed out as a string, quotes and all
+        it = repo.findAssetsByNameAfter( "cursorByName%",
+                                         false,
+                                         AssetCursor.parse( cursor.toString() ) );
+        List<AssetItem> rest = iteratorToList( it );
+        assertEquals( 2,
+                      rest.size() );
+        assertEquals( "cursorByName1",
+                      rest.get( 0 ).getName() );
+        assertEquals( "cursorByName3",
+                      rest.get( 1 ).getName() );
+
+        it = repo.queryFullTextAfter( "X",
+                                      false,
+                                      cursor );
+        while ( it.hasNext() ) {
+            assertTrue( it.next().getTitle().compareTo( cursor.getTitle() ) > 0 );
+        }
+    }
+
+    @Test
+    public void testFindAssetsByCategoryAfterCursor() throws Exception {
+        RulesRepository repo = getRepo();
+        repo.loadCategory( "/" ).addCategory( "testFindAssetsByCategoryAfterCursorCat",
+                                              "X" );
+        PackageItem pkg = repo.createPackage( "testFindAssetsByCategoryAfterCursorPack",
+                                              "" );
+        for ( String name : new String[]{"c", "a", "d", "b", "e"} ) {
+            pkg.addAsset( name,
+                          "x",
+                          "/testFindAssetsByCategoryAfterCursorCat",
+                          "drl" );
+        }
+        repo.save();
+
+        List<String> names = new ArrayList<String>();
+        AssetCursor cursor = null;
+        do {
+            AssetItemPageResult page = repo.findAssetsByCategoryAfter( "/testFindAssetsByCategoryAfterCursorCat",
+                                                                       false,
+                                                                       cursor,
+                                                                       2,
+                                                                       null );
+            for ( AssetItem item : page.assets ) {
+                names.add( item.getName() );
+            }
+            assertEquals( page.hasNext,
+                          page.nextCursor != null );
+            cursor = page.nextCursor;
+        } while ( cursor != null );
+        assertEquals( "[a, b, c, d, e]",
+                      names.toString() );
+    }
+
+    @Test
+    public void testAssetCursorParse() {
+        AssetCursor cursor = new AssetCursor( "a:title",
+                                              "1234-5678" );
+        assertEquals( cursor,
+                      AssetCursor.parse( cursor.toString() ) );
+        assertEquals( null,
+                      AssetCursor.parse( "" ) );
+        assertEquals( null,
+                      AssetCursor.parse( null ) );
+        try {
+            AssetCursor.parse( "nonsense" );
+            fail( "should not parse" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+
     @Test
     public void testQueryText() throws Exception {
         RulesRepository repo = getRepo();
@@ -131,4 +131,52 @@ public class UserInfoTest extends RepositoryTestCase {
         assertTrue(names.contains("michael"));
     }
 
+    @Test
+    public void testEntriesKeptAsXmlAreMovedToTheLog() throws Exception {
+        RulesRepository repo = RepositorySessionUtil.getRepository();
+        UserInfo info = new UserInfo(repo, "legacyInbox");
+        info.clear("inbox", "box");
+        info.setProperty("inbox", "box", new UserInfo.Val("<inbox-entries><entry><assetUUID>A</assetUUID><note>a</note><timestamp>1</timestamp></entry>"
+                + "<entry><assetUUID>B</assetUUID><note>b</note><timestamp>2</timestamp></entry></inbox-entries>"));
+
+        List<UserInfo.InboxEntry> entries = info.readEntries("inbox", "box");
+        assertEquals(2, entries.size());
+        assertEquals("A", entries.get(0).assetUUID);
+        assertEquals(1, info.readLatestEntries("inbox", "box", 1).size());
+        assertEquals("B", info.readLatestEntries("inbox", "box", 1).get(0).assetUUID);
+
+        info.appendEntry("inbox", "box", new UserInfo.InboxEntry("A", "a2", "me"), 10);
+        assertEquals("", info.getProperty("inbox", "box").value);
+        entries = info.readEntries("inbox", "box");
+        assertEquals(2, entries.size());
+        assertEquals("B", entries.get(0).assetUUID);
+        assertEquals("a2", entries.get(1).note);
+
+        info.removeEntry("inbox", "box", "B", 10);
+        entries = info.readEntries("inbox", "box");
+        assertEquals(1, entries.size());
+        assertEquals("A", entries.get(0).assetUUID);
+    }
+
+    @Test
+    public void testEntriesAreCompacted() throws Exception {
+        RulesRepository repo = RepositorySessionUtil.getRepository();
+        UserInfo info = new UserInfo(repo, "compactedInbox");
+        info.clear("inbox", "box");
+        for (int i = 0; i < 25; i++) {
+            info.appendEntry("inbox", "box", new UserInfo.InboxEntry("X" + (i % 3), "note" + i, "me"), 5);
+        }
+        List<UserInfo.InboxEntry> entries = info.readEntries("inbox", "box");
+        assertEquals(3, entries.size());
+        assertEquals("note24", entries.get(2).note);
+
+        for (int i = 0; i < 25; i++) {
+            info.appendEntry("inbox", "box", new UserInfo.InboxEntry("Y" + i, "note", "me"), 5);
+        }
+        entries = info.readLatestEntries("inbox", "box", 5);
+        assertEquals(5, entries.size());
+        assertEquals("Y20", entries.get(0).assetUUID);
+        assertTrue(info.readEntries("inbox", "box").size() <= 10);
+    }
+
 }
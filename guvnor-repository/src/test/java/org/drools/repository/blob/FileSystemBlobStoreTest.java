@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import org.drools.repository.utils.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemBlobStoreTest {
+
+    // SHA-256 of "abc"
+    private static final String ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private File                directory;
+
+    @Before
+    public void setUp() {
+        directory = new File( System.getProperty( "java.io.tmpdir" ),
+                              "FileSystemBlobStoreTest" + System.nanoTime() );
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir( directory );
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        FileSystemBlobStore store = new FileSystemBlobStore( directory );
+
+        assertEquals( ABC,
+                      store.put( new ByteArrayInputStream( "abc".getBytes( "UTF-8" ) ) ) );
+        assertEquals( 3,
+                      store.getSize( ABC ) );
+        assertTrue( store.toFile( ABC ).isFile() );
+
+        InputStream in = store.get( ABC );
+        assertEquals( "abc",
+                      new String( IOUtils.toByteArray( in ),
+                                  "UTF-8" ) );
+        in.close();
+    }
+
+    @Test
+    public void testSameContentIsStoredOnce() throws Exception {
+        FileSystemBlobStore store = new FileSystemBlobStore( directory );
+
+        assertEquals( store.put( new ByteArrayInputStream( "abc".getBytes( "UTF-8" ) ) ),
+                      store.put( new ByteArrayInputStream( "abc".getBytes( "UTF-8" ) ) ) );
+        assertFalse( ABC.equals( store.put( new ByteArrayInputStream( "abd".getBytes( "UTF-8" ) ) ) ) );
+
+        File[] files = store.toFile( ABC ).getParentFile().listFiles();
+        assertEquals( 1,
+                      files.length );
+        // no temporary files left over, just the two blob directories
+        assertEquals( 2,
+                      directory.listFiles().length );
+    }
+
+    @Test
+    public void testMissingBlob() throws Exception {
+        FileSystemBlobStore store = new FileSystemBlobStore( directory );
+        assertNull( store.get( ABC ) );
+        assertEquals( -1,
+                      store.getSize( ABC ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() throws Exception {
+        new FileSystemBlobStore( directory ).get( "../../etc/passwd" );
+    }
+
+    private static boolean deleteDir(File dir) {
+        if ( dir.isDirectory() ) {
+            for ( File child : dir.listFiles() ) {
+                if ( !deleteDir( child ) ) {
+                    return false;
+                }
+            }
+        }
+        return dir.delete();
+    }
+}
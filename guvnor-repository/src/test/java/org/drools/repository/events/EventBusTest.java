@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.repository.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.repository.AssetItem;
+import org.drools.repository.PackageItem;
+import org.drools.repository.RepositoryTestCase;
+import org.drools.repository.RulesRepository;
+import org.junit.After;
+import org.junit.Test;
+
+public class EventBusTest extends RepositoryTestCase {
+
+    @After
+    public void unsubscribe() {
+        EventBus.getInstance().unsubscribeAll();
+    }
+
+    @Test
+    public void testSynchronousSubscriberSeesTypedEvents() throws Exception {
+        final List<RepositoryEvent> events = new ArrayList<RepositoryEvent>();
+        EventBus.getInstance().subscribeSynchronous( "test",
+                                                     new RepositoryEventListener() {
+                                                         public void onEvent(RepositoryEvent event) {
+                                                             events.add( event );
+                                                         }
+                                                     },
+                                                     RepositoryEvent.Type.CHECKIN,
+                                                     RepositoryEvent.Type.ARCHIVE );
+
+        RulesRepository repo = getRepo();
+        PackageItem pkg = repo.loadDefaultPackage();
+        AssetItem asset = pkg.addAsset( "testEventBusSynchronous",
+                                        "" );
+        asset.updateFormat( "drl" );
+        asset.checkin( "" );
+
+        assertEquals( 1,
+                      events.size() );
+        RepositoryEvent event = events.get( 0 );
+        assertEquals( RepositoryEvent.Type.CHECKIN,
+                      event.getType() );
+        assertEquals( asset.getUUID(),
+                      event.getUUID() );
+        assertEquals( "testEventBusSynchronous",
+                      event.getName() );
+        assertEquals( "drl",
+                      event.getFormat() );
+        assertEquals( pkg.getUUID(),
+                      event.getPackageUUID() );
+        assertEquals( repo.getSession().getUserID(),
+                      event.getUserName() );
+
+        asset.archiveItem( true );
+        asset.checkin( "" );
+        assertEquals( 3,
+                      events.size() );
+        assertEquals( RepositoryEvent.Type.ARCHIVE,
+                      events.get( 2 ).getType() );
+        assertEquals( "true",
+                      events.get( 2 ).getDetail() );
+
+        // nothing changed this time
+        asset.archiveItem( true );
+        asset.checkin( "" );
+        assertEquals( 4,
+                      events.size() );
+    }
+
+    @Test
+    public void testAsynchronousSubscriberDoesNotHoldUpTheCheckin() throws Exception {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch delivered = new CountDownLatch( 1 );
+        EventBus.Subscription subscription = EventBus.getInstance().subscribe( "test",
+                                                                               new RepositoryEventListener() {
+                                                                                   public void onEvent(RepositoryEvent event) {
+                                                                                       try {
+                                                                                           release.await();
+                                                                                       } catch ( InterruptedException e ) {
+                                                                                           Thread.currentThread().interrupt();
+                                                                                       }
+                                                                                       delivered.countDown();
+                                                                                   }
+                                                                               } );
+        assertFalse( subscription.isSynchronous() );
+
+        AssetItem asset = getRepo().loadDefaultPackage().addAsset( "testEventBusAsynchronous",
+                                                                   "" );
+        asset.checkin( "" );
+        assertEquals( 0,
+                      subscription.getDeliveredCount() );
+
+        release.countDown();
+        assertTrue( delivered.await( 5,
+                                     TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void testFullQueueDropsEvents() throws Exception {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        EventBus bus = new EventBus( 1,
+                                     10,
+                                     false );
+        EventBus.Subscription subscription = bus.subscribe( "test",
+                                                            new RepositoryEventListener() {
+                                                                public void onEvent(RepositoryEvent event) {
+                                                                    try {
+                                                                        release.await();
+                                                                    } catch ( InterruptedException e ) {
+                                                                        Thread.currentThread().interrupt();
+                                                                    }
+                                                                }
+                                                            } );
+        for ( int i = 0; i < 5; i++ ) {
+            bus.publish( new RepositoryEvent( RepositoryEvent.Type.PACKAGE_BUILD,
+                                              "uuid",
+                                              "name",
+                                              "package",
+                                              "uuid",
+                                              "name",
+                                              "user",
+                                              null ) );
+        }
+        // one is being delivered, one is queued, the others could not wait
+        assertTrue( subscription.getDroppedCount() >= 3 );
+        assertTrue( subscription.getOverflowCount() >= subscription.getDroppedCount() );
+
+        release.countDown();
+        for ( int i = 0; i < 50 && !subscription.isIdle(); i++ ) {
+            Thread.sleep( 100 );
+        }
+        assertEquals( 5,
+                      subscription.getDeliveredCount() + subscription.getDroppedCount() );
+        subscription.cancel();
+    }
+}
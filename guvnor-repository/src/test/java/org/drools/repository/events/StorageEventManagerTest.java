@@ -20,6 +20,11 @@ import org.drools.repository.RepositoryTestCase;
 import org.drools.repository.RulesRepository;
 import org.drools.repository.PackageItem;
 import org.drools.repository.AssetItem;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.SimpleCredentials;
+
 import org.junit.After;
 import org.junit.Test;
 
@@ -37,6 +42,8 @@ public class StorageEventManagerTest extends RepositoryTestCase {
         //super.tearDown();
         StorageEventManager.le = null;
         StorageEventManager.se = null;
+        StorageEventManager.stopAsynchronousCheckinEvents();
+        StorageEventManager.removeListeners();
     }
 
     @Test
@@ -126,4 +133,25 @@ public class StorageEventManagerTest extends RepositoryTestCase {
         assertSame(asset, x[0]);
     }
 
+    @Test
+    public void testAsynchronousCheckinListener() throws Exception {
+        RulesRepository repo = getRepo();
+        StorageEventManager.startAsynchronousCheckinEvents( repo.getSession().getRepository().login( new SimpleCredentials( "alan_parsons",
+                                                                                                                          "password".toCharArray() ) ) );
+        final String[] x = new String[1];
+        final CountDownLatch called = new CountDownLatch( 1 );
+        StorageEventManager.registerCheckinEvent( new CheckinEvent() {
+            public void afterCheckin(AssetItem item) {
+                x[0] = item.getUUID();
+                called.countDown();
+            }
+        } );
+
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testAsynchronousCheckinListener", "" );
+        asset.checkin( "" );
+
+        assertTrue( called.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( asset.getUUID(), x[0] );
+    }
+
 }
@@ -21,6 +21,7 @@ import java.util.List;
 
 import org.drools.guvnor.client.categorynav.CategoryExplorerWidget;
 import org.drools.guvnor.client.categorynav.CategorySelectHandler;
+import org.drools.guvnor.client.common.ErrorPopup;
 import org.drools.guvnor.client.common.FormStyleLayout;
 import org.drools.guvnor.client.common.FormStylePopup;
 import org.drools.guvnor.client.common.GenericCallback;
@@ -28,6 +29,7 @@ import org.drools.guvnor.client.common.InfoPopup;
 import org.drools.guvnor.client.common.LoadingPopup;
 import org.drools.guvnor.client.messages.Constants;
 import org.drools.guvnor.client.resources.Images;
+import org.drools.guvnor.client.rpc.BuildJobStatus;
 import org.drools.guvnor.client.rpc.BuilderResult;
 import org.drools.guvnor.client.rpc.PackageConfigData;
 import org.drools.guvnor.client.rpc.RepositoryServiceFactory;
@@ -42,6 +44,7 @@ import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.user.client.Command;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.CheckBox;
@@ -64,6 +67,8 @@ import com.google.gwt.user.client.ui.VerticalPanel;
  */
 public class PackageBuilderWidget extends Composite {
 
+    private static final int      BUILD_POLL_INTERVAL     = 1000;
+
     private static Constants      constants               = GWT.create( Constants.class );
     private static Images         images                  = GWT.create( Images.class );
 
@@ -289,37 +294,69 @@ public class PackageBuilderWidget extends Composite {
         Scheduler scheduler = Scheduler.get();
         scheduler.scheduleDeferred( new Command() {
             public void execute() {
-                RepositoryServiceFactory.getPackageService().buildPackage( conf.getUuid(),
-                                                                    true,
-                                                                    buildMode,
-                                                                    statusOperator,
-                                                                    statusValue,
-                                                                    enableStatusSelector,
-                                                                    categoryOperator,
-                                                                    category,
-                                                                    enableCategorySelector,
-                                                                    customSelector,
-                                                                    new GenericCallback<BuilderResult>() {
-                                                                        public void onSuccess(BuilderResult result) {
-                                                                            LoadingPopup.close();
-                                                                            if ( result == null ) {
-                                                                                showSuccessfulBuild( buildResults );
-                                                                            } else {
-                                                                                showBuilderErrors( result,
-                                                                                                   buildResults );
-                                                                            }
-                                                                        }
-
-                                                                        public void onFailure(Throwable t) {
-                                                                            buildResults.clear();
-                                                                            super.onFailure( t );
-                                                                        }
-                                                                    } );
+                RepositoryServiceFactory.getPackageService().startPackageBuild( conf.getUuid(),
+                                                                         true,
+                                                                         buildMode,
+                                                                         statusOperator,
+                                                                         statusValue,
+                                                                         enableStatusSelector,
+                                                                         categoryOperator,
+                                                                         category,
+                                                                         enableCategorySelector,
+                                                                         customSelector,
+                                                                         new GenericCallback<String>() {
+                                                                             public void onSuccess(String jobId) {
+                                                                                 waitForBuild( jobId,
+                                                                                               buildResults );
+                                                                             }
+
+                                                                             public void onFailure(Throwable t) {
+                                                                                 buildResults.clear();
+                                                                                 super.onFailure( t );
+                                                                             }
+                                                                         } );
             }
         } );
 
     }
 
+    /**
+     * The package is built in the background, poll until the build is done.
+     */
+    private void waitForBuild(final String jobId,
+                              final Panel buildResults) {
+        Timer timer = new Timer() {
+            public void run() {
+                RepositoryServiceFactory.getPackageService().getPackageBuildStatus( jobId,
+                                                                             new GenericCallback<BuildJobStatus>() {
+                                                                                 public void onSuccess(BuildJobStatus status) {
+                                                                                     if ( !status.isDone() ) {
+                                                                                         waitForBuild( jobId,
+                                                                                                       buildResults );
+                                                                                     } else if ( status.getState() == BuildJobStatus.State.FAILED ) {
+                                                                                         buildResults.clear();
+                                                                                         ErrorPopup.showMessage( status.getErrorMessage() );
+                                                                                     } else {
+                                                                                         LoadingPopup.close();
+                                                                                         if ( status.getBuilderResult() == null ) {
+                                                                                             showSuccessfulBuild( buildResults );
+                                                                                         } else {
+                                                                                             showBuilderErrors( status.getBuilderResult(),
+                                                                                                                buildResults );
+                                                                                         }
+                                                                                     }
+                                                                                 }
+
+                                                                                 public void onFailure(Throwable t) {
+                                                                                     buildResults.clear();
+                                                                                     super.onFailure( t );
+                                                                                 }
+                                                                             } );
+            }
+        };
+        timer.schedule( BUILD_POLL_INTERVAL );
+    }
+
     /**
      * Actually build the source, and display it.
      */
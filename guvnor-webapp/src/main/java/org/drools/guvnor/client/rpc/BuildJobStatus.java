@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.client.rpc;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * The state of a package build that was started in the background. The
+ * builder result is only set once the build has finished, and is null if the
+ * package built without errors.
+ */
+public class BuildJobStatus
+        implements
+        IsSerializable {
+
+    public enum State {
+        QUEUED, RUNNING, FINISHED, FAILED
+    }
+
+    private String        jobId;
+    private String        packageUUID;
+    private State         state;
+    private BuilderResult builderResult;
+    private String        errorMessage;
+    private String        errorDetails;
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getPackageUUID() {
+        return packageUUID;
+    }
+
+    public void setPackageUUID(String packageUUID) {
+        this.packageUUID = packageUUID;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public boolean isDone() {
+        return state == State.FINISHED || state == State.FAILED;
+    }
+
+    public BuilderResult getBuilderResult() {
+        return builderResult;
+    }
+
+    public void setBuilderResult(BuilderResult builderResult) {
+        this.builderResult = builderResult;
+    }
+
+    /**
+     * Set if the build failed with an exception rather than with build errors.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public String getErrorDetails() {
+        return errorDetails;
+    }
+
+    public void setErrorDetails(String errorDetails) {
+        this.errorDetails = errorDetails;
+    }
+}
@@ -21,7 +21,7 @@ import com.google.gwt.user.client.rpc.IsSerializable;
 import java.util.Date;
 
 /**
- * This is a discussion record item - persisted via Discussion.java (xstream) to XML, as a
+ * This is a discussion record item - persisted via Discussion.java, as a
  * a property on an AssetItem.
  */
 public class DiscussionRecord implements IsSerializable {
@@ -149,6 +149,29 @@ public interface PackageService
                                       boolean enableCategorySelector,
                                       String customSelectorName) throws SerializationException;
 
+    /**
+     * Start building the package in the background, and return the id of the
+     * build job. If the same build is already running, its id is returned
+     * instead of starting another one. The status of the job can be polled
+     * with getPackageBuildStatus, and a "packageBuild" message with the job id
+     * is pushed to the client once it is done.
+     */
+    public String startPackageBuild(String packageUUID,
+                                    boolean force,
+                                    String buildMode,
+                                    String operator,
+                                    String statusDescriptionValue,
+                                    boolean enableStatusSelector,
+                                    String categoryOperator,
+                                    String category,
+                                    boolean enableCategorySelector,
+                                    String customSelectorName) throws SerializationException;
+
+    /**
+     * Return the status (and the result, once done) of a build job.
+     */
+    public BuildJobStatus getPackageBuildStatus(String jobId) throws SerializationException;
+
     /**
      * This will return the effective DRL for a package. This would be the
      * equivalent if all the rules were written by hand in the one file. It may
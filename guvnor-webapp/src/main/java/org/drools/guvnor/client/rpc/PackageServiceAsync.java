@@ -33,6 +33,8 @@ public interface PackageServiceAsync {
     public void createPackageSnapshot(java.lang.String p0, java.lang.String p1, boolean p2, java.lang.String p3, AsyncCallback cb);
     public void copyOrRemoveSnapshot(java.lang.String p0, java.lang.String p1, boolean p2, java.lang.String p3, AsyncCallback cb);
     public void buildPackage(java.lang.String p0, boolean p1, java.lang.String p2, java.lang.String p3, java.lang.String p4, boolean p5, java.lang.String p6, java.lang.String p7, boolean p8, java.lang.String p9, AsyncCallback<org.drools.guvnor.client.rpc.BuilderResult> cb);
+    public void startPackageBuild(java.lang.String p0, boolean p1, java.lang.String p2, java.lang.String p3, java.lang.String p4, boolean p5, java.lang.String p6, java.lang.String p7, boolean p8, java.lang.String p9, AsyncCallback<java.lang.String> cb);
+    public void getPackageBuildStatus(java.lang.String p0, AsyncCallback<org.drools.guvnor.client.rpc.BuildJobStatus> cb);
     public void buildPackageSource(java.lang.String p0, AsyncCallback<java.lang.String> cb);
     public void copyPackage(java.lang.String p0, java.lang.String p1, AsyncCallback<java.lang.String> cb);
     public void removePackage(java.lang.String p0, AsyncCallback cb);
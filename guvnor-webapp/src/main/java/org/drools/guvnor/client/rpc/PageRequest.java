@@ -30,6 +30,10 @@ public class PageRequest
     protected int     startRowIndex = 0;
     protected Integer pageSize      = null; // null returns all pages
 
+    // Opaque position to carry on from, as given by PageResponse.getNextCursor().
+    // Empty for the first page; null pages by startRowIndex instead
+    protected String  cursor        = null;
+
     // For GWT serialisation
     public PageRequest() {
     }
@@ -44,6 +48,10 @@ public class PageRequest
     // Getters and setters
     // ************************************************************************
 
+    public String getCursor() {
+        return cursor;
+    }
+
     public Integer getPageSize() {
         return pageSize;
     }
@@ -52,6 +60,10 @@ public class PageRequest
         return startRowIndex;
     }
 
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public void setPageSize(Integer pageSize) {
         this.pageSize = pageSize;
     }
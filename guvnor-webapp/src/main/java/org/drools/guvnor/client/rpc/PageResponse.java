@@ -37,6 +37,9 @@ public class PageResponse<T extends AbstractPageRow>
     private List<T> pageRowList;
     private boolean lastPage;
 
+    // Cursor of the next page, when there is one and it is known
+    private String  nextCursor;
+
     public List<T> getPageRowList() {
         return pageRowList;
     }
@@ -45,6 +48,10 @@ public class PageResponse<T extends AbstractPageRow>
     // Getters and setters
     // ************************************************************************
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     public int getStartRowIndex() {
         return startRowIndex;
     }
@@ -69,6 +76,10 @@ public class PageResponse<T extends AbstractPageRow>
         this.lastPage = lastPage;
     }
 
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public void setPageRowList(List<T> assetPageRowList) {
         this.pageRowList = assetPageRowList;
     }
@@ -17,15 +17,12 @@
 package org.drools.guvnor.server;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.drools.guvnor.client.rpc.PushResponse;
 import org.jboss.seam.contexts.Contexts;
@@ -34,113 +31,229 @@ import org.jboss.seam.web.Session;
 
 /**
  * This is the backchannel to send "push" messages to the browser.
- * Here be dragons. Would like to convert this to using actors one day.
- * TODO: convert to executor architecture. Only one instance needed.
+ *
+ * Each user has a channel of their own, where messages wait until the
+ * browser of the user next subscribes. The browser subscribes every minute,
+ * and a subscription takes what is waiting and returns straight away, so no
+ * request thread is held for it. At most {@link #MAX_QUEUED_PROPERTY}
+ * messages wait for a user (the oldest are dropped first). Published messages
+ * only go to the users who subscribed within {@link #IDLE_TIMEOUT_PROPERTY},
+ * and the channels of users who have not are dropped.
+ *
+ * {@link #await(String)} can also wait for a message, holding on to the
+ * calling thread until one comes in for that user (so nobody else is woken
+ * up), or until {@link #TIMEOUT_PROPERTY} has passed. No more than
+ * {@link #MAX_WAITING_PROPERTY} callers wait at once: beyond that, it returns
+ * straight away.
  */
 public class Backchannel {
-    private static final Backchannel instance = new Backchannel();
+
+    /**
+     * How long (in milliseconds) {@link #await(String)} waits for a message.
+     */
+    public static final String       TIMEOUT_PROPERTY      = "guvnor.backchannel.timeout";
+
+    /**
+     * How many callers of {@link #await(String)} can wait at the same time.
+     */
+    public static final String       MAX_WAITING_PROPERTY  = "guvnor.backchannel.maxWaiting";
+
+    /**
+     * How long (in milliseconds) the channel of a user who does not subscribe
+     * is kept.
+     */
+    public static final String       IDLE_TIMEOUT_PROPERTY = "guvnor.backchannel.idleTimeout";
+
+    /**
+     * How many messages can wait for a user.
+     */
+    public static final String       MAX_QUEUED_PROPERTY   = "guvnor.backchannel.maxQueued";
+
+    private static final Backchannel instance              = new Backchannel();
 
     public static Backchannel getInstance() {
         return instance;
     }
 
-    final List<CountDownLatch>            waiting = Collections.synchronizedList( new ArrayList<CountDownLatch>() );
-    final Map<String, List<PushResponse>> mailbox = Collections.synchronizedMap( new HashMap<String, List<PushResponse>>() );
-
-    private final Timer                         timer;
-
-    private Backchannel() {
-        //using a timer to make sure awaiting subs are flushed every now and then, otherwise web threads could be consumed.
-        timer = new Timer( true );
-        timer.schedule( new TimerTask() {
-                            public void run() {
-                                unlatchAllWaiting();
-                            }
-                        },
-                        20000,
-                        30000 );
+    private final ConcurrentMap<String, Channel> channels  = new ConcurrentHashMap<String, Channel>();
+    private final AtomicInteger                  waiting   = new AtomicInteger();
+    private final long                           timeout;
+    private final int                            maxWaiting;
+    private final long                           idleTimeout;
+    private final int                            maxQueued;
+    private volatile long                        lastEviction;
+
+    Backchannel() {
+        this( Long.getLong( TIMEOUT_PROPERTY,
+                            30000 ),
+              Integer.getInteger( MAX_WAITING_PROPERTY,
+                                  100 ) );
+    }
+
+    Backchannel(long timeout,
+                int maxWaiting) {
+        this( timeout,
+              maxWaiting,
+              Long.getLong( IDLE_TIMEOUT_PROPERTY,
+                            5 * 60 * 1000 ),
+              Integer.getInteger( MAX_QUEUED_PROPERTY,
+                                  100 ) );
+    }
+
+    Backchannel(long timeout,
+                int maxWaiting,
+                long idleTimeout,
+                int maxQueued) {
+        this.timeout = timeout;
+        this.maxWaiting = maxWaiting;
+        this.idleTimeout = idleTimeout;
+        this.maxQueued = maxQueued;
+        this.lastEviction = System.currentTimeMillis();
     }
 
     public List<PushResponse> subscribe() {
 
         if ( Contexts.isApplicationContextActive() && !Session.instance().isInvalid() ) {
-            try {
-                return await( Identity.instance().getCredentials().getUsername() );
-            } catch ( InterruptedException e ) {
-                return new ArrayList<PushResponse>();
-            }
+            return poll( Identity.instance().getCredentials().getUsername() );
         } else {
             return new ArrayList<PushResponse>();
         }
     }
 
-    public List<PushResponse> await(String userName) throws InterruptedException {
-        List<PushResponse> messages = fetchMessageForUser( userName );
-        if ( messages != null && messages.size() > 0 ) {
-            return messages;
-        } else {
-            CountDownLatch latch = new CountDownLatch( 1 );
-            waiting.add( latch );
-
-            /**
-             * Now PAUSE here for a while.... and release after 3hours if nothing done
-             */
-            latch.await( 3*60*60,
-                         TimeUnit.SECONDS );
-
-            /** In the meantime... response has been set, and then it will be unlatched, and message sent back... */
-            return fetchMessageForUser( userName );
+    /**
+     * Takes the messages waiting for the user, without waiting for any.
+     */
+    public List<PushResponse> poll(String userName) {
+        evictIdleChannels();
+        Channel channel = getChannel( userName );
+        synchronized ( channel ) {
+            channel.lastSeen = System.currentTimeMillis();
+            return channel.take();
         }
     }
 
     /**
-     * Fetch the list of messages waiting, if there are some, replace it with an empty list.
+     * Takes the messages waiting for the user, waiting for one if there are
+     * none (and not too many callers are waiting already).
      */
-    private List<PushResponse> fetchMessageForUser(String userName) {
-        List<PushResponse> msgs = mailbox.get( userName );
-        mailbox.put( userName,
-                     new ArrayList<PushResponse>() );
-        return msgs;
+    public List<PushResponse> await(String userName) throws InterruptedException {
+        Channel channel = getChannel( userName );
+        synchronized ( channel ) {
+            channel.lastSeen = System.currentTimeMillis();
+            if ( channel.messages.isEmpty() ) {
+                try {
+                    channel.waiters++;
+                    if ( waiting.incrementAndGet() <= maxWaiting ) {
+                        long deadline = System.currentTimeMillis() + timeout;
+                        long left = timeout;
+                        while ( channel.messages.isEmpty() && left > 0 ) {
+                            channel.wait( left );
+                            left = deadline - System.currentTimeMillis();
+                        }
+                    }
+                } finally {
+                    waiting.decrementAndGet();
+                    channel.waiters--;
+                    channel.lastSeen = System.currentTimeMillis();
+                }
+            }
+            return channel.take();
+        }
     }
 
     /** Push out a message to the specific client */
-    public synchronized void push(String userName,
-                                  PushResponse message) {
-        //need to queue this up in the users mailbox, and then wake it all up
-        List<PushResponse> resp = mailbox.get( userName );
-        if ( resp == null ) {
-            resp = new ArrayList<PushResponse>();
-            resp.add( message );
-            mailbox.put( userName,
-                         resp );
-        } else {
-            resp.add( message );
+    public void push(String userName,
+                     PushResponse message) {
+        evictIdleChannels();
+        getChannel( userName ).add( message,
+                                    maxQueued );
+    }
+
+    /**
+     * Push out a message to all clients that have subscribed lately.
+     */
+    public void publish(PushResponse message) {
+        evictIdleChannels();
+        for ( Channel channel : channels.values() ) {
+            channel.add( message,
+                         maxQueued );
         }
+    }
 
-        unlatchAllWaiting();
+    /**
+     * @return how many callers are waiting for a message.
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
 
+    /**
+     * @return how many users have a channel.
+     */
+    public int getChannelCount() {
+        return channels.size();
     }
 
     /**
-     * Push out a message to all currently connected clients
+     * Drops the channels of the users who have not subscribed for a while,
+     * along with their messages. This looks at the channels at most once
+     * every idle timeout.
      */
-    public synchronized void publish(PushResponse message) {
-        for ( Map.Entry<String, List<PushResponse>> e : mailbox.entrySet() ) {
-            if ( e.getValue() == null ) e.setValue( new ArrayList<PushResponse>() );
-            e.getValue().add( message );
+    void evictIdleChannels() {
+        long now = System.currentTimeMillis();
+        if ( now - lastEviction < idleTimeout ) {
+            return;
+        }
+        lastEviction = now;
+        for ( Iterator<Map.Entry<String, Channel>> it = channels.entrySet().iterator(); it.hasNext(); ) {
+            Channel channel = it.next().getValue();
+            synchronized ( channel ) {
+                if ( channel.waiters == 0 && now - channel.lastSeen >= idleTimeout ) {
+                    it.remove();
+                }
+            }
         }
-        unlatchAllWaiting();
     }
 
-    private void unlatchAllWaiting() {
-        synchronized ( waiting ) {
-            Iterator<CountDownLatch> it = waiting.iterator();
-            while ( it.hasNext() ) {
-                CountDownLatch l = it.next();
-                l.countDown();
-                it.remove();
+    private Channel getChannel(String userName) {
+        Channel channel = channels.get( userName );
+        if ( channel == null ) {
+            Channel created = new Channel();
+            channel = channels.putIfAbsent( userName,
+                                            created );
+            if ( channel == null ) {
+                channel = created;
             }
         }
+        return channel;
+    }
+
+    /**
+     * The messages waiting for a user, and the monitor the callers of
+     * {@link Backchannel#await(String)} for that user wait on.
+     */
+    private static final class Channel {
+
+        private List<PushResponse> messages = new ArrayList<PushResponse>();
+        /** When the user last subscribed, or when the channel was made for a message to them. */
+        private long               lastSeen = System.currentTimeMillis();
+        private int                waiters;
+
+        synchronized void add(PushResponse message,
+                              int maxQueued) {
+            messages.add( message );
+            if ( messages.size() > maxQueued ) {
+                messages.subList( 0,
+                                  messages.size() - maxQueued ).clear();
+            }
+            notifyAll();
+        }
+
+        synchronized List<PushResponse> take() {
+            List<PushResponse> taken = messages;
+            messages = new ArrayList<PushResponse>();
+            return taken;
+        }
     }
 
 }
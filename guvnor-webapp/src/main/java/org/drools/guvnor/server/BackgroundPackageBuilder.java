@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.guvnor.client.rpc.BuilderResult;
+import org.drools.guvnor.client.rpc.DetailedSerializationException;
+import org.drools.guvnor.server.repository.RepositoryStartupService;
+import org.drools.guvnor.server.util.LoggingHelper;
+import org.drools.repository.PackageItem;
+import org.drools.repository.RulesRepository;
+import org.drools.repository.events.RepositoryEvent;
+import org.drools.repository.events.RepositoryEventListener;
+
+/**
+ * Rebuilds the binary of a package in the background after its assets are
+ * checked in, so that deployments (the package servlet, the REST API, the
+ * knowledge agents) usually find an up to date binary instead of having to
+ * wait for a build.
+ *
+ * Check-ins are debounced per package: the build starts once no asset of the
+ * package has been checked in for <code>guvnor.build.background.delay</code>
+ * milliseconds. The builds themselves run as {@link BuildJobManager} jobs.
+ * This is off unless the <code>guvnor.build.background</code> system property
+ * is set to true.
+ */
+public class BackgroundPackageBuilder {
+
+    public static final String                    ENABLED_PROPERTY = "guvnor.build.background";
+    public static final String                    DELAY_PROPERTY   = "guvnor.build.background.delay";
+
+    private static final LoggingHelper            log              = LoggingHelper.getLogger( BackgroundPackageBuilder.class );
+
+    private final RepositoryStartupService        repositoryConfiguration;
+    private final BuildJobManager                 buildJobManager;
+    private final long                            delay;
+    private final ScheduledThreadPoolExecutor     scheduler;
+    private final Map<String, ScheduledFuture< ? >> pending          = new HashMap<String, ScheduledFuture< ? >>();
+
+    public BackgroundPackageBuilder(RepositoryStartupService repositoryConfiguration) {
+        this( repositoryConfiguration,
+              BuildJobManager.getInstance(),
+              Long.getLong( DELAY_PROPERTY,
+                            5000 ) );
+    }
+
+    BackgroundPackageBuilder(RepositoryStartupService repositoryConfiguration,
+                             BuildJobManager buildJobManager,
+                             long delay) {
+        this.repositoryConfiguration = repositoryConfiguration;
+        this.buildJobManager = buildJobManager;
+        this.delay = delay;
+        this.scheduler = new ScheduledThreadPoolExecutor( 1,
+                                                          new ThreadFactory() {
+                                                              public Thread newThread(Runnable runnable) {
+                                                                  Thread thread = new Thread( runnable,
+                                                                                              "guvnor-background-build" );
+                                                                  thread.setDaemon( true );
+                                                                  return thread;
+                                                              }
+                                                          } );
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean( ENABLED_PROPERTY );
+    }
+
+    /**
+     * The listener to subscribe to the check-ins on the EventBus with.
+     */
+    public RepositoryEventListener getListener() {
+        return new RepositoryEventListener() {
+            public void onEvent(RepositoryEvent event) {
+                packageChanged( event.getPackageUUID(),
+                                event.getUserName() );
+            }
+        };
+    }
+
+    /**
+     * (Re)starts the countdown to the build of the package.
+     *
+     * @param userName the user to build the package as.
+     */
+    public synchronized void packageChanged(final String packageUUID,
+                                            final String userName) {
+        ScheduledFuture< ? > previous = pending.remove( packageUUID );
+        if ( previous != null ) {
+            previous.cancel( false );
+        }
+        pending.put( packageUUID,
+                     scheduler.schedule( new Runnable() {
+                                             public void run() {
+                                                 startBuild( packageUUID,
+                                                             userName );
+                                             }
+                                         },
+                                         delay,
+                                         TimeUnit.MILLISECONDS ) );
+    }
+
+    synchronized boolean isPending(String packageUUID) {
+        return pending.containsKey( packageUUID );
+    }
+
+    private void startBuild(final String packageUUID,
+                            final String userName) {
+        String key = getJobKey( packageUUID );
+        synchronized ( this ) {
+            pending.remove( packageUUID );
+        }
+        try {
+            // joins a build of the same package a user asked for, unless that
+            // one missed the latest changes
+            buildJobManager.submit( key,
+                                    packageUUID,
+                                    null,
+                                    new BuildJobManager.BuildTask() {
+                                        public BuilderResult build() throws Exception {
+                                            return buildPackage( packageUUID,
+                                                                 userName );
+                                        }
+                                    } );
+        } catch ( DetailedSerializationException e ) {
+            log.warn( "Unable to start the background build of package [" + packageUUID + "]: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * The background builds build the whole package, so they share their
+     * jobs with the builds of the whole package users ask for.
+     */
+    String getJobKey(String packageUUID) {
+        return BuildJobManager.getJobKey( packageUUID,
+                                          null,
+                                          null,
+                                          null,
+                                          false,
+                                          null,
+                                          null,
+                                          false,
+                                          null );
+    }
+
+    BuilderResult buildPackage(String packageUUID,
+                               String userName) throws Exception {
+        RulesRepository rulesRepository = new RulesRepository( repositoryConfiguration.newSession( userName ) );
+        try {
+            RepositoryPackageOperations operations = new RepositoryPackageOperations();
+            operations.setRulesRepository( rulesRepository );
+            BuilderResult result = operations.buildPackage( packageUUID,
+                                                            false,
+                                                            null,
+                                                            null,
+                                                            null,
+                                                            false,
+                                                            null,
+                                                            null,
+                                                            false,
+                                                            null );
+            if ( result != null && !result.getLines().isEmpty() ) {
+                log.info( "Background build of package [" + packageUUID + "] has " + result.getLines().size() + " errors." );
+            }
+            return result;
+        } finally {
+            rulesRepository.logout();
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.guvnor.client.rpc.BuildJobStatus;
+import org.drools.guvnor.client.rpc.BuilderResult;
+import org.drools.guvnor.client.rpc.DetailedSerializationException;
+import org.drools.guvnor.client.rpc.PushResponse;
+import org.drools.guvnor.server.selector.SelectorManager;
+import org.drools.guvnor.server.util.LoggingHelper;
+
+/**
+ * Runs package builds in the background on a bounded pool of threads.
+ *
+ * Identical requests for a package that is already being built are coalesced
+ * into the queued job, or into the running job as long as the package has not
+ * changed since that job started, so a package is never built twice at the
+ * same time for the same settings and nobody is handed a build that missed
+ * their changes. The changes are reported through
+ * {@link #packageChanged(String)}. Clients poll the status of their job, and
+ * everyone who asked for it gets a "packageBuild" message through the
+ * {@link Backchannel} once it is done.
+ *
+ * The number of threads and of queued builds can be set with the
+ * <code>guvnor.build.jobs.threads</code> and
+ * <code>guvnor.build.jobs.queueSize</code> system properties.
+ */
+public class BuildJobManager {
+
+    public static final String           THREADS_PROPERTY     = "guvnor.build.jobs.threads";
+    public static final String           QUEUE_SIZE_PROPERTY  = "guvnor.build.jobs.queueSize";
+    public static final String           MAX_FINISHED_PROPERTY = "guvnor.build.jobs.maxFinished";
+
+    public static final String           PUSH_MESSAGE_TYPE    = "packageBuild";
+
+    private static final LoggingHelper   log                  = LoggingHelper.getLogger( BuildJobManager.class );
+
+    private static final BuildJobManager INSTANCE             = new BuildJobManager( Integer.getInteger( THREADS_PROPERTY,
+                                                                                                         2 ),
+                                                                                     Integer.getInteger( QUEUE_SIZE_PROPERTY,
+                                                                                                         32 ),
+                                                                                     Integer.getInteger( MAX_FINISHED_PROPERTY,
+                                                                                                         100 ) );
+
+    /**
+     * The build itself. It runs on one of the build threads, so it must open
+     * its own repository session.
+     */
+    public interface BuildTask {
+        BuilderResult build() throws Exception;
+    }
+
+    private final ThreadPoolExecutor     executor;
+    private final Map<String, BuildJob>  activeJobs           = new HashMap<String, BuildJob>();
+    private final Map<String, BuildJob>  jobs;
+    private final Map<String, Long>      packageChanges       = new HashMap<String, Long>();
+    private long                         changeCount;
+
+    BuildJobManager(int threads,
+                    int queueSize,
+                    final int maxFinished) {
+        this.executor = new ThreadPoolExecutor( threads,
+                                                threads,
+                                                60,
+                                                TimeUnit.SECONDS,
+                                                new ArrayBlockingQueue<Runnable>( queueSize ),
+                                                new BuildThreadFactory() );
+        this.executor.allowCoreThreadTimeOut( true );
+        this.jobs = new LinkedHashMap<String, BuildJob>() {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<String, BuildJob> eldest) {
+                return size() > maxFinished && eldest.getValue().isDone();
+            }
+        };
+    }
+
+    public static BuildJobManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The key of a build of the package with the given settings, the same for
+     * the builds users ask for and the background builds. Only the settings
+     * that pick the assets to build count, as the PackageAssembler reads
+     * them: builds of the whole package share a key whatever else is sent.
+     * Whether the build is forced does not count either, as a build is only
+     * joined if it has seen the latest changes, and there is nothing newer
+     * for a forced build to pick up.
+     */
+    public static String getJobKey(String packageUUID,
+                                   String buildMode,
+                                   String statusOperator,
+                                   String statusDescriptionValue,
+                                   boolean enableStatusSelector,
+                                   String categoryOperator,
+                                   String category,
+                                   boolean enableCategorySelector,
+                                   String customSelectorName) {
+        if ( SelectorManager.CUSTOM_SELECTOR.equals( buildMode ) ) {
+            return packageUUID + "|custom|" + customSelectorName;
+        }
+        if ( SelectorManager.BUILT_IN_SELECTOR.equals( buildMode ) ) {
+            String key = packageUUID + "|builtIn";
+            if ( enableStatusSelector ) {
+                key += "|status|" + statusOperator + "|" + statusDescriptionValue;
+            }
+            if ( enableCategorySelector ) {
+                key += "|category|" + categoryOperator + "|" + category;
+            }
+            return key;
+        }
+        return packageUUID + "|all";
+    }
+
+    /**
+     * Records that an asset of the package changed, so builds that started
+     * before are not joined any more.
+     */
+    public synchronized void packageChanged(String packageUUID) {
+        packageChanges.put( packageUUID,
+                            ++changeCount );
+    }
+
+    /**
+     * Starts a build, or joins the build with the same key that is queued, or
+     * running and has seen the latest change to the package.
+     *
+     * @param key identifies the package and the build settings.
+     * @param userName who to push the result to.
+     * @return the id of the job.
+     */
+    public synchronized String submit(String key,
+                                      String packageUUID,
+                                      String userName,
+                                      BuildTask task) throws DetailedSerializationException {
+        BuildJob job = activeJobs.get( key );
+        if ( job != null && job.hasSeenChangesOf( getLastChange( packageUUID ) ) ) {
+            log.debug( "Joining build job [" + job.id + "] of package [" + packageUUID + "]" );
+            job.addUser( userName );
+            return job.id;
+        }
+
+        job = new BuildJob( key,
+                            packageUUID,
+                            task );
+        job.addUser( userName );
+        try {
+            executor.execute( job );
+        } catch ( RejectedExecutionException e ) {
+            throw new DetailedSerializationException( "Too many packages are being built, please try again later.",
+                                                      e.getMessage() );
+        }
+        activeJobs.put( key,
+                        job );
+        jobs.put( job.id,
+                  job );
+        return job.id;
+    }
+
+    /**
+     * @return the status of the job, or null if there is no such job (any
+     *         more).
+     */
+    public synchronized BuildJobStatus getStatus(String jobId) {
+        BuildJob job = jobs.get( jobId );
+        return job == null ? null : job.getStatus();
+    }
+
+    /**
+     * Waits for a job to finish.
+     *
+     * @return true if it finished in time.
+     */
+    public boolean await(String jobId,
+                         long timeout,
+                         TimeUnit unit) throws InterruptedException {
+        BuildJob job;
+        synchronized ( this ) {
+            job = jobs.get( jobId );
+        }
+        return job == null || job.done.await( timeout,
+                                              unit );
+    }
+
+    private long getLastChange(String packageUUID) {
+        Long change = packageChanges.get( packageUUID );
+        return change == null ? 0 : change;
+    }
+
+    private synchronized void started(BuildJob job) {
+        job.changesSeen = getLastChange( job.packageUUID );
+    }
+
+    private synchronized void finished(BuildJob job) {
+        // a newer job may have taken over the key
+        if ( activeJobs.get( job.key ) == job ) {
+            activeJobs.remove( job.key );
+        }
+    }
+
+    private class BuildJob
+        implements
+        Runnable {
+
+        private final String                id    = UUID.randomUUID().toString();
+        private final String                key;
+        private final String                packageUUID;
+        private final BuildTask             task;
+        private final Set<String>           users = new LinkedHashSet<String>();
+        private final CountDownLatch        done  = new CountDownLatch( 1 );
+
+        private volatile BuildJobStatus.State state = BuildJobStatus.State.QUEUED;
+        private volatile BuilderResult      builderResult;
+        private volatile String             errorMessage;
+        private volatile String             errorDetails;
+        /** The last change to the package the job has read, -1 while queued. */
+        private long                        changesSeen = -1;
+
+        BuildJob(String key,
+                 String packageUUID,
+                 BuildTask task) {
+            this.key = key;
+            this.packageUUID = packageUUID;
+            this.task = task;
+        }
+
+        synchronized void addUser(String userName) {
+            if ( userName != null ) {
+                users.add( userName );
+            }
+        }
+
+        /**
+         * Only called holding the manager's lock.
+         */
+        boolean hasSeenChangesOf(long change) {
+            return changesSeen == -1 || changesSeen >= change;
+        }
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public void run() {
+            started( this );
+            state = BuildJobStatus.State.RUNNING;
+            try {
+                builderResult = task.build();
+                state = BuildJobStatus.State.FINISHED;
+            } catch ( DetailedSerializationException e ) {
+                fail( e.getMessage(),
+                      e.getLongDescription() );
+            } catch ( Throwable t ) {
+                log.error( "An error occurred building the package [" + packageUUID + "]: " + t.getMessage(),
+                           t );
+                fail( "An error occurred building the package.",
+                      t.getMessage() );
+            } finally {
+                finished( this );
+                pushToUsers();
+                done.countDown();
+            }
+        }
+
+        private void fail(String message,
+                          String details) {
+            errorMessage = message;
+            errorDetails = details;
+            state = BuildJobStatus.State.FAILED;
+        }
+
+        private synchronized void pushToUsers() {
+            for ( String userName : users ) {
+                Backchannel.getInstance().push( userName,
+                                                new PushResponse( PUSH_MESSAGE_TYPE,
+                                                                  id ) );
+            }
+        }
+
+        BuildJobStatus getStatus() {
+            BuildJobStatus status = new BuildJobStatus();
+            status.setJobId( id );
+            status.setPackageUUID( packageUUID );
+            status.setState( state );
+            status.setBuilderResult( builderResult );
+            status.setErrorMessage( errorMessage );
+            status.setErrorDetails( errorDetails );
+            return status;
+        }
+    }
+
+    private static class BuildThreadFactory
+        implements
+        ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread( runnable,
+                                        "guvnor-package-build-" + threadNumber.getAndIncrement() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
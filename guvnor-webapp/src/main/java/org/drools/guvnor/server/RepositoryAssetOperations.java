@@ -39,6 +39,7 @@ import org.drools.guvnor.server.util.Discussion;
 import org.drools.guvnor.server.util.LoggingHelper;
 import org.drools.guvnor.server.util.MetaDataMapper;
 import org.drools.guvnor.server.util.TableDisplayHandler;
+import org.drools.repository.AssetCursor;
 import org.drools.repository.AssetItem;
 import org.drools.repository.AssetItemIterator;
 import org.drools.repository.CategoryItem;
@@ -474,11 +475,26 @@ public class RepositoryAssetOperations {
             if ( request.getFormatIsRegistered() != null ) {
                 throw new IllegalArgumentException( "Combining formatInList and formatIsRegistered is not yet supported." );
             }
-            iterator = packageItem.listAssetsByFormat( request.getFormatInList() );
+            if ( request.getCursor() != null ) {
+                List<String> formats = request.getFormatInList();
+                iterator = packageItem.listAssetsByFormatAfter( AssetCursor.parse( request.getCursor() ),
+                                                                formats.toArray( new String[formats.size()] ) );
+            } else {
+                iterator = packageItem.listAssetsByFormat( request.getFormatInList() );
+            }
 
         } else {
             if ( request.getFormatIsRegistered() != null ) {
-                iterator = packageItem.listAssetsNotOfFormat( AssetFormatHelper.listRegisteredTypes() );
+                if ( request.getCursor() != null ) {
+                    iterator = packageItem.listAssetsNotOfFormatAfter( AssetCursor.parse( request.getCursor() ),
+                                                                       AssetFormatHelper.listRegisteredTypes() );
+                } else {
+                    iterator = packageItem.listAssetsNotOfFormat( AssetFormatHelper.listRegisteredTypes() );
+                }
+            } else if ( request.getCursor() != null ) {
+                iterator = packageItem.queryAssetsAfter( "",
+                                                         false,
+                                                         AssetCursor.parse( request.getCursor() ) );
             } else {
                 iterator = packageItem.queryAssets( "" );
             }
@@ -496,6 +512,8 @@ public class RepositoryAssetOperations {
                                                     .withStartRowIndex( request.getStartRowIndex() )
                                                     .withPageRowList( rowList )
                                                     .withLastPage( !iterator.hasNext() )
+                                                    .withNextCursor( request,
+                                                                     iterator )
                                                         .buildWithTotalRowCount( totalRowsCount );
         long methodDuration = System.currentTimeMillis() - start;
         log.debug( "Found asset page of packageUuid ("
@@ -516,8 +534,15 @@ public class RepositoryAssetOperations {
 
         // Do query
         long start = System.currentTimeMillis();
-        AssetItemIterator iterator = getRulesRepository().findAssetsByName( search,
-                                                                            request.isSearchArchived() );
+        AssetItemIterator iterator;
+        if ( request.getCursor() != null ) {
+            iterator = getRulesRepository().findAssetsByNameAfter( search,
+                                                                   request.isSearchArchived(),
+                                                                   AssetCursor.parse( request.getCursor() ) );
+        } else {
+            iterator = getRulesRepository().findAssetsByName( search,
+                                                              request.isSearchArchived() );
+        }
         log.debug( "Search time: " + (System.currentTimeMillis() - start) );
 
         // Populate response
@@ -532,6 +557,8 @@ public class RepositoryAssetOperations {
                                                     .withStartRowIndex( request.getStartRowIndex() )
                                                     .withPageRowList( rowList )
                                                     .withLastPage( !iterator.hasNext() )
+                                                    .withNextCursor( request,
+                                                                     iterator )
                                                         .buildWithTotalRowCount( totalRowsCount );
 
         long methodDuration = System.currentTimeMillis() - start;
@@ -645,8 +672,7 @@ public class RepositoryAssetOperations {
     protected void clearAllDiscussionsForAsset(final String assetId) {
         RulesRepository repo = getRulesRepository();
         AssetItem asset = repo.loadAssetByUUID( assetId );
-        asset.updateStringProperty( "",
-                                    "discussion" );
+        new Discussion().clear( asset );
         repo.save();
 
         push( "discussion",
@@ -658,12 +684,9 @@ public class RepositoryAssetOperations {
         RulesRepository repository = getRulesRepository();
         AssetItem asset = repository.loadAssetByUUID( assetId );
         Discussion dp = new Discussion();
-        List<DiscussionRecord> discussion = dp.fromString( asset.getStringProperty( Discussion.DISCUSSION_PROPERTY_KEY ) );
-        discussion.add( new DiscussionRecord( repository.getSession().getUserID(),
-                                              StringEscapeUtils.escapeXml( comment ) ) );
-        asset.updateStringProperty( dp.toString( discussion ),
-                                    Discussion.DISCUSSION_PROPERTY_KEY,
-                                    false );
+        dp.add( asset,
+                new DiscussionRecord( repository.getSession().getUserID(),
+                                      StringEscapeUtils.escapeXml( comment ) ) );
         repository.save();
 
         push( "discussion",
@@ -671,7 +694,8 @@ public class RepositoryAssetOperations {
 
         MailboxService.getInstance().recordItemUpdated( asset );
 
-        return discussion;
+        return dp.loadLatest( asset,
+                              Discussion.MAX_LOADED );
     }
 
     private void push(String messageType,
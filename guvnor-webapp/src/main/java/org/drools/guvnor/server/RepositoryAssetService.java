@@ -595,7 +595,8 @@ public class RepositoryAssetService
 
     @Restrict("#{identity.loggedIn}")
     public List<DiscussionRecord> loadDiscussionForAsset(String assetId) {
-        return new Discussion().fromString( getRulesRepository().loadAssetByUUID( assetId ).getStringProperty( Discussion.DISCUSSION_PROPERTY_KEY ) );
+        return new Discussion().loadLatest( getRulesRepository().loadAssetByUUID( assetId ),
+                                           Discussion.MAX_LOADED );
     }
 
     /**
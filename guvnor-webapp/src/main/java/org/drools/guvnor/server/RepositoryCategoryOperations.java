@@ -30,6 +30,7 @@ import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.HtmlCleaner;
 import org.drools.guvnor.server.util.LoggingHelper;
 import org.drools.guvnor.server.util.TableDisplayHandler;
+import org.drools.repository.AssetCursor;
 import org.drools.repository.AssetItemPageResult;
 import org.drools.repository.CategoryItem;
 import org.drools.repository.RulesRepository;
@@ -133,10 +134,19 @@ public class RepositoryCategoryOperations {
 
         // NOTE: Filtering is handled in repository.findAssetsByCategory()
         int numRowsToReturn = (request.getPageSize() == null ? -1 : request.getPageSize());
-        AssetItemPageResult result = getRulesRepository().findAssetsByCategory( request.getCategoryPath(),
-                                                                                false,
-                                                                                request.getStartRowIndex(),
-                                                                                numRowsToReturn );
+        AssetItemPageResult result;
+        if ( request.getCursor() != null ) {
+            result = getRulesRepository().findAssetsByCategoryAfter( request.getCategoryPath(),
+                                                                     false,
+                                                                     AssetCursor.parse( request.getCursor() ),
+                                                                     numRowsToReturn,
+                                                                     null );
+        } else {
+            result = getRulesRepository().findAssetsByCategory( request.getCategoryPath(),
+                                                                false,
+                                                                request.getStartRowIndex(),
+                                                                numRowsToReturn );
+        }
         log.debug( "Search time: " + (System.currentTimeMillis() - start) );
 
         // Populate response
@@ -151,6 +161,7 @@ public class RepositoryCategoryOperations {
                                                             .withStartRowIndex( request.getStartRowIndex() )
                                                             .withPageRowList( rowList )
                                                             .withLastPage( !hasMoreRows )
+                                                            .withNextCursor( result.nextCursor )
                                                                 .buildWithTotalRowCount( -1 );
 
         long methodDuration = System.currentTimeMillis() - start;
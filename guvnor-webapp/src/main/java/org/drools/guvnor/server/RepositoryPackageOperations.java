@@ -30,13 +30,14 @@ import org.drools.guvnor.server.cache.RuleBaseCache;
 import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.*;
 import org.drools.repository.*;
+import org.drools.repository.events.EventBus;
+import org.drools.repository.events.RepositoryEvent;
+import org.drools.repository.utils.ByteArrayOutputStream;
 import org.jboss.seam.annotations.AutoCreate;
 import org.jboss.seam.annotations.Name;
 
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutput;
 import java.util.*;
@@ -526,14 +527,20 @@ public class RepositoryPackageOperations {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
             ObjectOutput out = new DroolsObjectOutputStream(bout);
             out.writeObject(asm.getBinaryPackage());
-
-            item.updateCompiledPackage(new ByteArrayInputStream(bout.toByteArray()));
             out.flush();
             out.close();
 
+            //read straight from the serialized buffers, they are compressed (if configured) on the way into the repository
+            item.updateCompiledPackage(bout.toInputStream());
+
             updateBinaryPackage(item,
                     asm);
             getRulesRepository().save();
+            if (EventBus.getInstance().hasSubscribers()) {
+                EventBus.getInstance().publish(RepositoryEvent.forPackage(RepositoryEvent.Type.PACKAGE_BUILD,
+                        item,
+                        null));
+            }
         } catch (Exception e) {
             e.printStackTrace();
             log.error("An error occurred building the package [" + item.getName() + "]: " + e.getMessage());
@@ -547,6 +554,7 @@ public class RepositoryPackageOperations {
     private void updateBinaryPackage(PackageItem item,
                                      PackageAssembler asm) throws SerializationException {
         item.updateBinaryUpToDate(true);
+        RuleBaseCache.getInstance().remove(item.getUUID());
 
         // adding the MapBackedClassloader that is the classloader from the
         // rulebase classloader
@@ -657,11 +665,14 @@ public class RepositoryPackageOperations {
             diffs.rightName = secondSnapshotName;
         }
 
-        Iterator<AssetItem> leftExistingIter = leftPackage.getAssets();
-        while (leftExistingIter.hasNext()) {
-            AssetItem left = leftExistingIter.next();
-            if (isPackageItemDeleted(rightPackage,
-                    left)) {
+        // Both sides are read in one pass each, at the same time.
+        List<Map<String, AssetDigest>> digests = getRulesRepository().loadAssetDigests(leftPackage,
+                rightPackage);
+        Map<String, AssetDigest> leftAssets = digests.get(0);
+        Map<String, AssetDigest> rightAssets = digests.get(1);
+
+        for (AssetDigest left : leftAssets.values()) {
+            if (!rightAssets.containsKey(left.getName())) {
                 SnapshotDiff diff = new SnapshotDiff();
 
                 diff.name = left.getName();
@@ -672,29 +683,18 @@ public class RepositoryPackageOperations {
             }
         }
 
-        Iterator<AssetItem> rightExistingIter = rightPackage.getAssets();
-        while (rightExistingIter.hasNext()) {
-            AssetItem right = rightExistingIter.next();
-            AssetItem left = null;
-            if (right != null && leftPackage.containsAsset(right.getName())) {
-                left = leftPackage.loadAsset(right.getName());
-            }
+        for (AssetDigest right : rightAssets.values()) {
+            AssetDigest left = leftAssets.get(right.getName());
 
-            // Asset is deleted or added
-            if (right == null || left == null) {
+            if (left == null) {
                 SnapshotDiff diff = new SnapshotDiff();
 
-                if (left == null) {
-                    diff.name = right.getName();
-                    diff.diffType = SnapshotDiff.TYPE_ADDED;
-                    diff.rightUuid = right.getUUID();
-                }
+                diff.name = right.getName();
+                diff.diffType = SnapshotDiff.TYPE_ADDED;
+                diff.rightUuid = right.getUUID();
 
                 list.add(diff);
-            } else if (isAssetArchivedOrRestored(right,
-                    left)) { // Has the asset
-                // been archived
-                // or restored
+            } else if (right.isArchived() != left.isArchived()) {
                 SnapshotDiff diff = new SnapshotDiff();
 
                 diff.name = right.getName();
@@ -708,9 +708,7 @@ public class RepositoryPackageOperations {
                 }
 
                 list.add(diff);
-            } else if (isAssetItemUpdated(right,
-                    left)) { // Has the asset been
-                // updated
+            } else if (right.isContentChanged(left)) {
                 SnapshotDiff diff = new SnapshotDiff();
 
                 diff.name = right.getName();
@@ -726,21 +724,6 @@ public class RepositoryPackageOperations {
         return diffs;
     }
 
-    private boolean isAssetArchivedOrRestored(AssetItem right,
-                                              AssetItem left) {
-        return right.isArchived() != left.isArchived();
-    }
-
-    private boolean isAssetItemUpdated(AssetItem right,
-                                       AssetItem left) {
-        return right.getLastModified().compareTo(left.getLastModified()) != 0;
-    }
-
-    private boolean isPackageItemDeleted(PackageItem rightPackage,
-                                         AssetItem left) {
-        return !rightPackage.containsAsset(left.getName());
-    }
-
     private boolean isRightOlderThanLeft(PackageItem leftPackage,
                                          PackageItem rightPackage) {
         return leftPackage.getLastModified().compareTo(rightPackage.getLastModified()) > 0;
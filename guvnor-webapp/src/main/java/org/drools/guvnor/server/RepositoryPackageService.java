@@ -19,7 +19,6 @@ import com.google.gwt.user.client.rpc.SerializationException;
 import org.apache.commons.io.IOUtils;
 import org.drools.*;
 import org.drools.base.ClassTypeResolver;
-import org.drools.common.AbstractRuleBase;
 import org.drools.common.InternalRuleBase;
 import org.drools.common.InternalWorkingMemory;
 import org.drools.compiler.DrlParser;
@@ -31,9 +30,11 @@ import org.drools.guvnor.server.builder.AuditLogReporter;
 import org.drools.guvnor.server.builder.ClassLoaderBuilder;
 import org.drools.guvnor.server.cache.RuleBaseCache;
 import org.drools.guvnor.server.contenthandler.ModelContentHandler;
+import org.drools.guvnor.server.repository.RepositoryStartupService;
 import org.drools.guvnor.server.security.PackageUUIDType;
 import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.LoggingHelper;
+import org.drools.guvnor.server.util.TestEnvironmentSessionHelper;
 import org.drools.ide.common.client.modeldriven.testing.Scenario;
 import org.drools.lang.descr.PackageDescr;
 import org.drools.lang.descr.TypeDeclarationDescr;
@@ -64,6 +65,9 @@ public class RepositoryPackageService
     @In
     private RulesRepository             repository;
 
+    @In(required = false)
+    private RepositoryStartupService    repositoryConfiguration;
+
     private static final long           serialVersionUID            = 901123;
 
     private static final LoggingHelper  log                         = LoggingHelper.getLogger( RepositoryAssetService.class );
@@ -308,6 +312,76 @@ public class RepositoryPackageService
                                                          customSelectorName );
     }
 
+    @WebRemote
+    @Restrict("#{identity.loggedIn}")
+    public String startPackageBuild(final String packageUUID,
+                                    final boolean force,
+                                    final String buildMode,
+                                    final String statusOperator,
+                                    final String statusDescriptionValue,
+                                    final boolean enableStatusSelector,
+                                    final String categoryOperator,
+                                    final String category,
+                                    final boolean enableCategorySelector,
+                                    final String customSelectorName) throws SerializationException {
+        serviceSecurity.checkSecurityIsPackageDeveloper( packageUUID );
+        String key = BuildJobManager.getJobKey( packageUUID,
+                                                buildMode,
+                                                statusOperator,
+                                                statusDescriptionValue,
+                                                enableStatusSelector,
+                                                categoryOperator,
+                                                category,
+                                                enableCategorySelector,
+                                                customSelectorName );
+        final String userName = getRulesRepository().getSession().getUserID();
+        return BuildJobManager.getInstance().submit( key,
+                                                     packageUUID,
+                                                     userName,
+                                                     new BuildJobManager.BuildTask() {
+                                                         public BuilderResult build() throws Exception {
+                                                             // JCR sessions can not be shared between threads
+                                                             RulesRepository rulesRepository = newRulesRepository( userName );
+                                                             try {
+                                                                 RepositoryPackageOperations operations = new RepositoryPackageOperations();
+                                                                 operations.setRulesRepository( rulesRepository );
+                                                                 return operations.buildPackage( packageUUID,
+                                                                                                 force,
+                                                                                                 buildMode,
+                                                                                                 statusOperator,
+                                                                                                 statusDescriptionValue,
+                                                                                                 enableStatusSelector,
+                                                                                                 categoryOperator,
+                                                                                                 category,
+                                                                                                 enableCategorySelector,
+                                                                                                 customSelectorName );
+                                                             } finally {
+                                                                 rulesRepository.logout();
+                                                             }
+                                                         }
+                                                     } );
+    }
+
+    @WebRemote
+    @Restrict("#{identity.loggedIn}")
+    public BuildJobStatus getPackageBuildStatus(String jobId) throws SerializationException {
+        BuildJobStatus status = BuildJobManager.getInstance().getStatus( jobId );
+        if ( status == null ) {
+            throw new DetailedSerializationException( "Unknown build job.",
+                                                      "The build job [" + jobId + "] does not exist or finished too long ago." );
+        }
+        serviceSecurity.checkSecurityIsPackageDeveloper( status.getPackageUUID() );
+        return status;
+    }
+
+    private RulesRepository newRulesRepository(String userName) {
+        if ( repositoryConfiguration != null ) {
+            return new RulesRepository( repositoryConfiguration.newSession( userName ) );
+        }
+        //this is only for out of container hosted mode in GWT, and the tests
+        return new RulesRepository( TestEnvironmentSessionHelper.getSession( false ) );
+    }
+
     @WebRemote
     @Restrict("#{identity.loggedIn}")
     public void createPackageSnapshot(String packageName,
@@ -514,70 +588,87 @@ public class RepositoryPackageService
                                              RuleCoverageListener coverage) throws SerializationException {
         PackageItem item = this.getRulesRepository().loadPackage( packageName );
         SingleScenarioResult result = null;
-        // nasty classloader needed to make sure we use the same tree the whole
-        // time.
-        ClassLoader originalCL = Thread.currentThread().getContextClassLoader();
         try {
-            final RuleBase rb = loadCacheRuleBase( item );
-
-            ClassLoader cl = ((InternalRuleBase) RuleBaseCache.getInstance().get( item.getUUID() )).getRootClassLoader();
-            Thread.currentThread().setContextClassLoader( cl );
             result = runScenario( scenario,
                                   item,
-                                  cl,
-                                  rb,
+                                  loadCacheRuleBase( item ),
                                   coverage );
         } catch ( Exception e ) {
-            if ( e instanceof DetailedSerializationException ) {
-                DetailedSerializationException err = (DetailedSerializationException) e;
-                result = new SingleScenarioResult();
-                if ( err.getErrs() != null ) {
-                    result.result = new ScenarioRunResult( err.getErrs(),
-                                                           null );
-                } else {
-                    throw err;
-                }
-            } else {
-                throw new DetailedSerializationException( "Unable to run the scenario.",
-                                                          e.getMessage() );
-            }
+            result = handleScenarioException( e );
+        }
+        return result;
+    }
+
+    private SingleScenarioResult runScenario(Scenario scenario,
+                                             PackageItem item,
+                                             RuleBase rb,
+                                             RuleCoverageListener coverage) throws DetailedSerializationException {
+        // nasty classloader needed to make sure we use the same tree the whole
+        // time.
+        ClassLoader originalCL = Thread.currentThread().getContextClassLoader();
+        try {
+            ClassLoader cl = ((InternalRuleBase) rb).getRootClassLoader();
+            Thread.currentThread().setContextClassLoader( cl );
+            return runScenario( scenario,
+                                item,
+                                cl,
+                                rb,
+                                coverage );
         } finally {
             Thread.currentThread().setContextClassLoader( originalCL );
         }
-        return result;
+    }
+
+    private SingleScenarioResult handleScenarioException(Exception e) throws DetailedSerializationException {
+        if ( e instanceof DetailedSerializationException ) {
+            DetailedSerializationException err = (DetailedSerializationException) e;
+            if ( err.getErrs() != null ) {
+                SingleScenarioResult result = new SingleScenarioResult();
+                result.result = new ScenarioRunResult( err.getErrs(),
+                                                       null );
+                return result;
+            } else {
+                throw err;
+            }
+        } else {
+            throw new DetailedSerializationException( "Unable to run the scenario.",
+                                                      e.getMessage() );
+        }
     }
 
     /*
-     * Set the Rule base in a cache
+     * Set the Rule base in a cache. The rule base that was found or loaded is
+     * returned directly, as it may be evicted from the cache at any time.
      */
     private RuleBase loadCacheRuleBase(PackageItem packageItem) throws DetailedSerializationException {
-        RuleBase rb = null;
-        if ( packageItem.isBinaryUpToDate() && RuleBaseCache.getInstance().contains( packageItem.getUUID() ) ) {
-            rb = RuleBaseCache.getInstance().get( packageItem.getUUID() );
-        } else {
-            // load up the classloader we are going to use
-            ClassLoaderBuilder classLoaderBuilder = new ClassLoaderBuilder(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL));
-            ClassLoader buildCl = classLoaderBuilder.buildClassLoader();
-
-            // we have to build the package, and try again.
-            if ( packageItem.isBinaryUpToDate() ) {
-                rb = loadRuleBase( packageItem,
-                                   buildCl );
-                RuleBaseCache.getInstance().put( packageItem.getUUID(),
-                                                 rb );
-            } else {
-                BuilderResult result = repositoryPackageOperations.buildPackage( packageItem,
-                                                                                 false );
-                if ( result == null || result.getLines().size() == 0 ) {
-                    rb = loadRuleBase( packageItem,
-                                       buildCl );
-                    RuleBaseCache.getInstance().put( packageItem.getUUID(),
-                                                     rb );
-                } else throw new DetailedSerializationException( "Build error",
-                                                                 result.getLines() );
+        RuleBaseCache cache = RuleBaseCache.getInstance();
+        if ( packageItem.isBinaryUpToDate() ) {
+            RuleBase rb = cache.get( packageItem.getUUID() );
+            if ( rb != null ) {
+                return rb;
             }
+        }
 
+        long start = System.currentTimeMillis();
+        // load up the classloader we are going to use
+        ClassLoaderBuilder classLoaderBuilder = new ClassLoaderBuilder(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL));
+        ClassLoader buildCl = classLoaderBuilder.buildClassLoader();
+
+        // we have to build the package, and try again.
+        if ( !packageItem.isBinaryUpToDate() ) {
+            BuilderResult result = repositoryPackageOperations.buildPackage( packageItem,
+                                                                             false );
+            if ( result != null && result.getLines().size() > 0 ) {
+                throw new DetailedSerializationException( "Build error",
+                                                          result.getLines() );
+            }
         }
+        RuleBase rb = loadRuleBase( packageItem,
+                                    buildCl );
+        cache.put( packageItem.getUUID(),
+                   rb,
+                   packageItem.getCompiledPackageSize() );
+        cache.recordLoad( System.currentTimeMillis() - start );
         return rb;
     }
 
@@ -701,59 +792,43 @@ public class RepositoryPackageService
 
     public BulkTestRunResult runScenariosInPackage(PackageItem packageItem) throws DetailedSerializationException,
                                                                     SerializationException {
-        ClassLoader originalClassloader = Thread.currentThread().getContextClassLoader();
-        ClassLoader classloader = null;
+        if ( !packageItem.isBinaryUpToDate() ) {
+            BuilderResult result = repositoryPackageOperations.buildPackage( packageItem,
+                                                                             false );
+            if ( result != null && result.getLines().size() > 0 ) {
+                return new BulkTestRunResult( result,
+                                              null,
+                                              0,
+                                              null );
+            }
+        }
+
+        // the same rule base is used for every scenario, so it is only
+        // loaded once even if it gets evicted from the cache meanwhile.
+        RuleBase rb = loadCacheRuleBase( packageItem );
+        Package bin = rb.getPackages()[0];
 
+        ClassLoader originalClassloader = Thread.currentThread().getContextClassLoader();
         try {
-            if ( packageItem.isBinaryUpToDate() && RuleBaseCache.getInstance().contains( packageItem.getUUID() ) ) {
+            Thread.currentThread().setContextClassLoader( ((InternalRuleBase) rb).getRootClassLoader() );
 
-                AbstractRuleBase arb = (AbstractRuleBase) RuleBaseCache.getInstance().get( packageItem.getUUID() );
-                // load up the existing class loader from before
-                classloader = arb.getConfiguration().getClassLoader();
-                Thread.currentThread().setContextClassLoader( classloader );
-            } else {
-                // load up the classloader we are going to use
-                ClassLoaderBuilder classLoaderBuilder = new ClassLoaderBuilder(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL));
-                classloader = classLoaderBuilder.buildClassLoader();
-                Thread.currentThread().setContextClassLoader(classloader);
-
-                // we have to build the package, and try again.
-                if ( packageItem.isBinaryUpToDate() ) {
-                    RuleBaseCache.getInstance().put( packageItem.getUUID(),
-                                                     loadRuleBase( packageItem,
-                                                                   classloader ) );
-                } else {
-                    BuilderResult result = repositoryPackageOperations.buildPackage( packageItem,
-                                                                                     false );
-                    if ( result == null || result.getLines().size() == 0 ) {
-                        RuleBaseCache.getInstance().put( packageItem.getUUID(),
-                                                         loadRuleBase( packageItem,
-                                                                       classloader ) );
-                    } else {
-                        return new BulkTestRunResult( result,
-                                                      null,
-                                                      0,
-                                                      null );
-                    }
-                }
-            }
+            RuleCoverageListener coverage = new RuleCoverageListener( expectedRules( bin ) );
 
             AssetItemIterator it = packageItem.listAssetsByFormat( AssetFormats.TEST_SCENARIO );
             List<ScenarioResultSummary> resultSummaries = new ArrayList<ScenarioResultSummary>();
-            RuleBase rb = RuleBaseCache.getInstance().get( packageItem.getUUID() );
-            Package bin = rb.getPackages()[0];
-
-            RuleCoverageListener coverage = new RuleCoverageListener( expectedRules( bin ) );
-
             while ( it.hasNext() ) {
                 AssetItem as = it.next();
                 if ( !as.getDisabled() ) {
                     RuleAsset asset = repositoryAssetOperations.loadAsset( as );
                     Scenario sc = (Scenario) asset.getContent();
-                    runScenario( packageItem.getName(),
-                                 sc,
-                                 coverage );// runScenario(sc, res,
-                    // workingMemory).scenario;
+                    try {
+                        runScenario( sc,
+                                     packageItem,
+                                     rb,
+                                     coverage );
+                    } catch ( Exception e ) {
+                        handleScenarioException( e );
+                    }
 
                     int[] totals = sc.countFailuresTotal();
                     resultSummaries.add( new ScenarioResultSummary( totals[0],
@@ -770,7 +845,6 @@ public class RepositoryPackageService
                                           resultSummaries.toArray( summaries ),
                                           coverage.getPercentCovered(),
                                           coverage.getUnfiredRules() );
-
         } finally {
             Thread.currentThread().setContextClassLoader( originalClassloader );
         }
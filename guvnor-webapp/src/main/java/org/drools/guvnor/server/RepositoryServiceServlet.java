@@ -77,6 +77,8 @@ public class RepositoryServiceServlet extends RemoteServiceServlet
         if ( !testListenerInit ) {
             MailboxService.getInstance().init( new RulesRepository( TestEnvironmentSessionHelper.getSession( false ) ) );
             RepositoryStartupService.registerCheckinListener();
+            RepositoryStartupService.registerModelCheckinListener();
+            RepositoryStartupService.registerBuildJobListener();
             testListenerInit = true;
         }
     }
@@ -291,6 +293,32 @@ public class RepositoryServiceServlet extends RemoteServiceServlet
                                                  p9 );
     }
 
+    public java.lang.String startPackageBuild(java.lang.String p0,
+                                              boolean p1,
+                                              java.lang.String p2,
+                                              java.lang.String p3,
+                                              java.lang.String p4,
+                                              boolean p5,
+                                              java.lang.String p6,
+                                              java.lang.String p7,
+                                              boolean p8,
+                                              java.lang.String p9) throws com.google.gwt.user.client.rpc.SerializationException {
+        return getPackageService().startPackageBuild( p0,
+                                                      p1,
+                                                      p2,
+                                                      p3,
+                                                      p4,
+                                                      p5,
+                                                      p6,
+                                                      p7,
+                                                      p8,
+                                                      p9 );
+    }
+
+    public org.drools.guvnor.client.rpc.BuildJobStatus getPackageBuildStatus(java.lang.String p0) throws com.google.gwt.user.client.rpc.SerializationException {
+        return getPackageService().getPackageBuildStatus( p0 );
+    }
+
     public java.lang.String buildPackageSource(java.lang.String p0) throws com.google.gwt.user.client.rpc.SerializationException {
         return getPackageService().buildPackageSource( p0 );
     }
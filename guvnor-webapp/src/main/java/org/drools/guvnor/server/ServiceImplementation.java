@@ -68,6 +68,7 @@ import org.drools.guvnor.server.util.HtmlCleaner;
 import org.drools.guvnor.server.util.LoggingHelper;
 import org.drools.guvnor.server.util.TableDisplayHandler;
 import org.drools.ide.common.client.modeldriven.SuggestionCompletionEngine;
+import org.drools.repository.AssetCursor;
 import org.drools.repository.AssetItem;
 import org.drools.repository.AssetItemIterator;
 import org.drools.repository.AssetItemPageResult;
@@ -759,8 +760,15 @@ public class ServiceImplementation
         }
 
         long start = System.currentTimeMillis();
-        AssetItemIterator iterator = getRulesRepository().queryFullText( request.getSearchText(),
-                                                                         request.isSearchArchived() );
+        AssetItemIterator iterator;
+        if ( request.getCursor() != null ) {
+            iterator = getRulesRepository().queryFullTextAfter( request.getSearchText(),
+                                                                request.isSearchArchived(),
+                                                                AssetCursor.parse( request.getCursor() ) );
+        } else {
+            iterator = getRulesRepository().queryFullText( request.getSearchText(),
+                                                           request.isSearchArchived() );
+        }
         log.debug( "Search time: " + (System.currentTimeMillis() - start) );
 
         long totalRowsCount = iterator.getSize();
@@ -774,6 +782,8 @@ public class ServiceImplementation
                                                       .withStartRowIndex( request.getStartRowIndex() )
                                                       .withPageRowList( rowList )
                                                       .withLastPage( !bHasMoreRows )
+                                                      .withNextCursor( request,
+                                                                       iterator )
                                                           .buildWithTotalRowCount( totalRowsCount );
 
         long methodDuration = System.currentTimeMillis() - start;
@@ -797,9 +807,17 @@ public class ServiceImplementation
         DateQuery[] dates = createDateQueryForRepository( request );
 
         long start = System.currentTimeMillis();
-        AssetItemIterator iterator = getRulesRepository().query( queryMap,
-                                                                 request.isSearchArchived(),
-                                                                 dates );
+        AssetItemIterator iterator;
+        if ( request.getCursor() != null ) {
+            iterator = getRulesRepository().queryAfter( queryMap,
+                                                        request.isSearchArchived(),
+                                                        dates,
+                                                        AssetCursor.parse( request.getCursor() ) );
+        } else {
+            iterator = getRulesRepository().query( queryMap,
+                                                   request.isSearchArchived(),
+                                                   dates );
+        }
         log.debug( "Search time: " + (System.currentTimeMillis() - start) );
 
         long totalRowsCount = iterator.getSize();
@@ -813,6 +831,8 @@ public class ServiceImplementation
                                                 .withStartRowIndex( request.getStartRowIndex() )
                                                 .withPageRowList( rowList )
                                                 .withLastPage( !bHasMoreRows )
+                                                .withNextCursor( request,
+                                                                 iterator )
                                                     .buildWithTotalRowCount( totalRowsCount );
         long methodDuration = System.currentTimeMillis() - start;
         log.debug( "Queried repository (Metadata) in " + methodDuration + " ms." );
@@ -859,11 +879,20 @@ public class ServiceImplementation
         // TODO: May need to use a filter for both package and categories
         // NOTE: Filtering is handled in repository.findAssetsByState()
         int numRowsToReturn = (request.getPageSize() == null ? -1 : request.getPageSize());
-        AssetItemPageResult result = getRulesRepository().findAssetsByState( request.getStateName(),
-                                                                             false,
-                                                                             request.getStartRowIndex(),
-                                                                             numRowsToReturn,
-                                                                             new AssetItemFilter() );
+        AssetItemPageResult result;
+        if ( request.getCursor() != null ) {
+            result = getRulesRepository().findAssetsByStateAfter( request.getStateName(),
+                                                                  false,
+                                                                  AssetCursor.parse( request.getCursor() ),
+                                                                  numRowsToReturn,
+                                                                  new AssetItemFilter() );
+        } else {
+            result = getRulesRepository().findAssetsByState( request.getStateName(),
+                                                             false,
+                                                             request.getStartRowIndex(),
+                                                             numRowsToReturn,
+                                                             new AssetItemFilter() );
+        }
         log.debug( "Search time: " + (System.currentTimeMillis() - start) );
 
         // Populate response
@@ -878,6 +907,7 @@ public class ServiceImplementation
                                                     .withStartRowIndex( request.getStartRowIndex() )
                                                     .withPageRowList( rowList )
                                                     .withLastPage( !bHasMoreRows )
+                                                    .withNextCursor( result.nextCursor )
                                                         .buildWithTotalRowCount( -1 );
 
         long methodDuration = System.currentTimeMillis() - start;
@@ -17,14 +17,25 @@ package org.drools.guvnor.server;
 
 import org.drools.guvnor.client.common.AssetFormats;
 import org.drools.guvnor.server.builder.ClassLoaderBuilder;
+import org.drools.guvnor.server.cache.SuggestionCompletionEngineCache;
+import org.drools.guvnor.server.util.AssetFingerprint;
 import org.drools.guvnor.server.util.BRMSSuggestionCompletionLoader;
+import org.drools.guvnor.server.util.DroolsHeader;
 import org.drools.ide.common.client.modeldriven.SuggestionCompletionEngine;
 import org.drools.repository.PackageItem;
 
 public class SuggestionCompletionEngineLoaderInitializer {
 
     protected SuggestionCompletionEngine loadFor(final PackageItem packageItem) {
-        SuggestionCompletionEngine result = null;
+        SuggestionCompletionEngineCache cache = SuggestionCompletionEngineCache.getInstance();
+        String fingerprint = getFingerprint(packageItem);
+        SuggestionCompletionEngine result = cache.get(packageItem.getUUID(),
+                fingerprint);
+        if (result != null) {
+            return result;
+        }
+
+        long start = System.currentTimeMillis();
         ClassLoader originalCL = Thread.currentThread().getContextClassLoader();
         try {
             BRMSSuggestionCompletionLoader loader = null;
@@ -44,6 +55,23 @@ public class SuggestionCompletionEngineLoaderInitializer {
         } finally {
             Thread.currentThread().setContextClassLoader(originalCL);
         }
+        cache.put(packageItem.getUUID(),
+                fingerprint,
+                result,
+                System.currentTimeMillis() - start);
         return result;
     }
+
+    /**
+     * Identifies the package header and the versions of every asset the engine
+     * is built from.
+     */
+    String getFingerprint(PackageItem packageItem) {
+        return new AssetFingerprint()
+                .add(DroolsHeader.getDroolsHeader(packageItem))
+                .add(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL,
+                        AssetFormats.DSL))
+                .add(packageItem.listAssetsByFormat(new String[]{AssetFormats.DRL_MODEL, AssetFormats.ENUMERATION, AssetFormats.WORKING_SET}))
+                .toString();
+    }
 }
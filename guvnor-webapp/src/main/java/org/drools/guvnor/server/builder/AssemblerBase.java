@@ -40,6 +40,12 @@ abstract class AssemblerBase {
         createBuilder();
     }
 
+    protected AssemblerBase(PackageItem packageItem,
+                            BRMSPackageBuilder builder) {
+        this.packageItem = packageItem;
+        this.builder = builder;
+    }
+
     public void createBuilder() {
         builder = new BRMSPackageBuilder(packageItem);
     }
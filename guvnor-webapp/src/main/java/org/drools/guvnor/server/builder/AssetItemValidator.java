@@ -17,12 +17,15 @@
 package org.drools.guvnor.server.builder;
 
 import org.drools.guvnor.client.rpc.BuilderResult;
+import org.drools.guvnor.server.builder.CompilationContextCache.CompilationContext;
 import org.drools.guvnor.server.contenthandler.ContentHandler;
 import org.drools.guvnor.server.contenthandler.IHasCustomValidator;
 import org.drools.guvnor.server.util.BuilderResultHelper;
 import org.drools.repository.AssetItem;
 import org.drools.repository.PackageItem;
 
+import java.util.List;
+
 public class AssetItemValidator {
 
     private ContentHandler handler;
@@ -36,22 +39,98 @@ public class AssetItemValidator {
             return ((IHasCustomValidator) handler).validateAsset(assetItem);
         } else {
             // TODO: There is still one flaw here, what if the asset does not affect the build? -Rikkola-
-            BuilderValidator builderValidator = new BuilderValidator(assetItem.getPackage());
-            builderValidator.validate(assetItem);
+            PackageItem packageItem = assetItem.getPackage();
+            CompilationContextCache cache = CompilationContextCache.getInstance();
+            String fingerprint = CompilationContextCache.getFingerprint(packageItem);
+
+            CompilationContext context = cache.checkOut(packageItem.getUUID(),
+                    fingerprint);
+            BuilderValidator builderValidator = context == null ? null : buildInContext(packageItem,
+                    context,
+                    assetItem);
+            if (builderValidator == null) {
+                long start = System.currentTimeMillis();
+                builderValidator = new BuilderValidator(packageItem);
+                context = builderValidator.setUpContext(fingerprint);
+                cache.recordLoad(System.currentTimeMillis() - start);
+                if (!builderValidator.hasErrors()) {
+                    builderValidator.buildAsset(assetItem);
+                }
+            }
+            if (context != null) {
+                cache.checkIn(packageItem.getUUID(),
+                        context);
+            }
             return builderValidator.getResult();
         }
     }
 
+    /**
+     * Builds the asset into a copy of the compiled package of the context.
+     * Errors are confirmed on a builder set up from the descriptors, so an
+     * asset is never reported broken because of how the package was copied.
+     *
+     * @return null if the context no longer compiles cleanly.
+     */
+    private BuilderValidator buildInContext(PackageItem packageItem,
+                                            CompilationContext context,
+                                            AssetItem assetItem) {
+        BRMSPackageBuilder builder = context.newCompiledBuilder();
+        boolean compiled = builder != null;
+        if (compiled) {
+            BuilderValidator builderValidator = new BuilderValidator(packageItem,
+                    builder);
+            builderValidator.buildAsset(assetItem);
+            if (!builderValidator.hasErrors()) {
+                return builderValidator;
+            }
+        }
+        builder = context.newReplayBuilder();
+        if (builder == null) {
+            return null;
+        }
+        BuilderValidator replayValidator = new BuilderValidator(packageItem,
+                builder);
+        replayValidator.buildAsset(assetItem);
+        if (compiled && !replayValidator.hasErrors()) {
+            context.discardCompiledPackage();
+        }
+        return replayValidator;
+    }
+
     private class BuilderValidator extends PackageAssemblerBase {
 
         public BuilderValidator(PackageItem packageItem) {
             super(packageItem);
         }
 
-        public void validate(AssetItem assetItem) {
-            if (setUpPackage()) {
-                buildAsset(assetItem);
+        public BuilderValidator(PackageItem packageItem,
+                                BRMSPackageBuilder builder) {
+            super(packageItem,
+                    builder);
+        }
+
+        /**
+         * Sets up the package, recording what went into the builder.
+         *
+         * @return the context to validate the other assets of the package
+         *         against, or null if the package could not be set up or some
+         *         of its DRL can not be reused.
+         */
+        public CompilationContext setUpContext(String fingerprint) {
+            builder.startRecording();
+            boolean setUp = setUpPackage();
+            List<FrozenPackageDescr> packageDescrs = builder.stopRecording();
+            if (!setUp || packageDescrs == null) {
+                return null;
             }
+            return new CompilationContext(fingerprint,
+                    builder.getBuilderProperties(),
+                    builder.getModelClassLoader(),
+                    packageItem.getName(),
+                    packageDescrs,
+                    builder.getDSLMappingFiles(),
+                    builder.getPackage());
         }
 
         public BuilderResult getResult() {
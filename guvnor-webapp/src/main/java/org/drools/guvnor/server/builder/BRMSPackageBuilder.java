@@ -16,20 +16,26 @@
 
 package org.drools.guvnor.server.builder;
 
+import org.apache.commons.io.IOUtils;
 import org.drools.builder.conf.DefaultPackageNameOption;
+import org.drools.compiler.DrlParser;
+import org.drools.compiler.DroolsParserException;
 import org.drools.compiler.PackageBuilder;
 import org.drools.compiler.PackageBuilderConfiguration;
 import org.drools.guvnor.client.common.AssetFormats;
-import org.drools.lang.dsl.DSLMappingFile;
+import org.drools.lang.dsl.DSLMapping;
 import org.drools.lang.dsl.DSLMappingParseException;
 import org.drools.lang.dsl.DSLTokenizedMappingFile;
 import org.drools.lang.dsl.DefaultExpander;
+import org.drools.lang.descr.PackageDescr;
 import org.drools.repository.*;
+import org.drools.rule.Package;
 import org.drools.util.ChainedProperties;
 import org.jbpm.bpmn2.xml.BPMNDISemanticModule;
 import org.jbpm.bpmn2.xml.BPMNSemanticModule;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.*;
 
@@ -42,6 +48,11 @@ public class BRMSPackageBuilder extends PackageBuilder {
 
     private List<DSLTokenizedMappingFile> dslFiles;
     private DefaultExpander expander;
+    private final Map<Thread, List<DSLMapping>> threadMappings = new HashMap<Thread, List<DSLMapping>>();
+    private List<FrozenPackageDescr> recordedDescrs;
+    private boolean recordingReusable;
+    private Properties builderProperties;
+    private ClassLoader modelClassLoader;
 
     /**
      * In the BRMS you should not need to use this, use the getInstance factory method instead.
@@ -58,12 +69,40 @@ public class BRMSPackageBuilder extends PackageBuilder {
 
     public BRMSPackageBuilder(Properties properties, ClassLoader classLoader) {
         this(getPackageBuilderConfiguration(properties, classLoader));
+        this.builderProperties = properties;
+        this.modelClassLoader = classLoader;
+    }
+
+    /**
+     * Continues building on a package that was compiled before, for instance
+     * a copy of the package a {@link CompilationContextCache} keeps.
+     */
+    BRMSPackageBuilder(Package pkg, Properties properties, ClassLoader classLoader) {
+        super(pkg, getPackageBuilderConfiguration(properties, classLoader));
+        this.builderProperties = properties;
+        this.modelClassLoader = classLoader;
     }
 
     public BRMSPackageBuilder(PackageItem packageItem) {
-        this(getPackageBuilderConfiguration(getProperties(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.PROPERTIES, AssetFormats.CONFIGURATION),
+        this(getProperties(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.PROPERTIES, AssetFormats.CONFIGURATION),
                 packageItem.getName()),
-                new ClassLoaderBuilder(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL)).buildClassLoader()));
+                new ClassLoaderBuilder(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.MODEL)).buildClassLoader());
+    }
+
+    /**
+     * The configuration this builder was created with, null unless it was
+     * created from properties or a package.
+     */
+    public Properties getBuilderProperties() {
+        return builderProperties;
+    }
+
+    /**
+     * The class loader of the model jars this builder was created with, null
+     * unless it was created from properties or a package.
+     */
+    public ClassLoader getModelClassLoader() {
+        return modelClassLoader;
     }
 
     /**
@@ -73,8 +112,58 @@ public class BRMSPackageBuilder extends PackageBuilder {
         super.resetErrors();
     }
 
+    /**
+     * Starts keeping the package descriptors parsed from the DRL added to the
+     * builder, so they can be added to another builder later on without
+     * generating or parsing the DRL again. They are frozen before they are
+     * added, as adding a descriptor to a builder changes it.
+     */
+    void startRecording() {
+        recordedDescrs = new ArrayList<FrozenPackageDescr>();
+        recordingReusable = true;
+    }
+
+    /**
+     * @return the descriptors added since startRecording(), or null if some
+     *         of the DRL did not parse and so can not be reused.
+     */
+    List<FrozenPackageDescr> stopRecording() {
+        List<FrozenPackageDescr> result = recordingReusable ? recordedDescrs : null;
+        recordedDescrs = null;
+        return result;
+    }
+
+    @Override
+    public void addPackageFromDrl(Reader reader) throws DroolsParserException, IOException {
+        if (recordedDescrs == null) {
+            super.addPackageFromDrl(reader);
+            return;
+        }
+
+        String drl = IOUtils.toString(reader);
+        DrlParser parser = new DrlParser();
+        PackageDescr packageDescr = parser.parse(drl);
+        if (packageDescr == null || parser.hasErrors()) {
+            // Let the builder report the parser errors the usual way.
+            recordingReusable = false;
+            super.addPackageFromDrl(new StringReader(drl));
+        } else {
+            try {
+                recordedDescrs.add(FrozenPackageDescr.freeze(packageDescr));
+            } catch (IOException e) {
+                // still compiles, it just has to be generated again next time
+                recordingReusable = false;
+            }
+            addPackage(packageDescr);
+        }
+    }
+
     public void setDSLFiles(List<DSLTokenizedMappingFile> files) {
-        this.dslFiles = files;
+        synchronized (threadMappings) {
+            this.dslFiles = files;
+            this.expander = null;
+            threadMappings.clear();
+        }
     }
 
     public List<DSLTokenizedMappingFile> getDSLMappingFiles() {
@@ -93,7 +182,7 @@ public class BRMSPackageBuilder extends PackageBuilder {
             AssetItem item = it.next();
             if (!item.getDisabled()) {
                 String dslData = item.getContent();
-                DSLTokenizedMappingFile file = new DSLTokenizedMappingFile();
+                DSLTokenizedMappingFile file = new SourcedDSLMappingFile(dslData);
                 try {
                     if (file.parseAndLoad(new StringReader(dslData))) {
                         result.add(file);
@@ -188,12 +277,77 @@ public class BRMSPackageBuilder extends PackageBuilder {
      */
     public DefaultExpander getDSLExpander() {
         if (this.expander == null) {
-            expander = new DefaultExpander();
-            for (DSLMappingFile file : this.dslFiles) {
-                expander.addDSLMapping(file.getMapping());
-            }
+            expander = newDSLExpander();
         }
         return expander;
     }
 
+    /**
+     * Returns a new expander for the DSLs of this package. Expanders keep track
+     * of their errors, and the mappings they expand with are not meant to be
+     * shared, so each thread gets its own expander and its own copy of the
+     * mappings. The copies belong to this builder rather than to the (pooled)
+     * threads, so they go away with it and setDSLFiles drops all of them.
+     */
+    public DefaultExpander newDSLExpander() {
+        DefaultExpander newExpander = new DefaultExpander();
+        for (DSLMapping mapping : getThreadMappings()) {
+            newExpander.addDSLMapping(mapping);
+        }
+        return newExpander;
+    }
+
+    private List<DSLMapping> getThreadMappings() {
+        Thread thread = Thread.currentThread();
+        List<DSLTokenizedMappingFile> files;
+        synchronized (threadMappings) {
+            List<DSLMapping> mappings = threadMappings.get(thread);
+            if (mappings != null) {
+                return mappings;
+            }
+            files = this.dslFiles;
+        }
+        List<DSLMapping> mappings = new ArrayList<DSLMapping>();
+        if (files != null) {
+            for (DSLTokenizedMappingFile file : files) {
+                mappings.add(copyMapping(file));
+            }
+        }
+        synchronized (threadMappings) {
+            // only keep the copies if the files did not change meanwhile
+            if (files == this.dslFiles) {
+                threadMappings.put(thread, mappings);
+            }
+        }
+        return mappings;
+    }
+
+    private static DSLMapping copyMapping(DSLTokenizedMappingFile file) {
+        if (file instanceof SourcedDSLMappingFile) {
+            DSLTokenizedMappingFile copy = new DSLTokenizedMappingFile();
+            try {
+                if (copy.parseAndLoad(new StringReader(((SourcedDSLMappingFile) file).source))) {
+                    return copy.getMapping();
+                }
+            } catch (IOException e) {
+                throw new RulesRepositoryException(e);
+            }
+        }
+        // files handed in by callers carry no source to copy from
+        return file.getMapping();
+    }
+
+    /**
+     * A DSL file that remembers what it was parsed from, so that it can be parsed
+     * again for each thread that expands with it.
+     */
+    private static class SourcedDSLMappingFile extends DSLTokenizedMappingFile {
+
+        private final String source;
+
+        SourcedDSLMappingFile(String source) {
+            this.source = source;
+        }
+    }
+
 }
@@ -16,7 +16,6 @@
 
 package org.drools.guvnor.server.builder;
 
-import org.drools.repository.AssetItem;
 import org.drools.repository.AssetItemIterator;
 import org.drools.repository.RulesRepositoryException;
 import org.drools.rule.MapBackedClassLoader;
@@ -25,46 +24,41 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
+/**
+ * Builds the class loader of the model jars of a package. When the jars come
+ * from the repository they are taken from the {@link ModelJarCache}, so
+ * packages that use the same model assets share a single class loader.
+ */
 public class ClassLoaderBuilder {
 
+    private final ModelJarCache.ModelJars modelJars;
     private final List<JarInputStream> jarInputStreams;
 
     public ClassLoaderBuilder(AssetItemIterator assetItemIterator) {
-        this.jarInputStreams = getJars(assetItemIterator);
+        this.modelJars = ModelJarCache.getInstance().getModelJars(assetItemIterator);
+        this.jarInputStreams = null;
     }
 
     // TODO: Remove this, it is only here for testing -Rikkola-
     ClassLoaderBuilder(List<JarInputStream> jarInputStreams) {
+        this.modelJars = null;
         this.jarInputStreams = jarInputStreams;
     }
 
     /**
-     * Load up all the Jars for the given package.
-     *
-     * @param assetItemIterator
+     * Streams over the jars. The cached jars are read from memory, so every
+     * call returns new streams.
      */
-    private List<JarInputStream> getJars(AssetItemIterator assetItemIterator) {
-        List<JarInputStream> jarInputStreams = new ArrayList<JarInputStream>();
-        while (assetItemIterator.hasNext()) {
-            AssetItem item = assetItemIterator.next();
-            if (item.getBinaryContentAttachment() != null) {
-                try {
-                    jarInputStreams.add(new JarInputStream(item.getBinaryContentAttachment(), false));
-                } catch (IOException e) {
-                    //TODO: Not a place for RulesRepositoryException -Rikkola-
-                    throw new RulesRepositoryException(e);
-                }
-            }
-        }
-        return jarInputStreams;
-    }
-
     public List<JarInputStream> getJarInputStreams() {
+        if (modelJars != null) {
+            return modelJars.getJarInputStreams();
+        }
         return jarInputStreams;
     }
 
@@ -72,8 +66,18 @@ public class ClassLoaderBuilder {
      * For a given list of Jars, create a class loader.
      */
     public MapBackedClassLoader buildClassLoader() {
-        MapBackedClassLoader mapBackedClassLoader = getMapBackedClassLoader();
+        if (modelJars != null) {
+            return modelJars.getClassLoader(getParentClassLoader());
+        }
+        return newClassLoader(getParentClassLoader(),
+                readResources(jarInputStreams));
+    }
 
+    /**
+     * Reads all the resources, apart from the Java sources, of the given jars.
+     */
+    static Map<String, byte[]> readResources(List<JarInputStream> jarInputStreams) {
+        Map<String, byte[]> resources = new LinkedHashMap<String, byte[]>();
         try {
             for (JarInputStream jis : jarInputStreams) {
                 JarEntry entry = null;
@@ -86,7 +90,7 @@ public class ClassLoaderBuilder {
                             out.write(buf, 0, len);
                         }
 
-                        mapBackedClassLoader.addResource(entry.getName(), out.toByteArray());
+                        resources.put(entry.getName(), out.toByteArray());
                     }
                 }
 
@@ -95,16 +99,20 @@ public class ClassLoaderBuilder {
             //TODO: Not a place for RulesRepositoryException -Rikkola-
             throw new RulesRepositoryException(e);
         }
-
-        return mapBackedClassLoader;
+        return resources;
     }
 
-    private MapBackedClassLoader getMapBackedClassLoader() {
-        return AccessController.doPrivileged(new PrivilegedAction<MapBackedClassLoader>() {
+    static MapBackedClassLoader newClassLoader(final ClassLoader parent,
+                                               Map<String, byte[]> resources) {
+        MapBackedClassLoader mapBackedClassLoader = AccessController.doPrivileged(new PrivilegedAction<MapBackedClassLoader>() {
             public MapBackedClassLoader run() {
-                return new MapBackedClassLoader(getParentClassLoader());
+                return new MapBackedClassLoader(parent);
             }
         });
+        for (Map.Entry<String, byte[]> resource : resources.entrySet()) {
+            mapBackedClassLoader.addResource(resource.getKey(), resource.getValue());
+        }
+        return mapBackedClassLoader;
     }
 
     private ClassLoader getParentClassLoader() {
@@ -116,6 +124,9 @@ public class ClassLoaderBuilder {
     }
 
     public boolean hasJars() {
+        if (modelJars != null) {
+            return modelJars.hasJars();
+        }
         return jarInputStreams != null && !jarInputStreams.isEmpty();
     }
 }
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.drools.core.util.DroolsStreamUtils;
+import org.drools.guvnor.client.common.AssetFormats;
+import org.drools.guvnor.server.cache.CacheStatistics;
+import org.drools.guvnor.server.util.AssetFingerprint;
+import org.drools.guvnor.server.util.DroolsHeader;
+import org.drools.lang.descr.PackageDescr;
+import org.drools.lang.dsl.DSLTokenizedMappingFile;
+import org.drools.repository.PackageItem;
+import org.drools.rule.Package;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Keeps the compilation context of recently validated packages: the builder
+ * configuration, the model class loader, the DSL mappings, and the package
+ * header, declared types and functions both as the package they compiled to
+ * and as the descriptors they were parsed to. Validating a single asset then
+ * only needs a copy of the compiled package to compile that asset into,
+ * instead of reading, parsing and compiling all of it again. Should the
+ * package not copy, a fresh builder gets copies of the descriptors instead.
+ * <p/>
+ * A context is stored with the fingerprint of the assets it was built from
+ * and is checked out for the length of a validation, like the compiled assets
+ * of {@link CompiledAssetCache}, so a context is never used by two threads at
+ * the same time.
+ */
+public class CompilationContextCache {
+
+    public static final String MAX_PACKAGES_PROPERTY = "guvnor.validation.contextCache.maxPackages";
+
+    private static final int DEFAULT_MAX_PACKAGES = 32;
+
+    private static final CompilationContextCache INSTANCE = new CompilationContextCache(Integer.getInteger(MAX_PACKAGES_PROPERTY,
+            DEFAULT_MAX_PACKAGES));
+
+    private final Map<String, CompilationContext> contexts;
+
+    private long hitCount;
+    private long missCount;
+    private long loadCount;
+    private long totalLoadTime;
+    private long evictionCount;
+
+    CompilationContextCache(final int maxPackages) {
+        this.contexts = new LinkedHashMap<String, CompilationContext>(16, 0.75f, true) {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<String, CompilationContext> eldest) {
+                if (size() > maxPackages) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static CompilationContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Identifies the versions of everything that goes into the compilation
+     * context of the package.
+     */
+    static String getFingerprint(PackageItem packageItem) {
+        return new AssetFingerprint()
+                .add(packageItem.getName())
+                .add(DroolsHeader.getDroolsHeader(packageItem))
+                .add(packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.PROPERTIES,
+                        AssetFormats.CONFIGURATION,
+                        AssetFormats.MODEL,
+                        AssetFormats.DRL_MODEL,
+                        AssetFormats.DSL,
+                        AssetFormats.FUNCTION))
+                .toString();
+    }
+
+    /**
+     * Takes the context of a package out of the cache.
+     *
+     * @return null if there is no context built from the same fingerprint.
+     */
+    synchronized CompilationContext checkOut(String packageUUID,
+                                             String fingerprint) {
+        CompilationContext context = contexts.remove(packageUUID);
+        if (context == null || !context.fingerprint.equals(fingerprint)) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return context;
+    }
+
+    synchronized void checkIn(String packageUUID,
+                              CompilationContext context) {
+        contexts.put(packageUUID,
+                context);
+    }
+
+    /**
+     * Records the time it took to set up a package for a context that was not
+     * found in the cache.
+     */
+    synchronized void recordLoad(long loadTime) {
+        loadCount++;
+        totalLoadTime += loadTime;
+    }
+
+    public synchronized void remove(String packageUUID) {
+        contexts.remove(packageUUID);
+    }
+
+    public synchronized void clearCache() {
+        contexts.clear();
+    }
+
+    public synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hitCount,
+                missCount,
+                loadCount,
+                totalLoadTime,
+                evictionCount,
+                contexts.size(),
+                0);
+    }
+
+    /**
+     * Everything a single asset of a package is compiled against.
+     */
+    static class CompilationContext {
+
+        private final String fingerprint;
+        private final Properties properties;
+        private final ClassLoader classLoader;
+        private final String packageName;
+        private final List<FrozenPackageDescr> packageDescrs;
+        private final List<DSLTokenizedMappingFile> dslFiles;
+        private byte[] compiledPackage;
+
+        CompilationContext(String fingerprint,
+                           Properties properties,
+                           ClassLoader classLoader,
+                           String packageName,
+                           List<FrozenPackageDescr> packageDescrs,
+                           List<DSLTokenizedMappingFile> dslFiles,
+                           Package compiledPackage) {
+            this.fingerprint = fingerprint;
+            this.properties = properties;
+            this.classLoader = classLoader;
+            this.packageName = packageName;
+            this.packageDescrs = packageDescrs;
+            this.dslFiles = dslFiles;
+            if (compiledPackage != null) {
+                try {
+                    this.compiledPackage = DroolsStreamUtils.streamOut(compiledPackage);
+                } catch (IOException e) {
+                    this.compiledPackage = null;
+                }
+            }
+        }
+
+        /**
+         * @return a new builder on a copy of the compiled package, with the
+         *         DSLs of the package already added, or null if the package
+         *         does not copy.
+         */
+        BRMSPackageBuilder newCompiledBuilder() {
+            if (compiledPackage == null) {
+                return null;
+            }
+            BRMSPackageBuilder builder;
+            try {
+                Package pkg = (Package) DroolsStreamUtils.streamIn(compiledPackage,
+                        classLoader);
+                builder = new BRMSPackageBuilder(pkg,
+                        properties,
+                        classLoader);
+            } catch (Exception e) {
+                discardCompiledPackage();
+                return null;
+            }
+            if (builder.hasErrors()) {
+                discardCompiledPackage();
+                return null;
+            }
+            builder.setDSLFiles(dslFiles);
+            return builder;
+        }
+
+        /**
+         * Validates against the descriptors only from now on, for a compiled
+         * package that does not copy or does not compile assets like the
+         * descriptors do.
+         */
+        void discardCompiledPackage() {
+            compiledPackage = null;
+        }
+
+        /**
+         * @return a new builder with copies of the descriptors of the package
+         *         header, declared types and functions and the DSLs of the
+         *         package added, or null if they no longer compile cleanly.
+         */
+        BRMSPackageBuilder newReplayBuilder() {
+            BRMSPackageBuilder builder = new BRMSPackageBuilder(properties,
+                    classLoader);
+            builder.addPackage(new PackageDescr(packageName));
+            try {
+                for (FrozenPackageDescr packageDescr : packageDescrs) {
+                    builder.addPackage(packageDescr.copy());
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            if (builder.hasErrors()) {
+                return null;
+            }
+            builder.setDSLFiles(dslFiles);
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.drools.guvnor.server.cache.CacheStatistics;
+import org.drools.repository.AssetItem;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the package descriptors parsed from the generated DRL of the rule
+ * assets of recently built packages, so incremental builds only generate and
+ * parse the DRL of the assets that changed since the last build. Entries are
+ * keyed by asset UUID, and are used as long as the version number and last
+ * modified date of the asset stay the same.
+ * <p/>
+ * A builder changes the descriptors added to it (merging in the imports and
+ * globals of the package, for instance), so they are kept frozen and each
+ * build adds copies of them, see {@link FrozenPackageDescr}.
+ * <p/>
+ * The assets of a package are checked out for the length of a build, so two
+ * builds of the same package never share descriptors: the second one simply
+ * compiles everything.
+ */
+public class CompiledAssetCache {
+
+    public static final String MAX_PACKAGES_PROPERTY = "guvnor.build.incremental.maxPackages";
+
+    private static final int DEFAULT_MAX_PACKAGES = 32;
+
+    private static final CompiledAssetCache INSTANCE = new CompiledAssetCache(Integer.getInteger(MAX_PACKAGES_PROPERTY,
+            DEFAULT_MAX_PACKAGES));
+
+    private final Map<String, CompiledAssets> packages;
+
+    private final AtomicLong reusedCount = new AtomicLong();
+    private final AtomicLong recompiledCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    CompiledAssetCache(final int maxPackages) {
+        this.packages = new LinkedHashMap<String, CompiledAssets>(16, 0.75f, true) {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledAssets> eldest) {
+                if (size() > maxPackages) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static CompiledAssetCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Takes the compiled assets of a package out of the cache. If the build
+     * context changed since they were compiled (for example a DSL was
+     * updated), they are all dropped.
+     */
+    synchronized CompiledAssets checkOut(String packageUUID,
+                                         String buildContext) {
+        CompiledAssets compiledAssets = packages.remove(packageUUID);
+        if (compiledAssets == null || !compiledAssets.buildContext.equals(buildContext)) {
+            return new CompiledAssets(buildContext);
+        }
+        return compiledAssets;
+    }
+
+    synchronized void checkIn(String packageUUID,
+                              CompiledAssets compiledAssets) {
+        reusedCount.addAndGet(compiledAssets.reused);
+        recompiledCount.addAndGet(compiledAssets.recompiled);
+        compiledAssets.reused = 0;
+        compiledAssets.recompiled = 0;
+        packages.put(packageUUID,
+                compiledAssets);
+    }
+
+    public synchronized void remove(String packageUUID) {
+        packages.remove(packageUUID);
+    }
+
+    public synchronized void clearCache() {
+        packages.clear();
+    }
+
+    /**
+     * Hits are assets that were reused, misses and loads are assets that had
+     * to be compiled again. The size is the number of packages.
+     */
+    public synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(reusedCount.get(),
+                recompiledCount.get(),
+                recompiledCount.get(),
+                0,
+                evictionCount.get(),
+                packages.size(),
+                0);
+    }
+
+    private static long getLastModified(AssetItem asset) {
+        Calendar lastModified = asset.getLastModified();
+        return lastModified == null ? 0 : lastModified.getTimeInMillis();
+    }
+
+    /**
+     * The compiled assets of one package.
+     */
+    static class CompiledAssets {
+
+        private final String buildContext;
+        private final Map<String, CompiledAsset> assets = new HashMap<String, CompiledAsset>();
+        private int reused;
+        private int recompiled;
+
+        CompiledAssets(String buildContext) {
+            this.buildContext = buildContext;
+        }
+
+        CompiledAsset get(AssetItem asset) {
+            CompiledAsset compiledAsset = assets.get(asset.getUUID());
+            if (compiledAsset != null && compiledAsset.isSameVersion(asset)) {
+                reused++;
+                return compiledAsset;
+            }
+            recompiled++;
+            return null;
+        }
+
+        void put(AssetItem asset,
+                 List<FrozenPackageDescr> packageDescrs,
+                 List<ContentAssemblyError> errors) {
+            assets.put(asset.getUUID(),
+                    new CompiledAsset(asset.getName(),
+                            asset.getVersionNumber(),
+                            getLastModified(asset),
+                            packageDescrs,
+                            errors));
+        }
+
+        int getReused() {
+            return reused;
+        }
+
+        int getRecompiled() {
+            return recompiled;
+        }
+    }
+
+    static class CompiledAsset {
+
+        private final String name;
+        private final long versionNumber;
+        private final long lastModified;
+        private final List<FrozenPackageDescr> packageDescrs;
+        private final List<ContentAssemblyError> errors;
+
+        CompiledAsset(String name,
+                      long versionNumber,
+                      long lastModified,
+                      List<FrozenPackageDescr> packageDescrs,
+                      List<ContentAssemblyError> errors) {
+            this.name = name;
+            this.versionNumber = versionNumber;
+            this.lastModified = lastModified;
+            this.packageDescrs = Collections.unmodifiableList(new ArrayList<FrozenPackageDescr>(packageDescrs));
+            this.errors = errors;
+        }
+
+        /**
+         * Assets can be saved without being checked in, so the version number
+         * alone does not tell whether the content changed.
+         */
+        boolean isSameVersion(AssetItem asset) {
+            return versionNumber == asset.getVersionNumber()
+                    && lastModified == getLastModified(asset)
+                    && name.equals(asset.getName());
+        }
+
+        List<FrozenPackageDescr> getPackageDescrs() {
+            return packageDescrs;
+        }
+
+        /**
+         * Errors the content handler reported while generating the DRL, for
+         * example DSL expansion errors.
+         */
+        List<ContentAssemblyError> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.drools.core.util.DroolsStreamUtils;
+import org.drools.lang.descr.PackageDescr;
+
+import java.io.IOException;
+
+/**
+ * A package descriptor as it was parsed, before any builder changed it (a
+ * builder merges the imports and globals of the package into the descriptors
+ * added to it, for instance). It is kept serialized, so nothing can change
+ * it, and each {@link #copy()} is a deep copy for one builder to add.
+ */
+final class FrozenPackageDescr {
+
+    private final byte[] bytes;
+
+    private FrozenPackageDescr(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Freezes the descriptor, which must not have been added to a builder yet.
+     */
+    static FrozenPackageDescr freeze(PackageDescr packageDescr) throws IOException {
+        return new FrozenPackageDescr(DroolsStreamUtils.streamOut(packageDescr));
+    }
+
+    /**
+     * @return a copy of the descriptor that is not shared with anyone.
+     */
+    PackageDescr copy() throws IOException {
+        try {
+            return (PackageDescr) DroolsStreamUtils.streamIn(bytes,
+                    PackageDescr.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
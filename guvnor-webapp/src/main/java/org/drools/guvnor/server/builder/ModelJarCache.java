@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.apache.commons.io.IOUtils;
+import org.drools.guvnor.server.cache.CacheStatistics;
+import org.drools.repository.AssetItem;
+import org.drools.repository.RulesRepositoryException;
+import org.drools.rule.MapBackedClassLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.SoftReference;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarInputStream;
+
+/**
+ * A process wide cache of the contents of model jars. The jars of a package are
+ * keyed by a digest of the UUIDs, version numbers and modification dates of its
+ * model assets, so packages that use the same model assets share the same
+ * entry and, as long as they ask for it with the same parent, the same class
+ * loader.
+ * <p/>
+ * Entries are evicted when one of their model assets is checked in, or when
+ * the cache holds more than <code>guvnor.modeljarcache.maxEntries</code>
+ * entries or more than <code>guvnor.modeljarcache.maxBytes</code> bytes of
+ * jars, least recently used first.
+ * <p/>
+ * Only the jars themselves are kept. The shared class loader is built from
+ * them when it is first asked for and is softly referenced, so it is built
+ * again if the memory is needed elsewhere.
+ */
+public class ModelJarCache {
+
+    public static final String MAX_ENTRIES_PROPERTY = "guvnor.modeljarcache.maxEntries";
+
+    public static final String MAX_BYTES_PROPERTY = "guvnor.modeljarcache.maxBytes";
+
+    private static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final ModelJarCache INSTANCE = new ModelJarCache(Integer.getInteger(MAX_ENTRIES_PROPERTY,
+            DEFAULT_MAX_ENTRIES),
+            Long.getLong(MAX_BYTES_PROPERTY,
+                    DEFAULT_MAX_BYTES));
+
+    private final Map<String, ModelJars> entries;
+    private final long maxBytes;
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long loadCount;
+    private long totalLoadTime;
+    private long evictionCount;
+
+    ModelJarCache(final int maxEntries) {
+        this(maxEntries,
+                Long.MAX_VALUE);
+    }
+
+    ModelJarCache(final int maxEntries,
+                  long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<String, ModelJars>(16, 0.75f, true) {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<String, ModelJars> eldest) {
+                if (size() > maxEntries) {
+                    evictionCount++;
+                    weight -= eldest.getValue().weight;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static ModelJarCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the jars of the given model assets, reading them from the
+     * repository only if no package with the same model assets has asked for
+     * them before. The attachments are read on the calling thread.
+     */
+    ModelJars getModelJars(Iterator<AssetItem> modelAssets) {
+        List<AssetItem> assets = new ArrayList<AssetItem>();
+        while (modelAssets.hasNext()) {
+            assets.add(modelAssets.next());
+        }
+        String key = getKey(assets);
+
+        synchronized (this) {
+            ModelJars modelJars = entries.get(key);
+            if (modelJars != null) {
+                hitCount++;
+                return modelJars;
+            }
+            missCount++;
+        }
+
+        long start = System.currentTimeMillis();
+        ModelJars modelJars = ModelJars.load(assets);
+
+        synchronized (this) {
+            // Another thread may have loaded the same jars in the meantime
+            ModelJars existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key,
+                    modelJars);
+            weight += modelJars.weight;
+            evictOverweight(modelJars);
+            loadCount++;
+            totalLoadTime += System.currentTimeMillis() - start;
+        }
+        return modelJars;
+    }
+
+    /**
+     * Drops the least recently used entries until the jars fit in maxBytes,
+     * keeping the one that was just added whatever its size.
+     */
+    private void evictOverweight(ModelJars added) {
+        for (Iterator<ModelJars> it = entries.values().iterator(); weight > maxBytes && it.hasNext(); ) {
+            ModelJars modelJars = it.next();
+            if (modelJars != added) {
+                it.remove();
+                weight -= modelJars.weight;
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Drops every entry that contains the given model asset.
+     */
+    public synchronized void evict(String assetUUID) {
+        for (Iterator<ModelJars> it = entries.values().iterator(); it.hasNext(); ) {
+            ModelJars modelJars = it.next();
+            if (modelJars.assetUUIDs.contains(assetUUID)) {
+                it.remove();
+                weight -= modelJars.weight;
+                evictionCount++;
+            }
+        }
+    }
+
+    public synchronized void clearCache() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * The weight is the number of bytes held by the cached jars.
+     */
+    public synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hitCount,
+                missCount,
+                loadCount,
+                totalLoadTime,
+                evictionCount,
+                entries.size(),
+                weight);
+    }
+
+    private static String getKey(List<AssetItem> assets) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (AssetItem asset : assets) {
+                Calendar lastModified = asset.getLastModified();
+                String id = asset.getUUID() + ":" + asset.getVersionNumber() + ":" + (lastModified == null ? 0 : lastModified.getTimeInMillis()) + "\n";
+                digest.update(id.getBytes("UTF-8"));
+            }
+            return new BigInteger(1,
+                    digest.digest()).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The jars of a set of model assets. The contents are never modified once
+     * loaded, so they can be shared between threads.
+     */
+    static class ModelJars {
+
+        private final Set<String> assetUUIDs;
+        private final List<byte[]> jars;
+        private final long weight;
+
+        private SoftReference<MapBackedClassLoader> classLoader;
+        private ClassLoader classLoaderParent;
+
+        ModelJars(Set<String> assetUUIDs,
+                  List<byte[]> jars) {
+            this.assetUUIDs = assetUUIDs;
+            this.jars = jars;
+
+            long weight = 0;
+            for (byte[] jar : jars) {
+                weight += jar.length;
+            }
+            this.weight = weight;
+        }
+
+        static ModelJars load(List<AssetItem> assets) {
+            Set<String> assetUUIDs = new HashSet<String>();
+            List<byte[]> jars = new ArrayList<byte[]>();
+            for (AssetItem asset : assets) {
+                assetUUIDs.add(asset.getUUID());
+                InputStream in = asset.getBinaryContentAttachment();
+                if (in != null) {
+                    try {
+                        jars.add(IOUtils.toByteArray(in));
+                    } catch (IOException e) {
+                        throw new RulesRepositoryException(e);
+                    } finally {
+                        IOUtils.closeQuietly(in);
+                    }
+                }
+            }
+            return new ModelJars(assetUUIDs,
+                    jars);
+        }
+
+        boolean hasJars() {
+            return !jars.isEmpty();
+        }
+
+        /**
+         * Fresh streams over the cached jars, for callers that read the jars
+         * themselves.
+         */
+        List<JarInputStream> getJarInputStreams() {
+            List<JarInputStream> jarInputStreams = new ArrayList<JarInputStream>();
+            try {
+                for (byte[] jar : jars) {
+                    jarInputStreams.add(new JarInputStream(new ByteArrayInputStream(jar),
+                            false));
+                }
+            } catch (IOException e) {
+                throw new RulesRepositoryException(e);
+            }
+            return jarInputStreams;
+        }
+
+        /**
+         * The class loader is shared by everyone asking with the same parent
+         * as whoever asked first. A different parent gets a class loader of its
+         * own, built from the cached jars.
+         */
+        synchronized MapBackedClassLoader getClassLoader(ClassLoader parent) {
+            MapBackedClassLoader shared = classLoader == null ? null : classLoader.get();
+            if (shared != null && classLoaderParent == parent) {
+                return shared;
+            }
+            MapBackedClassLoader newClassLoader = ClassLoaderBuilder.newClassLoader(parent,
+                    ClassLoaderBuilder.readResources(getJarInputStreams()));
+            if (shared == null) {
+                classLoader = new SoftReference<MapBackedClassLoader>(newClassLoader);
+                classLoaderParent = parent;
+            }
+            return newClassLoader;
+        }
+    }
+}
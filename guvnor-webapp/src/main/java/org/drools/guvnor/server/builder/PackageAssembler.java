@@ -16,16 +16,33 @@
 
 package org.drools.guvnor.server.builder;
 
+import org.drools.compiler.DroolsParserException;
 import org.drools.guvnor.client.common.AssetFormats;
+import org.drools.guvnor.server.contenthandler.ContentHandler;
+import org.drools.guvnor.server.contenthandler.ContentManager;
+import org.drools.guvnor.server.contenthandler.ICompilable;
+import org.drools.guvnor.server.contenthandler.IParallelCompilable;
+import org.drools.guvnor.server.contenthandler.IRuleAsset;
 import org.drools.guvnor.server.selector.AssetSelector;
 import org.drools.guvnor.server.selector.BuiltInSelector;
 import org.drools.guvnor.server.selector.SelectorManager;
+import org.drools.guvnor.server.util.DroolsHeader;
 import org.drools.guvnor.server.util.LoggingHelper;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetItemIterator;
 import org.drools.repository.PackageItem;
+import org.drools.repository.RulesRepositoryException;
 import org.drools.rule.Package;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This assembles packages in the BRMS into binary package objects, and deals
@@ -38,6 +55,11 @@ public class PackageAssembler extends PackageAssemblerBase {
 
     private final PackageAssemblerConfiguration configuration;
     private AssetSelector selector;
+    private CompiledAssetCache.CompiledAssets compiledAssets;
+    private int reusedAssets;
+    private int recompiledAssets;
+    private ParallelAssetCompiler parallelCompiler;
+    private final LinkedList<PendingAsset> pendingAssets = new LinkedList<PendingAsset>();
 
     public PackageAssembler(PackageItem packageItem) {
         this(packageItem,
@@ -69,12 +91,159 @@ public class PackageAssembler extends PackageAssemblerBase {
     private void loadAssets() {
         StringBuilder includedAssets = new StringBuilder("Following assets have been included in package build: ");
 
-        loadDRLAssets(includedAssets);
-        loadAllButDRLAssets(includedAssets);
+        if (configuration.isIncrementalBuild()) {
+            compiledAssets = CompiledAssetCache.getInstance().checkOut(packageItem.getUUID(),
+                    getIncrementalBuildContext());
+        }
+        if (configuration.getParallelism() > 1) {
+            parallelCompiler = new ParallelAssetCompiler(builder,
+                    configuration.getParallelism());
+        }
+        try {
+            loadDRLAssets(includedAssets);
+            loadAllButDRLAssets(includedAssets);
+            mergePendingAssets(0);
+        } finally {
+            if (parallelCompiler != null) {
+                for (PendingAsset pendingAsset : pendingAssets) {
+                    pendingAsset.cancel();
+                }
+                pendingAssets.clear();
+                parallelCompiler = null;
+            }
+            if (compiledAssets != null) {
+                reusedAssets = compiledAssets.getReused();
+                recompiledAssets = compiledAssets.getRecompiled();
+                CompiledAssetCache.getInstance().checkIn(packageItem.getUUID(),
+                        compiledAssets);
+                compiledAssets = null;
+                log.info("Incremental build of package [" + packageItem.getName() + "] reused " + reusedAssets + " assets and recompiled " + recompiledAssets + " assets.");
+            }
+        }
 
         log.info(includedAssets.toString());
     }
 
+    /**
+     * The generated DRL of rule assets also depends on the package header,
+     * the DSLs and the category rules of the package, if any of these change
+     * nothing can be reused.
+     */
+    private String getIncrementalBuildContext() {
+        StringBuilder context = new StringBuilder();
+        context.append(DroolsHeader.getDroolsHeader(packageItem)).append(';');
+        AssetItemIterator dslIterator = packageItem.listAssetsWithVersionsSpecifiedByDependenciesByFormat(AssetFormats.DSL);
+        while (dslIterator.hasNext()) {
+            AssetItem dsl = dslIterator.next();
+            context.append(dsl.getUUID()).append(':').append(dsl.getVersionNumber()).append(':').append(dsl.getDisabled()).append(';');
+        }
+        context.append(packageItem.getCategoryRules(true)).append(';').append(packageItem.getCategoryRules(false));
+        return context.toString();
+    }
+
+    /**
+     * In incremental mode the package descriptors of rule assets that did not
+     * change since the last build are added to the builder again, as copies
+     * of the descriptors parsed the first time. Other compilable assets
+     * (processes etc) are always compiled.
+     */
+    @Override
+    protected void compile(AssetItem asset, ICompilable contentHandler) throws DroolsParserException, IOException {
+        if (compiledAssets == null || !(contentHandler instanceof IRuleAsset)) {
+            super.compile(asset, contentHandler);
+            return;
+        }
+
+        CompiledAssetCache.CompiledAsset compiledAsset = compiledAssets.get(asset);
+        if (compiledAsset == null) {
+            int errorCount = errorLogger.getErrors().size();
+            List<FrozenPackageDescr> packageDescrs;
+            builder.startRecording();
+            try {
+                contentHandler.compile(builder,
+                        asset,
+                        errorLogger);
+            } finally {
+                packageDescrs = builder.stopRecording();
+            }
+            if (packageDescrs != null) {
+                compiledAssets.put(asset,
+                        packageDescrs,
+                        new ArrayList<ContentAssemblyError>(errorLogger.getErrors().subList(errorCount,
+                                errorLogger.getErrors().size())));
+            }
+        } else {
+            reuse(compiledAsset);
+        }
+
+        if (builder.hasErrors()) {
+            logErrors(asset);
+        }
+    }
+
+    private void reuse(CompiledAssetCache.CompiledAsset compiledAsset) throws DroolsParserException, IOException {
+        for (ContentAssemblyError error : compiledAsset.getErrors()) {
+            errorLogger.logError(error);
+        }
+        for (FrozenPackageDescr packageDescr : compiledAsset.getPackageDescrs()) {
+            builder.addPackage(packageDescr.copy());
+        }
+    }
+
+    /**
+     * In parallel mode the DRL of rule assets is generated and parsed by the
+     * compiler threads, while this thread reads the next assets. The results
+     * are added to the builder in the same order as in a serial build, so the
+     * errors are reported the same way.
+     */
+    private void scheduleAsset(AssetItem asset) {
+        ContentHandler contentHandler = ContentManager.getHandler(asset.getFormat());
+        PendingAsset pendingAsset = new PendingAsset(asset);
+        if (contentHandler instanceof IParallelCompilable && !asset.getDisabled()) {
+            pendingAsset.compiledAsset = compiledAssets == null ? null : compiledAssets.get(asset);
+            if (pendingAsset.compiledAsset == null) {
+                IParallelCompilable parallelCompilable = (IParallelCompilable) contentHandler;
+                pendingAsset.generatedDRL = parallelCompiler.submit(parallelCompilable,
+                        parallelCompilable.loadSource(asset));
+            }
+        }
+        pendingAssets.add(pendingAsset);
+
+        // Keep enough work queued for all the threads, but no more.
+        mergePendingAssets(parallelCompiler.getParallelism() * 2);
+    }
+
+    private void mergePendingAssets(int maximumPending) {
+        while (pendingAssets.size() > maximumPending) {
+            pendingAssets.removeFirst().merge();
+        }
+    }
+
+    private void merge(AssetItem asset,
+                       ParallelAssetCompiler.GeneratedDRL generatedDRL) throws DroolsParserException, IOException {
+        for (ContentAssemblyError error : generatedDRL.getErrors()) {
+            errorLogger.logError(error);
+        }
+        if (generatedDRL.getDRL() != null) {
+            if (generatedDRL.getPackageDescr() != null) {
+                builder.addPackage(generatedDRL.getPackageDescr());
+            } else {
+                // Let the builder report the parser errors the usual way.
+                builder.addPackageFromDrl(new StringReader(generatedDRL.getDRL()));
+            }
+        }
+        if (compiledAssets != null && (generatedDRL.getDRL() == null || generatedDRL.getFrozenPackageDescr() != null)) {
+            List<FrozenPackageDescr> packageDescrs = generatedDRL.getDRL() == null ? Collections.<FrozenPackageDescr>emptyList() : Collections.singletonList(generatedDRL.getFrozenPackageDescr());
+            compiledAssets.put(asset,
+                    packageDescrs,
+                    generatedDRL.getErrors());
+        }
+
+        if (builder.hasErrors()) {
+            logErrors(asset);
+        }
+    }
+
     private void loadAllButDRLAssets(StringBuilder includedAssets) {
         Iterator<AssetItem> iterator = getAllAssets();
         while (iterator.hasNext()) {
@@ -96,7 +265,11 @@ public class PackageAssembler extends PackageAssemblerBase {
     }
 
     private void addAsset(StringBuilder includedAssets, AssetItem asset) {
-        buildAsset(asset);
+        if (parallelCompiler == null) {
+            buildAsset(asset);
+        } else {
+            scheduleAsset(asset);
+        }
         includedAssets.append(asset.getName() + ", ");
     }
 
@@ -160,4 +333,90 @@ public class PackageAssembler extends PackageAssemblerBase {
     public BRMSPackageBuilder getBuilder() {
         return builder;
     }
+
+    /**
+     * @return the number of assets that were taken from a previous build, in
+     *         incremental mode.
+     */
+    public int getReusedAssetCount() {
+        return reusedAssets;
+    }
+
+    /**
+     * @return the number of assets that had to be compiled, in incremental
+     *         mode.
+     */
+    public int getRecompiledAssetCount() {
+        return recompiledAssets;
+    }
+
+    /**
+     * An asset waiting to be added to the builder: its DRL is being generated,
+     * it can be reused from the last build, or it has to be compiled as usual.
+     */
+    private class PendingAsset {
+
+        private final AssetItem asset;
+        private Future<ParallelAssetCompiler.GeneratedDRL> generatedDRL;
+        private CompiledAssetCache.CompiledAsset compiledAsset;
+
+        PendingAsset(AssetItem asset) {
+            this.asset = asset;
+        }
+
+        void merge() {
+            if (compiledAsset != null) {
+                try {
+                    reuse(compiledAsset);
+                } catch (DroolsParserException e) {
+                    handleGenerationFailure(e);
+                } catch (IOException e) {
+                    handleGenerationFailure(e);
+                }
+                if (builder.hasErrors()) {
+                    logErrors(asset);
+                }
+            } else if (generatedDRL != null) {
+                try {
+                    PackageAssembler.this.merge(asset,
+                            generatedDRL.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RulesRepositoryException(e);
+                } catch (ExecutionException e) {
+                    handleGenerationFailure(e.getCause());
+                } catch (DroolsParserException e) {
+                    handleGenerationFailure(e);
+                } catch (IOException e) {
+                    handleGenerationFailure(e);
+                }
+            } else {
+                buildAsset(asset);
+            }
+        }
+
+        /**
+         * Same as buildAsset() does for a serial build.
+         */
+        private void handleGenerationFailure(Throwable cause) {
+            if (cause instanceof DroolsParserException) {
+                errorLogger.addError(asset, cause.getMessage());
+                throw new RulesRepositoryException(cause);
+            } else if (cause instanceof IOException) {
+                errorLogger.addError(asset, cause.getMessage());
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RulesRepositoryException(cause);
+            }
+        }
+
+        void cancel() {
+            if (generatedDRL != null) {
+                generatedDRL.cancel(true);
+            }
+        }
+    }
 }
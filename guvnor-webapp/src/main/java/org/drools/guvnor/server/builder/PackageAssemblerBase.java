@@ -43,6 +43,12 @@ abstract class PackageAssemblerBase extends AssemblerBase {
         super(packageItem);
     }
 
+    protected PackageAssemblerBase(PackageItem packageItem,
+                                   BRMSPackageBuilder builder) {
+        super(packageItem,
+                builder);
+    }
+
     /**
      * Builds assets that are "rule" assets (ie things that are not functions
      * etc).
@@ -62,7 +68,7 @@ abstract class PackageAssemblerBase extends AssemblerBase {
         }
     }
 
-    private void compile(AssetItem asset, ICompilable contentHandler) throws DroolsParserException, IOException {
+    protected void compile(AssetItem asset, ICompilable contentHandler) throws DroolsParserException, IOException {
         contentHandler.compile(builder,
                 asset,
                 errorLogger);
@@ -234,7 +240,7 @@ abstract class PackageAssemblerBase extends AssemblerBase {
         builder.clearErrors();
     }
 
-    private void logErrors(AssetItem asset) {
+    protected void logErrors(AssetItem asset) {
         this.recordBuilderErrors(asset.getFormat(), asset.getName(), asset.getUUID(), false, true);
     }
 }
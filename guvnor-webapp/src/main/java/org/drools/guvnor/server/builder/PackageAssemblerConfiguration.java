@@ -18,6 +18,17 @@ package org.drools.guvnor.server.builder;
 
 public class PackageAssemblerConfiguration {
 
+    /**
+     * Set to true to reuse the parsed rule assets of previous builds.
+     */
+    public static final String INCREMENTAL_BUILD_PROPERTY = "guvnor.build.incremental";
+
+    /**
+     * The number of threads generating the DRL of rule assets during a build.
+     * 1, the default, builds everything on the calling thread.
+     */
+    public static final String PARALLELISM_PROPERTY = "guvnor.build.parallelism";
+
     private String buildMode;
     private String statusOperator;
     private String statusDescriptionValue;
@@ -26,6 +37,8 @@ public class PackageAssemblerConfiguration {
     private String categoryValue;
     private boolean enableCategorySelector = false;
     private String customSelectorConfigName;
+    private boolean incrementalBuild = Boolean.getBoolean(INCREMENTAL_BUILD_PROPERTY);
+    private int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
 
     public String getBuildMode() {
         return buildMode;
@@ -90,4 +103,20 @@ public class PackageAssemblerConfiguration {
     public void setCustomSelectorConfigName(String customSelectorConfigName) {
         this.customSelectorConfigName = customSelectorConfigName;
     }
+
+    public boolean isIncrementalBuild() {
+        return incrementalBuild;
+    }
+
+    public void setIncrementalBuild(boolean incrementalBuild) {
+        this.incrementalBuild = incrementalBuild;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
 }
@@ -18,7 +18,10 @@ package org.drools.guvnor.server.builder;
 import java.util.List;
 
 import org.drools.guvnor.client.rpc.AbstractPageRow;
+import org.drools.guvnor.client.rpc.PageRequest;
 import org.drools.guvnor.client.rpc.PageResponse;
+import org.drools.repository.AssetCursor;
+import org.drools.repository.AssetItemIterator;
 
 public class PageResponseBuilder<T extends AbstractPageRow> {
     PageResponse<T> pageResponse = new PageResponse<T>();
@@ -38,6 +41,25 @@ public class PageResponseBuilder<T extends AbstractPageRow> {
         return this;
     }
 
+    public PageResponseBuilder<T> withNextCursor(final AssetCursor nextCursor) {
+        pageResponse.setNextCursor( nextCursor == null ? null : nextCursor.toString() );
+        return this;
+    }
+
+    /**
+     * Sets the cursor of the next page from the iterator a page has been read
+     * from, if the request pages by cursor and there is a next page.
+     */
+    public PageResponseBuilder<T> withNextCursor(final PageRequest pageRequest,
+                                                 final AssetItemIterator iterator) {
+        if ( pageRequest.getCursor() != null && iterator.hasNext() ) {
+            AssetCursor cursor = iterator.getCursor();
+            // nothing read, the next page starts where this one should have
+            pageResponse.setNextCursor( cursor == null ? pageRequest.getCursor() : cursor.toString() );
+        }
+        return this;
+    }
+
     public PageResponseBuilder<T> withTotalRowSize(final int totalRowSize) {
         pageResponse.setTotalRowSize( totalRowSize );
         return this;
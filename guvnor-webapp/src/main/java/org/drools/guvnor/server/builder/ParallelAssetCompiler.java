@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.drools.compiler.DrlParser;
+import org.drools.guvnor.server.contenthandler.IParallelCompilable;
+import org.drools.guvnor.server.contenthandler.RuleAssetSource;
+import org.drools.lang.descr.PackageDescr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates and parses the DRL of rule assets on a pool of threads shared by
+ * all the package builds. The pool grows up to the largest parallelism any
+ * build asked for, and its threads go away when there is nothing to build.
+ */
+class ParallelAssetCompiler {
+
+    private static ThreadPoolExecutor executor;
+
+    private final BRMSPackageBuilder builder;
+    private final int parallelism;
+
+    ParallelAssetCompiler(BRMSPackageBuilder builder,
+                          int parallelism) {
+        this.builder = builder;
+        this.parallelism = parallelism;
+        ensureThreads(parallelism);
+    }
+
+    private static synchronized void ensureThreads(int parallelism) {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(parallelism,
+                    parallelism,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new CompilerThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+        } else if (executor.getMaximumPoolSize() < parallelism) {
+            executor.setMaximumPoolSize(parallelism);
+            executor.setCorePoolSize(parallelism);
+        }
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    Future<GeneratedDRL> submit(final IParallelCompilable contentHandler,
+                                final RuleAssetSource source) {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return executor.submit(new Callable<GeneratedDRL>() {
+            public GeneratedDRL call() throws Exception {
+                ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+                Thread.currentThread().setContextClassLoader(classLoader);
+                try {
+                    return generate(contentHandler,
+                            source);
+                } finally {
+                    Thread.currentThread().setContextClassLoader(originalClassLoader);
+                }
+            }
+        });
+    }
+
+    private GeneratedDRL generate(IParallelCompilable contentHandler,
+                                  RuleAssetSource source) throws Exception {
+        AssemblyErrorLogger logger = new AssemblyErrorLogger();
+        String drl = contentHandler.generateDRL(source,
+                builder,
+                logger);
+
+        PackageDescr packageDescr = null;
+        FrozenPackageDescr frozenPackageDescr = null;
+        if (drl != null) {
+            DrlParser parser = new DrlParser();
+            packageDescr = parser.parse(drl);
+            if (parser.hasErrors()) {
+                packageDescr = null;
+            } else if (packageDescr != null) {
+                try {
+                    frozenPackageDescr = FrozenPackageDescr.freeze(packageDescr);
+                } catch (IOException e) {
+                    // still compiles, it just can not be reused
+                }
+            }
+        }
+        return new GeneratedDRL(drl,
+                packageDescr,
+                frozenPackageDescr,
+                logger.getErrors());
+    }
+
+    /**
+     * The result of generating the DRL of one asset. The package descriptor is
+     * null if the DRL did not parse. The frozen one is taken before the
+     * descriptor is added to the builder, to be reused by the next build, and
+     * is null if it can not be.
+     */
+    static class GeneratedDRL {
+
+        private final String drl;
+        private final PackageDescr packageDescr;
+        private final FrozenPackageDescr frozenPackageDescr;
+        private final List<ContentAssemblyError> errors;
+
+        GeneratedDRL(String drl,
+                     PackageDescr packageDescr,
+                     FrozenPackageDescr frozenPackageDescr,
+                     List<ContentAssemblyError> errors) {
+            this.drl = drl;
+            this.packageDescr = packageDescr;
+            this.frozenPackageDescr = frozenPackageDescr;
+            this.errors = errors;
+        }
+
+        String getDRL() {
+            return drl;
+        }
+
+        PackageDescr getPackageDescr() {
+            return packageDescr;
+        }
+
+        FrozenPackageDescr getFrozenPackageDescr() {
+            return frozenPackageDescr;
+        }
+
+        List<ContentAssemblyError> getErrors() {
+            return errors;
+        }
+    }
+
+    private static class CompilerThreadFactory
+            implements
+            ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "guvnor-package-compiler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -16,18 +16,29 @@
 package org.drools.guvnor.server.builder.pagerow;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.drools.guvnor.client.rpc.AdminArchivedPageRow;
 import org.drools.guvnor.client.rpc.PageRequest;
 import org.drools.guvnor.server.AssetItemFilter;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummary.Field;
+import org.drools.repository.AssetSummaryLoader;
 import org.drools.repository.RepositoryFilter;
 
 public class ArchivedAssetPageRowBuilder
     implements
     PageRowBuilder<PageRequest, Iterator<AssetItem>> {
+    private static final Set<Field> FIELDS = EnumSet.of( Field.FORMAT,
+                                                         Field.NAME,
+                                                         Field.PACKAGE_NAME,
+                                                         Field.LAST_CONTRIBUTOR,
+                                                         Field.LAST_MODIFIED );
+
     private PageRequest         pageRequest;
     private Iterator<AssetItem> iterator;
 
@@ -37,8 +48,8 @@ public class ArchivedAssetPageRowBuilder
         Integer pageSize = pageRequest.getPageSize();
         int startRowIndex = pageRequest.getStartRowIndex();
         RepositoryFilter filter = new AssetItemFilter();
-        List<AdminArchivedPageRow> rowList = new ArrayList<AdminArchivedPageRow>();
-        while ( iterator.hasNext() && (pageSize == null || rowList.size() < pageSize) ) {
+        List<AssetItem> page = new ArrayList<AssetItem>();
+        while ( iterator.hasNext() && (pageSize == null || page.size() < pageSize) ) {
             AssetItem archivedAssetItem = (AssetItem) iterator.next();
 
             // Filter surplus assets
@@ -49,23 +60,28 @@ public class ArchivedAssetPageRowBuilder
                 // assets whereas startRowIndex is the index of the
                 // first displayed asset (i.e. filtered)
                 if ( skipped >= startRowIndex ) {
-                    rowList.add( makeAdminArchivedPageRow( archivedAssetItem ) );
+                    page.add( archivedAssetItem );
                 }
                 skipped++;
             }
 
         }
+
+        List<AdminArchivedPageRow> rowList = new ArrayList<AdminArchivedPageRow>();
+        for ( AssetSummary assetSummary : new AssetSummaryLoader( FIELDS ).load( page ) ) {
+            rowList.add( makeAdminArchivedPageRow( assetSummary ) );
+        }
         return rowList;
     }
 
-    private AdminArchivedPageRow makeAdminArchivedPageRow(AssetItem assetItem) {
+    private AdminArchivedPageRow makeAdminArchivedPageRow(AssetSummary assetSummary) {
         AdminArchivedPageRow row = new AdminArchivedPageRow();
-        row.setUuid( assetItem.getUUID() );
-        row.setFormat( assetItem.getFormat() );
-        row.setName( assetItem.getName() );
-        row.setPackageName( assetItem.getPackageName() );
-        row.setLastContributor( assetItem.getLastContributor() );
-        row.setLastModified( assetItem.getLastModified().getTime() );
+        row.setUuid( assetSummary.getUUID() );
+        row.setFormat( assetSummary.getFormat() );
+        row.setName( assetSummary.getName() );
+        row.setPackageName( assetSummary.getPackageName() );
+        row.setLastContributor( assetSummary.getLastContributor() );
+        row.setLastModified( assetSummary.getLastModified().getTime() );
         return row;
     }
 
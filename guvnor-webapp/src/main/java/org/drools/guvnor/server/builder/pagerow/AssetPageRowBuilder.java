@@ -21,8 +21,8 @@ import java.util.List;
 import org.drools.guvnor.client.rpc.AssetPageRow;
 import org.drools.guvnor.client.rpc.PageRequest;
 import org.drools.guvnor.server.util.AssetPageRowPopulator;
-import org.drools.repository.AssetItem;
 import org.drools.repository.AssetItemIterator;
+import org.drools.repository.AssetSummary;
 
 public class AssetPageRowBuilder
     implements
@@ -33,13 +33,16 @@ public class AssetPageRowBuilder
     public List<AssetPageRow> build() {
         validate();
         Integer pageSize = pageRequest.getPageSize();
-        iterator.skip( pageRequest.getStartRowIndex() );
+        // A cursor has already positioned the iterator
+        if ( pageRequest.getCursor() == null ) {
+            iterator.skip( pageRequest.getStartRowIndex() );
+        }
         List<AssetPageRow> rowList = new ArrayList<AssetPageRow>();
 
-        while ( iterator.hasNext() && (pageSize == null || rowList.size() < pageSize) ) {
-            AssetItem assetItem = (AssetItem) iterator.next();
-            AssetPageRowPopulator assetPageRowPopulator = new AssetPageRowPopulator();
-            rowList.add( assetPageRowPopulator.populateFrom( assetItem ) );
+        AssetPageRowPopulator assetPageRowPopulator = new AssetPageRowPopulator();
+        for ( AssetSummary assetSummary : iterator.nextSummaries( pageSize == null ? -1 : pageSize,
+                                                                   AssetPageRowPopulator.FIELDS ) ) {
+            rowList.add( assetPageRowPopulator.populateFrom( assetSummary ) );
         }
         return rowList;
     }
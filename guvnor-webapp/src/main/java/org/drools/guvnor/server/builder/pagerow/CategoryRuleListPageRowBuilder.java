@@ -16,45 +16,61 @@
 package org.drools.guvnor.server.builder.pagerow;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.drools.guvnor.client.rpc.CategoryPageRow;
 import org.drools.guvnor.client.rpc.PageRequest;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummary.Field;
+import org.drools.repository.AssetSummaryLoader;
 
 public class CategoryRuleListPageRowBuilder
     implements
     PageRowBuilder<PageRequest, Iterator<AssetItem>> {
 
+    private static final Set<Field> FIELDS = EnumSet.of( Field.FORMAT,
+                                                         Field.NAME,
+                                                         Field.DESCRIPTION,
+                                                         Field.LAST_MODIFIED,
+                                                         Field.STATE_NAME,
+                                                         Field.PACKAGE_NAME );
+
     private PageRequest         pageRequest;
     private Iterator<AssetItem> iterator;
 
     public List<CategoryPageRow> build() {
         validate();
-        List<CategoryPageRow> rowList = new ArrayList<CategoryPageRow>();
+        List<AssetItem> page = new ArrayList<AssetItem>();
 
         // Filtering and skipping records to the required page is handled in
         // repository.findAssetsByState() so we only need to simply copy
         while ( iterator.hasNext() ) {
-            AssetItem assetItem = (AssetItem) iterator.next();
-            rowList.add( makeCategoryPageRow( assetItem ) );
+            page.add( (AssetItem) iterator.next() );
+        }
+
+        List<CategoryPageRow> rowList = new ArrayList<CategoryPageRow>();
+        for ( AssetSummary assetSummary : new AssetSummaryLoader( FIELDS ).load( page ) ) {
+            rowList.add( makeCategoryPageRow( assetSummary ) );
         }
         return rowList;
     }
 
-    private CategoryPageRow makeCategoryPageRow(AssetItem assetItem) {
+    private CategoryPageRow makeCategoryPageRow(AssetSummary assetSummary) {
         CategoryPageRow row = new CategoryPageRow();
-        row.setUuid( assetItem.getUUID() );
-        row.setFormat( assetItem.getFormat() );
-        row.setName( assetItem.getName() );
-        row.setDescription( assetItem.getDescription() );
-        row.setAbbreviatedDescription( StringUtils.abbreviate( assetItem.getDescription(),
+        row.setUuid( assetSummary.getUUID() );
+        row.setFormat( assetSummary.getFormat() );
+        row.setName( assetSummary.getName() );
+        row.setDescription( assetSummary.getDescription() );
+        row.setAbbreviatedDescription( StringUtils.abbreviate( assetSummary.getDescription(),
                                                                80 ) );
-        row.setLastModified( assetItem.getLastModified().getTime() );
-        row.setStateName( assetItem.getState().getName() );
-        row.setPackageName( assetItem.getPackageName() );
+        row.setLastModified( assetSummary.getLastModified().getTime() );
+        row.setStateName( assetSummary.getStateName() );
+        row.setPackageName( assetSummary.getPackageName() );
         return row;
     }
 
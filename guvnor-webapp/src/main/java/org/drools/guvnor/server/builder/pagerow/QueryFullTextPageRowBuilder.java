@@ -26,6 +26,8 @@ import org.drools.guvnor.server.PackageFilter;
 import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.QueryPageRowCreator;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummaryLoader;
 import org.drools.repository.RepositoryFilter;
 
 public class QueryFullTextPageRowBuilder
@@ -39,12 +41,13 @@ public class QueryFullTextPageRowBuilder
         validate();
         int skipped = 0;
         Integer pageSize = pageRequest.getPageSize();
-        int startRowIndex = pageRequest.getStartRowIndex();
+        // A cursor has already positioned the iterator
+        int startRowIndex = pageRequest.getCursor() == null ? pageRequest.getStartRowIndex() : 0;
         RepositoryFilter filter = new PackageFilter();
 
-        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        List<AssetItem> page = new ArrayList<AssetItem>();
 
-        while ( iterator.hasNext() && (pageSize == null || rowList.size() < pageSize) ) {
+        while ( iterator.hasNext() && (pageSize == null || page.size() < pageSize) ) {
             AssetItem assetItem = (AssetItem) iterator.next();
 
             // Filter surplus assets
@@ -56,11 +59,16 @@ public class QueryFullTextPageRowBuilder
                 // assets whereas startRowIndex is the index of the
                 // first displayed asset (i.e. filtered)
                 if ( skipped >= startRowIndex ) {
-                    rowList.add( QueryPageRowCreator.makeQueryPageRow( assetItem ) );
+                    page.add( assetItem );
                 }
                 skipped++;
             }
         }
+
+        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        for ( AssetSummary assetSummary : new AssetSummaryLoader( QueryPageRowCreator.FIELDS ).load( page ) ) {
+            rowList.add( QueryPageRowCreator.makeQueryPageRow( assetSummary ) );
+        }
         return rowList;
     }
 
@@ -12,6 +12,8 @@ import org.drools.guvnor.server.PackageFilter;
 import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.QueryPageRowCreator;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummaryLoader;
 import org.drools.repository.CategoryItem;
 import org.drools.repository.RepositoryFilter;
 
@@ -26,12 +28,13 @@ public class QueryMetadataPageRowBuilder
         validate();
         int skipped = 0;
         Integer pageSize = pageRequest.getPageSize();
-        int startRowIndex = pageRequest.getStartRowIndex();
+        // A cursor has already positioned the iterator
+        int startRowIndex = pageRequest.getCursor() == null ? pageRequest.getStartRowIndex() : 0;
         RepositoryFilter packageFilter = new PackageFilter();
         RepositoryFilter categoryFilter = new CategoryFilter();
-        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        List<AssetItem> page = new ArrayList<AssetItem>();
 
-        while ( iterator.hasNext() && (pageSize == null || rowList.size() < pageSize) ) {
+        while ( iterator.hasNext() && (pageSize == null || page.size() < pageSize) ) {
             AssetItem assetItem = (AssetItem) iterator.next();
 
             // Filter surplus assets
@@ -45,11 +48,16 @@ public class QueryMetadataPageRowBuilder
                 // assets whereas startRowIndex is the index of the
                 // first displayed asset (i.e. filtered)
                 if ( skipped >= startRowIndex ) {
-                    rowList.add( QueryPageRowCreator.makeQueryPageRow( assetItem ) );
+                    page.add( assetItem );
                 }
                 skipped++;
             }
         }
+
+        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        for ( AssetSummary assetSummary : new AssetSummaryLoader( QueryPageRowCreator.FIELDS ).load( page ) ) {
+            rowList.add( QueryPageRowCreator.makeQueryPageRow( assetSummary ) );
+        }
         return rowList;
     }
 
@@ -25,6 +25,8 @@ import org.drools.guvnor.server.AssetItemFilter;
 import org.drools.guvnor.server.security.RoleTypes;
 import org.drools.guvnor.server.util.QueryPageRowCreator;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummaryLoader;
 import org.drools.repository.RepositoryFilter;
 
 public class QuickFindPageRowBuilder implements PageRowBuilder<PageRequest, Iterator<AssetItem>>{
@@ -36,11 +38,12 @@ public class QuickFindPageRowBuilder implements PageRowBuilder<PageRequest, Iter
         validate();
         int skipped = 0;
         Integer pageSize = pageRequest.getPageSize();
-        int startRowIndex = pageRequest.getStartRowIndex();
+        // A cursor has already positioned the iterator
+        int startRowIndex = pageRequest.getCursor() == null ? pageRequest.getStartRowIndex() : 0;
         RepositoryFilter filter = new AssetItemFilter();
-        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        List<AssetItem> page = new ArrayList<AssetItem>();
 
-        while ( iterator.hasNext() && (pageSize == null || rowList.size() < pageSize) ) {
+        while ( iterator.hasNext() && (pageSize == null || page.size() < pageSize) ) {
             AssetItem assetItem = (AssetItem) iterator.next();
 
             // Filter surplus assets
@@ -51,11 +54,16 @@ public class QuickFindPageRowBuilder implements PageRowBuilder<PageRequest, Iter
                 // assets whereas startRowIndex is the index of the
                 // first displayed asset (i.e. filtered)
                 if ( skipped >= startRowIndex ) {
-                    rowList.add( QueryPageRowCreator.makeQueryPageRow( assetItem ) );
+                    page.add( assetItem );
                 }
                 skipped++;
             }
         }
+
+        List<QueryPageRow> rowList = new ArrayList<QueryPageRow>();
+        for ( AssetSummary assetSummary : new AssetSummaryLoader( QueryPageRowCreator.FIELDS ).load( page ) ) {
+            rowList.add( QueryPageRowCreator.makeQueryPageRow( assetSummary ) );
+        }
         return rowList;
     }
     
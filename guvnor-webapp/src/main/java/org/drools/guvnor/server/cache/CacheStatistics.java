@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.drools.guvnor.server.cache;
+
+import java.io.Serializable;
+
+/**
+ * An immutable snapshot of the counters of one of the server side caches, for
+ * monitoring purposes.
+ */
+public class CacheStatistics
+    implements
+    Serializable {
+
+    private static final long serialVersionUID = 510l;
+
+    private final long        hitCount;
+    private final long        missCount;
+    private final long        loadCount;
+    private final long        totalLoadTime;
+    private final long        evictionCount;
+    private final int         size;
+    private final long        weight;
+
+    public CacheStatistics(long hitCount,
+                           long missCount,
+                           long loadCount,
+                           long totalLoadTime,
+                           long evictionCount,
+                           int size,
+                           long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return the total time spent loading entries, in milliseconds.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public long getAverageLoadTime() {
+        return loadCount == 0 ? 0 : totalLoadTime / loadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public String toString() {
+        return "hits=" + hitCount + ", misses=" + missCount + ", hitRatio=" + getHitRatio() + ", loads=" + loadCount + ", averageLoadTime=" + getAverageLoadTime() + "ms, evictions=" + evictionCount + ", size=" + size + ", weight=" + weight;
+    }
+}
@@ -1,12 +1,12 @@
 /*
  * Copyright 2011 JBoss Inc
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -15,24 +15,67 @@
  */
 package org.drools.guvnor.server.cache;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.drools.RuleBase;
 
+/**
+ * Used for a simple cache of binary packages to avoid serialization from the
+ * database - for test scenarios.
+ *
+ * The cache is bounded by a maximum number of entries and by an approximate
+ * weight (the size of the serialized package is a good enough measure).
+ * Reads do not lock, writes evict the least recently (LRU) or least frequently
+ * (LFU) used entries until the cache fits again. The bounds and the policy can
+ * be set with the <code>guvnor.rulebasecache.maxEntries</code>,
+ * <code>guvnor.rulebasecache.maxWeight</code> and
+ * <code>guvnor.rulebasecache.evictionPolicy</code> system properties.
+ */
 public class RuleBaseCache {
 
+    public static final String           MAX_ENTRIES_PROPERTY     = "guvnor.rulebasecache.maxEntries";
+    public static final String           MAX_WEIGHT_PROPERTY      = "guvnor.rulebasecache.maxWeight";
+    public static final String           EVICTION_POLICY_PROPERTY = "guvnor.rulebasecache.evictionPolicy";
+
+    static final int                     DEFAULT_MAX_ENTRIES      = 64;
+    static final long                    DEFAULT_MAX_WEIGHT       = 64 * 1024 * 1024;
+
+    public enum EvictionPolicy {
+        LRU, LFU
+    }
+
     // TODO: This class should be injected with DI Singleton (when we have working DI)
-    /**
-     * Used for a simple cache of binary packages to avoid serialization from
-     * the database - for test scenarios.
-     */
-    private Map<String, RuleBase> ruleBaseCache = Collections
-                                                        .synchronizedMap( new HashMap<String, RuleBase>() );
-    private static RuleBaseCache  instance      = new RuleBaseCache();
+    private static RuleBaseCache         instance                 = new RuleBaseCache( Integer.getInteger( MAX_ENTRIES_PROPERTY,
+                                                                                                           DEFAULT_MAX_ENTRIES ),
+                                                                                      Long.getLong( MAX_WEIGHT_PROPERTY,
+                                                                                                    DEFAULT_MAX_WEIGHT ),
+                                                                                      EvictionPolicy.valueOf( System.getProperty( EVICTION_POLICY_PROPERTY,
+                                                                                                                                  EvictionPolicy.LRU.name() ).toUpperCase() ) );
+
+    private final Map<String, CacheEntry> ruleBaseCache            = new ConcurrentHashMap<String, CacheEntry>();
+    private final Object                 writeLock                = new Object();
+    private final AtomicLong             clock                    = new AtomicLong();
 
-    private RuleBaseCache() {
+    private final int                    maxEntries;
+    private final long                   maxWeight;
+    private final EvictionPolicy         evictionPolicy;
+    private long                         totalWeight;
+
+    private final AtomicLong             hitCount                 = new AtomicLong();
+    private final AtomicLong             missCount                = new AtomicLong();
+    private final AtomicLong             loadCount                = new AtomicLong();
+    private final AtomicLong             totalLoadTime            = new AtomicLong();
+    private final AtomicLong             evictionCount            = new AtomicLong();
+
+    RuleBaseCache(int maxEntries,
+                  long maxWeight,
+                  EvictionPolicy evictionPolicy) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.evictionPolicy = evictionPolicy;
     }
 
     public static RuleBaseCache getInstance() {
@@ -41,23 +84,136 @@ public class RuleBaseCache {
 
     public void put(final String uuid,
                     final RuleBase ruleBase) {
-        this.ruleBaseCache.put( uuid,
-                                ruleBase );
+        put( uuid,
+             ruleBase,
+             0 );
+    }
+
+    /**
+     * @param weight an approximation of the memory used by the rule base, in
+     *            bytes.
+     */
+    public void put(final String uuid,
+                    final RuleBase ruleBase,
+                    final long weight) {
+        CacheEntry entry = new CacheEntry( ruleBase,
+                                           weight,
+                                           clock.incrementAndGet() );
+        synchronized ( writeLock ) {
+            CacheEntry old = this.ruleBaseCache.put( uuid,
+                                                     entry );
+            if ( old != null ) {
+                totalWeight -= old.weight;
+            }
+            totalWeight += weight;
+            evictIfNecessary( uuid );
+        }
+    }
+
+    /**
+     * Records the time it took to build or deserialize a rule base that was
+     * not found in the cache.
+     */
+    public void recordLoad(final long loadTime) {
+        loadCount.incrementAndGet();
+        totalLoadTime.addAndGet( loadTime );
     }
 
     public void remove(final String uuid) {
-        this.ruleBaseCache.remove( uuid );
+        synchronized ( writeLock ) {
+            CacheEntry old = this.ruleBaseCache.remove( uuid );
+            if ( old != null ) {
+                totalWeight -= old.weight;
+            }
+        }
     }
 
     public void clearCache() {
-        this.ruleBaseCache.clear();
+        synchronized ( writeLock ) {
+            this.ruleBaseCache.clear();
+            totalWeight = 0;
+        }
     }
 
     public RuleBase get(final String uuid) {
-        return this.ruleBaseCache.get( uuid );
+        CacheEntry entry = this.ruleBaseCache.get( uuid );
+        if ( entry == null ) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        entry.touch( clock.incrementAndGet() );
+        return entry.ruleBase;
     }
 
     public boolean contains(final String uuid) {
         return this.ruleBaseCache.containsKey( uuid );
     }
+
+    public CacheStatistics getStatistics() {
+        synchronized ( writeLock ) {
+            return new CacheStatistics( hitCount.get(),
+                                        missCount.get(),
+                                        loadCount.get(),
+                                        totalLoadTime.get(),
+                                        evictionCount.get(),
+                                        ruleBaseCache.size(),
+                                        totalWeight );
+        }
+    }
+
+    /**
+     * Evicts entries until the cache is within its bounds again. The entry that
+     * has just been added is never evicted, even if it is heavier than the
+     * maximum weight on its own.
+     */
+    private void evictIfNecessary(String justAdded) {
+        while ( ruleBaseCache.size() > 1 && (ruleBaseCache.size() > maxEntries || totalWeight > maxWeight) ) {
+            String victim = null;
+            CacheEntry victimEntry = null;
+            for ( Iterator<Map.Entry<String, CacheEntry>> it = ruleBaseCache.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, CacheEntry> candidate = it.next();
+                if ( candidate.getKey().equals( justAdded ) ) {
+                    continue;
+                }
+                if ( victimEntry == null || isBetterVictim( candidate.getValue(),
+                                                            victimEntry ) ) {
+                    victim = candidate.getKey();
+                    victimEntry = candidate.getValue();
+                }
+            }
+            ruleBaseCache.remove( victim );
+            totalWeight -= victimEntry.weight;
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private boolean isBetterVictim(CacheEntry candidate,
+                                   CacheEntry current) {
+        if ( evictionPolicy == EvictionPolicy.LFU && candidate.hits.get() != current.hits.get() ) {
+            return candidate.hits.get() < current.hits.get();
+        }
+        return candidate.lastAccess < current.lastAccess;
+    }
+
+    private static class CacheEntry {
+
+        private final RuleBase   ruleBase;
+        private final long       weight;
+        private final AtomicLong hits = new AtomicLong();
+        private volatile long    lastAccess;
+
+        CacheEntry(RuleBase ruleBase,
+                   long weight,
+                   long lastAccess) {
+            this.ruleBase = ruleBase;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+
+        void touch(long now) {
+            hits.incrementAndGet();
+            lastAccess = now;
+        }
+    }
 }
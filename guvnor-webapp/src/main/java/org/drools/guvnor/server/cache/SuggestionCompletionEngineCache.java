@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.drools.guvnor.server.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.drools.ide.common.client.modeldriven.SuggestionCompletionEngine;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Keeps the suggestion completion engine of recently edited packages.
+ *
+ * An engine is stored together with the fingerprint of everything it was built
+ * from (the package header, model jars, declarative models, enumerations, DSLs
+ * and working sets). A lookup with a different fingerprint is a miss, so the
+ * engine is only rebuilt when one of those changed. The number of packages is
+ * bounded by the <code>guvnor.suggestioncache.maxEntries</code> system property,
+ * least recently used packages are evicted first.
+ *
+ * Engines are kept serialized and every lookup gets an engine of its own, so a
+ * caller changing the engine it was given does not change what the next caller
+ * gets.
+ */
+public class SuggestionCompletionEngineCache {
+
+    public static final String                     MAX_ENTRIES_PROPERTY = "guvnor.suggestioncache.maxEntries";
+
+    static final int                               DEFAULT_MAX_ENTRIES  = 64;
+
+    private static SuggestionCompletionEngineCache instance             = new SuggestionCompletionEngineCache( Integer.getInteger( MAX_ENTRIES_PROPERTY,
+                                                                                                                                   DEFAULT_MAX_ENTRIES ) );
+
+    private static final XStream                   XSTREAM              = new XStream();
+
+    private final Map<String, CacheEntry>          engines;
+
+    private long                                   hitCount;
+    private long                                   missCount;
+    private long                                   loadCount;
+    private long                                   totalLoadTime;
+    private long                                   evictionCount;
+
+    SuggestionCompletionEngineCache(final int maxEntries) {
+        this.engines = new LinkedHashMap<String, CacheEntry>( 16,
+                                                              0.75f,
+                                                              true ) {
+            private static final long serialVersionUID = 510l;
+
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if ( size() > maxEntries ) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static SuggestionCompletionEngineCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return a copy of the engine of the package if it was built from the
+     *         same fingerprint, null otherwise.
+     */
+    public SuggestionCompletionEngine get(final String packageUUID,
+                                          final String fingerprint) {
+        String serialized;
+        synchronized ( this ) {
+            CacheEntry entry = engines.get( packageUUID );
+            if ( entry == null || !entry.fingerprint.equals( fingerprint ) ) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            serialized = entry.engine;
+        }
+        return (SuggestionCompletionEngine) XSTREAM.fromXML( serialized );
+    }
+
+    /**
+     * @param loadTime the time it took to build the engine, in milliseconds.
+     */
+    public void put(final String packageUUID,
+                    final String fingerprint,
+                    final SuggestionCompletionEngine engine,
+                    final long loadTime) {
+        String serialized = XSTREAM.toXML( engine );
+        synchronized ( this ) {
+            engines.put( packageUUID,
+                         new CacheEntry( fingerprint,
+                                         serialized ) );
+            loadCount++;
+            totalLoadTime += loadTime;
+        }
+    }
+
+    public synchronized void remove(final String packageUUID) {
+        engines.remove( packageUUID );
+    }
+
+    public synchronized void clearCache() {
+        engines.clear();
+    }
+
+    /**
+     * The weight is the number of characters of the serialized engines.
+     */
+    public synchronized CacheStatistics getStatistics() {
+        long weight = 0;
+        for ( CacheEntry entry : engines.values() ) {
+            weight += entry.engine.length();
+        }
+        return new CacheStatistics( hitCount,
+                                    missCount,
+                                    loadCount,
+                                    totalLoadTime,
+                                    evictionCount,
+                                    engines.size(),
+                                    weight );
+    }
+
+    private static class CacheEntry {
+
+        private final String fingerprint;
+        private final String engine;
+
+        CacheEntry(String fingerprint,
+                   String engine) {
+            this.fingerprint = fingerprint;
+            this.engine = engine;
+        }
+    }
+}
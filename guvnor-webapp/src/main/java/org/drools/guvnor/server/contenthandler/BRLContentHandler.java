@@ -25,6 +25,7 @@ import org.drools.ide.common.client.modeldriven.brl.RuleModel;
 import org.drools.ide.common.server.util.BRDRLPersistence;
 import org.drools.ide.common.server.util.BRLPersistence;
 import org.drools.ide.common.server.util.BRXMLPersistence;
+import org.drools.lang.dsl.DefaultExpander;
 import org.drools.repository.AssetItem;
 
 import java.io.IOException;
@@ -32,7 +33,7 @@ import java.io.StringReader;
 
 public class BRLContentHandler extends ContentHandler
     implements
-    IRuleAsset {
+    IParallelCompilable {
 
     public void retrieveAssetContent(RuleAsset asset,
                                      AssetItem item) throws SerializationException {
@@ -85,21 +86,45 @@ public class BRLContentHandler extends ContentHandler
         stringBuilder.append( drl );
     }
 
+    public RuleAssetSource loadSource(AssetItem asset) {
+        return new RuleAssetSource( asset,
+                                    asset.getContent(),
+                                    null,
+                                    categoryParentFor( asset ) );
+    }
+
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger) {
+        RuleModel model = buildModelFromSource( source );
+        return getSourceDRL( model,
+                             builder.hasDSL() && model.hasDSLSentences() ? builder.newDSLExpander() : null );
+    }
+
     private String getSourceDRL(RuleModel model,
                                 BRMSPackageBuilder builder) {
+        return getSourceDRL( model,
+                             builder.hasDSL() && model.hasDSLSentences() ? builder.getDSLExpander() : null );
+    }
+
+    private String getSourceDRL(RuleModel model,
+                                DefaultExpander expander) {
 
         String drl = getBrlDrlPersistence().marshal( model );
-        if ( builder.hasDSL() && model.hasDSLSentences() ) {
-            drl = builder.getDSLExpander().expand( drl );
+        if ( expander != null ) {
+            drl = expander.expand( drl );
         }
         return drl;
     }
 
     protected RuleModel buildModelFromAsset(AssetItem asset) {
-        RuleModel model = getBrlXmlPersistence().unmarshal( asset.getContent() );
-        model.name = asset.getName();
-        model.parentName = this.parentNameFromCategory( asset,
-                                                        model.parentName );
+        return buildModelFromSource( loadSource( asset ) );
+    }
+
+    protected RuleModel buildModelFromSource(RuleAssetSource source) {
+        RuleModel model = getBrlXmlPersistence().unmarshal( source.getContent() );
+        model.name = source.getName();
+        model.parentName = source.resolveParentName( model.parentName );
         return model;
     }
 
@@ -102,6 +102,14 @@ public abstract class ContentHandler {
      * @return rule that should be extended, based on categories
      */
     protected String parentNameFromCategory(AssetItem asset, String currentParent) {
+        return categoryParentFor( asset ).resolve( currentParent );
+    }
+
+    /**
+     * Does the repository part of parentNameFromCategory, so the parent can be resolved later on
+     * without the repository (eg when the DRL is generated on another thread).
+     */
+    protected CategoryParent categoryParentFor(AssetItem asset) {
 
         List<CategoryItem> cats = asset.getCategories();
         String catName = null;
@@ -112,7 +120,6 @@ public abstract class ContentHandler {
         //get all Category Rules for Package
         HashMap<String, String> categoryRules = asset.getPackage().getCategoryRules();
 
-        String newParent = currentParent;
         if ( null != categoryRules && null != catName ) {
             //Asset or Rule is actually used in the Category Rule, so ignore the category of the normal rule
             //Either extend from the parent category rule or none at all
@@ -123,24 +130,52 @@ public abstract class ContentHandler {
                 //This rule name is in our Category Rules
                 //See if there is a Parent and it has a rule defined, if so extend that rule, to create a chain
                 if ( parentCategory != null && parentCategory.length() > 0 && categoryRules.containsValue( parentCategory ) ) {
-                    newParent = findKeyforValue( categoryRules, parentCategory );
+                    return new CategoryParent( findKeyforValue( categoryRules, parentCategory ),
+                                               true );
                 } else {
                     //Must be blank to avoid circular reference
-                    newParent = "";
+                    return new CategoryParent( "",
+                                               true );
                 }
                 //else make sure parent is ALWAYS blank, to avoid circle references
 
                 //If the rule is not defined in the Category Rule, check to make sure currentParent isnt already set
                 //If you wanted to override the Category Rule, with a extends on the rule manually, honor it
-            } else if ( currentParent != null && currentParent.length() > 0 ) {
-                newParent = currentParent;
+            } else if ( categoryRules.containsValue( catName ) ) {
                 //Normal use case
                 //Category of the current asset has been defined in Category Rules for the current package
-            } else if ( categoryRules.containsValue( catName ) ) {
-                newParent = findKeyforValue( categoryRules, catName );
+                return new CategoryParent( findKeyforValue( categoryRules, catName ),
+                                           false );
+            }
+        }
+        return new CategoryParent( null,
+                                   false );
+    }
+
+    /**
+     * The rule an asset extends because of the Category Rules of its package.
+     */
+    public static class CategoryParent {
+
+        private final String  parentName;
+        private final boolean overridesCurrentParent;
+
+        CategoryParent(String parentName,
+                       boolean overridesCurrentParent) {
+            this.parentName = parentName;
+            this.overridesCurrentParent = overridesCurrentParent;
+        }
+
+        public String resolve(String currentParent) {
+            if ( overridesCurrentParent ) {
+                return parentName;
+            } else if ( currentParent != null && currentParent.length() > 0 ) {
+                return currentParent;
+            } else if ( parentName != null ) {
+                return parentName;
             }
+            return currentParent;
         }
-        return newParent;
     }
 
 }
@@ -29,14 +29,16 @@ import java.util.StringTokenizer;
 
 public class DRLFileContentHandler extends PlainTextContentHandler
     implements
-    IRuleAsset {
+    IParallelCompilable {
 
     public void compile(BRMSPackageBuilder builder,
                         AssetItem asset,
                         AssemblyErrorLogger logger) throws DroolsParserException,
                                                                    IOException {
-        String content = getRawDRL( asset );
-        if ( content != null && !content.trim().equals( "" ) ) {
+        String content = generateDRL( loadSource( asset ),
+                                      builder,
+                                      logger );
+        if ( content != null ) {
             builder.addPackageFromDrl( new StringReader( content ) );
         }
     }
@@ -51,6 +53,28 @@ public class DRLFileContentHandler extends PlainTextContentHandler
         }
     }
 
+    public RuleAssetSource loadSource(AssetItem asset) {
+        String content = asset.getContent();
+        ContentHandler.CategoryParent categoryParent = null;
+        if ( isStandAloneRule( content ) ) {
+            categoryParent = categoryParentFor( asset );
+        }
+        return new RuleAssetSource( asset,
+                                    content,
+                                    null,
+                                    categoryParent );
+    }
+
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger) {
+        String content = getRawDRL( source );
+        if ( content == null || content.trim().equals( "" ) ) {
+            return null;
+        }
+        return content;
+    }
+
     String wrapRuleDeclaration(String name,
                                String parentName,
                                String content) {
@@ -133,15 +157,16 @@ public class DRLFileContentHandler extends PlainTextContentHandler
     }
 
     public String getRawDRL(AssetItem asset) {
-        String content = asset.getContent();
-        if ( isStandAloneRule( content ) ) {
+        return getRawDRL( loadSource( asset ) );
+    }
 
-            String parentName = this.parentNameFromCategory( asset,
-                                                             "" );
-            content = wrapRuleDeclaration( asset.getName(),
-                                           parentName,
+    private String getRawDRL(RuleAssetSource source) {
+        String content = source.getContent();
+        if ( isStandAloneRule( content ) ) {
+            content = wrapRuleDeclaration( source.getName(),
+                                           source.resolveParentName( "" ),
                                            content );
         }
         return content;
     }
-}
\ No newline at end of file
+}
@@ -33,7 +33,7 @@ import java.util.List;
 
 public class DSLRuleContentHandler extends ContentHandler
         implements
-        IRuleAsset {
+        IParallelCompilable {
 
     public void retrieveAssetContent(RuleAsset asset,
                                      AssetItem item) throws SerializationException {
@@ -56,25 +56,17 @@ public class DSLRuleContentHandler extends ContentHandler
                         AssetItem asset,
                         AssemblyErrorLogger logger) throws DroolsParserException,
             IOException {
-        DefaultExpander expander = getExpander(builder,
-                asset,
-                logger);
-
-        String source = getRawDRL( asset );
-
-        //expand and check for errors
-        String drl = expander.expand( source );
-
-        if ( expander.hasErrors() ) {
-            List<ExpanderException> exErrs = expander.getErrors();
-            for (ExpanderException ex : exErrs) {
-                logger.logError(new ContentAssemblyError(
-                        ex.getMessage(), asset.getFormat(), asset.getName(), asset.getUUID(), false, true));
-            }
-            return;
+        RuleAssetSource source = loadSource( asset );
+        checkHasDSL( builder,
+                     source,
+                     logger );
+
+        String drl = expand( source,
+                             builder.getDSLExpander(),
+                             logger );
+        if ( drl != null ) {
+            builder.addPackageFromDrl( new StringReader( drl ) );
         }
-
-        builder.addPackageFromDrl( new StringReader( drl ) );
     }
 
     public void compile(BRMSPackageBuilder builder,
@@ -105,16 +97,51 @@ public class DSLRuleContentHandler extends ContentHandler
         builder.addPackageFromDrl( new StringReader( drl ) );
     }
 
-    private DefaultExpander getExpander(BRMSPackageBuilder builder,
-                                        AssetItem asset,
-                                        AssemblyErrorLogger logger) {
+    public RuleAssetSource loadSource(AssetItem asset) {
+        return new RuleAssetSource( asset,
+                                    asset.getContent(),
+                                    null,
+                                    categoryParentFor( asset ) );
+    }
 
-        if (!builder.hasDSL()) {
-            logger.logError(new ContentAssemblyError(
-                    "This rule asset requires a DSL, yet none were configured in the package.", asset.getFormat(), asset.getName(), asset.getUUID(), false, true));
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger) {
+        checkHasDSL( builder,
+                     source,
+                     logger );
+        return expand( source,
+                       builder.newDSLExpander(),
+                       logger );
+    }
+
+    /**
+     * Expands the DSL of the asset, logging any errors.
+     *
+     * @return the DRL, or null if it did not expand.
+     */
+    private String expand(RuleAssetSource source,
+                          DefaultExpander expander,
+                          AssemblyErrorLogger logger) {
+        //expand and check for errors
+        String drl = expander.expand( getRawDRL( source ) );
+
+        if ( expander.hasErrors() ) {
+            List<ExpanderException> exErrs = expander.getErrors();
+            for (ExpanderException ex : exErrs) {
+                logger.logError( source.newError( ex.getMessage() ) );
+            }
+            return null;
         }
+        return drl;
+    }
 
-        return builder.getDSLExpander();
+    private void checkHasDSL(BRMSPackageBuilder builder,
+                             RuleAssetSource source,
+                             AssemblyErrorLogger logger) {
+        if ( !builder.hasDSL() ) {
+            logger.logError( source.newError( "This rule asset requires a DSL, yet none were configured in the package." ) );
+        }
     }
 
     private DefaultExpander getExpander(BRMSPackageBuilder builder,
@@ -166,14 +193,13 @@ public class DSLRuleContentHandler extends ContentHandler
     }
 
     public String getRawDRL(AssetItem asset) {
-        String source = asset.getContent();
-        String parentName = this.parentNameFromCategory( asset,
-                                                         "" );
-        source = getDRL( source,
-                         asset.getName(),
-                         parentName );
+        return getRawDRL( loadSource( asset ) );
+    }
 
-        return source;
+    private String getRawDRL(RuleAssetSource source) {
+        return getDRL( source.getContent(),
+                       source.getName(),
+                       source.resolveParentName( "" ) );
     }
 
     public String getDRL(String source,
@@ -17,6 +17,7 @@
 package org.drools.guvnor.server.contenthandler;
 
 import com.google.gwt.user.client.rpc.SerializationException;
+import org.apache.commons.io.IOUtils;
 import org.drools.compiler.DroolsParserException;
 import org.drools.decisiontable.InputType;
 import org.drools.decisiontable.SpreadsheetCompiler;
@@ -24,7 +25,9 @@ import org.drools.guvnor.client.rpc.RuleAsset;
 import org.drools.guvnor.server.builder.AssemblyErrorLogger;
 import org.drools.guvnor.server.builder.BRMSPackageBuilder;
 import org.drools.repository.AssetItem;
+import org.drools.repository.RulesRepositoryException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
@@ -34,7 +37,7 @@ import java.io.StringReader;
  */
 public class DecisionTableXLSHandler extends ContentHandler
         implements
-        IRuleAsset {
+        IParallelCompilable {
 
     public void retrieveAssetContent(RuleAsset asset,
                                      AssetItem item) throws SerializationException {
@@ -72,6 +75,23 @@ public class DecisionTableXLSHandler extends ContentHandler
 
     }
 
+    public RuleAssetSource loadSource(AssetItem asset) {
+        try {
+            return new RuleAssetSource(asset,
+                    null,
+                    IOUtils.toByteArray(asset.getBinaryContentAttachment()),
+                    null);
+        } catch (IOException e) {
+            throw new RulesRepositoryException(e);
+        }
+    }
+
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger) {
+        return getDRL(new ByteArrayInputStream(source.getBinaryContent()));
+    }
+
     public String getRawDRL(AssetItem asset) {
         return getDRL(asset.getBinaryContentAttachment());
     }
@@ -34,7 +34,7 @@ import java.io.StringReader;
  */
 public class GuidedDTContentHandler extends ContentHandler
     implements
-    IRuleAsset {
+    IParallelCompilable {
 
     public void retrieveAssetContent(RuleAsset asset,
                                      AssetItem item) throws SerializationException {
@@ -90,11 +90,29 @@ public class GuidedDTContentHandler extends ContentHandler
         stringBuilder.append( drl );
     }
 
+    public RuleAssetSource loadSource(AssetItem asset) {
+        return new RuleAssetSource( asset,
+                                    asset.getContent(),
+                                    null,
+                                    categoryParentFor( asset ) );
+    }
+
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger) {
+        String drl = getRawDRL( source );
+        if ( drl.equals( "" ) ) return null;
+        return drl;
+    }
+
     public String getRawDRL(AssetItem asset) {
-        TypeSafeGuidedDecisionTable model = GuidedDTXMLPersistence.getInstance().unmarshal( asset.getContent() );
-        model.setTableName( asset.getName() );
-        model.setParentName( this.parentNameFromCategory( asset,
-                                                          model.getParentName() ) );
+        return getRawDRL( loadSource( asset ) );
+    }
+
+    private String getRawDRL(RuleAssetSource source) {
+        TypeSafeGuidedDecisionTable model = GuidedDTXMLPersistence.getInstance().unmarshal( source.getContent() );
+        model.setTableName( source.getName() );
+        model.setParentName( source.resolveParentName( model.getParentName() ) );
 
         return GuidedDTDRLPersistence.getInstance().marshal( model );
     }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.contenthandler;
+
+import org.drools.guvnor.server.builder.AssemblyErrorLogger;
+import org.drools.guvnor.server.builder.BRMSPackageBuilder;
+import org.drools.repository.AssetItem;
+
+/**
+ * This interface indicates that a rule asset can generate its DRL away from
+ * the repository session, so the package builder can do that for several
+ * assets at the same time.
+ */
+public interface IParallelCompilable
+        extends
+        IRuleAsset {
+
+    /**
+     * Reads everything generateDRL needs from the repository. This is called
+     * on the thread that owns the repository session.
+     */
+    public RuleAssetSource loadSource(AssetItem asset);
+
+    /**
+     * Generates the DRL of the asset, or returns null if there is nothing to
+     * compile. This may be called on any thread and must not use the
+     * repository. The builder is only there for its DSL configuration, use
+     * BRMSPackageBuilder.newDSLExpander() rather than its shared expander. The
+     * serial compile of the asset should generate its DRL the same way.
+     */
+    public String generateDRL(RuleAssetSource source,
+                              BRMSPackageBuilder builder,
+                              AssemblyErrorLogger logger);
+}
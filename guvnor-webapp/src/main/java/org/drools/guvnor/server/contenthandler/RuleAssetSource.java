@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.contenthandler;
+
+import org.drools.guvnor.server.builder.ContentAssemblyError;
+import org.drools.repository.AssetItem;
+
+/**
+ * What a rule asset needs to generate its DRL, read from the repository
+ * beforehand.
+ *
+ * @see IParallelCompilable
+ */
+public class RuleAssetSource {
+
+    private final String                         uuid;
+    private final String                         name;
+    private final String                         format;
+    private final String                         content;
+    private final byte[]                         binaryContent;
+    private final ContentHandler.CategoryParent categoryParent;
+
+    public RuleAssetSource(AssetItem asset,
+                           String content,
+                           byte[] binaryContent,
+                           ContentHandler.CategoryParent categoryParent) {
+        this.uuid = asset.getUUID();
+        this.name = asset.getName();
+        this.format = asset.getFormat();
+        this.content = content;
+        this.binaryContent = binaryContent;
+        this.categoryParent = categoryParent;
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public byte[] getBinaryContent() {
+        return binaryContent;
+    }
+
+    /**
+     * @return the rule the asset extends, given the parent name it declares
+     *         itself.
+     */
+    public String resolveParentName(String currentParent) {
+        if ( categoryParent == null ) {
+            return currentParent;
+        }
+        return categoryParent.resolve( currentParent );
+    }
+
+    public ContentAssemblyError newError(String message) {
+        return new ContentAssemblyError( message,
+                                         format,
+                                         name,
+                                         uuid,
+                                         false,
+                                         true );
+    }
+}
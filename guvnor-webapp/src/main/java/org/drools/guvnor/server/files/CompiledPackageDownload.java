@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.drools.repository.PackageItem;
+
+/**
+ * Streams the compiled binary of a package straight from the repository,
+ * without loading it into memory. The SHA-1 digest of the binary is used as a
+ * strong ETag, so clients that already have the binary get a 304, and single
+ * byte ranges are supported so that interrupted downloads can be resumed.
+ */
+public class CompiledPackageDownload {
+
+    private static final int   BUFFER_SIZE = 8192;
+
+    /**
+     * Returned by {@link #getRange(String, String)} when the range can't be
+     * satisfied.
+     */
+    public static final Range  UNSATISFIABLE = new Range( -1,
+                                                          -1 );
+
+    private final PackageItem  item;
+    private final String       digest;
+    private final String       eTag;
+    private final long         length;
+    private final boolean      exists;
+
+    public CompiledPackageDownload(PackageItem item) {
+        this.item = item;
+        this.digest = item.getCompiledPackageDigest();
+        this.eTag = digest == null ? null : "\"" + digest + "\"";
+        this.length = item.getCompiledPackageSize();
+        this.exists = item.hasCompiledPackage();
+    }
+
+    /**
+     * @return false if the package has not been built yet.
+     */
+    public boolean exists() {
+        return exists;
+    }
+
+    /**
+     * @return the SHA-1 digest of the binary, in hex, or null for binaries
+     *         built before digests were stored, which are sent without an
+     *         entity tag.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the digest as a (quoted) entity tag, or null.
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header, may be null.
+     */
+    public boolean isNotModified(String ifNoneMatch) {
+        if ( ifNoneMatch == null ) {
+            return false;
+        }
+        for ( String tag : ifNoneMatch.split( "," ) ) {
+            tag = tag.trim();
+            if ( tag.equals( "*" ) || tag.equals( eTag ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Works out the part of the binary to send. Only a single range is
+     * supported; anything else gets the whole binary.
+     *
+     * @param rangeHeader the Range header, may be null.
+     * @param ifRange the If-Range header, may be null.
+     * @return null for the whole binary, or {@link #UNSATISFIABLE}.
+     */
+    public Range getRange(String rangeHeader,
+                          String ifRange) {
+        if ( rangeHeader == null || !rangeHeader.startsWith( "bytes=" ) || rangeHeader.indexOf( ',' ) != -1 ) {
+            return null;
+        }
+        if ( ifRange != null && !ifRange.equals( eTag ) ) {
+            return null;
+        }
+        String spec = rangeHeader.substring( "bytes=".length() ).trim();
+        int dash = spec.indexOf( '-' );
+        if ( dash == -1 ) {
+            return null;
+        }
+        try {
+            long first;
+            long last;
+            if ( dash == 0 ) {
+                // the last n bytes
+                long suffix = Long.parseLong( spec.substring( 1 ) );
+                if ( suffix == 0 ) {
+                    return UNSATISFIABLE;
+                }
+                first = Math.max( 0,
+                                  length - suffix );
+                last = length - 1;
+            } else {
+                first = Long.parseLong( spec.substring( 0,
+                                                        dash ) );
+                last = dash == spec.length() - 1 ? length - 1 : Math.min( Long.parseLong( spec.substring( dash + 1 ) ),
+                                                                          length - 1 );
+            }
+            if ( first >= length || first > last ) {
+                return UNSATISFIABLE;
+            }
+            return new Range( first,
+                              last );
+        } catch ( NumberFormatException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the binary, or a range of it, to the stream.
+     *
+     * @param range null for the whole binary.
+     */
+    public void write(OutputStream out,
+                      Range range) throws IOException {
+        InputStream in = item.getCompiledPackageStream();
+        if ( in == null ) {
+            return;
+        }
+        try {
+            long remaining = length;
+            if ( range != null ) {
+                skipFully( in,
+                           range.getFirst() );
+                remaining = range.getLength();
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while ( remaining > 0 ) {
+                int read = in.read( buffer,
+                                    0,
+                                    (int) Math.min( buffer.length,
+                                                    remaining ) );
+                if ( read == -1 ) {
+                    break;
+                }
+                out.write( buffer,
+                           0,
+                           read );
+                remaining -= read;
+            }
+            out.flush();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sends the binary as the response to the request, honouring the
+     * If-None-Match, Range and If-Range headers.
+     */
+    public void write(HttpServletRequest request,
+                      HttpServletResponse response,
+                      String fileName) throws IOException {
+        if ( !exists() ) {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+        if ( eTag != null ) {
+            response.setHeader( "ETag",
+                                eTag );
+        }
+        response.setHeader( "Accept-Ranges",
+                            "bytes" );
+        if ( isNotModified( request.getHeader( "If-None-Match" ) ) ) {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+        Range range = getRange( request.getHeader( "Range" ),
+                                request.getHeader( "If-Range" ) );
+        if ( range == UNSATISFIABLE ) {
+            response.setHeader( "Content-Range",
+                                "bytes */" + length );
+            response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+            return;
+        }
+
+        response.setContentType( "application/x-download" );
+        response.setHeader( "Content-Disposition",
+                            "attachment; filename=" + fileName + ";" );
+        if ( range == null ) {
+            response.setHeader( "Content-Length",
+                                Long.toString( length ) );
+        } else {
+            response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+            response.setHeader( "Content-Range",
+                                range.getContentRange( length ) );
+            response.setHeader( "Content-Length",
+                                Long.toString( range.getLength() ) );
+        }
+        write( response.getOutputStream(),
+               range );
+    }
+
+    private static void skipFully(InputStream in,
+                                  long count) throws IOException {
+        while ( count > 0 ) {
+            long skipped = in.skip( count );
+            if ( skipped <= 0 ) {
+                if ( in.read() == -1 ) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * An inclusive byte range.
+     */
+    public static class Range {
+
+        private final long first;
+        private final long last;
+
+        Range(long first,
+              long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        public long getFirst() {
+            return first;
+        }
+
+        public long getLast() {
+            return last;
+        }
+
+        public long getLength() {
+            return last - first + 1;
+        }
+
+        public String getContentRange(long total) {
+            return "bytes " + first + "-" + last + "/" + total;
+        }
+    }
+}
@@ -96,13 +96,14 @@ public class FeedServlet extends RepositoryServlet {
                                   HttpServletResponse response) throws IOException {
         String assetName = request.getParameter( "assetName" );
         String packageName = request.getParameter( "package" );
-        AssetItem asset = getFileManager().getRepository().loadPackage( packageName ).loadAsset( assetName );
+        AssetItem asset = getReadOnlyRepository().loadPackage( packageName ).loadAsset( assetName );
         checkPackageReadPermission( asset.getPackageName() );
 
         List<AtomFeed.AtomEntry> entries = new ArrayList<AtomFeed.AtomEntry>();
         entries.add( new AtomFeed.AtomEntry( request,
                                              asset ) );
-        List<DiscussionRecord> drs = new Discussion().fromString( asset.getStringProperty( Discussion.DISCUSSION_PROPERTY_KEY ) );
+        List<DiscussionRecord> drs = new Discussion().loadLatest( asset,
+                                                                 Discussion.MAX_LOADED );
         for ( DiscussionRecord dr : drs ) {
             entries.add( new AtomFeed.AtomEntry( request,
                                                  asset,
@@ -124,7 +125,7 @@ public class FeedServlet extends RepositoryServlet {
         String cat = request.getParameter( "name" );
         String status = request.getParameter( "status" );
         checkCategoryPermission( cat );
-        AssetItemPageResult pg = getFileManager().getRepository().findAssetsByCategory( cat,
+        AssetItemPageResult pg = getReadOnlyRepository().findAssetsByCategory( cat,
                                                                                         false,
                                                                                         0,
                                                                                         -1 );
@@ -157,7 +158,7 @@ public class FeedServlet extends RepositoryServlet {
         String packageName = request.getParameter( "name" );
         checkPackageReadPermission( packageName );
 
-        PackageItem pkg = getFileManager().getRepository().loadPackage( packageName );
+        PackageItem pkg = getReadOnlyRepository().loadPackage( packageName );
 
         List<AtomFeed.AtomEntry> entries = new ArrayList<AtomFeed.AtomEntry>();
         Iterator<AssetItem> it = pkg.getAssets();
@@ -20,6 +20,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Iterator;
 import java.util.List;
@@ -35,12 +36,14 @@ import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.drools.compiler.DroolsParserException;
 import org.drools.guvnor.client.common.HTMLFileManagerFields;
 import org.drools.guvnor.server.builder.BRMSPackageBuilder;
+import org.drools.guvnor.server.builder.ModelJarCache;
 import org.drools.guvnor.server.builder.PackageDRLAssembler;
 import org.drools.guvnor.server.cache.RuleBaseCache;
 import org.drools.guvnor.server.contenthandler.ContentHandler;
 import org.drools.guvnor.server.contenthandler.ContentManager;
 import org.drools.guvnor.server.contenthandler.ICanHasAttachment;
 import org.drools.guvnor.server.contenthandler.IRuleAsset;
+import org.drools.guvnor.server.repository.InboxInterestIndex;
 import org.drools.guvnor.server.repository.MigrateRepository;
 import org.drools.guvnor.server.security.AdminType;
 import org.drools.guvnor.server.security.RoleTypes;
@@ -181,23 +184,42 @@ public class FileManagerUtils {
                                     String packageVersion,
                                     boolean isLatest,
                                     OutputStream out) throws IOException {
-        PackageItem item = null;
+        PackageItem item = loadPackage( packageName,
+                                        packageVersion,
+                                        isLatest );
+        new CompiledPackageDownload( item ).write( out,
+                                                   null );
+        return getBinaryPackageFileName( packageName,
+                                         packageVersion,
+                                         isLatest );
+    }
+
+    /**
+     * Load the latest package, or a snapshot of it.
+     */
+    public PackageItem loadPackage(String packageName,
+                                   String packageVersion,
+                                   boolean isLatest) {
         if ( isLatest ) {
-            item = repository.loadPackage( packageName );
-            byte[] data = item.getCompiledPackageBytes();
-            out.write( data );
-            out.flush();
-            return packageName + ".pkg";
+            return repository.loadPackage( packageName );
         } else {
-            item = repository.loadPackageSnapshot( packageName,
+            return repository.loadPackageSnapshot( packageName,
                                                    packageVersion );
-            byte[] data = item.getCompiledPackageBytes();
-            out.write( data );
-            out.flush();
+        }
+    }
+
+    /**
+     * @return the name to download the binary package as.
+     */
+    public String getBinaryPackageFileName(String packageName,
+                                           String packageVersion,
+                                           boolean isLatest) throws UnsupportedEncodingException {
+        if ( isLatest ) {
+            return packageName + ".pkg";
+        } else {
             return packageName + "_" + URLEncoder.encode( packageVersion,
                                                           "UTF-8" ) + ".pkg";
         }
-
     }
 
     /**
@@ -253,6 +275,7 @@ public class FileManagerUtils {
                                                  RoleTypes.ADMIN );
         }
         repository.importRulesRepositoryFromStream( in );
+        InboxInterestIndex.getInstance().clear();
 
         //
         //Migrate v4 ruleflows to v5
@@ -264,6 +287,7 @@ public class FileManagerUtils {
                 MigrateRepository.migrateRuleflows( repository );
             }
             RuleBaseCache.getInstance().clearCache();
+            ModelJarCache.getInstance().clearCache();
         } catch ( RepositoryException e ) {
             e.printStackTrace();
             throw new RulesRepositoryException( e );
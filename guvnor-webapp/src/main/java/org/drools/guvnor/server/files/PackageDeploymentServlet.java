@@ -66,7 +66,7 @@ public class PackageDeploymentServlet extends RepositoryServlet {
         PackageDeploymentURIHelper helper = null;
         try {
             helper = new PackageDeploymentURIHelper( request.getRequestURI() );
-            FileManagerUtils fm = getFileManager();
+            FileManagerUtils fm = getReadOnlyFileManager();
             return fm.getLastModified( helper.getPackageName(),
                                        helper.getVersion() );
         } catch ( UnsupportedEncodingException e ) {
@@ -81,7 +81,7 @@ public class PackageDeploymentServlet extends RepositoryServlet {
         if ( request.getMethod().equals( "HEAD" ) ) {
             SimpleDateFormat dateFormat = new SimpleDateFormat(RFC822DATEFORMAT, HEADER_LOCALE);
             PackageDeploymentURIHelper helper = new PackageDeploymentURIHelper( request.getRequestURI() );
-            FileManagerUtils fm = getFileManager();
+            FileManagerUtils fm = getReadOnlyFileManager();
             long mod = fm.getLastModified( helper.getPackageName(),
                                            helper.getVersion() );
             response.addHeader( "lastModified",
@@ -146,7 +146,7 @@ public class PackageDeploymentServlet extends RepositoryServlet {
                 log.info( "PackageIsSource: " + helper.isSource() );
 
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
-                FileManagerUtils fm = getFileManager();
+                FileManagerUtils fm = getReadOnlyFileManager();
                 String fileName = null;
                 if ( helper.isSource() ) {
                     if ( helper.isAsset() ) {
@@ -260,10 +260,16 @@ public class PackageDeploymentServlet extends RepositoryServlet {
                         out.write(asset.getBinaryContentAsBytes());
 
                     } else {
-                        fileName = fm.loadBinaryPackage( helper.getPackageName(),
-                                helper.getVersion(),
-                                helper.isLatest(),
-                                out );
+                        //stream the binary rather than buffer it, it can be big
+                        PackageItem pkg = fm.loadPackage( helper.getPackageName(),
+                                                          helper.getVersion(),
+                                                          helper.isLatest() );
+                        new CompiledPackageDownload( pkg ).write( req,
+                                                                  res,
+                                                                  fm.getBinaryPackageFileName( helper.getPackageName(),
+                                                                                               helper.getVersion(),
+                                                                                               helper.isLatest() ) );
+                        return;
                     }
 
                 }
@@ -59,6 +59,33 @@ public class RepositoryServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Get a repository for a request that only reads from it. In Seam, this is
+     * on a pooled read only session, see ReadOnlySessionPool.
+     */
+    static RulesRepository getReadOnlyRepository() {
+        if ( Contexts.isApplicationContextActive() ) {
+            return (RulesRepository) Component.getInstance( "readOnlyRepository" );
+        } else {
+            try {
+                return new RulesRepository( TestEnvironmentSessionHelper.getSession( false ) );
+            } catch ( Exception e ) {
+                throw new IllegalStateException( "Unable to get repo to run tests",
+                                                 e );
+            }
+        }
+    }
+
+    /**
+     * A file manager on the read only repository. It is not a Seam component,
+     * so it is only good for the methods which do not need a logged in user.
+     */
+    static FileManagerUtils getReadOnlyFileManager() {
+        FileManagerUtils manager = new FileManagerUtils();
+        manager.setRepository( getReadOnlyRepository() );
+        return manager;
+    }
+
     /**
      * Here we perform the action in the appropriate security context.
      */
@@ -70,7 +70,7 @@ public class RestAPIServlet extends RepositoryServlet {
                             res,
                             new Command() {
                                 public void execute() throws Exception {
-                                    RestAPI api = getAPI();
+                                    RestAPI api = new RestAPI( getReadOnlyRepository() );
                                     String qString = req.getQueryString();
                                     String ur = req.getRequestURI();
                                     if ( qString != null && qString.length() > 0 ) {
@@ -64,6 +64,9 @@ public class WebDAVImpl implements IWebdavStore {
 
     final ThreadLocal<RulesRepository> tlRepo        = new ThreadLocal<RulesRepository>();
 
+    /** Set by the servlet while it serves a request which only reads */
+    static final ThreadLocal<Boolean>  readOnlyRequest = new ThreadLocal<Boolean>();
+
     public WebDAVImpl(File f) {
 
     }
@@ -80,7 +83,11 @@ public class WebDAVImpl implements IWebdavStore {
     }
 
     public ITransaction begin(final Principal principal) {
-        tlRepo.set( RestAPIServlet.getRepository() );
+        if ( Boolean.TRUE.equals( readOnlyRequest.get() ) ) {
+            tlRepo.set( RepositoryServlet.getReadOnlyRepository() );
+        } else {
+            tlRepo.set( RestAPIServlet.getRepository() );
+        }
 
         return new ITransaction() {
             public Principal getPrincipal() {
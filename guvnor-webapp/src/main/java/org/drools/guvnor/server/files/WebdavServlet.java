@@ -73,13 +73,22 @@ public class WebdavServlet extends WebDavServletBean {
                             "BASIC realm=\"users\"" );
             resp.sendError( HttpServletResponse.SC_UNAUTHORIZED );
         } else {
-            super.service( req,
-                           resp );
+            WebDAVImpl.readOnlyRequest.set( isReadOnly( req.getMethod() ) );
+            try {
+                super.service( req,
+                               resp );
+            } finally {
+                WebDAVImpl.readOnlyRequest.remove();
+            }
         }
 
         //System.err.println("WebDAV servlet time: " + (System.currentTimeMillis() - time));
     }
 
+    static boolean isReadOnly(String method) {
+        return "GET".equals( method ) || "HEAD".equals( method ) || "PROPFIND".equals( method ) || "OPTIONS".equals( method );
+    }
+
     protected IWebdavStore constructStore(String clazzName,
                                           File root) {
         IWebdavStore webdavStore;
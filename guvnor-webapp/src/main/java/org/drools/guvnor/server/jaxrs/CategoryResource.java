@@ -19,6 +19,7 @@ package org.drools.guvnor.server.jaxrs;
 import javax.ws.rs.core.UriBuilder;
 
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.apache.abdera.Abdera;
 import org.apache.abdera.factory.Factory;
@@ -30,6 +31,7 @@ import org.drools.guvnor.server.jaxrs.jaxb.Asset;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
 import org.jboss.resteasy.plugins.providers.atom.Link;*/
 
+import org.drools.repository.AssetCursor;
 import org.drools.repository.AssetItem;
 import org.drools.repository.AssetItemPageResult;
 import org.jboss.seam.annotations.Name;
@@ -56,15 +58,15 @@ public class CategoryResource extends Resource {
     @GET
     @Path("{categoryName}")
     @Produces(MediaType.APPLICATION_ATOM_XML)
-    public Feed getAssetsAsAtom(@PathParam("categoryName") String encoded) {
+    public Feed getAssetsAsAtom(@PathParam("categoryName") String encoded, @QueryParam("cursor") String cursor) {
         Factory factory = Abdera.getNewFactory();
         Feed f = factory.getAbdera().newFeed();
         try {
             String decoded = URLDecoder.decode(encoded, Encoding);
             UriBuilder builder = uriInfo.getAbsolutePathBuilder();
             f.setTitle(encoded);
-            AssetItemPageResult result = repository.findAssetsByCategory(
-                    decoded, 0, pageSize);
+            AssetItemPageResult result = repository.findAssetsByCategoryAfter(
+                    decoded, false, parseCursor(cursor), pageSize, null);
             List<AssetItem> assets = result.assets;
             for (AssetItem item : assets) {
                 Entry e = ToAssetEntryAbdera(item, uriInfo);
@@ -74,7 +76,8 @@ public class CategoryResource extends Resource {
             if (result.hasNext) {
             	Link l = factory.newLink();
                 l.setRel("next-page");
-                l.setHref(builder.path("/" + encoded + "/page/1").build().toString());
+                // passed as a value rather than in the template, as titles may hold braces
+                l.setHref(builder.queryParam("cursor", "{cursor}").build(result.nextCursor.toString()).toString());
                 f.addLink(l);
             }
         } catch (UnsupportedEncodingException e) {
@@ -87,12 +90,14 @@ public class CategoryResource extends Resource {
     @GET
     @Path("{categoryName}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML})
-    public Collection<Asset> getAssetsAsJAXB(@PathParam("categoryName") String encoded) {
+    public Collection<Asset> getAssetsAsJAXB(@PathParam("categoryName") String encoded, @QueryParam("cursor") String cursor) {
         Collection<Asset> ret = Collections.EMPTY_LIST;
 
         try {
             String decoded = URLDecoder.decode(encoded, Encoding);
-            AssetItemPageResult result = repository.findAssetsByCategory(decoded, 0, pageSize);
+            AssetItemPageResult result = cursor == null
+                    ? repository.findAssetsByCategory(decoded, 0, pageSize)
+                    : repository.findAssetsByCategoryAfter(decoded, false, parseCursor(cursor), pageSize, null);
             List<AssetItem> assets = result.assets;
             if (assets.size() > 0) {
                 ret = new ArrayList<Asset>();
@@ -165,4 +170,12 @@ public class CategoryResource extends Resource {
         return ret;
     }
 
+    private AssetCursor parseCursor(String cursor) {
+        try {
+            return AssetCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build());
+        }
+    }
+
 }
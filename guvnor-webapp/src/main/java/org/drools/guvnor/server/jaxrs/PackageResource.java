@@ -23,6 +23,7 @@ import static org.drools.guvnor.server.jaxrs.Translator.ToPackageEntryAbdera;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,8 +41,12 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.abdera.Abdera;
@@ -53,6 +58,7 @@ import org.apache.abdera.model.Link;
 import org.drools.compiler.DroolsParserException;
 import org.drools.guvnor.client.rpc.BuilderResult;
 import org.drools.guvnor.server.builder.PackageDRLAssembler;
+import org.drools.guvnor.server.files.CompiledPackageDownload;
 import org.drools.guvnor.server.files.RepositoryServlet;
 import org.drools.guvnor.server.jaxrs.jaxb.Asset;
 import org.drools.guvnor.server.jaxrs.jaxb.Package;
@@ -176,13 +182,12 @@ public class PackageResource extends Resource {
     @GET
     @Path("{packageName}/binary")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
-    public Response getPackageBinary(@PathParam("packageName") String packageName) throws SerializationException {
+    public Response getPackageBinary(@PathParam("packageName") String packageName,
+                                     @Context Request request,
+                                     @Context HttpHeaders headers) throws SerializationException {
         PackageItem p = repository.loadPackage(packageName);
         String fileName = packageName + ".pkg";
-        byte[] result;
-        if(p.isBinaryUpToDate()) {
-            result = p.getCompiledPackageBytes();
-        } else {
+        if(!p.isBinaryUpToDate()) {
             StringBuilder errs = new StringBuilder();
             BuilderResult builderResult = packageService.buildPackage(p.getUUID(), true);
             if ( builderResult != null ) {
@@ -190,10 +195,56 @@ public class PackageResource extends Resource {
                 StringBuilder buf = createStringBuilderFrom( builderResult );
                 return Response.status(500).entity(buf.toString()).build();
             }
-            result = repository.loadPackage(packageName).getCompiledPackageBytes(); 
+            p = repository.loadPackage(packageName);
         }
         
-        return Response.ok(result).header("Content-Disposition", "attachment; filename=" + fileName).build();
+        return getBinaryResponse(new CompiledPackageDownload(p), fileName, request, headers);
+    }
+
+    /**
+     * Streams the binary, answering If-None-Match with a 304 and a single
+     * byte Range with a 206.
+     */
+    private Response getBinaryResponse(final CompiledPackageDownload download,
+                                       String fileName,
+                                       Request request,
+                                       HttpHeaders headers) {
+        if (!download.exists()) {
+            return Response.status(500).entity("This package has no compiled binary").type("text/plain").build();
+        }
+        EntityTag eTag = download.getDigest() == null ? null : new EntityTag(download.getDigest());
+        if (eTag != null) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+            if (notModified != null) {
+                return notModified.header("Accept-Ranges", "bytes").build();
+            }
+        }
+
+        final CompiledPackageDownload.Range range = download.getRange(headers.getRequestHeaders().getFirst("Range"),
+                                                                      headers.getRequestHeaders().getFirst("If-Range"));
+        if (range == CompiledPackageDownload.UNSATISFIABLE) {
+            return Response.status(416).header("Content-Range", "bytes */" + download.getLength()).build();
+        }
+
+        StreamingOutput entity = new StreamingOutput() {
+            public void write(OutputStream out) throws IOException {
+                download.write(out, range);
+            }
+        };
+        Response.ResponseBuilder builder;
+        if (range == null) {
+            builder = Response.ok(entity).header("Content-Length", download.getLength());
+        } else {
+            builder = Response.status(206).entity(entity)
+                    .header("Content-Range", range.getContentRange(download.getLength()))
+                    .header("Content-Length", range.getLength());
+        }
+        if (eTag != null) {
+            builder.tag(eTag);
+        }
+        return builder.header("Accept-Ranges", "bytes")
+                .header("Content-Disposition", "attachment; filename=" + fileName)
+                .build();
     }
     
     private StringBuilder createStringBuilderFrom(BuilderResult res) {
@@ -267,12 +318,14 @@ public class PackageResource extends Resource {
     @Path("{packageName}/versions/{versionNumber}/binary")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     public Response getHistoricalPackageBinary(@PathParam("packageName") String packageName,
-    		@PathParam("versionNumber") long versionNumber) throws SerializationException {
+    		@PathParam("versionNumber") long versionNumber,
+    		@Context Request request,
+    		@Context HttpHeaders headers) throws SerializationException {
         PackageItem p = repository.loadPackage(packageName, versionNumber);
-        byte[] result = p.getCompiledPackageBytes();
-        if(result != null) {
+        CompiledPackageDownload download = new CompiledPackageDownload(p);
+        if(download.exists()) {
             String fileName = packageName + ".pkg";  
-            return Response.ok(result).header("Content-Disposition", "attachment; filename=" + fileName).build();
+            return getBinaryResponse(download, fileName, request, headers);
         } else {
             return Response.status(500).entity("This package version has no compiled binary").type("text/plain").build();
         }
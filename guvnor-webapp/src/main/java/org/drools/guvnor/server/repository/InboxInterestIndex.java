@@ -0,0 +1,291 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.drools.guvnor.client.explorer.ExplorerNodeConfig;
+import org.drools.guvnor.server.util.LoggingHelper;
+import org.drools.repository.RulesRepository;
+import org.drools.repository.UserInfo;
+import org.drools.repository.UserInfo.InboxEntry;
+
+/**
+ * Which users have which assets on their recently edited list, so that the
+ * {@link MailboxService} can find who to tell about a change to an asset
+ * without reading the list of every user.
+ *
+ * The index is built from the lists of all the users the first time it is
+ * needed, and is then kept up to date as assets are added to the lists.
+ * Once {@link #start(Session)} has been called, it also listens to the
+ * repository for changes to the list of any user, made on this node of a
+ * cluster or any other, and reads the list of that user again. Until then,
+ * assets which drop off a list (or whose list is cleared) stay in the index
+ * until the mailbox finds out, as it checks the list of each user before
+ * delivering to it.
+ */
+public class InboxInterestIndex
+    implements
+    EventListener {
+
+    private static final LoggingHelper             log          = LoggingHelper.getLogger( InboxInterestIndex.class );
+
+    private static final InboxInterestIndex        INSTANCE     = new InboxInterestIndex();
+
+    private static final String                    USERS_PATH   = "/" + RulesRepository.RULES_REPOSITORY_NAME + "/user_info";
+
+    private static final int                       EVENTS       = Event.NODE_REMOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    /** Held while reading the lists of the users, before the index lock. */
+    private final Object                           readLock     = new Object();
+    private final Map<String, Set<String>>         usersByAsset = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>>         assetsByUser = new HashMap<String, Set<String>>();
+    private volatile boolean                       built;
+    private Session                                session;
+
+    InboxInterestIndex() {
+    }
+
+    public static InboxInterestIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts listening for changes to the lists of the users, using (and from
+     * now on owning) the given session.
+     */
+    public void start(Session session) throws RepositoryException {
+        stop();
+        synchronized ( readLock ) {
+            ObservationManager observationManager = session.getWorkspace().getObservationManager();
+            observationManager.addEventListener( this,
+                                                 EVENTS,
+                                                 USERS_PATH,
+                                                 true,
+                                                 null,
+                                                 null,
+                                                 false );
+            this.session = session;
+        }
+    }
+
+    /**
+     * Stops listening and logs the session of the index out.
+     */
+    public void stop() {
+        Session stopped;
+        synchronized ( readLock ) {
+            stopped = session;
+            session = null;
+        }
+        if ( stopped == null ) {
+            return;
+        }
+        // not while holding the lock, removing the listener waits for any events being delivered
+        try {
+            stopped.getWorkspace().getObservationManager().removeEventListener( this );
+        } catch ( RepositoryException e ) {
+            log.warn( "Unable to remove the inbox index listener: " + e.getMessage() );
+        }
+        stopped.logout();
+    }
+
+    /**
+     * Notes that the asset is on the recently edited list of the user.
+     */
+    public synchronized void add(String userName,
+                                 String assetUUID) {
+        get( usersByAsset,
+             assetUUID ).add( userName );
+        get( assetsByUser,
+             userName ).add( assetUUID );
+    }
+
+    /**
+     * Notes that the asset is no longer on the recently edited list of the
+     * user.
+     */
+    public synchronized void remove(String userName,
+                                    String assetUUID) {
+        Set<String> users = usersByAsset.get( assetUUID );
+        if ( users != null ) {
+            users.remove( userName );
+            if ( users.isEmpty() ) {
+                usersByAsset.remove( assetUUID );
+            }
+        }
+        Set<String> assets = assetsByUser.get( userName );
+        if ( assets != null ) {
+            assets.remove( assetUUID );
+        }
+    }
+
+    /**
+     * @return the users who (may) have the asset on their recently edited
+     * list.
+     */
+    public synchronized Set<String> getInterestedUsers(String assetUUID) {
+        Set<String> users = usersByAsset.get( assetUUID );
+        return users == null ? Collections.<String> emptySet() : new HashSet<String>( users );
+    }
+
+    /**
+     * Reads the recently edited lists of all the users, unless that has been
+     * done already.
+     */
+    void build(final RulesRepository repository) {
+        synchronized ( readLock ) {
+            if ( built ) {
+                return;
+            }
+            UserInfo.eachUser( repository,
+                               new UserInfo.Command() {
+                                   public void process(String userName) {
+                                       for ( InboxEntry entry : new UserInbox( repository,
+                                                                               userName ).loadRecentEdited() ) {
+                                           add( userName,
+                                                entry.assetUUID );
+                                       }
+                                   }
+                               } );
+            built = true;
+        }
+    }
+
+    /**
+     * Reads the lists of the users whose recently edited list changed, once
+     * the index has been built (until then, building reads them anyway).
+     */
+    public void onEvent(EventIterator events) {
+        Set<String> changed = new HashSet<String>();
+        while ( events.hasNext() ) {
+            try {
+                String userName = getChangedUser( events.nextEvent() );
+                if ( userName != null ) {
+                    changed.add( userName );
+                }
+            } catch ( RepositoryException e ) {
+                log.warn( "Unable to read an inbox event: " + e.getMessage() );
+            }
+        }
+        if ( changed.isEmpty() ) {
+            return;
+        }
+        synchronized ( readLock ) {
+            if ( session == null || !built ) {
+                return;
+            }
+            RulesRepository repository = new RulesRepository( session );
+            try {
+                for ( String userName : changed ) {
+                    Set<String> assets = new HashSet<String>();
+                    if ( repository.getSession().getRootNode().hasNode( USERS_PATH.substring( 1 ) + "/" + userName ) ) {
+                        for ( InboxEntry entry : new UserInbox( repository,
+                                                                userName ).loadRecentEdited() ) {
+                            assets.add( entry.assetUUID );
+                        }
+                    }
+                    replace( userName,
+                             assets );
+                }
+            } catch ( RepositoryException e ) {
+                log.error( "Unable to read the recently edited lists, building the index again when next needed",
+                           e );
+                clear();
+            } finally {
+                try {
+                    // reading may have added the inbox of a user, which is not ours to save
+                    session.refresh( false );
+                } catch ( RepositoryException e ) {
+                    log.warn( "Unable to refresh the inbox index session: " + e.getMessage() );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the user whose recently edited list the event may have changed,
+     * or null if it did not change one.
+     */
+    private String getChangedUser(Event event) throws RepositoryException {
+        String path = event.getPath();
+        if ( !path.startsWith( USERS_PATH + "/" ) ) {
+            return null;
+        }
+        // user/inbox/jcr:content/recentEdited.12
+        String[] names = path.substring( USERS_PATH.length() + 1 ).split( "/" );
+        if ( event.getType() == Event.NODE_REMOVED ) {
+            return names.length <= 3 ? names[0] : null;
+        }
+        if ( names.length != 4 || !names[1].equals( UserInbox.INBOX ) ) {
+            return null;
+        }
+        String property = names[3];
+        return property.equals( ExplorerNodeConfig.RECENT_EDITED_ID ) || property.startsWith( ExplorerNodeConfig.RECENT_EDITED_ID + "." ) ? names[0] : null;
+    }
+
+    private synchronized void replace(String userName,
+                                      Set<String> assets) {
+        Set<String> old = assetsByUser.remove( userName );
+        if ( old != null ) {
+            for ( String assetUUID : old ) {
+                remove( userName,
+                        assetUUID );
+            }
+        }
+        for ( String assetUUID : assets ) {
+            add( userName,
+                 assetUUID );
+        }
+    }
+
+    private static Set<String> get(Map<String, Set<String>> map,
+                                   String key) {
+        Set<String> values = map.get( key );
+        if ( values == null ) {
+            values = new HashSet<String>();
+            map.put( key,
+                     values );
+        }
+        return values;
+    }
+
+    /**
+     * Forgets everything, for when the repository is replaced. The index is
+     * built again when it is next needed.
+     */
+    public synchronized void clear() {
+        usersByAsset.clear();
+        assetsByUser.clear();
+        built = false;
+    }
+
+    public synchronized int size() {
+        return usersByAsset.size();
+    }
+}
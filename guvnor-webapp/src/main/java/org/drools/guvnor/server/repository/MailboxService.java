@@ -16,12 +16,24 @@
 
 package org.drools.guvnor.server.repository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 
 import org.drools.guvnor.server.util.LoggingHelper;
 import org.drools.repository.AssetItem;
@@ -37,8 +49,24 @@ public class MailboxService {
 
     private static final LoggingHelper log  = LoggingHelper.getLogger( MailboxService.class );
     public static final String MAILMAN      = "mailman";
-    private static ExecutorService executor = null;
+    private static ThreadPoolExecutor executor = null;
+    private static ExecutorService deliveryPool = null;
     private static MailboxService INSTANCE  = null;
+
+    /** How many threads deliver to the users, when there are many of them. */
+    public static final String DELIVERY_THREADS_PROPERTY = "guvnor.mailbox.deliveryThreads";
+    /** From how many users on, delivery is split between the delivery threads. */
+    public static final String PARALLEL_THRESHOLD_PROPERTY = "guvnor.mailbox.parallelThreshold";
+
+    private static final int DELIVERY_THREADS = Math.max(1, Integer.getInteger(DELIVERY_THREADS_PROPERTY, 4));
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY, 50);
+    /** Deliver at the latest once this many messages are waiting, the mailman's list only holds so many. */
+    private static final int MAX_BATCH = UserInbox.MAX_RECENT_EDITED / 2;
+
+    /** only used by the mailbox thread */
+    private int pendingCount;
+    private volatile long deliveryLag;
+    private final AtomicLong deliveredCount = new AtomicLong();
     /**
      * Should be the for the "mailman" user.
      */
@@ -47,7 +75,8 @@ public class MailboxService {
     public static MailboxService getInstance() {
         if (INSTANCE==null) {
             INSTANCE = new MailboxService();
-            executor = Executors.newSingleThreadExecutor();
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            deliveryPool = Executors.newFixedThreadPool(DELIVERY_THREADS);
         }
         return INSTANCE;
     }
@@ -61,8 +90,9 @@ public class MailboxService {
     }
     
     public void stop() {
-        log.info("Shutting down mailbox service");
+        log.info("Shutting down mailbox service, " + getDeliveredCount() + " messages delivered");
         executor.shutdown();
+        deliveryPool.shutdown();
 
         try {
             System.out.println("IS DOWN: " + executor.isTerminated());
@@ -93,34 +123,154 @@ public class MailboxService {
         });
     }
 
-    /** Process any waiting messages */
+    /**
+     * Delivers the waiting messages, to the users who have the asset on their
+     * recently edited list (as found in the {@link InboxInterestIndex}), in
+     * one go. If there are many users to deliver to, they are split between
+     * the delivery threads, each with a session of its own. If any of them
+     * fails, the messages are kept to be delivered again the next time.
+     */
     void processOutgoing()  {
-            //log.info("Processing outgoing messages");
-            if (repository != null) {
-                UserInbox mailman = new UserInbox(repository, MAILMAN);
-                final List<UserInfo.InboxEntry> es  = mailman.loadIncoming();
-                log.debug("Outgoing messages size " + es.size());
-                //wipe out inbox for mailman here...
-                UserInfo.eachUser(this.repository, new UserInfo.Command() {
-                    public void process(final String toUser) {
-
-                        //String toUser = userNode.getName();
-                        log.debug("Processing any inbound messages for " + toUser);
-                        if (toUser.equals(MAILMAN)) return;
-                        UserInbox inbox = new UserInbox(repository, toUser);
-                        Set<String> recentEdited = makeSetOf(inbox.loadRecentEdited());
-                        for (UserInfo.InboxEntry e : es) {
-                            //the user who edited the item wont receive a message in inbox.
-                            if (!e.from.equals(toUser) && recentEdited.contains(e.assetUUID)) {
-                                inbox.addToIncoming(e.assetUUID, e.note, e.from);
-                            }
-                        }
-                    }
-                });
-                mailman.clearIncoming();
-                repository.save();
+        pendingCount = 0;
+        if (repository == null) {
+            return;
+        }
+        UserInbox mailman = new UserInbox(repository, MAILMAN);
+        final List<UserInfo.InboxEntry> es  = mailman.loadIncoming();
+        if (es.isEmpty()) {
+            return;
+        }
+        log.debug("Outgoing messages size " + es.size());
+        InboxInterestIndex index = InboxInterestIndex.getInstance();
+        index.build(repository);
+
+        Map<String, List<InboxEntry>> deliveries = new HashMap<String, List<InboxEntry>>();
+        long oldest = Long.MAX_VALUE;
+        for (InboxEntry e : es) {
+            oldest = Math.min(oldest, e.timestamp);
+            for (String toUser : index.getInterestedUsers(e.assetUUID)) {
+                //the user who edited the item wont receive a message in inbox.
+                if (toUser.equals(MAILMAN) || toUser.equals(e.from)) {
+                    continue;
+                }
+                List<InboxEntry> forUser = deliveries.get(toUser);
+                if (forUser == null) {
+                    forUser = new ArrayList<InboxEntry>();
+                    deliveries.put(toUser, forUser);
+                }
+                forUser.add(e);
+            }
+        }
+
+        if (!deliver(deliveries)) {
+            discardChanges();
+            return;
+        }
+        //wipe out inbox for mailman here...
+        mailman.clearIncoming();
+        repository.save();
+
+        deliveryLag = System.currentTimeMillis() - oldest;
+        deliveredCount.addAndGet(es.size());
+        log.debug("Delivered " + es.size() + " messages to " + deliveries.size() + " users, " + deliveryLag + " ms after the oldest was sent");
+    }
+
+    /**
+     * @return false if some of the messages could not be delivered.
+     */
+    private boolean deliver(Map<String, List<InboxEntry>> deliveries) {
+        List<String> users = new ArrayList<String>(deliveries.keySet());
+        List<Future<?>> batches = new ArrayList<Future<?>>();
+        if (users.size() >= PARALLEL_THRESHOLD) {
+            int batchSize = (users.size() + DELIVERY_THREADS - 1) / DELIVERY_THREADS;
+            while (users.size() > batchSize) {
+                List<String> batch = new ArrayList<String>(users.subList(users.size() - batchSize, users.size()));
+                final RulesRepository batchRepository = openDeliverySession();
+                if (batchRepository == null) {
+                    break;
+                }
+                users.removeAll(batch);
+                batches.add(deliveryPool.submit(new DeliveryBatch(batchRepository, batch, deliveries)));
+            }
+        }
+        // the rest is delivered here, with the mailbox session
+        for (String toUser : users) {
+            deliverTo(repository, toUser, deliveries.get(toUser));
+        }
+        boolean delivered = true;
+        for (Future<?> batch : batches) {
+            try {
+                batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                log.error("Unable to deliver messages, they will be delivered again", e.getCause());
+                delivered = false;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Drops what was delivered with the mailbox session, as all the messages
+     * are delivered again the next time.
+     */
+    private void discardChanges() {
+        try {
+            repository.getSession().refresh(false);
+        } catch (RepositoryException e) {
+            log.error("Unable to discard the messages delivered so far", e);
+        }
+    }
+
+    /**
+     * @return a repository on a session of the mailman's own, or null if the
+     * repository does not allow it.
+     */
+    private RulesRepository openDeliverySession() {
+        Session session = repository.openSessionForSameUser();
+        if (session == null) {
+            log.debug("Unable to open a delivery session, delivering sequentially");
+            return null;
+        }
+        return new RulesRepository(session);
+    }
+
+    private void deliverTo(RulesRepository repo, String toUser, List<InboxEntry> entries) {
+        log.debug("Processing any inbound messages for " + toUser);
+        UserInbox inbox = new UserInbox(repo, toUser);
+        Set<String> recentEdited = makeSetOf(inbox.loadRecentEdited());
+        for (InboxEntry e : entries) {
+            if (recentEdited.contains(e.assetUUID)) {
+                inbox.addToIncoming(e.assetUUID, e.note, e.from);
+            } else {
+                InboxInterestIndex.getInstance().remove(toUser, e.assetUUID);
             }
+        }
+    }
+
+    private class DeliveryBatch implements Runnable {
+        private final RulesRepository repo;
+        private final List<String> users;
+        private final Map<String, List<InboxEntry>> deliveries;
+
+        DeliveryBatch(RulesRepository repo, List<String> users, Map<String, List<InboxEntry>> deliveries) {
+            this.repo = repo;
+            this.users = users;
+            this.deliveries = deliveries;
+        }
 
+        public void run() {
+            try {
+                for (String toUser : users) {
+                    deliverTo(repo, toUser, deliveries.get(toUser));
+                }
+                repo.save();
+            } finally {
+                repo.logout();
+            }
+        }
     }
 
     private Set<String> makeSetOf(List<InboxEntry> inboxEntries) {
@@ -131,23 +281,90 @@ public class MailboxService {
         return entries;
     }
 
+    /**
+     * @return the number of tasks waiting for the mailbox thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return how long (in milliseconds) the oldest message of the last
+     * delivery had been waiting.
+     */
+    public long getDeliveryLag() {
+        return deliveryLag;
+    }
+
+    /**
+     * @return the number of messages delivered so far.
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
     /**
      * Call this to note that there has been a change - will then publish to any interested parties.
      * @param item
      */
     public void recordItemUpdated(AssetItem item) {
-        final String id = item.getUUID();
-        final String name = item.getName();
-        final String from = item.getRulesRepository().getSession().getUserID();
+        recordItemUpdated(item.getUUID(),
+                item.getName(),
+                item.getRulesRepository().getSession().getUserID());
+    }
+
+    /**
+     * Same as {@link #recordItemUpdated(AssetItem)}, for when the item itself
+     * is not at hand.
+     */
+    public void recordItemUpdated(final String id, final String name, final String from) {
         executor.execute(new Runnable() {
             public void run() {
                 if (repository!=null) {
                     // write the message to the admins outbox
                     UserInbox inbox = new UserInbox(repository, MAILMAN);
                     inbox.addToIncoming(id, name, from);
-                    processOutgoing();
+                    // updates which are queued up behind this one are delivered together
+                    if (++pendingCount >= MAX_BATCH || executor.getQueue().isEmpty()) {
+                        processOutgoing();
+                    } else {
+                        repository.save();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits (for at most the given time) for the messages recorded so far to
+     * be delivered.
+     *
+     * @return false if they were not delivered in time.
+     */
+    public boolean awaitDelivery(long timeoutMillis) throws InterruptedException {
+        try {
+            executor.submit(new Runnable() {
+                public void run() {
+                }
+            }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
 
-                    repository.save();
+    /**
+     * Adds the asset to the recently edited list of the user who edited it.
+     */
+    public void recordUserEdit(final String id, final String name, final String user) {
+        executor.execute(new Runnable() {
+            public void run() {
+                if (repository != null) {
+                    UserInbox inbox = new UserInbox(repository, user);
+                    inbox.addToRecentEdited(id, name);
+                    inbox.save();
                 }
             }
         });
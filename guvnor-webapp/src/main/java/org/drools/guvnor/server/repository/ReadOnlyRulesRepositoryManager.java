@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.repository;
+
+import org.drools.repository.RulesRepository;
+import org.jboss.seam.Component;
+import org.jboss.seam.ScopeType;
+import org.jboss.seam.annotations.AutoCreate;
+import org.jboss.seam.annotations.Create;
+import org.jboss.seam.annotations.Destroy;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.annotations.Scope;
+import org.jboss.seam.annotations.Unwrap;
+
+/**
+ * The repository for requests that only read from it, on a session borrowed
+ * from the {@link ReadOnlySessionPool} for the length of the request. If
+ * pooling is switched off, this is the same as the "repository" component.
+ */
+@Scope(ScopeType.EVENT)
+@AutoCreate
+@Name("readOnlyRepository")
+public class ReadOnlyRulesRepositoryManager {
+
+    @In
+    RepositoryStartupService repositoryConfiguration;
+
+    private ReadOnlySessionPool pool;
+    private RulesRepository repository;
+
+    @Create
+    public void create() {
+        pool = repositoryConfiguration.getReadOnlySessionPool();
+        if (pool != null) {
+            repository = pool.borrow();
+        } else {
+            repository = (RulesRepository) Component.getInstance("repository");
+        }
+    }
+
+    @Unwrap
+    public RulesRepository getRepository() {
+        return repository;
+    }
+
+    @Destroy
+    public void close() {
+        if (pool != null) {
+            pool.release(repository);
+        }
+    }
+}
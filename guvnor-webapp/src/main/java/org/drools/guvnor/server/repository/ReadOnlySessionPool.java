@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.repository;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.drools.repository.RulesRepository;
+import org.drools.repository.RulesRepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of repository sessions for requests that only read, such as
+ * package downloads, feeds, REST GETs and WebDAV reads, so they do not log in
+ * and out of the repository every time. The sessions belong to the read only
+ * (anonymous) user; requests which change anything keep a session of their
+ * own user.
+ *
+ * A session is refreshed as it is borrowed, which drops anything a previous
+ * borrower left unsaved and makes sure it sees the latest saved content.
+ */
+public class ReadOnlySessionPool {
+
+    private static final Logger                  log            = LoggerFactory.getLogger( ReadOnlySessionPool.class );
+
+    /**
+     * The most sessions there can be at once, 0 to switch pooling off.
+     */
+    public static final String                   SIZE_PROPERTY  = "guvnor.readOnlySessions.poolSize";
+
+    /**
+     * How long (in milliseconds) to wait for a session when all of them are
+     * in use.
+     */
+    public static final String                   WAIT_PROPERTY  = "guvnor.readOnlySessions.wait";
+
+    static final String                          READ_ONLY_USER = "anonymous";
+
+    private final RepositoryStartupService       repositoryConfiguration;
+    private final BlockingQueue<RulesRepository> idle           = new LinkedBlockingQueue<RulesRepository>();
+    private final Semaphore                      permits;
+    private final long                           waitMillis;
+    private volatile boolean                     closed;
+
+    ReadOnlySessionPool(RepositoryStartupService repositoryConfiguration,
+                        int size,
+                        long waitMillis) {
+        this.repositoryConfiguration = repositoryConfiguration;
+        this.permits = new Semaphore( size,
+                                      true );
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * @return a repository on a pooled session, which must be given back with
+     * {@link #release(RulesRepository)} once the request is done with it.
+     */
+    public RulesRepository borrow() {
+        if ( closed ) {
+            throw new RulesRepositoryException( "The read only session pool has been closed." );
+        }
+        try {
+            if ( !permits.tryAcquire( waitMillis,
+                                      TimeUnit.MILLISECONDS ) ) {
+                throw new RulesRepositoryException( "No read only session became free within " + waitMillis + " ms." );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RulesRepositoryException( e );
+        }
+
+        try {
+            RulesRepository repository;
+            while ( (repository = idle.poll()) != null ) {
+                if ( refresh( repository ) ) {
+                    return repository;
+                }
+            }
+            return new RulesRepository( repositoryConfiguration.newSession( READ_ONLY_USER ) );
+        } catch ( RuntimeException e ) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed repository back to the pool.
+     */
+    public void release(RulesRepository repository) {
+        try {
+            if ( closed || !repository.getSession().isLive() ) {
+                logout( repository );
+            } else {
+                idle.add( repository );
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Logs out of the idle sessions. Sessions still in use are logged out of
+     * as they are released.
+     */
+    public void close() {
+        closed = true;
+        RulesRepository repository;
+        while ( (repository = idle.poll()) != null ) {
+            logout( repository );
+        }
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    private boolean refresh(RulesRepository repository) {
+        Session session = repository.getSession();
+        if ( !session.isLive() ) {
+            return false;
+        }
+        try {
+            session.refresh( false );
+            return true;
+        } catch ( RepositoryException e ) {
+            log.warn( "Unable to refresh a pooled session, replacing it",
+                      e );
+            logout( repository );
+            return false;
+        }
+    }
+
+    private void logout(RulesRepository repository) {
+        try {
+            repository.logout();
+        } catch ( RuntimeException e ) {
+            log.warn( "Unable to log out of a pooled session",
+                      e );
+        }
+    }
+}
@@ -17,8 +17,14 @@
 package org.drools.guvnor.server.repository;
 
 
+import org.drools.guvnor.client.common.AssetFormats;
+import org.drools.guvnor.server.BackgroundPackageBuilder;
+import org.drools.guvnor.server.BuildJobManager;
+import org.drools.guvnor.server.builder.ModelJarCache;
 import org.drools.repository.*;
-import org.drools.repository.events.CheckinEvent;
+import org.drools.repository.events.EventBus;
+import org.drools.repository.events.RepositoryEvent;
+import org.drools.repository.events.RepositoryEventListener;
 import org.drools.repository.events.StorageEventManager;
 import org.jboss.seam.ScopeType;
 import org.jboss.seam.annotations.*;
@@ -53,6 +59,8 @@ public class RepositoryStartupService {
     private static final String MAILMAN_USER_PROPERTY     = "org.drools.repository.mailman.username";
     private static final String MAILMAN_PASSWORD_PROPERTY = "org.drools.repository.mailman.password";
     private static final String SECURE_PASSWORDS_PROPERTY = "org.drools.repository.secure.passwords";
+    private static final String LINKED_ASSET_INDEX_PROPERTY = "guvnor.index.linkedAssets";
+    private static final String METADATA_CACHE_PROPERTY = "guvnor.cache.metadata";
 
 
     private RulesRepositoryConfigurator configurator;
@@ -61,6 +69,8 @@ public class RepositoryStartupService {
     Repository repository;
     private Session sessionForSetup;
     private RulesRepository mailmanSession;
+    private BackgroundPackageBuilder backgroundPackageBuilder;
+    private ReadOnlySessionPool readOnlySessionPool;
 
     public Repository getRepositoryInstance() {
         try {
@@ -92,26 +102,136 @@ public class RepositoryStartupService {
         }
         sessionForSetup = newSession(username,password);
         create( sessionForSetup );
+        startLinkedAssetIndex(username, password);
+        startMetadataCache(username, password);
+        startAsynchronousCheckinEvents(username, password);
+        startInboxInterestIndex(username, password);
         startMailboxService();
         registerCheckinListener();
+        registerModelCheckinListener();
+        registerBuildJobListener();
+        startBackgroundPackageBuilder();
+        startReadOnlySessionPool();
     }
 
-    /** Listen for changes to the repository - for inbox purposes */
+    /** Index the assets of categories and states, unless it has been switched off */
+    private void startLinkedAssetIndex(String username, String password) {
+        if (Boolean.valueOf(System.getProperty(LINKED_ASSET_INDEX_PROPERTY, "true"))) {
+            try {
+                LinkedAssetIndex.getInstance().start(newSession(username, password));
+            } catch (RepositoryException e) {
+                log.error("Unable to start the category and state index", e);
+            }
+        }
+    }
+
+    /** Cache the metadata of packages and assets, unless it has been switched off */
+    private void startMetadataCache(String username, String password) {
+        if (Boolean.valueOf(System.getProperty(METADATA_CACHE_PROPERTY, "true"))) {
+            try {
+                ItemMetadataCache.getInstance().start(newSession(username, password));
+            } catch (RepositoryException e) {
+                log.error("Unable to start the metadata cache", e);
+            }
+        }
+    }
+
+    /** Keep the index of the recently edited lists up to date with the repository */
+    private void startInboxInterestIndex(String username, String password) {
+        try {
+            InboxInterestIndex.getInstance().start(newSession(username, password));
+        } catch (RepositoryException e) {
+            log.error("Unable to listen for changes to the recently edited lists", e);
+        }
+    }
+
+    /** Call the checkin listeners off the checking in thread, if it has been switched on */
+    private void startAsynchronousCheckinEvents(String username, String password) {
+        if (Boolean.getBoolean(StorageEventManager.ASYNC_CHECKIN_PROPERTY)) {
+            StorageEventManager.startAsynchronousCheckinEvents(newSession(username, password));
+        }
+    }
+
+    /** Rebuild package binaries after check-ins, if it has been switched on */
+    private void startBackgroundPackageBuilder() {
+        if (BackgroundPackageBuilder.isEnabled()) {
+            backgroundPackageBuilder = new BackgroundPackageBuilder(this);
+            EventBus.getInstance().subscribe("background-builds",
+                    backgroundPackageBuilder.getListener(),
+                    RepositoryEvent.Type.CHECKIN);
+            log.info("Background package builds enabled");
+        }
+    }
+
+    /** Pool the sessions of read only requests, unless it has been switched off */
+    private void startReadOnlySessionPool() {
+        int size = Integer.getInteger(ReadOnlySessionPool.SIZE_PROPERTY, 10);
+        if (size > 0) {
+            readOnlySessionPool = new ReadOnlySessionPool(this,
+                    size,
+                    Long.getLong(ReadOnlySessionPool.WAIT_PROPERTY, 30000));
+        }
+    }
+
+    /**
+     * @return the pool of read only sessions, or null if pooling is switched off.
+     */
+    public ReadOnlySessionPool getReadOnlySessionPool() {
+        return readOnlySessionPool;
+    }
+
+    /**
+     * Listen for changes to the repository - for inbox purposes. The inboxes
+     * are written by the mailbox service, after the check-in has returned.
+     */
     public static void registerCheckinListener() {
         System.out.println("Registering check-in listener");
-        StorageEventManager.registerCheckinEvent(new CheckinEvent() {
-            public void afterCheckin(AssetItem item) {
-                UserInbox.recordUserEditEvent(item);  //to register that she edited...
-                MailboxService.getInstance().recordItemUpdated(item);   //for outgoing...
-                MailboxService.getInstance().wakeUp();
+        EventBus.getInstance().subscribe("inbox", new RepositoryEventListener() {
+            public void onEvent(RepositoryEvent event) {
+                MailboxService mailbox = MailboxService.getInstance();
+                mailbox.recordUserEdit(event.getUUID(), event.getName(), event.getUserName());  //to register that she edited...
+                mailbox.recordItemUpdated(event.getUUID(), event.getName(), event.getUserName());   //for outgoing...
+                mailbox.wakeUp();
             }
-        });
+        }, RepositoryEvent.Type.CHECKIN);
         System.out.println("Check-in listener up");
     }
     
+    /**
+     * Drop the cached model jars when a model is checked in, before the
+     * check-in returns so that the next build does not use the old jar.
+     */
+    public static void registerModelCheckinListener() {
+        EventBus.getInstance().subscribeSynchronous("model-jars", new RepositoryEventListener() {
+            public void onEvent(RepositoryEvent event) {
+                if (AssetFormats.MODEL.equals(event.getFormat())) {
+                    ModelJarCache.getInstance().evict(event.getUUID());
+                }
+            }
+        }, RepositoryEvent.Type.CHECKIN);
+    }
+
+    /**
+     * Tell the build jobs about changes before the check-in returns, so a
+     * build asked for right after a change does not join one that missed it.
+     */
+    public static void registerBuildJobListener() {
+        EventBus.getInstance().subscribeSynchronous("build-jobs", new RepositoryEventListener() {
+            public void onEvent(RepositoryEvent event) {
+                if (event.getPackageUUID() != null) {
+                    BuildJobManager.getInstance().packageChanged(event.getPackageUUID());
+                }
+            }
+        }, RepositoryEvent.Type.CHECKIN, RepositoryEvent.Type.STATE_CHANGE, RepositoryEvent.Type.ARCHIVE, RepositoryEvent.Type.RENAME);
+    }
+
     public static void removeListeners() {
         System.out.println("Removing all listeners...");
         StorageEventManager.removeListeners();
+        for (EventBus.Subscription subscription : EventBus.getInstance().getSubscriptions()) {
+            log.info("Events: " + subscription);
+        }
+        EventBus.getInstance().unsubscribeAll();
         System.out.println("Listeners removed...");
     }
 
@@ -172,7 +292,16 @@ public class RepositoryStartupService {
         sessionForSetup.logout();
         MailboxService.getInstance().stop();
         mailmanSession.logout();
-        
+        if (backgroundPackageBuilder != null) {
+            backgroundPackageBuilder.stop();
+        }
+        LinkedAssetIndex.getInstance().stop();
+        ItemMetadataCache.getInstance().stop();
+        InboxInterestIndex.getInstance().stop();
+        StorageEventManager.stopAsynchronousCheckinEvents();
+        if (readOnlySessionPool != null) {
+            readOnlySessionPool.close();
+        }
     }
     
     public void setHomeDirectory(String home) {
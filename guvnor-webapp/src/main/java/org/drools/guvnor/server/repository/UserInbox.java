@@ -16,7 +16,6 @@
 
 package org.drools.guvnor.server.repository;
 
-import java.util.Iterator;
 import java.util.List;
 
 import org.drools.guvnor.client.common.AssetFormats;
@@ -34,10 +33,11 @@ import org.drools.repository.UserInfo.InboxEntry;
 public class UserInbox {
     static final int MAX_RECENT_EDITED = 200;
 
-    private static final String INBOX = "inbox";
+    static final String INBOX = "inbox";
 
     
     private UserInfo userInfo;
+    private final String userName;
 
 
     /**
@@ -45,6 +45,7 @@ public class UserInbox {
      */
     public UserInbox(RulesRepository repo, String userName) {
         this.userInfo = new UserInfo(repo, userName);
+        this.userName = userName;
     }
 
     /**
@@ -52,6 +53,7 @@ public class UserInbox {
      */
     public UserInbox(RulesRepository repo) {
         this.userInfo = new UserInfo(repo);
+        this.userName = repo.getSession().getUserID();
     }
 
     /**
@@ -74,27 +76,10 @@ public class UserInbox {
 
     private void addToInbox(String boxName, String assetId, String note, String userFrom) {
         assert boxName.equals(ExplorerNodeConfig.RECENT_EDITED_ID) || boxName.equals(ExplorerNodeConfig.RECENT_VIEWED_ID) || boxName.equals(ExplorerNodeConfig.INCOMING_ID);
-        List<InboxEntry> entries =  removeAnyExisting(assetId, userInfo.readEntries(INBOX, boxName));
-
-        if (entries.size() >= MAX_RECENT_EDITED) {
-            entries.remove(0);
-            entries.add(new InboxEntry(assetId, note, userFrom));
-        } else {
-            entries.add(new InboxEntry(assetId, note, userFrom));
-        }
-        userInfo.writeEntries(INBOX, boxName, entries);
-    }
-
-    private List<InboxEntry> removeAnyExisting(String assetId, List<InboxEntry> inboxEntries) {
-        Iterator<InboxEntry> it = inboxEntries.iterator();
-        while (it.hasNext()) {
-            InboxEntry e = it.next();
-            if (e.assetUUID.equals(assetId)) {
-                it.remove();
-                return inboxEntries;
-            }
+        userInfo.appendEntry(INBOX, boxName, new InboxEntry(assetId, note, userFrom), MAX_RECENT_EDITED);
+        if (boxName.equals(ExplorerNodeConfig.RECENT_EDITED_ID)) {
+            InboxInterestIndex.getInstance().add(userName, assetId);
         }
-        return inboxEntries;
     }
 
     public List<InboxEntry> loadEntries(final String inboxName){
@@ -111,15 +96,15 @@ public class UserInbox {
     }
     
     public List<InboxEntry> loadRecentEdited() {
-        return userInfo.readEntries(INBOX, ExplorerNodeConfig.RECENT_EDITED_ID);
+        return userInfo.readLatestEntries(INBOX, ExplorerNodeConfig.RECENT_EDITED_ID, MAX_RECENT_EDITED);
     }
 
     public List<InboxEntry> loadRecentOpened() {
-        return userInfo.readEntries(INBOX, ExplorerNodeConfig.RECENT_VIEWED_ID);
+        return userInfo.readLatestEntries(INBOX, ExplorerNodeConfig.RECENT_VIEWED_ID, MAX_RECENT_EDITED);
     }
 
     public List<InboxEntry> loadIncoming() {
-        return userInfo.readEntries(INBOX, ExplorerNodeConfig.INCOMING_ID);
+        return userInfo.readLatestEntries(INBOX, ExplorerNodeConfig.INCOMING_ID, MAX_RECENT_EDITED);
     }
 
     /**
@@ -169,9 +154,7 @@ public class UserInbox {
     public synchronized static void recordOpeningEvent(AssetItem item) {
         UserInbox ib = new UserInbox(item.getRulesRepository());
         ib.addToRecentOpened(item.getUUID(), item.getName());
-        List<InboxEntry> unreadIncoming = ib.removeAnyExisting(item.getUUID(),
-                ib.loadIncoming());
-        ib.userInfo.writeEntries(INBOX, ExplorerNodeConfig.INCOMING_ID, unreadIncoming);
+        ib.userInfo.removeEntry(INBOX, ExplorerNodeConfig.INCOMING_ID, item.getUUID(), MAX_RECENT_EDITED);
 
         ib.save();
     }
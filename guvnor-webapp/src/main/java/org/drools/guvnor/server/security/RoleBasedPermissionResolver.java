@@ -24,6 +24,7 @@ import java.util.Set;
 
 import org.drools.guvnor.server.ServiceImplementation;
 import org.drools.guvnor.server.util.LoggingHelper;
+import org.drools.repository.ItemMetadata;
 import org.drools.repository.RulesRepositoryException;
 import org.jboss.seam.Component;
 import org.jboss.seam.annotations.Create;
@@ -110,7 +111,12 @@ public class RoleBasedPermissionResolver implements PermissionResolver, Serializ
             String targetUUID = ((PackageUUIDType) requestedObject).getUUID();
             try {
                 ServiceImplementation serviceImplementation = (ServiceImplementation) Component.getInstance( "org.drools.guvnor.client.rpc.RepositoryService" );
-                targetName = serviceImplementation.getRulesRepository().loadPackageByUUID( targetUUID ).getName();
+                ItemMetadata metadata = serviceImplementation.getRulesRepository().loadItemMetadata( targetUUID );
+                if ( !metadata.isPackage() ) {
+                    return false;
+                }
+                // the package a snapshot is of, rather than its node name, which is the snapshot name
+                targetName = metadata.getPackageName();
             } catch ( RulesRepositoryException e ) {
                 return false;
             }
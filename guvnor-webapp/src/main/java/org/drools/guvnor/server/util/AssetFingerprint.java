@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.drools.guvnor.server.util;
+
+import java.util.Calendar;
+import java.util.Iterator;
+
+import org.drools.repository.AssetItem;
+
+/**
+ * Identifies the versions of a set of assets, so things built from them can be
+ * cached until one of them changes. Only asset properties are read, never the
+ * content itself.
+ */
+public class AssetFingerprint {
+
+    private final StringBuilder fingerprint = new StringBuilder();
+
+    public AssetFingerprint add(String value) {
+        fingerprint.append( value ).append( ';' );
+        return this;
+    }
+
+    public AssetFingerprint add(Iterator<AssetItem> assets) {
+        while ( assets.hasNext() ) {
+            AssetItem asset = assets.next();
+            Calendar lastModified = asset.getLastModified();
+            fingerprint.append( asset.getUUID() ).append( ':' )
+                    .append( asset.getVersionNumber() ).append( ':' )
+                    .append( lastModified == null ? 0 : lastModified.getTimeInMillis() ).append( ':' )
+                    .append( asset.getContentLength() ).append( ':' )
+                    .append( asset.getDisabled() ).append( ';' );
+        }
+        return this;
+    }
+
+    public String toString() {
+        return fingerprint.toString();
+    }
+}
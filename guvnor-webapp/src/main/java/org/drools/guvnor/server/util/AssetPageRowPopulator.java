@@ -15,11 +15,31 @@
  */
 package org.drools.guvnor.server.util;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.commons.lang.StringUtils;
 import org.drools.guvnor.client.rpc.AssetPageRow;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummary.Field;
 
 public class AssetPageRowPopulator {
+
+    /**
+     * The fields of an AssetSummary that an AssetPageRow is populated from.
+     */
+    public static final Set<Field> FIELDS = EnumSet.of( Field.FORMAT,
+                                                        Field.NAME,
+                                                        Field.DESCRIPTION,
+                                                        Field.STATE_NAME,
+                                                        Field.CREATOR,
+                                                        Field.CREATED_DATE,
+                                                        Field.LAST_CONTRIBUTOR,
+                                                        Field.LAST_MODIFIED,
+                                                        Field.CATEGORY_NAMES,
+                                                        Field.EXTERNAL_SOURCE );
+
     public AssetPageRow populateFrom(AssetItem assetItem) {
         AssetPageRow row = new AssetPageRow();
         row.setUuid( assetItem.getUUID() );
@@ -36,4 +56,21 @@ public class AssetPageRowPopulator {
         row.setExternalSource( assetItem.getExternalSource() );
         return row;
     }
+
+    public AssetPageRow populateFrom(AssetSummary assetSummary) {
+        AssetPageRow row = new AssetPageRow();
+        row.setUuid( assetSummary.getUUID() );
+        row.setFormat( assetSummary.getFormat() );
+        row.setName( assetSummary.getName() );
+        row.setDescription( assetSummary.getDescription() );
+        row.setAbbreviatedDescription( StringUtils.abbreviate( assetSummary.getDescription(), 80 ) );
+        row.setStateName( assetSummary.getStateName() );
+        row.setCreator( assetSummary.getCreator() );
+        row.setCreatedDate( assetSummary.getCreatedDate().getTime() );
+        row.setLastContributor( assetSummary.getLastContributor() );
+        row.setLastModified( assetSummary.getLastModified().getTime() );
+        row.setCategorySummary( assetSummary.getCategorySummary() );
+        row.setExternalSource( assetSummary.getExternalSource() );
+        return row;
+    }
 }
@@ -17,21 +17,177 @@
 package org.drools.guvnor.server.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.jcr.RepositoryException;
+
 import org.drools.guvnor.client.rpc.DiscussionRecord;
+import org.drools.repository.AssetItem;
+import org.drools.repository.EntryLog;
+import org.drools.repository.RulesRepositoryException;
 
 import com.thoughtworks.xstream.XStream;
 
 /**
- * Utility methods for persisting discussion data as a property on an asset.
+ * Utility methods for persisting discussion data on an asset.
+ *
+ * Each record is kept in an {@link EntryLog} on the asset, so adding to a
+ * discussion does not rewrite it. Discussions used to be kept as one XML
+ * document in the {@link #DISCUSSION_PROPERTY_KEY} property, such a
+ * discussion is moved to the log when it is next added to.
+ *
+ * The UI and the feeds only show the newest records of a discussion, see
+ * {@link #loadLatest(AssetItem, int)}. A discussion that grows past
+ * {@link #MAX_ENTRIES_PROPERTY} records is compacted down to its newest ones
+ * when it is added to.
  */
 public class Discussion {
 
     public static final String DISCUSSION_PROPERTY_KEY = "discussion";
 
+    /**
+     * The number of newest records the UI and the feeds show.
+     */
+    public static final String MAX_LOADED_PROPERTY     = "guvnor.discussion.maxLoaded";
+
+    /**
+     * The number of records a discussion may grow to before it is compacted,
+     * 0 to keep them all.
+     */
+    public static final String MAX_ENTRIES_PROPERTY    = "guvnor.discussion.maxEntries";
+
+    public static final int    MAX_LOADED              = Integer.getInteger( MAX_LOADED_PROPERTY,
+                                                                             100 );
+
+    private final int          maxEntries;
+
     private XStream            xs                      = getXStream();
 
+    public Discussion() {
+        this( Integer.getInteger( MAX_ENTRIES_PROPERTY,
+                                  1000 ) );
+    }
+
+    public Discussion(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the discussion of the asset, the oldest record first.
+     */
+    public List<DiscussionRecord> load(AssetItem asset) {
+        List<DiscussionRecord> records = fromString( asset.getStringProperty( DISCUSSION_PROPERTY_KEY ) );
+        for ( String[] record : getLog( asset ).readAll() ) {
+            records.add( toRecord( record ) );
+        }
+        return records;
+    }
+
+    /**
+     * @return the newest records of the discussion of the asset (at most
+     * max), the oldest of them first.
+     */
+    public List<DiscussionRecord> loadLatest(AssetItem asset,
+                                             final int max) {
+        final List<DiscussionRecord> records = new ArrayList<DiscussionRecord>();
+        if ( max <= 0 ) {
+            return records;
+        }
+        getLog( asset ).readNewestFirst( new EntryLog.Visitor() {
+            public boolean visit(String[] record) {
+                records.add( toRecord( record ) );
+                return records.size() < max;
+            }
+        } );
+        if ( records.size() < max ) {
+            // a discussion that has not been moved to the log yet is older
+            List<DiscussionRecord> legacy = fromString( asset.getStringProperty( DISCUSSION_PROPERTY_KEY ) );
+            for ( int i = legacy.size() - 1; i >= 0 && records.size() < max; i-- ) {
+                records.add( legacy.get( i ) );
+            }
+        }
+        Collections.reverse( records );
+        return records;
+    }
+
+    /**
+     * Adds the record to the discussion, without changing the last modified
+     * date of the asset. The caller saves.
+     */
+    public void add(AssetItem asset,
+                    DiscussionRecord record) {
+        asset.checkout();
+        EntryLog log = getLog( asset );
+        List<DiscussionRecord> legacy = fromString( asset.getStringProperty( DISCUSSION_PROPERTY_KEY ) );
+        if ( !legacy.isEmpty() ) {
+            List<String[]> records = new ArrayList<String[]>();
+            for ( DiscussionRecord dr : legacy ) {
+                records.add( toFields( dr ) );
+            }
+            records.addAll( log.readAll() );
+            log.compact( records );
+            removeLegacyProperty( asset );
+        }
+        log.append( toFields( record ) );
+        if ( maxEntries > 0 && log.size() > maxEntries ) {
+            compact( log );
+        }
+    }
+
+    /**
+     * Keeps the newest three quarters of the allowed records, so that a
+     * discussion is not compacted again on each record added to it.
+     */
+    private void compact(EntryLog log) {
+        final int keep = Math.max( 1,
+                                   maxEntries - maxEntries / 4 );
+        final List<String[]> records = new ArrayList<String[]>();
+        log.readNewestFirst( new EntryLog.Visitor() {
+            public boolean visit(String[] record) {
+                records.add( record );
+                return records.size() < keep;
+            }
+        } );
+        Collections.reverse( records );
+        log.compact( records );
+    }
+
+    /**
+     * Removes the whole discussion of the asset. The caller saves.
+     */
+    public void clear(AssetItem asset) {
+        asset.checkout();
+        removeLegacyProperty( asset );
+        getLog( asset ).clear();
+    }
+
+    private EntryLog getLog(AssetItem asset) {
+        return new EntryLog( asset.getNode(),
+                             DISCUSSION_PROPERTY_KEY );
+    }
+
+    private void removeLegacyProperty(AssetItem asset) {
+        try {
+            if ( asset.getNode().hasProperty( DISCUSSION_PROPERTY_KEY ) ) {
+                asset.getNode().getProperty( DISCUSSION_PROPERTY_KEY ).remove();
+            }
+        } catch ( RepositoryException e ) {
+            throw new RulesRepositoryException( e );
+        }
+    }
+
+    private static String[] toFields(DiscussionRecord record) {
+        return new String[]{record.author, record.note, Long.toString( record.timestamp )};
+    }
+
+    private static DiscussionRecord toRecord(String[] record) {
+        DiscussionRecord dr = new DiscussionRecord( record[0],
+                                                    record[1] );
+        dr.timestamp = Long.parseLong( record[2] );
+        return dr;
+    }
+
     public String toString(List<DiscussionRecord> recs) {
         return xs.toXML( recs );
     }
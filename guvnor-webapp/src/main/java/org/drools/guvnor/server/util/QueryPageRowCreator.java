@@ -15,11 +15,27 @@
  */
 package org.drools.guvnor.server.util;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.apache.commons.lang.StringUtils;
 import org.drools.guvnor.client.rpc.QueryPageRow;
 import org.drools.repository.AssetItem;
+import org.drools.repository.AssetSummary;
+import org.drools.repository.AssetSummary.Field;
 
 public class QueryPageRowCreator {
+
+    /**
+     * The fields of an AssetSummary that a QueryPageRow is made from.
+     */
+    public static final Set<Field> FIELDS = EnumSet.of( Field.FORMAT,
+                                                        Field.NAME,
+                                                        Field.DESCRIPTION,
+                                                        Field.PACKAGE_NAME,
+                                                        Field.CREATED_DATE,
+                                                        Field.LAST_MODIFIED );
+
     public static QueryPageRow makeQueryPageRow(AssetItem assetItem) {
         QueryPageRow row = new QueryPageRow();
         row.setUuid( assetItem.getUUID() );
@@ -34,4 +50,18 @@ public class QueryPageRowCreator {
         return row;
     }
 
+    public static QueryPageRow makeQueryPageRow(AssetSummary assetSummary) {
+        QueryPageRow row = new QueryPageRow();
+        row.setUuid( assetSummary.getUUID() );
+        row.setFormat( assetSummary.getFormat() );
+        row.setName( assetSummary.getName() );
+        row.setDescription( assetSummary.getDescription() );
+        row.setAbbreviatedDescription( StringUtils.abbreviate( assetSummary.getDescription(),
+                                                               80 ) );
+        row.setPackageName( assetSummary.getPackageName() );
+        row.setCreatedDate( assetSummary.getCreatedDate().getTime() );
+        row.setLastModified( assetSummary.getLastModified().getTime() );
+        return row;
+    }
+
 }
@@ -219,6 +219,136 @@ public class BackchannelTest {
         }
     }
 
+    @Test
+    public void testOnlyTheRecipientIsWokenUp() throws Exception {
+        final Backchannel backchannel = new Backchannel( 5000,
+                                                         10 );
+        final List<List<PushResponse>> received = new ArrayList<List<PushResponse>>();
+        Thread t = new Thread( new Runnable() {
+            public void run() {
+                try {
+                    List<PushResponse> r = backchannel.await( "waiter" );
+                    synchronized ( received ) {
+                        received.add( r );
+                    }
+                } catch ( InterruptedException e ) {
+                    fail( "should not interrupt" );
+                }
+            }
+        } );
+        t.setDaemon( true );
+        t.start();
+        for ( int i = 0; i < 50 && backchannel.getWaitingCount() == 0; i++ ) {
+            Thread.sleep( 20 );
+        }
+        assertEquals( 1,
+                      backchannel.getWaitingCount() );
+
+        backchannel.push( "someoneElse",
+                          new PushResponse( "a",
+                                            "b" ) );
+        Thread.sleep( 200 );
+        assertTrue( t.isAlive() );
+
+        backchannel.push( "waiter",
+                          new PushResponse( "c",
+                                            "d" ) );
+        t.join( 5000 );
+        assertFalse( t.isAlive() );
+        assertEquals( 1,
+                      received.size() );
+        assertEquals( "c",
+                      received.get( 0 ).get( 0 ).messageType );
+        assertEquals( 0,
+                      backchannel.getWaitingCount() );
+
+        List<PushResponse> r = backchannel.await( "someoneElse" );
+        assertEquals( 1,
+                      r.size() );
+    }
+
+    @Test
+    public void testWaitsAreBounded() throws Exception {
+        Backchannel backchannel = new Backchannel( 100,
+                                                   10 );
+        long start = System.currentTimeMillis();
+        assertEquals( 0,
+                      backchannel.await( "nobody" ).size() );
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+
+        // with no room to wait, it returns straight away
+        backchannel = new Backchannel( 60000,
+                                       0 );
+        start = System.currentTimeMillis();
+        assertEquals( 0,
+                      backchannel.await( "nobody" ).size() );
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+
+        backchannel.publish( new PushResponse( "e",
+                                               "f" ) );
+        assertEquals( 1,
+                      backchannel.await( "nobody" ).size() );
+    }
+
+    @Test
+    public void testPollDoesNotWait() throws Exception {
+        Backchannel backchannel = new Backchannel( 60000,
+                                                   10 );
+        long start = System.currentTimeMillis();
+        assertEquals( 0,
+                      backchannel.poll( "poller" ).size() );
+        assertTrue( System.currentTimeMillis() - start < 5000 );
+        assertEquals( 0,
+                      backchannel.getWaitingCount() );
+
+        backchannel.publish( new PushResponse( "a",
+                                               "b" ) );
+        assertEquals( 1,
+                      backchannel.poll( "poller" ).size() );
+        assertEquals( 0,
+                      backchannel.poll( "poller" ).size() );
+    }
+
+    @Test
+    public void testQueuesAreCapped() throws Exception {
+        Backchannel backchannel = new Backchannel( 100,
+                                                   10,
+                                                   60000,
+                                                   3 );
+        for ( int i = 0; i < 5; i++ ) {
+            backchannel.push( "capped",
+                              new PushResponse( "type",
+                                                "message" + i ) );
+        }
+        List<PushResponse> r = backchannel.poll( "capped" );
+        assertEquals( 3,
+                      r.size() );
+        assertEquals( "message2",
+                      r.get( 0 ).message );
+        assertEquals( "message4",
+                      r.get( 2 ).message );
+    }
+
+    @Test
+    public void testIdleChannelsAreDropped() throws Exception {
+        Backchannel backchannel = new Backchannel( 100,
+                                                   10,
+                                                   50,
+                                                   100 );
+        backchannel.poll( "gone" );
+        assertEquals( 1,
+                      backchannel.getChannelCount() );
+        Thread.sleep( 100 );
+
+        // nobody is queued for once they have gone
+        backchannel.publish( new PushResponse( "a",
+                                               "b" ) );
+        assertEquals( 0,
+                      backchannel.getChannelCount() );
+        assertEquals( 0,
+                      backchannel.poll( "gone" ).size() );
+    }
+
     private void spinup(final Backchannel bc,
                         final int i) {
         Thread t = new Thread( new Runnable() {
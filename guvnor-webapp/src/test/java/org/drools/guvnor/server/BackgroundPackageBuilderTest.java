@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.guvnor.client.rpc.BuilderResult;
+import org.junit.Test;
+
+public class BackgroundPackageBuilderTest {
+
+    @Test
+    public void testCheckinsAreDebounced() throws Exception {
+        CountingBuilder builder = new CountingBuilder( 1 );
+        try {
+            builder.packageChanged( "package1",
+                                    "user" );
+            builder.packageChanged( "package1",
+                                    "user" );
+            builder.packageChanged( "package1",
+                                    "user" );
+            assertTrue( builder.isPending( "package1" ) );
+
+            assertTrue( builder.built.await( 10,
+                                             TimeUnit.SECONDS ) );
+            Thread.sleep( 300 );
+            assertEquals( 1,
+                          builder.builds.get() );
+            assertFalse( builder.isPending( "package1" ) );
+        } finally {
+            builder.stop();
+        }
+    }
+
+    @Test
+    public void testPackagesAreBuiltSeparately() throws Exception {
+        CountingBuilder builder = new CountingBuilder( 2 );
+        try {
+            builder.packageChanged( "package1",
+                                    "user" );
+            builder.packageChanged( "package2",
+                                    "user" );
+
+            assertTrue( builder.built.await( 10,
+                                             TimeUnit.SECONDS ) );
+            assertEquals( 2,
+                          builder.builds.get() );
+        } finally {
+            builder.stop();
+        }
+    }
+
+    @Test
+    public void testBackgroundBuildJoinsTheBuildAUserAskedFor() throws Exception {
+        BuildJobManager manager = new BuildJobManager( 1,
+                                                       10,
+                                                       10 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger userBuilds = new AtomicInteger();
+        // keeps the only build thread busy, so the build the user asks for waits
+        manager.submit( "other",
+                        "other",
+                        null,
+                        new BuildJobManager.BuildTask() {
+                            public BuilderResult build() throws Exception {
+                                release.await();
+                                return null;
+                            }
+                        } );
+        // what the package builder screen sends for a build of the whole package
+        String userJob = manager.submit( BuildJobManager.getJobKey( "package1",
+                                                                    "buildWholePackage",
+                                                                    "=",
+                                                                    "",
+                                                                    false,
+                                                                    "=",
+                                                                    null,
+                                                                    false,
+                                                                    null ),
+                                         "package1",
+                                         "user",
+                                         new BuildJobManager.BuildTask() {
+                                             public BuilderResult build() throws Exception {
+                                                 userBuilds.incrementAndGet();
+                                                 return null;
+                                             }
+                                         } );
+
+        CountingBuilder builder = new CountingBuilder( manager,
+                                                       1 );
+        try {
+            builder.packageChanged( "package1",
+                                    "user" );
+            for ( int i = 0; i < 100 && builder.isPending( "package1" ); i++ ) {
+                Thread.sleep( 50 );
+            }
+            assertFalse( builder.isPending( "package1" ) );
+
+            release.countDown();
+            assertTrue( manager.await( userJob,
+                                       10,
+                                       TimeUnit.SECONDS ) );
+            assertEquals( 1,
+                          userBuilds.get() );
+            assertEquals( 0,
+                          builder.builds.get() );
+        } finally {
+            builder.stop();
+        }
+    }
+
+    private static class CountingBuilder extends BackgroundPackageBuilder {
+
+        private final CountDownLatch built;
+        private final AtomicInteger  builds = new AtomicInteger();
+
+        CountingBuilder(int expectedBuilds) {
+            this( new BuildJobManager( 1,
+                                       10,
+                                       10 ),
+                  expectedBuilds );
+        }
+
+        CountingBuilder(BuildJobManager manager,
+                        int expectedBuilds) {
+            super( null,
+                   manager,
+                   100 );
+            this.built = new CountDownLatch( expectedBuilds );
+        }
+
+        @Override
+        BuilderResult buildPackage(String packageUUID,
+                                   String userName) throws Exception {
+            builds.incrementAndGet();
+            built.countDown();
+            return null;
+        }
+    }
+}
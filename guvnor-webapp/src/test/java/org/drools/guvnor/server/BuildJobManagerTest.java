@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.guvnor.client.rpc.BuildJobStatus;
+import org.drools.guvnor.client.rpc.BuilderResult;
+import org.drools.guvnor.client.rpc.DetailedSerializationException;
+import org.drools.guvnor.client.rpc.PushResponse;
+import org.junit.Test;
+
+public class BuildJobManagerTest {
+
+    @Test
+    public void testIdenticalBuildsAreCoalesced() throws Exception {
+        BuildJobManager manager = new BuildJobManager( 2,
+                                                       10,
+                                                       10 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        BlockingTask task = new BlockingTask( release );
+
+        String first = manager.submit( "package1|true",
+                                       "package1",
+                                       "buildJobUser1",
+                                       task );
+        String second = manager.submit( "package1|true",
+                                        "package1",
+                                        "buildJobUser2",
+                                        task );
+        assertEquals( first,
+                      second );
+        assertFalse( manager.getStatus( first ).isDone() );
+
+        release.countDown();
+        assertTrue( manager.await( first,
+                                   10,
+                                   TimeUnit.SECONDS ) );
+
+        BuildJobStatus status = manager.getStatus( first );
+        assertSame( BuildJobStatus.State.FINISHED,
+                    status.getState() );
+        assertNull( status.getBuilderResult() );
+        assertEquals( 1,
+                      task.builds.get() );
+
+        // both users are told that the build is done
+        List<PushResponse> messages = Backchannel.getInstance().await( "buildJobUser2" );
+        assertEquals( BuildJobManager.PUSH_MESSAGE_TYPE,
+                      messages.get( 0 ).messageType );
+        assertEquals( first,
+                      messages.get( 0 ).message );
+
+        // once done, the same build starts a new job
+        String third = manager.submit( "package1|true",
+                                       "package1",
+                                       "buildJobUser1",
+                                       task );
+        assertFalse( first.equals( third ) );
+    }
+
+    @Test
+    public void testRunningBuildIsNotJoinedAfterAChange() throws Exception {
+        BuildJobManager manager = new BuildJobManager( 2,
+                                                       10,
+                                                       10 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        BlockingTask task = new BlockingTask( release );
+        try {
+            String first = manager.submit( "package3",
+                                           "package3",
+                                           null,
+                                           task );
+            assertTrue( task.started.await( 10,
+                                            TimeUnit.SECONDS ) );
+            // another package changing does not matter
+            manager.packageChanged( "other" );
+            assertEquals( first,
+                          manager.submit( "package3",
+                                          "package3",
+                                          null,
+                                          task ) );
+
+            manager.packageChanged( "package3" );
+            String second = manager.submit( "package3",
+                                            "package3",
+                                            null,
+                                            task );
+            assertFalse( first.equals( second ) );
+            // the new job is joined until the package changes again
+            assertEquals( second,
+                          manager.submit( "package3",
+                                          "package3",
+                                          null,
+                                          task ) );
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testFailedBuild() throws Exception {
+        BuildJobManager manager = new BuildJobManager( 1,
+                                                       10,
+                                                       10 );
+        String jobId = manager.submit( "package2",
+                                       "package2",
+                                       null,
+                                       new BuildJobManager.BuildTask() {
+                                           public BuilderResult build() throws Exception {
+                                               throw new DetailedSerializationException( "Build failed",
+                                                                                         "details" );
+                                           }
+                                       } );
+        assertTrue( manager.await( jobId,
+                                   10,
+                                   TimeUnit.SECONDS ) );
+
+        BuildJobStatus status = manager.getStatus( jobId );
+        assertSame( BuildJobStatus.State.FAILED,
+                    status.getState() );
+        assertEquals( "Build failed",
+                      status.getErrorMessage() );
+        assertEquals( "details",
+                      status.getErrorDetails() );
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        BuildJobManager manager = new BuildJobManager( 1,
+                                                       1,
+                                                       10 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        BlockingTask task = new BlockingTask( release );
+        try {
+            manager.submit( "running",
+                            "running",
+                            null,
+                            task );
+            task.started.await( 10,
+                                TimeUnit.SECONDS );
+            manager.submit( "queued",
+                            "queued",
+                            null,
+                            task );
+            try {
+                manager.submit( "rejected",
+                                "rejected",
+                                null,
+                                task );
+                fail( "The queue is full" );
+            } catch ( DetailedSerializationException e ) {
+                // expected
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static class BlockingTask
+        implements
+        BuildJobManager.BuildTask {
+
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final AtomicInteger  builds  = new AtomicInteger();
+
+        BlockingTask(CountDownLatch release) {
+            this.release = release;
+        }
+
+        public BuilderResult build() throws Exception {
+            started.countDown();
+            builds.incrementAndGet();
+            release.await( 10,
+                           TimeUnit.SECONDS );
+            return null;
+        }
+    }
+}
@@ -70,6 +70,8 @@ public abstract class GuvnorTestBase {
 
         Contexts.getSessionContext().set( "repository",
                                           repository );
+        Contexts.getSessionContext().set( "readOnlyRepository",
+                                          repository );
         Contexts.getSessionContext().set( "org.drools.guvnor.client.rpc.RepositoryService",
                                           serviceImplementation );
         Contexts.getSessionContext().set( "org.drools.guvnor.client.rpc.AssetService",
@@ -105,6 +107,7 @@ public abstract class GuvnorTestBase {
     public void tearDownGuvnorTestBase() {
         repository = null;
         Contexts.removeFromAllContexts( "repository" );
+        Contexts.removeFromAllContexts( "readOnlyRepository" );
         Contexts.removeFromAllContexts( "org.drools.guvnor.client.rpc.RepositoryService" );
         Contexts.removeFromAllContexts( "org.drools.guvnor.client.rpc.AssetService" );
         Contexts.removeFromAllContexts( "org.drools.guvnor.client.rpc.PackageService" );
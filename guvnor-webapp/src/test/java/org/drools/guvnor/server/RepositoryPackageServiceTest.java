@@ -42,6 +42,7 @@ import org.drools.guvnor.client.rpc.DetailedSerializationException;
 import org.drools.guvnor.client.rpc.PackageConfigData;
 import org.drools.guvnor.client.rpc.RepositoryService;
 import org.drools.guvnor.client.rpc.RuleAsset;
+import org.drools.guvnor.client.rpc.RuleContentText;
 import org.drools.guvnor.client.rpc.SnapshotComparisonPageRequest;
 import org.drools.guvnor.client.rpc.SnapshotComparisonPageResponse;
 import org.drools.guvnor.client.rpc.SnapshotComparisonPageRow;
@@ -128,6 +129,7 @@ public class RepositoryPackageServiceTest extends GuvnorTestBase {
 
         // Change the rule, archive one, delete one and create a new one
         RuleAsset asset = repositoryAssetService.loadRuleAsset( modifiedRuleUuid );
+        ((RuleContentText) asset.getContent()).content = "rule \"testRuleModified\"\nwhen\nthen\nend";
         String uuid = repositoryAssetService.checkinVersion( asset );
         assertNotNull( uuid );
 
@@ -897,6 +899,7 @@ public class RepositoryPackageServiceTest extends GuvnorTestBase {
 
         // Change a rule...
         RuleAsset asset = repositoryAssetService.loadRuleAsset( modifiedRuleUuid );
+        ((RuleContentText) asset.getContent()).content = "rule \"testRuleModified\"\nwhen\nthen\nend";
         String uuid = repositoryAssetService.checkinVersion( asset );
         assertNotNull( uuid );
 
@@ -1024,6 +1027,7 @@ public class RepositoryPackageServiceTest extends GuvnorTestBase {
 
         // Change a rule...
         RuleAsset asset = repositoryAssetService.loadRuleAsset( modifiedRuleUuid );
+        ((RuleContentText) asset.getContent()).content = "rule \"testRuleModified\"\nwhen\nthen\nend";
         String uuid = repositoryAssetService.checkinVersion( asset );
         assertNotNull( uuid );
 
@@ -18,6 +18,7 @@ package org.drools.guvnor.server;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -402,6 +403,79 @@ public class RepositoryQueryAndFindTest extends GuvnorTestBase {
         assertTrue( response.isLastPage() );
     }
 
+    @Test
+    public void testFindAssetPageCursorResults() throws Exception {
+
+        final int PAGE_SIZE = 2;
+
+        ServiceImplementation impl = getServiceImplementation();
+        RepositoryCategoryService repositoryCategoryService = getRepositoryCategoryService();
+        PackageItem packageItem = impl.getRulesRepository().createPackage( "testFindAssetPageCursorPackage",
+                                                                           "testFindAssetPageCursorPackageDescription" );
+        repositoryCategoryService.createCategory( "",
+                                                  "testFindAssetPageCursorCategory",
+                                                  "testFindAssetPageCursorCategoryDescription" );
+
+        for ( String name : new String[]{"testFindAssetPageCursor3", "testFindAssetPageCursor1", "testFindAssetPageCursor2"} ) {
+            impl.createNewRule( name,
+                                name + "Description",
+                                "testFindAssetPageCursorCategory",
+                                "testFindAssetPageCursorPackage",
+                                AssetFormats.BUSINESS_RULE );
+        }
+
+        List<String> formats = new ArrayList<String>();
+        formats.add( AssetFormats.BUSINESS_RULE );
+        AssetPageRequest request = new AssetPageRequest( packageItem.getUUID(),
+                                                         formats,
+                                                         null,
+                                                         0,
+                                                         PAGE_SIZE );
+        request.setCursor( "" );
+        RepositoryAssetService repositoryAssetService = getRepositoryAssetService();
+        PageResponse<AssetPageRow> response = repositoryAssetService.findAssetPage( request );
+
+        assertEquals( 2,
+                      response.getPageRowList().size() );
+        assertEquals( "testFindAssetPageCursor1",
+                      response.getPageRowList().get( 0 ).getName() );
+        assertEquals( "testFindAssetPageCursor2",
+                      response.getPageRowList().get( 1 ).getName() );
+        assertFalse( response.isLastPage() );
+        assertNotNull( response.getNextCursor() );
+
+        // startRowIndex is not used to skip rows when there is a cursor
+        request.setStartRowIndex( PAGE_SIZE );
+        request.setCursor( response.getNextCursor() );
+        response = repositoryAssetService.findAssetPage( request );
+
+        assertEquals( 1,
+                      response.getPageRowList().size() );
+        assertEquals( "testFindAssetPageCursor3",
+                      response.getPageRowList().get( 0 ).getName() );
+        assertTrue( response.isLastPage() );
+        assertNull( response.getNextCursor() );
+
+        // and the same goes for quick find
+        QueryPageRequest queryRequest = new QueryPageRequest( "testFindAssetPageCursor*",
+                                                              false,
+                                                              0,
+                                                              PAGE_SIZE );
+        queryRequest.setCursor( "" );
+        PageResponse<QueryPageRow> queryResponse = repositoryAssetService.quickFindAsset( queryRequest );
+        assertEquals( 2,
+                      queryResponse.getPageRowList().size() );
+        assertFalse( queryResponse.isLastPage() );
+
+        queryRequest.setCursor( queryResponse.getNextCursor() );
+        queryResponse = repositoryAssetService.quickFindAsset( queryRequest );
+        assertEquals( 1,
+                      queryResponse.getPageRowList().size() );
+        assertEquals( "testFindAssetPageCursor3",
+                      queryResponse.getPageRowList().get( 0 ).getName() );
+        assertTrue( queryResponse.isLastPage() );
+    }
+
     @Test
     public void testFindAssetPageFullResults() throws Exception {
         ServiceImplementation impl = getServiceImplementation();
@@ -38,6 +38,7 @@ import org.drools.guvnor.client.rpc.RuleAsset;
 import org.drools.guvnor.client.rpc.RuleContentText;
 import org.drools.guvnor.client.rpc.TableDataResult;
 import org.drools.guvnor.client.rpc.TableDataRow;
+import org.drools.guvnor.server.builder.CompilationContextCache;
 import org.drools.guvnor.server.cache.RuleBaseCache;
 import org.drools.guvnor.server.util.DroolsHeader;
 import org.drools.ide.common.client.modeldriven.SuggestionCompletionEngine;
@@ -905,6 +906,47 @@ public class RepositoyAssetServiceTest extends GuvnorTestBase {
 
     }
 
+    @Test
+    public void testValidateAssetReusesCompilationContext() throws Exception {
+        RulesRepository repo = getServiceImplementation().getRulesRepository();
+        PackageItem pkg = repo.createPackage( "testValidateAssetReusesContext",
+                                              "" );
+        DroolsHeader.updateDroolsHeader( "import java.util.List",
+                                         pkg );
+        AssetItem func = pkg.addAsset( "func",
+                                       "" );
+        func.updateFormat( AssetFormats.FUNCTION );
+        func.updateContent( "function int size(List list) { return list.size(); }" );
+        func.checkin( "" );
+
+        AssetItem asset = pkg.addAsset( "testRule",
+                                        "" );
+        asset.updateFormat( AssetFormats.DRL );
+        asset.updateContent( "rule 'MyGoodRule' \n when List() then System.err.println(size(new java.util.ArrayList())); \n end" );
+        asset.checkin( "" );
+        repo.save();
+
+        RepositoryAssetService repositoryAssetService = getRepositoryAssetService();
+        RuleAsset rule = repositoryAssetService.loadRuleAsset( asset.getUUID() );
+        assertTrue( repositoryAssetService.validateAsset( rule ).getLines().isEmpty() );
+
+        long hits = CompilationContextCache.getInstance().getStatistics().getHitCount();
+        RuleContentText text = new RuleContentText();
+        text.content = "rule 'MyBadRule' \n when List() then System.err.println(sizex(new java.util.ArrayList())); \n end";
+        rule.setContent( text );
+        BuilderResult result = repositoryAssetService.validateAsset( rule );
+        assertFalse( result.getLines().isEmpty() );
+        assertEquals( hits + 1,
+                      CompilationContextCache.getInstance().getStatistics().getHitCount() );
+
+        // a new function version means a new context
+        func.updateContent( "function int sizex(List list) { return list.size(); }" );
+        func.checkin( "" );
+        assertTrue( repositoryAssetService.validateAsset( rule ).getLines().isEmpty() );
+        assertEquals( hits + 1,
+                      CompilationContextCache.getInstance().getStatistics().getHitCount() );
+    }
+
     @Test
     public void testBuildAssetMultipleFunctionsCallingEachOther() throws Exception {
 
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -62,8 +63,11 @@ import org.drools.guvnor.client.rpc.TableDataResult;
 import org.drools.guvnor.client.rpc.TableDataRow;
 import org.drools.guvnor.client.rpc.ValidatedResponse;
 import org.drools.guvnor.server.cache.RuleBaseCache;
+import org.drools.guvnor.server.cache.SuggestionCompletionEngineCache;
+import org.drools.guvnor.server.repository.MailboxService;
 import org.drools.guvnor.server.repository.RepositoryStartupService;
 import org.drools.guvnor.server.repository.UserInbox;
+import org.drools.guvnor.server.util.Discussion;
 import org.drools.guvnor.server.util.DroolsHeader;
 import org.drools.guvnor.server.util.TableDisplayHandler;
 import org.drools.guvnor.server.util.TestEnvironmentSessionHelper;
@@ -79,6 +83,7 @@ import org.drools.repository.PackageItem;
 import org.drools.repository.RulesRepository;
 import org.drools.repository.StateItem;
 import org.drools.repository.UserInfo.InboxEntry;
+import org.drools.repository.events.EventBus;
 import org.drools.rule.Package;
 import org.drools.type.DateFormatsImpl;
 import org.junit.Ignore;
@@ -425,6 +430,7 @@ public class ServiceImplementationTest extends GuvnorTestBase {
     @Test
     public void testTrackRecentOpenedChanged() throws Exception {
         try {
+            MailboxService.getInstance().init( new RulesRepository( TestEnvironmentSessionHelper.getSession( false ) ) );
             RepositoryStartupService.registerCheckinListener();
             ServiceImplementation impl = getServiceImplementation();
             RepositoryCategoryService repositoryCategoryService = getRepositoryCategoryService();
@@ -446,6 +452,7 @@ public class ServiceImplementationTest extends GuvnorTestBase {
 
             repositoryAssetService.checkinVersion( ass );
 
+            awaitInboxes();
             List<InboxEntry> es = ib.loadRecentEdited();
             assertEquals( 1,
                           es.size() );
@@ -480,6 +487,7 @@ public class ServiceImplementationTest extends GuvnorTestBase {
     @Test
     public void testCheckin() throws Exception {
         try {
+            MailboxService.getInstance().init( new RulesRepository( TestEnvironmentSessionHelper.getSession( false ) ) );
             RepositoryStartupService.registerCheckinListener();
             ServiceImplementation serv = getServiceImplementation();
             RepositoryCategoryService repositoryCategoryService = getRepositoryCategoryService();
@@ -521,6 +529,7 @@ public class ServiceImplementationTest extends GuvnorTestBase {
             assertEquals( uuid,
                           uuid2 );
 
+            awaitInboxes();
             assertTrue( ib.loadRecentEdited().size() > inbox.size() );
 
             RuleAsset asset2 = repositoryAssetService.loadRuleAsset( uuid );
@@ -588,6 +597,19 @@ public class ServiceImplementationTest extends GuvnorTestBase {
 
     }
 
+    /**
+     * The inboxes are written after the check-ins have returned, this waits
+     * for that to be done.
+     */
+    private void awaitInboxes() throws InterruptedException {
+        for ( EventBus.Subscription subscription : EventBus.getInstance().getSubscriptions() ) {
+            for ( int i = 0; i < 50 && !subscription.isIdle(); i++ ) {
+                Thread.sleep( 100 );
+            }
+        }
+        assertTrue( MailboxService.getInstance().awaitDelivery( 5000 ) );
+    }
+
     @Test
     @Deprecated
     public void testListByFormat() throws Exception {
@@ -946,6 +968,46 @@ public class ServiceImplementationTest extends GuvnorTestBase {
 
     }
 
+    @Test
+    public void testLoadSuggestionCompletionEngineIsCachedUntilModelChanges() throws Exception {
+        ServiceImplementation impl = getServiceImplementation();
+        RulesRepository repo = impl.getRulesRepository();
+
+        PackageItem pkg = repo.createPackage( "testSILoadSCECached",
+                                              "" );
+        AssetItem model = pkg.addAsset( "MyModel",
+                                        "" );
+        model.updateFormat( AssetFormats.DRL_MODEL );
+        model.updateContent( "declare Whee\n name: String\nend" );
+        model.checkin( "" );
+
+        SuggestionCompletionEngine first = impl.loadSuggestionCompletionEngine( pkg.getName() );
+        long hits = SuggestionCompletionEngineCache.getInstance().getStatistics().getHitCount();
+        SuggestionCompletionEngine cached = impl.loadSuggestionCompletionEngine( pkg.getName() );
+        assertEquals( hits + 1,
+                      SuggestionCompletionEngineCache.getInstance().getStatistics().getHitCount() );
+        // every caller gets an engine of its own
+        assertNotSame( first,
+                       cached );
+        assertEquals( Arrays.asList( first.getFactTypes() ),
+                      Arrays.asList( cached.getFactTypes() ) );
+
+        long misses = SuggestionCompletionEngineCache.getInstance().getStatistics().getMissCount();
+        DroolsHeader.updateDroolsHeader( "import java.util.List",
+                                         pkg );
+        impl.loadSuggestionCompletionEngine( pkg.getName() );
+        assertEquals( misses + 1,
+                      SuggestionCompletionEngineCache.getInstance().getStatistics().getMissCount() );
+
+        model.updateContent( "declare Whee\n name: String\nend\ndeclare Whoa\n name: String\nend" );
+        model.checkin( "" );
+
+        SuggestionCompletionEngine second = impl.loadSuggestionCompletionEngine( pkg.getName() );
+        assertNotSame( first,
+                       second );
+        assertTrue( Arrays.asList( second.getFactTypes() ).contains( "Whoa" ) );
+    }
+
     @Test
     public void testDiscussion() throws Exception {
         ServiceImplementation impl = getServiceImplementation();
@@ -1012,6 +1074,47 @@ public class ServiceImplementationTest extends GuvnorTestBase {
                       d_.size() );
     }
 
+    @Test
+    public void testDiscussionLoadLatestAndCompaction() throws Exception {
+        RulesRepository repo = getServiceImplementation().getRulesRepository();
+
+        PackageItem pkg = repo.createPackage( "testDiscussionLoadLatest",
+                                              "" );
+        AssetItem rule1 = pkg.addAsset( "rule_1",
+                                        "" );
+        rule1.checkin( "" );
+        repo.save();
+
+        Discussion discussion = new Discussion( 8 );
+        for ( int i = 0; i < 9; i++ ) {
+            discussion.add( rule1,
+                            new DiscussionRecord( "mic",
+                                                  "note" + i ) );
+        }
+        repo.save();
+
+        List<DiscussionRecord> latest = discussion.loadLatest( rule1,
+                                                               2 );
+        assertEquals( 2,
+                      latest.size() );
+        assertEquals( "note7",
+                      latest.get( 0 ).note );
+        assertEquals( "note8",
+                      latest.get( 1 ).note );
+
+        // the ninth record went past the limit, so only the newest six are kept
+        List<DiscussionRecord> all = discussion.load( rule1 );
+        assertEquals( 6,
+                      all.size() );
+        assertEquals( "note3",
+                      all.get( 0 ).note );
+        assertEquals( "note8",
+                      all.get( 5 ).note );
+        assertEquals( 6,
+                      discussion.loadLatest( rule1,
+                                             100 ).size() );
+    }
+
     /**
      * this loads up a precompile binary package. If this fails, then it means
      * it needs to be updated. It gets the package form the BRL example above.
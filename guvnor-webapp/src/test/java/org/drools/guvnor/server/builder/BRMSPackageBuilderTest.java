@@ -18,6 +18,7 @@ package org.drools.guvnor.server.builder;
 
 
 import org.drools.builder.conf.DefaultPackageNameOption;
+import org.drools.core.util.DroolsStreamUtils;
 import org.drools.lang.descr.PackageDescr;
 import org.drools.lang.dsl.DSLTokenizedMappingFile;
 import org.drools.rule.Package;
@@ -47,6 +48,59 @@ public class BRMSPackageBuilderTest {
         System.getProperties().remove("drools.dialect.java.compiler");
     }
 
+    @Test
+    public void testRecordedPackageDescrsCanBeAddedAgain() throws Exception {
+        BRMSPackageBuilder builder = new BRMSPackageBuilder();
+        builder.addPackage(new PackageDescr("foo.bar"));
+        builder.startRecording();
+        builder.addPackageFromDrl(new StringReader("package foo.bar\n rule \"recorded\" when then end"));
+        List<FrozenPackageDescr> recorded = builder.stopRecording();
+        assertFalse(builder.hasErrors());
+        assertEquals(1,
+                recorded.size());
+
+        // each copy is a descriptor of its own, as a builder changes what it is given
+        assertNotSame(recorded.get(0).copy(),
+                recorded.get(0).copy());
+        for (int i = 0; i < 2; i++) {
+            BRMSPackageBuilder other = new BRMSPackageBuilder();
+            other.addPackage(new PackageDescr("foo.bar"));
+            other.addPackage(recorded.get(0).copy());
+            assertFalse(other.hasErrors());
+            assertNotNull(other.getPackage().getRule("recorded"));
+        }
+
+        // DRL that does not parse is not recorded
+        builder.startRecording();
+        builder.addPackageFromDrl(new StringReader("package foo.bar\n rule \"broken\" when ) then end"));
+        assertNull(builder.stopRecording());
+    }
+
+    @Test
+    public void testBuilderOnCompiledPackage() throws Exception {
+        Properties ps = new Properties();
+        ClassLoader classLoader = getClass().getClassLoader();
+        BRMSPackageBuilder builder = new BRMSPackageBuilder(ps,
+                classLoader);
+        builder.addPackage(new PackageDescr("foo.bar"));
+        builder.addPackageFromDrl(new StringReader("package foo.bar\n import java.util.List\n function int size(List list) { return list.size(); }"));
+        assertFalse(builder.hasErrors());
+        byte[] compiled = DroolsStreamUtils.streamOut(builder.getPackage());
+
+        // each builder compiles into a copy of its own
+        for (int i = 0; i < 2; i++) {
+            Package copy = (Package) DroolsStreamUtils.streamIn(compiled,
+                    classLoader);
+            BRMSPackageBuilder other = new BRMSPackageBuilder(copy,
+                    ps,
+                    classLoader);
+            other.addPackageFromDrl(new StringReader("package foo.bar\n rule \"compiled\" when java.util.List() then System.err.println(size(new java.util.ArrayList())); end"));
+            assertFalse(other.hasErrors());
+            assertNotNull(other.getPackage().getRule("compiled"));
+        }
+        assertNull(builder.getPackage().getRule("compiled"));
+    }
+
     // @FIXME rule "abc" is null and the Packge has no namespace
     @Test
     public void testPartialPackage() throws Exception {
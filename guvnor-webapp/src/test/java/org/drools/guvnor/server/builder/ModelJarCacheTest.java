@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.drools.guvnor.server.builder;
+
+import org.drools.repository.AssetItem;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ModelJarCacheTest {
+
+    @Test
+    public void testSameModelAssetsShareClassLoader() throws Exception {
+        ModelJarCache cache = new ModelJarCache(10);
+        AssetItem model = mockModel("model-uuid",
+                1);
+        ClassLoader parent = getClass().getClassLoader();
+
+        ModelJarCache.ModelJars first = cache.getModelJars(iterator(model));
+        ModelJarCache.ModelJars second = cache.getModelJars(iterator(model));
+
+        assertSame(first,
+                second);
+        assertTrue(first.hasJars());
+        assertSame(first.getClassLoader(parent),
+                second.getClassLoader(parent));
+        assertNotNull(first.getClassLoader(parent).loadClass("com.billasurf.Board"));
+        // the attachment was only read once
+        verify(model,
+                times(1)).getBinaryContentAttachment();
+
+        assertEquals(1,
+                cache.getStatistics().getHitCount());
+        assertEquals(1,
+                cache.getStatistics().getMissCount());
+        assertTrue(cache.getStatistics().getWeight() > 0);
+    }
+
+    @Test
+    public void testNewVersionIsLoadedAgain() throws Exception {
+        ModelJarCache cache = new ModelJarCache(10);
+
+        ModelJarCache.ModelJars first = cache.getModelJars(iterator(mockModel("model-uuid",
+                1)));
+        ModelJarCache.ModelJars second = cache.getModelJars(iterator(mockModel("model-uuid",
+                2)));
+
+        assertNotSame(first,
+                second);
+        assertEquals(2,
+                cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testEvictOnCheckin() throws Exception {
+        ModelJarCache cache = new ModelJarCache(10);
+        cache.getModelJars(iterator(mockModel("model-uuid",
+                1)));
+        cache.getModelJars(iterator(mockModel("other-uuid",
+                1)));
+
+        cache.evict("model-uuid");
+
+        assertEquals(1,
+                cache.getStatistics().getSize());
+        assertEquals(1,
+                cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testEvictOverMaxBytes() throws Exception {
+        ModelJarCache cache = new ModelJarCache(10,
+                1);
+        ModelJarCache.ModelJars first = cache.getModelJars(iterator(mockModel("model-uuid",
+                1)));
+        cache.getModelJars(iterator(mockModel("other-uuid",
+                1)));
+
+        // the newest entry is kept even though it is over the limit on its own
+        assertEquals(1,
+                cache.getStatistics().getSize());
+        assertEquals(1,
+                cache.getStatistics().getEvictionCount());
+        assertNotSame(first,
+                cache.getModelJars(iterator(mockModel("model-uuid",
+                        1))));
+    }
+
+    @Test
+    public void testDifferentParentGetsItsOwnClassLoader() throws Exception {
+        ModelJarCache cache = new ModelJarCache(10);
+        ModelJarCache.ModelJars modelJars = cache.getModelJars(iterator(mockModel("model-uuid",
+                1)));
+
+        ClassLoader parent = getClass().getClassLoader();
+        ClassLoader otherParent = new ClassLoader(parent) {
+        };
+
+        assertNotSame(modelJars.getClassLoader(parent),
+                modelJars.getClassLoader(otherParent));
+        assertSame(modelJars.getClassLoader(parent),
+                modelJars.getClassLoader(parent));
+    }
+
+    private Iterator<AssetItem> iterator(AssetItem... assets) {
+        return Arrays.asList(assets).iterator();
+    }
+
+    private AssetItem mockModel(String uuid,
+                                long versionNumber) {
+        AssetItem model = mock(AssetItem.class);
+        when(model.getUUID()).thenReturn(uuid);
+        when(model.getVersionNumber()).thenReturn(versionNumber);
+        when(model.getBinaryContentAttachment()).thenAnswer(new Answer<InputStream>() {
+            public InputStream answer(InvocationOnMock invocation) {
+                return getClass().getResourceAsStream("/billasurf.jar");
+            }
+        });
+        return model;
+    }
+}
@@ -493,6 +493,216 @@ public class PackageAssemblerTest extends GuvnorTestBase {
 
     }
 
+    @Test
+    public void testIncrementalBuildReusesUnchangedAssets() throws Exception {
+        ServiceImplementation serviceImplementation = getServiceImplementation();
+        RulesRepository repo = serviceImplementation.getRulesRepository();
+
+        PackageItem pkg = repo.createPackage("testIncrementalBuildReusesUnchangedAssets",
+                "");
+        AssetItem model = pkg.addAsset("model",
+                "qed");
+        model.updateFormat(AssetFormats.MODEL);
+        model.updateBinaryContentAttachment(this.getClass().getResourceAsStream("/billasurf.jar"));
+        model.checkin("");
+
+        DroolsHeader.updateDroolsHeader("import com.billasurf.Board\n global com.billasurf.Person customer",
+                pkg);
+
+        AssetItem rule1 = pkg.addAsset("rule_1",
+                "");
+        rule1.updateFormat(AssetFormats.DRL);
+        rule1.updateContent("rule 'rule1' \n when Board() \n then customer.setAge(42); \n end");
+        rule1.checkin("");
+
+        AssetItem rule2 = pkg.addAsset("rule2",
+                "");
+        rule2.updateFormat(AssetFormats.DRL);
+        rule2.updateContent("when \n Board() \n then \n System.err.println(42);");
+        rule2.checkin("");
+
+        repo.save();
+
+        PackageAssemblerConfiguration configuration = new PackageAssemblerConfiguration();
+        configuration.setIncrementalBuild(true);
+
+        PackageAssembler asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+        assertEquals(2,
+                asm.getBinaryPackage().getRules().length);
+        assertEquals(0,
+                asm.getReusedAssetCount());
+        assertEquals(2,
+                asm.getRecompiledAssetCount());
+
+        rule2.updateContent("when \n Board() \n then \n System.err.println(43);");
+        rule2.checkin("");
+
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+        assertEquals(2,
+                asm.getBinaryPackage().getRules().length);
+        assertEquals(1,
+                asm.getReusedAssetCount());
+        assertEquals(1,
+                asm.getRecompiledAssetCount());
+
+        rule2.updateContent("when \n Boardx() \n then \n System.err.println(43);");
+        rule2.checkin("");
+
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertTrue(asm.hasErrors());
+        assertEquals(1,
+                asm.getReusedAssetCount());
+    }
+
+    @Test
+    public void testParallelBuild() throws Exception {
+        ServiceImplementation serviceImplementation = getServiceImplementation();
+        RulesRepository repo = serviceImplementation.getRulesRepository();
+
+        PackageItem pkg = repo.createPackage("testParallelBuild",
+                "");
+        AssetItem model = pkg.addAsset("model",
+                "qed");
+        model.updateFormat(AssetFormats.MODEL);
+        model.updateBinaryContentAttachment(this.getClass().getResourceAsStream("/billasurf.jar"));
+        model.checkin("");
+
+        DroolsHeader.updateDroolsHeader("import com.billasurf.Board\n global com.billasurf.Person customer",
+                pkg);
+
+        for (int i = 0; i < 10; i++) {
+            AssetItem rule = pkg.addAsset("rule" + i,
+                    "");
+            rule.updateFormat(AssetFormats.DRL);
+            rule.updateContent("when \n Board() \n then \n System.err.println(" + i + ");");
+            rule.checkin("");
+        }
+
+        AssetItem brl = pkg.addAsset("brl",
+                "");
+        brl.updateFormat(AssetFormats.BUSINESS_RULE);
+        RuleModel ruleModel = new RuleModel();
+        ruleModel.name = "brl";
+        ruleModel.addLhsItem(new FactPattern("Board"));
+        brl.updateContent(BRXMLPersistence.getInstance().marshal(ruleModel));
+        brl.checkin("");
+
+        repo.save();
+
+        PackageAssemblerConfiguration configuration = new PackageAssemblerConfiguration();
+        configuration.setParallelism(4);
+
+        PackageAssembler asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+        assertEquals(11,
+                asm.getBinaryPackage().getRules().length);
+
+        AssetItem bad1 = pkg.addAsset("bad1",
+                "");
+        bad1.updateFormat(AssetFormats.DRL);
+        bad1.updateContent("if something then another");
+        bad1.checkin("");
+        AssetItem bad2 = pkg.addAsset("bad2",
+                "");
+        bad2.updateFormat(AssetFormats.DRL);
+        bad2.updateContent("when \n Boardx() \n then \n System.err.println(42);");
+        bad2.checkin("");
+        repo.save();
+
+        PackageAssembler serial = new PackageAssembler(pkg);
+        serial.compile();
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertTrue(asm.hasErrors());
+        assertEquals(serial.getErrors().size(),
+                asm.getErrors().size());
+        for (int i = 0; i < serial.getErrors().size(); i++) {
+            assertEquals(serial.getErrors().get(i).getName(),
+                    asm.getErrors().get(i).getName());
+            assertEquals(serial.getErrors().get(i).getErrorReport(),
+                    asm.getErrors().get(i).getErrorReport());
+        }
+    }
+
+    @Test
+    public void testIncrementalBuildNoticesSavesAndHeaderChanges() throws Exception {
+        ServiceImplementation serviceImplementation = getServiceImplementation();
+        RulesRepository repo = serviceImplementation.getRulesRepository();
+
+        PackageItem pkg = repo.createPackage("testIncrementalBuildNoticesSaves",
+                "");
+        AssetItem model = pkg.addAsset("model",
+                "qed");
+        model.updateFormat(AssetFormats.MODEL);
+        model.updateBinaryContentAttachment(this.getClass().getResourceAsStream("/billasurf.jar"));
+        model.checkin("");
+
+        DroolsHeader.updateDroolsHeader("import com.billasurf.Board\n global com.billasurf.Person customer",
+                pkg);
+
+        AssetItem rule1 = pkg.addAsset("rule_1",
+                "");
+        rule1.updateFormat(AssetFormats.DRL);
+        rule1.updateContent("rule 'rule1' \n when Board() \n then customer.setAge(42); \n end");
+        rule1.checkin("");
+        repo.save();
+
+        PackageAssemblerConfiguration configuration = new PackageAssemblerConfiguration();
+        configuration.setIncrementalBuild(true);
+
+        PackageAssembler asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+
+        // saved, but not checked in
+        Thread.sleep(10);
+        rule1.updateContent("rule 'rule1' \n when Boardx() \n then customer.setAge(42); \n end");
+        repo.save();
+
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertTrue(asm.hasErrors());
+        assertEquals(0,
+                asm.getReusedAssetCount());
+
+        rule1.updateContent("rule 'rule1' \n when Board() \n then customer.setAge(42); \n end");
+        rule1.checkin("");
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+
+        // the same assets reused twice, into builders that change descriptors
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+        assertEquals(1,
+                asm.getReusedAssetCount());
+
+        DroolsHeader.updateDroolsHeader("import com.billasurf.Board\n global com.billasurf.Person customer\n global java.util.List list",
+                pkg);
+        asm = new PackageAssembler(pkg,
+                configuration);
+        asm.compile();
+        assertFalse(asm.hasErrors());
+        assertEquals(0,
+                asm.getReusedAssetCount());
+    }
+
     @Test
     public void testIgnoreArchivedItems() throws Exception {
         ServiceImplementation serviceImplementation = getServiceImplementation();
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.drools.guvnor.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.drools.RuleBase;
+import org.junit.Test;
+
+public class RuleBaseCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        RuleBaseCache cache = new RuleBaseCache( 2,
+                                                 Long.MAX_VALUE,
+                                                 RuleBaseCache.EvictionPolicy.LRU );
+        RuleBase first = mock( RuleBase.class );
+        cache.put( "first",
+                   first );
+        cache.put( "second",
+                   mock( RuleBase.class ) );
+
+        assertSame( first,
+                    cache.get( "first" ) );
+        cache.put( "third",
+                   mock( RuleBase.class ) );
+
+        assertTrue( cache.contains( "first" ) );
+        assertFalse( cache.contains( "second" ) );
+        assertTrue( cache.contains( "third" ) );
+        assertEquals( 1,
+                      cache.getStatistics().getEvictionCount() );
+    }
+
+    @Test
+    public void testEvictsLeastFrequentlyUsed() {
+        RuleBaseCache cache = new RuleBaseCache( 2,
+                                                 Long.MAX_VALUE,
+                                                 RuleBaseCache.EvictionPolicy.LFU );
+        cache.put( "first",
+                   mock( RuleBase.class ) );
+        cache.put( "second",
+                   mock( RuleBase.class ) );
+        cache.get( "first" );
+        cache.get( "first" );
+        cache.get( "second" );
+
+        cache.put( "third",
+                   mock( RuleBase.class ) );
+
+        assertTrue( cache.contains( "first" ) );
+        assertFalse( cache.contains( "second" ) );
+        assertTrue( cache.contains( "third" ) );
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        RuleBaseCache cache = new RuleBaseCache( 10,
+                                                 100,
+                                                 RuleBaseCache.EvictionPolicy.LRU );
+        cache.put( "first",
+                   mock( RuleBase.class ),
+                   60 );
+        cache.put( "second",
+                   mock( RuleBase.class ),
+                   60 );
+
+        assertFalse( cache.contains( "first" ) );
+        assertTrue( cache.contains( "second" ) );
+        assertEquals( 60,
+                      cache.getStatistics().getWeight() );
+
+        // an entry heavier than the limit is still kept on its own
+        cache.put( "third",
+                   mock( RuleBase.class ),
+                   500 );
+        assertTrue( cache.contains( "third" ) );
+        assertEquals( 1,
+                      cache.getStatistics().getSize() );
+
+        cache.remove( "third" );
+        assertEquals( 0,
+                      cache.getStatistics().getWeight() );
+    }
+
+    @Test
+    public void testStatistics() {
+        RuleBaseCache cache = new RuleBaseCache( 10,
+                                                 Long.MAX_VALUE,
+                                                 RuleBaseCache.EvictionPolicy.LRU );
+        assertNull( cache.get( "missing" ) );
+        cache.put( "present",
+                   mock( RuleBase.class ) );
+        cache.recordLoad( 40 );
+        cache.get( "present" );
+        cache.get( "present" );
+        cache.get( "present" );
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals( 3,
+                      statistics.getHitCount() );
+        assertEquals( 1,
+                      statistics.getMissCount() );
+        assertEquals( 0.75,
+                      statistics.getHitRatio(),
+                      0.001 );
+        assertEquals( 1,
+                      statistics.getLoadCount() );
+        assertEquals( 40,
+                      statistics.getAverageLoadTime() );
+
+        cache.clearCache();
+        assertEquals( 0,
+                      cache.getStatistics().getSize() );
+    }
+}
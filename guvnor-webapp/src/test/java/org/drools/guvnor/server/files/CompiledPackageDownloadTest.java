@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.drools.guvnor.server.files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.drools.repository.PackageItem;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CompiledPackageDownloadTest {
+
+    private static final byte[] BINARY = "0123456789".getBytes();
+
+    private PackageItem         item;
+
+    @Before
+    public void setUp() {
+        item = mock( PackageItem.class );
+        when( item.hasCompiledPackage() ).thenReturn( true );
+        when( item.getCompiledPackageDigest() ).thenReturn( "abc" );
+        when( item.getCompiledPackageSize() ).thenReturn( (long) BINARY.length );
+        when( item.getCompiledPackageStream() ).thenAnswer( new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                return new ByteArrayInputStream( BINARY );
+            }
+        } );
+    }
+
+    @Test
+    public void testWholeBinary() throws Exception {
+        MockHTTPResponse res = new MockHTTPResponse();
+        new CompiledPackageDownload( item ).write( new MockHTTPRequest( "/package/p/LATEST",
+                                                                        new HashMap<String, String>() ),
+                                                   res,
+                                                   "p.pkg" );
+        assertEquals( "\"abc\"",
+                      res.headers.get( "ETag" ) );
+        assertEquals( "10",
+                      res.headers.get( "Content-Length" ) );
+        assertEquals( "0123456789",
+                      res.extractContent() );
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put( "If-None-Match",
+                     "\"xyz\", \"abc\"" );
+        MockHTTPResponse res = new MockHTTPResponse();
+        new CompiledPackageDownload( item ).write( new MockHTTPRequest( "/package/p/LATEST",
+                                                                        headers ),
+                                                   res,
+                                                   "p.pkg" );
+        assertEquals( HttpServletResponse.SC_NOT_MODIFIED,
+                      res.status );
+        assertEquals( 0,
+                      res.extractContentBytes().length );
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put( "Range",
+                     "bytes=2-5" );
+        MockHTTPResponse res = new MockHTTPResponse();
+        new CompiledPackageDownload( item ).write( new MockHTTPRequest( "/package/p/LATEST",
+                                                                        headers ),
+                                                   res,
+                                                   "p.pkg" );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT,
+                      res.status );
+        assertEquals( "bytes 2-5/10",
+                      res.headers.get( "Content-Range" ) );
+        assertEquals( "2345",
+                      res.extractContent() );
+    }
+
+    @Test
+    public void testRangeParsing() {
+        CompiledPackageDownload download = new CompiledPackageDownload( item );
+        assertNull( download.getRange( null,
+                                       null ) );
+        assertNull( download.getRange( "bytes=1-2,4-5",
+                                       null ) );
+        assertEquals( 7,
+                      download.getRange( "bytes=7-",
+                                         null ).getFirst() );
+        assertEquals( 9,
+                      download.getRange( "bytes=5-100",
+                                         null ).getLast() );
+        assertEquals( 7,
+                      download.getRange( "bytes=-3",
+                                         null ).getFirst() );
+        assertSame( CompiledPackageDownload.UNSATISFIABLE,
+                    download.getRange( "bytes=10-",
+                                       null ) );
+        // the binary changed since the client started downloading it
+        assertNull( download.getRange( "bytes=2-5",
+                                       "\"old\"" ) );
+    }
+
+    @Test
+    public void testBuiltBeforeDigestsWereStored() throws Exception {
+        when( item.getCompiledPackageDigest() ).thenReturn( null );
+        CompiledPackageDownload download = new CompiledPackageDownload( item );
+        assertTrue( download.exists() );
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put( "If-None-Match",
+                     "\"abc\"" );
+        MockHTTPResponse res = new MockHTTPResponse();
+        download.write( new MockHTTPRequest( "/package/p/LATEST",
+                                             headers ),
+                        res,
+                        "p.pkg" );
+        assertNull( res.headers.get( "ETag" ) );
+        assertEquals( "0123456789",
+                      res.extractContent() );
+    }
+
+    @Test
+    public void testNotBuilt() throws Exception {
+        when( item.hasCompiledPackage() ).thenReturn( false );
+        when( item.getCompiledPackageDigest() ).thenReturn( null );
+        CompiledPackageDownload download = new CompiledPackageDownload( item );
+        assertFalse( download.exists() );
+
+        MockHTTPResponse res = new MockHTTPResponse();
+        download.write( new MockHTTPRequest( "/package/p/LATEST",
+                                             new HashMap<String, String>() ),
+                        res,
+                        "p.pkg" );
+        assertEquals( HttpServletResponse.SC_NOT_FOUND,
+                      res.errorCode );
+    }
+}
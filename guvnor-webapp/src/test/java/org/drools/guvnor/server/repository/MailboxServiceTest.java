@@ -17,14 +17,19 @@
 package org.drools.guvnor.server.repository;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
+import org.drools.guvnor.client.explorer.ExplorerNodeConfig;
 import org.drools.guvnor.server.GuvnorTestBase;
 import org.drools.guvnor.server.ServiceImplementation;
+import org.drools.guvnor.server.util.TestEnvironmentSessionHelper;
 import org.drools.repository.AssetItem;
 import org.drools.repository.RulesRepository;
+import org.drools.repository.UserInfo;
 import org.drools.repository.UserInfo.InboxEntry;
 import org.junit.Test;
 
@@ -167,4 +172,67 @@ public class MailboxServiceTest extends GuvnorTestBase {
                       ib3.loadIncoming().size() );
 
     }
+
+    @Test
+    public void testClearedListsAreNotDeliveredTo() throws Exception {
+        ServiceImplementation impl = getServiceImplementation();
+        RulesRepository repo = impl.getRulesRepository();
+
+        MailboxService service = MailboxService.getInstance();
+        service.init( repo );
+
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testMailboxCleared",
+                                                              "" );
+        UserInbox ib = new UserInbox( repo,
+                                      "cleared" );
+        ib.addToRecentEdited( asset.getUUID(),
+                              "hey" );
+        assertTrue( InboxInterestIndex.getInstance().getInterestedUsers( asset.getUUID() ).contains( "cleared" ) );
+        ib.clearAll();
+
+        service.recordItemUpdated( asset );
+        assertTrue( service.awaitDelivery( 5000 ) );
+
+        assertEquals( 0,
+                      ib.loadIncoming().size() );
+        assertFalse( InboxInterestIndex.getInstance().getInterestedUsers( asset.getUUID() ).contains( "cleared" ) );
+        assertEquals( 0,
+                      service.getQueueDepth() );
+        assertTrue( service.getDeliveredCount() > 0 );
+    }
+
+    @Test
+    public void testInterestIndexFollowsChangesMadeElsewhere() throws Exception {
+        RulesRepository repo = getServiceImplementation().getRulesRepository();
+        AssetItem asset = repo.loadDefaultPackage().addAsset( "testInterestIndexElsewhere",
+                                                              "" );
+        UserInbox ib = new UserInbox( repo,
+                                      "elsewhere" );
+        ib.addToRecentEdited( asset.getUUID(),
+                              "hey" );
+        ib.save();
+
+        InboxInterestIndex index = new InboxInterestIndex();
+        index.start( TestEnvironmentSessionHelper.getSessionFor( "admin" ) );
+        try {
+            index.build( repo );
+            assertTrue( index.getInterestedUsers( asset.getUUID() ).contains( "elsewhere" ) );
+
+            // as another node of a cluster would, without telling the index
+            RulesRepository other = new RulesRepository( TestEnvironmentSessionHelper.getSessionFor( "elsewhere" ) );
+            UserInfo info = new UserInfo( other,
+                                          "elsewhere" );
+            info.clear( "inbox",
+                        ExplorerNodeConfig.RECENT_EDITED_ID );
+            info.save();
+
+            long end = System.currentTimeMillis() + 5000;
+            while ( index.getInterestedUsers( asset.getUUID() ).contains( "elsewhere" ) && System.currentTimeMillis() < end ) {
+                Thread.sleep( 50 );
+            }
+            assertFalse( index.getInterestedUsers( asset.getUUID() ).contains( "elsewhere" ) );
+        } finally {
+            index.stop();
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.guvnor.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.jcr.Session;
+
+import org.drools.repository.RulesRepository;
+import org.drools.repository.RulesRepositoryException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ReadOnlySessionPoolTest {
+
+    private RepositoryStartupService repositoryConfiguration;
+
+    @Before
+    public void setUp() {
+        repositoryConfiguration = mock( RepositoryStartupService.class );
+        when( repositoryConfiguration.newSession( ReadOnlySessionPool.READ_ONLY_USER ) ).thenAnswer( new Answer<Session>() {
+            public Session answer(InvocationOnMock invocation) {
+                Session session = mock( Session.class );
+                when( session.getUserID() ).thenReturn( ReadOnlySessionPool.READ_ONLY_USER );
+                when( session.isLive() ).thenReturn( true );
+                return session;
+            }
+        } );
+    }
+
+    @Test
+    public void testReusesReleasedSessions() throws Exception {
+        ReadOnlySessionPool pool = new ReadOnlySessionPool( repositoryConfiguration,
+                                                            2,
+                                                            1000 );
+        RulesRepository first = pool.borrow();
+        RulesRepository second = pool.borrow();
+        assertNotSame( first.getSession(),
+                       second.getSession() );
+
+        pool.release( first );
+        assertEquals( 1,
+                      pool.getIdleCount() );
+
+        RulesRepository again = pool.borrow();
+        assertSame( first,
+                    again );
+        verify( first.getSession() ).refresh( false );
+        verify( first.getSession(),
+                never() ).logout();
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        ReadOnlySessionPool pool = new ReadOnlySessionPool( repositoryConfiguration,
+                                                            1,
+                                                            10 );
+        RulesRepository repository = pool.borrow();
+        try {
+            pool.borrow();
+            fail( "The pool only has one session" );
+        } catch ( RulesRepositoryException e ) {
+            // expected
+        }
+
+        pool.release( repository );
+        assertSame( repository,
+                    pool.borrow() );
+    }
+
+    @Test
+    public void testReplacesDeadSessions() throws Exception {
+        ReadOnlySessionPool pool = new ReadOnlySessionPool( repositoryConfiguration,
+                                                            1,
+                                                            1000 );
+        RulesRepository repository = pool.borrow();
+        pool.release( repository );
+        when( repository.getSession().isLive() ).thenReturn( false );
+
+        assertNotSame( repository,
+                       pool.borrow() );
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ReadOnlySessionPool pool = new ReadOnlySessionPool( repositoryConfiguration,
+                                                            2,
+                                                            1000 );
+        RulesRepository idle = pool.borrow();
+        RulesRepository busy = pool.borrow();
+        pool.release( idle );
+
+        pool.close();
+        verify( idle.getSession() ).logout();
+        verify( busy.getSession(),
+                never() ).logout();
+
+        pool.release( busy );
+        verify( busy.getSession() ).logout();
+        assertEquals( 0,
+                      pool.getIdleCount() );
+    }
+}
@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.drools.guvnor.server.GuvnorTestBase;
+import org.drools.repository.PackageItem;
+import org.drools.repository.RulesRepository;
 import org.jboss.seam.contexts.Contexts;
 import org.junit.Test;
 
@@ -337,6 +339,51 @@ public class RoleBasedPermissionResolverTest extends GuvnorTestBase {
 
     }
 
+    @Test
+    public void testPackageBasedPermissionBySnapshotUUID() throws Exception {
+        String packageName = "testPackageBasedPermissionBySnapshotUUID";
+        String otherName = "testPackageBasedPermissionBySnapshotUUIDOther";
+
+        RulesRepository repo = getServiceImplementation().getRulesRepository();
+        PackageItem pkg = repo.createPackage( packageName,
+                                              "" );
+        repo.createPackage( otherName,
+                            "" );
+        repo.createPackageSnapshot( packageName,
+                                    otherName );
+        repo.createPackageSnapshot( otherName,
+                                    packageName );
+        // the snapshot nodes are named after the snapshots, not the packages
+        PackageItem snapshot = repo.loadPackageSnapshot( packageName,
+                                                         otherName );
+        PackageItem otherSnapshot = repo.loadPackageSnapshot( otherName,
+                                                              packageName );
+
+        List<RoleBasedPermission> pbps = new ArrayList<RoleBasedPermission>();
+        pbps.add( new RoleBasedPermission( "jervis",
+                                           RoleTypes.PACKAGE_READONLY,
+                                           packageName,
+                                           null ) );
+        MockRoleBasedPermissionStore store = new MockRoleBasedPermissionStore( pbps );
+        Contexts.getSessionContext().set( "org.drools.guvnor.server.security.RoleBasedPermissionStore",
+                                          store );
+
+        RoleBasedPermissionManager testManager = new RoleBasedPermissionManager();
+        testManager.create();
+        Contexts.getSessionContext().set( "roleBasedPermissionManager",
+                                          testManager );
+
+        RoleBasedPermissionResolver resolver = new RoleBasedPermissionResolver();
+        resolver.setEnableRoleBasedAuthorization( true );
+
+        assertTrue( resolver.hasPermission( new PackageUUIDType( pkg.getUUID() ),
+                                            RoleTypes.PACKAGE_READONLY ) );
+        assertTrue( resolver.hasPermission( new PackageUUIDType( snapshot.getUUID() ),
+                                            RoleTypes.PACKAGE_READONLY ) );
+        assertFalse( resolver.hasPermission( new PackageUUIDType( otherSnapshot.getUUID() ),
+                                             RoleTypes.PACKAGE_READONLY ) );
+    }
+
     //Package.logInAdmin: everything for that package, including creating snapshots for that package.
     @Test
     public void testPackageBasedWebDavPermissionPackageAdmin() throws Exception {